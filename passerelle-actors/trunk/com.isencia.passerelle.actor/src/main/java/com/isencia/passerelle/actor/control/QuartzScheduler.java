@@ -24,18 +24,9 @@ import java.util.Map;
 
 
 
-import org.quartz.CronTrigger;
-import org.quartz.JobDetail;
-import org.quartz.JobExecutionContext;
-import org.quartz.JobExecutionException;
-import org.quartz.JobListener;
-import org.quartz.Scheduler;
-import org.quartz.SchedulerException;
-import org.quartz.SchedulerListener;
 import org.quartz.SimpleTrigger;
 import org.quartz.Trigger;
 import org.quartz.helpers.TriggerUtils;
-import org.quartz.jobs.NoOpJob;
 
 import ptolemy.data.BooleanToken;
 import ptolemy.data.expr.Parameter;
@@ -51,9 +42,8 @@ import com.isencia.passerelle.actor.TerminationException;
 import com.isencia.passerelle.core.PasserelleException;
 import com.isencia.passerelle.core.Port;
 import com.isencia.passerelle.core.PortFactory;
-import com.isencia.passerelle.domain.cap.Director;
 import com.isencia.passerelle.message.ManagedMessage;
-import com.isencia.passerelle.util.SchedulerUtils;
+import com.isencia.passerelle.util.TimeService;
 import com.isencia.passerelle.util.ptolemy.DateTimeParameter;
 import com.isencia.util.BlockingReaderQueue;
 import com.isencia.util.EmptyQueueException;
@@ -63,6 +53,12 @@ import com.isencia.util.FIFOQueue;
  * 
  * A Passerelle scheduler actor, based on the well-known
  * open-source Quartz scheduling framework.
+ * <p>
+ * The Quartz triggers only define the fire times. The triggers are executed by 
+ * the shared TimeService, so no Quartz scheduler and thread pool is needed per flow.
+ * When recoverTriggers is set, a trigger that was missed, e.g. because the start date
+ * is in the past, is still fired once. Otherwise it is skipped.
+ * </p>
  * 
  * @author erwin dl
  */
@@ -197,11 +193,7 @@ public class QuartzScheduler extends Actor {
 
     private BlockingReaderQueue queue = null;
 
-    private Scheduler scheduler = null;
-    private Trigger myTrigger = null;
-    // flag to track if this actor is using
-    // its own private scheduler instance or a shared one
-    private boolean itsMyScheduler = false;
+    private TimeService.Registration registration = null;
 
 
     //~ Constructors
@@ -369,46 +361,18 @@ public class QuartzScheduler extends Actor {
         // for attributeChanged() and instance variables!?
         startDate = ((DateTimeParameter)paramStartDate).getDateValue();
         endDate = ((DateTimeParameter)paramEndDate).getDateValue();
-        String someUniqueName = getManager().getName()+"_"+getName();
-        if (scheduler == null) {
-        	if(getDirector() instanceof Director) {
-        		itsMyScheduler = false;
-        		Director passerelleDirector = (Director) getDirector();
-        		scheduler = passerelleDirector.getScheduler();
-        	} else {
-        		itsMyScheduler = true;
-        		// the actor is used in a non-Passerelle domain,
-        		// so it needs to take care about scheduler set-up itself
-	            try {
-	            	// obtain a unique scheduler instance per scheduler actor
-	                scheduler = SchedulerUtils.getQuartzScheduler(someUniqueName);
-	                scheduler.start();
-	    		} catch (SchedulerException e) {
-	    			throw new InitializationException(PasserelleException.Severity.FATAL,getInfo()+ " - Error starting the scheduler",this,e);
-	    		} 
-        	}
-            try {
-                scheduler.addSchedulerListener(new SchedulerActorManager());
-    		} catch (SchedulerException e) {
-    			try {
-					scheduler.shutdown();
-				} catch (SchedulerException e1) {
-					// ignore
-				}
-    			throw new InitializationException(PasserelleException.Severity.FATAL,getInfo()+ " - Error registering with the scheduler",this,e);
-    		} 
-        }
 		try {
-			myTrigger = createTrigger();
-	        JobDetail jD = new JobDetail(someUniqueName+"_Job", getName(),NoOpJob.class);
-
-	        JobListener jL = new SchedulerActorJob(someUniqueName + "_JobListener");
-			scheduler.addJobListener(jL);
-	        jD.addJobListener(jL.getName());
-            scheduler.scheduleJob(jD, myTrigger);
+			Trigger trigger = createTrigger();
+			// the director is the owner, so the registration is also cancelled when the flow is wrapped up
+			Object owner = getDirector()!=null ? (Object)getDirector() : this;
+			registration = TimeService.getInstance().schedule(owner, TimeService.forTrigger(trigger), new SchedulerActorTask(), recoverTriggers);
         } catch (Exception e) {
 			throw new InitializationException(PasserelleException.Severity.FATAL,getInfo()+ " - Error configuring the scheduler",this,e);
         } 
+        if (registration == null) {
+        	logger.warn(getInfo()+" - trigger will never fire");
+        	requestFinish();
+        }
 
         if (logger.isTraceEnabled()) {
             logger.trace(getInfo()+" - exit ");
@@ -423,23 +387,13 @@ public class QuartzScheduler extends Actor {
 		if (logger.isTraceEnabled()) {
 			logger.trace(getInfo());
 		}
-		try {
-			if (scheduler != null) {
-				try {
-					if(itsMyScheduler) {
-						// i'm responsible for the scheduler cleanup
-						scheduler.shutdown(true);
-					}
-					// to get initialize() working correctly if the actor is
-					// used in consecutive model runs in Vergil
-					scheduler=null;
-				} catch (SchedulerException e) {
-					throw new TerminationException(getInfo()+ " - Error closing the scheduler",this,e);
-				}
-			}
-		} finally {
-			super.doWrapUp();
+		if (registration != null) {
+			registration.cancel();
+			// to get initialize() working correctly if the actor is
+			// used in consecutive model runs in Vergil
+			registration = null;
 		}
+		super.doWrapUp();
 
 		if (logger.isTraceEnabled()) {
 			logger.trace(getInfo()+" - exit ");
@@ -478,21 +432,6 @@ public class QuartzScheduler extends Actor {
 	 */
     private Trigger createTrigger() throws Exception {
         Trigger t = executionType.createTrigger(periodSpec, getManager().getName()+"_"+getName()+"_Trigger");
-        if(!recoverTriggers) {
-        	// make sure that scheduler does not try to recover triggers from the start date onwards
-        	// but only creates new triggers after (re-)launching a Passerelle application with a QuartzScheduler.
-	        if(t instanceof CronTrigger) {
-	        	t.setMisfireInstruction(CronTrigger.MISFIRE_INSTRUCTION_DO_NOTHING);
-	        } else {
-	        	t.setMisfireInstruction(SimpleTrigger.MISFIRE_INSTRUCTION_RESCHEDULE_NEXT_WITH_REMAINING_COUNT);
-	        }
-        } else {
-	        if(t instanceof CronTrigger) {
-	        	t.setMisfireInstruction(CronTrigger.MISFIRE_INSTRUCTION_SMART_POLICY);
-	        } else {
-	        	t.setMisfireInstruction(SimpleTrigger.MISFIRE_INSTRUCTION_SMART_POLICY);
-	        }
-        }
 
         // use actor name as scheduler group name
         t.setGroup(getName());
@@ -504,85 +443,26 @@ public class QuartzScheduler extends Actor {
 
     //~ Classes
     // ������������������������������������������������������������������������������������������������������������������������������������������������
-    class SchedulerActorManager implements SchedulerListener {
-		public void jobScheduled(Trigger trigger) {
-		}
-		public void jobUnscheduled(String triggerName, String triggerGroup) {
-		}
-		public void triggerFinalized(Trigger trigger) {
-			if(trigger.equals(myTrigger)) {
-				if(logger.isTraceEnabled())
-					logger.trace("triggerFinalized() - entry");
-				requestFinish();
-				if(logger.isTraceEnabled())
-					logger.trace("triggerFinalized() - exit");
-			}
-		}
-		public void triggersPaused(String triggerName, String triggerGroup) {
-		}
-		public void triggersResumed(String triggerName, String triggerGroup) {
-		}
-		public void jobsPaused(String jobName, String jobGroup) {
-		}
-		public void jobsResumed(String jobName, String jobGroup) {
-		}
-		public void schedulerError(String msg, SchedulerException cause) {
-		}
-		public void schedulerShutdown() {
+    /**
+     * Executed by the TimeService at each fire time of the trigger.
+     */
+    class SchedulerActorTask implements Runnable, TimeService.ScheduleEndListener {
+		public void run() {
+            if (logger.isTraceEnabled()) {
+                logger.trace("run() - entry");
+            }
+            QuartzScheduler.this.queue.put(createTriggerMessage());
+            if (logger.isTraceEnabled()) {
+                logger.trace("run() - exit");
+            }
 		}
-    }
-
-    class SchedulerActorJob implements JobListener {
-        private String name = "SchedulerActorJob";
-
-        public SchedulerActorJob(String name) {
-            this.name = name;
-        }
-
-        /*
-         * (non-Javadoc)
-         * 
-         * @see org.quartz.JobListener#getName()
-         */
-        public String getName() {
-            return name;
-        }
-
-        /*
-         * (non-Javadoc)
-         * 
-         * @see org.quartz.JobListener#jobToBeExecuted(org.quartz.JobExecutionContext)
-         */
-        public void jobToBeExecuted(JobExecutionContext context) {
-        }
-
-        /*
-         * (non-Javadoc)
-         * 
-         * @see org.quartz.JobListener#jobExecutionVetoed(org.quartz.JobExecutionContext)
-         */
-        public void jobExecutionVetoed(JobExecutionContext context) {
-        }
 
-        /*
-         * (non-Javadoc)
-         * 
-         * @see org.quartz.JobListener#jobWasExecuted(org.quartz.JobExecutionContext,
-         *      org.quartz.JobExecutionException)
-         */
-        public void jobWasExecuted(JobExecutionContext context,
-                JobExecutionException jobException) {
-        	
-            if(context.getTrigger().equals(myTrigger)) {
-                if (logger.isTraceEnabled()) {
-                    logger.trace("jobWasExecuted() - entry");
-                }
-                QuartzScheduler.this.queue.put(createTriggerMessage());
-
-	            if (logger.isTraceEnabled()) {
-	                logger.trace("jobWasExecuted() - exit");
-	            }
-			}
-        }
+		public void scheduleEnded(TimeService.Registration registration) {
+			if(logger.isTraceEnabled())
+				logger.trace("scheduleEnded() - entry");
+			requestFinish();
+			if(logger.isTraceEnabled())
+				logger.trace("scheduleEnded() - exit");
+		}
     }
 }
\ No newline at end of file
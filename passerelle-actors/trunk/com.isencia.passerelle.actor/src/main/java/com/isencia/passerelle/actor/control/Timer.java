@@ -20,11 +20,16 @@ package com.isencia.passerelle.actor.control;
 import com.isencia.passerelle.actor.Actor;
 import com.isencia.passerelle.actor.InitializationException;
 import com.isencia.passerelle.actor.ProcessingException;
+import com.isencia.passerelle.actor.TerminationException;
 import com.isencia.passerelle.core.Port;
 import com.isencia.passerelle.core.PortFactory;
 import com.isencia.passerelle.core.PortHandler;
 import com.isencia.passerelle.core.PortListenerAdapter;
 import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.util.TimeService;
+import com.isencia.util.BlockingReaderQueue;
+import com.isencia.util.EmptyQueueException;
+import com.isencia.util.FIFOQueue;
 
 import ptolemy.data.IntToken;
 import ptolemy.data.Token;
@@ -36,6 +41,16 @@ import ptolemy.kernel.util.IllegalActionException;
 import ptolemy.kernel.util.NameDuplicationException;
 
 /**
+ * Generates a trigger msg after a configurable time (s).
+ * <p>
+ * When the set port is not connected, the timer fires periodically.
+ * Otherwise, each msg on the set port (re)starts the timer, and it fires once.
+ * A msg on the reset port restarts the periodic timer, or stops the timer that was set.
+ * </p>
+ * <p>
+ * The timing is done by the shared TimeService, 
+ * the actor's thread just waits for the timer's msgs.
+ * </p>
  *
  * @author  dirk jacobs
  */
@@ -44,8 +59,6 @@ public class Timer extends Actor {
 	private static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(Timer.class);
 
 	private boolean setPresent = false;
-	private boolean set = false;
-	private boolean reset = false;
 
 	public Timer(CompositeEntity container, String name) throws IllegalActionException, NameDuplicationException {
 		super(container, name);
@@ -98,9 +111,17 @@ public class Timer extends Actor {
 	///////////////////////////////////////////////////////////////////
 	////                     variables                             ////
 
+	// in ms
 	private int time = 0;
 	private PortHandler setHandler = null;
 	private PortHandler resetHandler = null;
+	private BlockingReaderQueue queue = new BlockingReaderQueue(new FIFOQueue());
+	private TimeService.Registration registration = null;
+	private final Runnable timerTask = new Runnable() {
+		public void run() {
+			queue.put(createTriggerMessage());
+		}
+	};
 
 	public void attributeChanged(Attribute attribute) throws IllegalActionException {
 		if (logger.isTraceEnabled())
@@ -125,6 +146,8 @@ public class Timer extends Actor {
 			logger.trace(getInfo());
 
 		super.doInitialize();
+		setPresent = false;
+		queue = new BlockingReaderQueue(new FIFOQueue());
 
 		// If something connected to the set port, install a handler
 		if (setInputPort.getWidth() > 0) {
@@ -136,8 +159,7 @@ public class Timer extends Actor {
 						
 					Token token = setHandler.getToken();
 					if (token != null) {
-						set = true;
-						performNotify();
+						startTimer();
 					}
 				}
 			});
@@ -155,8 +177,11 @@ public class Timer extends Actor {
 						logger.debug(getInfo()+" - Reset Event received");
 						
 					if (token != null) {
-						reset = true;
-						performNotify();
+						if (setPresent) {
+							stopTimer();
+						} else {
+							startTimer();
+						}
 					}
 				}
 			});
@@ -164,30 +189,34 @@ public class Timer extends Actor {
 				resetHandler.start();
 			}
 		}
+		
+		if (!setPresent) {
+			startTimer();
+		}
 
 	}
 
-	private synchronized void performNotify() {
-		if (logger.isTraceEnabled())
-			logger.trace(getInfo());
-		notify();
-		if (logger.isTraceEnabled())
-			logger.trace(getInfo()+" - exit ");
+	/**
+	 * (Re)starts the timer : periodic if the set port is not connected, else once.
+	 */
+	private synchronized void startTimer() {
+		stopTimer();
+		// the director is the owner, so the registration is also cancelled when the flow is wrapped up
+		Object owner = getDirector()!=null ? (Object)getDirector() : this;
+		if (!setPresent) {
+			if (time > 0) {
+				registration = TimeService.getInstance().scheduleAtFixedRate(owner, time, time, timerTask);
+			}
+		} else {
+			registration = TimeService.getInstance().scheduleOnce(owner, time, timerTask);
+		}
 	}
 
-	private synchronized void performWait(int time) {
-		if (logger.isTraceEnabled())
-			logger.trace(getInfo()+" :"+time);
-		try {
-			if (time == -1)
-				wait();
-			else
-				wait(time);
-		} catch (InterruptedException e) {
-			requestFinish();
+	private synchronized void stopTimer() {
+		if (registration != null) {
+			registration.cancel();
+			registration = null;
 		}
-		if (logger.isTraceEnabled())
-			logger.trace(getInfo()+" - exit ");
 	}
 
 	/*
@@ -198,35 +227,16 @@ public class Timer extends Actor {
 		if (logger.isTraceEnabled())
 			logger.trace(getInfo());
 
-		if (!setPresent) {
-			performWait(time);
-			if (reset || isFinishRequested()) {
-				reset = false;
-				return;
-			}
-
-		} else {
-			// Wait until set
-			isFiring = false;
-			while (!set && !isFinishRequested()) {
-				performWait(-1);
-			}
-
-			if (isFinishRequested())
-				return;
-
-			isFiring = true;
-			set = false;
-			performWait(time);
-			if (reset || isFinishRequested()) {
-				reset = false;
-				return;
-			}
-
+		// Wait until the timer fires
+		ManagedMessage message = null;
+		try {
+			message = (ManagedMessage) queue.get();
+		} catch (EmptyQueueException e) {
+			// means we must stop
+			return;
 		}
 
 		// Send trigger message
-		ManagedMessage message = createTriggerMessage();
 		try {
 			message.setBodyContent(Long.toString(time), "text/plain");
 		} catch (Exception e) {
@@ -262,7 +272,16 @@ public class Timer extends Actor {
 	 */
 	protected void doStopFire() 
 	{
-		performNotify();
+		queue.trigger();
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see be.isencia.passerelle.actor.Actor#doWrapUp()
+	 */
+	protected void doWrapUp() throws TerminationException {
+		stopTimer();
+		super.doWrapUp();
 	}
 
 
@@ -22,6 +22,7 @@ import org.w3c.dom.NodeList;
 import com.isencia.passerelle.actor.ProcessingException;
 import com.isencia.passerelle.actor.Transformer;
 import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.message.xml.CompiledXPath;
 import com.isencia.passerelle.message.xml.XmlMessageHelper;
 
 import ptolemy.data.StringToken;
@@ -113,6 +114,7 @@ public class BodyToHeaderExtractor extends Transformer {
 	// private variables
 	private String propName = "";
 	private String xpathSelector = "";
+	private CompiledXPath compiledSelector = new CompiledXPath(xpathSelector);
 	private String propMode = null;
 	
 	public void attributeChanged(Attribute attribute)
@@ -125,6 +127,7 @@ public class BodyToHeaderExtractor extends Transformer {
 			propName = ((StringToken) propNameParam.getToken()).stringValue();
 		} else if (attribute == xpathSelectorParam) {
 			xpathSelector = ((StringToken) xpathSelectorParam.getToken()).stringValue();
+			compiledSelector = new CompiledXPath(xpathSelector);
 		} else if (attribute == propModeParam) {
         	propMode = propModeParam.getExpression();
 		} else {
@@ -143,7 +146,7 @@ public class BodyToHeaderExtractor extends Transformer {
 			if(propName!=null && propName.length()>0) {
 	        	String propValue=null;
 	        	try {
-	        		NodeList matchingNodes = XmlMessageHelper.selectWithXPath(xpathSelector, message);
+	        		NodeList matchingNodes = XmlMessageHelper.selectWithXPath(compiledSelector, message);
 		        	// TODO complete xpath extraction and loop
 	        		if(matchingNodes!=null && matchingNodes.getLength()>0) {
 	        			for(int i=0;i<matchingNodes.getLength();++i) {
@@ -41,10 +41,12 @@ import com.isencia.passerelle.core.Port;
 import com.isencia.passerelle.message.ManagedMessage;
 import com.isencia.passerelle.message.MessageFlowElement;
 
+import ptolemy.data.BooleanToken;
 import ptolemy.data.StringToken;
 import ptolemy.data.expr.FileParameter;
 import ptolemy.data.expr.Parameter;
 import ptolemy.data.expr.StringParameter;
+import ptolemy.data.type.BaseType;
 import ptolemy.kernel.CompositeEntity;
 import ptolemy.kernel.util.Attribute;
 import ptolemy.kernel.util.IllegalActionException;
@@ -80,11 +82,19 @@ public class DynamicPortScriptConverter extends DynamicPortsActor {
     public static final String PATH_PARAM = "Path";
     public static final String LANGUAGE_PARAM = "Language";
     public static final String CONTAINERNAME_PARAM = "Container name";
+    public static final String COMPILE_PARAM = "Compile script";
 
     private static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(DynamicPortScriptConverter.class);
 
     //~ Instance variables �����������������������������������������������
-    // bsf managers
+    // compiles the script once, and executes it with an engine per thread
+    protected ScriptExecutor scriptExecutor = null;
+
+    /**
+     * @deprecated the script is executed via the scriptExecutor.
+     * The managers are only still created for subclasses that use them directly.
+     */
+    @Deprecated
     protected List<BSFManager> bsfManagers = new ArrayList<BSFManager>();
 
     protected String script = null;
@@ -101,6 +111,9 @@ public class DynamicPortScriptConverter extends DynamicPortsActor {
 
     protected String scriptPath = null;
 
+    public Parameter compileParam = null;
+    protected boolean compile = true;
+
     //~ Constructors �����������������������������������������������������
 
     /**
@@ -132,6 +145,9 @@ public class DynamicPortScriptConverter extends DynamicPortsActor {
         containerNameParam = new StringParameter(this, CONTAINERNAME_PARAM);
         containerNameParam.setExpression("container");
 
+        compileParam = new Parameter(this, COMPILE_PARAM, new BooleanToken(compile));
+        compileParam.setTypeEquals(BaseType.BOOLEAN);
+
         _attachText("_iconDescription", "<svg>\n"
                 + "<rect x=\"-20\" y=\"-20\" width=\"40\" "
                 + "height=\"40\" style=\"fill:lightgrey;stroke:lightgrey\"/>\n"
@@ -194,6 +210,12 @@ public class DynamicPortScriptConverter extends DynamicPortsActor {
                 containerName = containerNameToken.stringValue();
                 logger.debug("Container name changed to : " + containerName);
             }
+        } else if (attribute == compileParam) {
+            BooleanToken compileToken = (BooleanToken) compileParam.getToken();
+            if (compileToken != null) {
+                compile = compileToken.booleanValue();
+                logger.debug("Compile changed to : " + compile);
+            }
         } else {
             super.attributeChanged(attribute);
         }
@@ -219,7 +241,7 @@ public class DynamicPortScriptConverter extends DynamicPortsActor {
 	        }
 	
 	        initializeScriptingEngines();
-	        
+
 	        // get Jython initialised correctly in OSGi as well
 	        // then we need to manually specify all packages 
 	        // imported by the jython script for some reason
@@ -227,6 +249,13 @@ public class DynamicPortScriptConverter extends DynamicPortsActor {
 				Py.initPython();
 		        PySystemState.add_package("be.isencia.passerelle.message");
 	        }
+
+	        // parse the script only once, i.o. for each message
+	        try {
+	        	scriptExecutor = ScriptExecutor.newExecutor(language, scriptPath, script, getClass().getClassLoader(), compile);
+	        } catch (BSFException e) {
+	            throw new InitializationException("Could not compile script", this, e);
+	        }
 		}
 
         // Beware: contrary to initialization conventions, where the superclass
@@ -245,9 +274,12 @@ public class DynamicPortScriptConverter extends DynamicPortsActor {
     /**
      * Overridable method to initialize a number of scripting engines.
      * 
-     * By default, we create a scripting engine per input port, as this
-     * actor will invoke the script concurrently for each separate received input msg.
+     * By default, we create a scripting engine per input port.
+     * 
+     * @deprecated the script is executed via the scriptExecutor,
+     * which creates its own engine per processing thread.
      */
+    @Deprecated
 	protected void initializeScriptingEngines() {
         for(int i=0;i<getNrInputPorts();++i) {
             BSFManager mgr = new BSFManager();
@@ -264,10 +296,15 @@ public class DynamicPortScriptConverter extends DynamicPortsActor {
         if (logger.isTraceEnabled()) {
             logger.trace(getInfo()+" doWrapUp() - entry");
         }
+        if (scriptExecutor != null) {
+        	scriptExecutor.terminate();
+        	scriptExecutor = null;
+        }
         for (Iterator<BSFManager> iter = bsfManagers.iterator(); iter.hasNext();) {
             BSFManager element = iter.next();
             element.terminate();
         }
+        bsfManagers.clear();
         if (logger.isTraceEnabled()) {
             logger.trace(getInfo()+" doWrapUp() - exit");
         }
@@ -289,9 +326,7 @@ public class DynamicPortScriptConverter extends DynamicPortsActor {
 		            MessageFlowElement input = new MessageFlowElement(
 		            		new MessageFlowElement.MessageAndPort(portIndex, msg),
 				            getNrOutputPorts());
-		            BSFManager mgr = bsfManagers.get(portIndex);
-		            mgr.declareBean(containerName, input, input.getClass());
-		            mgr.exec(language, scriptPath, -1, -1, script);
+		            scriptExecutor.exec(containerName, input);
 					// now send out results to all specified outputs
 					MessageFlowElement.MessageAndPort[] outputSpecs = input.getAllOutputSpecs();
 					for (int i = 0; i < outputSpecs.length; i++) {
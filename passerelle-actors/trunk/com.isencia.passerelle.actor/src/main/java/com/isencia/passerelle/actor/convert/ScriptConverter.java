@@ -21,22 +21,24 @@ import java.io.IOException;
 import java.io.Reader;
 
 import org.apache.bsf.BSFException;
-import org.apache.bsf.BSFManager;
 import org.apache.bsf.util.IOUtils;
 
 
 
 import com.isencia.passerelle.actor.InitializationException;
 import com.isencia.passerelle.actor.ProcessingException;
+import com.isencia.passerelle.actor.TerminationException;
 import com.isencia.passerelle.actor.Transformer;
 import com.isencia.passerelle.core.PasserelleException;
 import com.isencia.passerelle.message.ManagedMessage;
 import com.isencia.passerelle.message.MessageFlowElement;
 
+import ptolemy.data.BooleanToken;
 import ptolemy.data.StringToken;
 import ptolemy.data.expr.FileParameter;
 import ptolemy.data.expr.Parameter;
 import ptolemy.data.expr.StringParameter;
+import ptolemy.data.type.BaseType;
 import ptolemy.kernel.CompositeEntity;
 import ptolemy.kernel.util.Attribute;
 import ptolemy.kernel.util.IllegalActionException;
@@ -54,12 +56,13 @@ public class ScriptConverter extends Transformer {
     public static final String PATH_PARAM = "Path";
     public static final String LANGUAGE_PARAM = "Language";
     public static final String CONTAINERNAME_PARAM = "Container name";
+    public static final String COMPILE_PARAM = "Compile script";
     
     private static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ScriptConverter.class);
 
     //~ Instance variables �������������������������������������������������������������������������������������������������������������������������������������
 
-    private BSFManager manager = new BSFManager();
+    private ScriptExecutor scriptExecutor = null;
     public StringParameter languageParam = null;
     public FileParameter scriptPathParam = null;
     public Parameter containerNameParam = null;
@@ -67,6 +70,8 @@ public class ScriptConverter extends Transformer {
     private String language = "";
     private String script = null;
     private String scriptPath = null;
+    public Parameter compileParam = null;
+    private boolean compile = true;
     //private TransformData data = new TransformData();
 
     //~ Constructors �������������������������������������������������������������������������������������������������������������������������������������������
@@ -92,6 +97,9 @@ public class ScriptConverter extends Transformer {
 
         containerNameParam = new StringParameter(this, CONTAINERNAME_PARAM);
         containerNameParam.setExpression("container");
+
+        compileParam = new Parameter(this, COMPILE_PARAM, new BooleanToken(compile));
+        compileParam.setTypeEquals(BaseType.BOOLEAN);
     }
     
     /*
@@ -124,6 +132,12 @@ public class ScriptConverter extends Transformer {
                 containerName = containerNameToken.stringValue();
                 logger.debug("Container name changed to : " + containerName);
             }
+        } else if (attribute == compileParam) {
+            BooleanToken compileToken = (BooleanToken) compileParam.getToken();
+            if (compileToken != null) {
+                compile = compileToken.booleanValue();
+                logger.debug("Compile changed to : " + compile);
+            }
         } else {
             super.attributeChanged(attribute);
         }
@@ -140,8 +154,7 @@ public class ScriptConverter extends Transformer {
 		if( message != null ) {
 			MessageFlowElement inputContainer = new MessageFlowElement(new MessageFlowElement.MessageAndPort(0,message),1);
 			try {
-				manager.declareBean(containerName, inputContainer, inputContainer.getClass());
-				manager.exec(language, scriptPath, -1, -1, script);
+				scriptExecutor.exec(containerName, inputContainer);
 			} catch (BSFException e) {
 				throw new ProcessingException(getInfo()+" - script execution generated an exception "+e,message,e);
 			}
@@ -179,12 +192,26 @@ public class ScriptConverter extends Transformer {
 		} catch (IOException e) {
 			throw new InitializationException(PasserelleException.Severity.FATAL,getInfo()+" - Script file could not be opened.",scriptPath,e);
 		}
+		// parse the script only once, i.o. for each message
+		try {
+			scriptExecutor = ScriptExecutor.newExecutor(language, scriptPath, script, getClass().getClassLoader(), compile);
+		} catch (BSFException e) {
+			throw new InitializationException(PasserelleException.Severity.FATAL,getInfo()+" - Script could not be compiled.",scriptPath,e);
+		}
 
         if (logger.isTraceEnabled()) {
             logger.trace(getInfo()+" - exit ");
         }
     }
 
+    protected void doWrapUp() throws TerminationException {
+    	if (scriptExecutor != null) {
+    		scriptExecutor.terminate();
+    		scriptExecutor = null;
+    	}
+    	super.doWrapUp();
+    }
+
     /**
      * @see be.tuple.passerelle.engine.actor.Actor#getExtendedInfo()
      */
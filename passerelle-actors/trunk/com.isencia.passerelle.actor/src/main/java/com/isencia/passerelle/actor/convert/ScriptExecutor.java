@@ -0,0 +1,343 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.isencia.passerelle.actor.convert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+import org.apache.bsf.BSFException;
+import org.apache.bsf.BSFManager;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ImporterTopLevel;
+import org.mozilla.javascript.RhinoException;
+import org.mozilla.javascript.Script;
+import org.python.core.PyCode;
+import org.python.core.PyException;
+import org.python.core.__builtin__;
+import org.python.util.PythonInterpreter;
+
+/**
+ * Executes a script repeatedly, each time with another bean (e.g. a MessageFlowElement)
+ * bound to a given name.
+ * <p>
+ * Where possible, the script source is compiled once when the executor is created,
+ * i.o. being parsed again for each execution :
+ * <ul>
+ * <li>jython and javascript scripts are compiled directly with the Jython and Rhino engines,
+ * i.e. the same engines that BSF uses for these languages, so scripts behave in the same way.
+ * Only the <code>bsf</code> helper object is not available for them.
+ * <li>for other languages, a JSR-223 engine is used if one is available and if it is Compilable.
+ * javax.script is an optional import, so on a Java 5 runtime these languages simply run via BSF.
+ * <li>in all other cases, the script source is executed via BSF for each execution.
+ * This includes scripts that refer to the <code>bsf</code> helper object.
+ * </ul>
+ * </p>
+ * <p>
+ * Scripting engines are in general not thread-safe, so an engine is created for each thread
+ * that executes the script. It is then reused, together with its bindings, for all
+ * executions on that thread.
+ * </p>
+ *
+ * @author erwin dl
+ */
+public abstract class ScriptExecutor {
+
+	public static final String JYTHON = "jython";
+	public static final String JAVASCRIPT = "javascript";
+
+	// scripts using the BSF helper object can only run via BSF
+	private static final Pattern BSF_HELPER_PATTERN = Pattern.compile("\\bbsf\\b");
+
+	private final ThreadLocal<Object> engine = new ThreadLocal<Object>();
+	private final List<Object> allEngines = new ArrayList<Object>();
+
+	protected final String language;
+	protected final String scriptPath;
+	protected final String script;
+	protected final ClassLoader classLoader;
+
+	protected ScriptExecutor(String language, String scriptPath, String script, ClassLoader classLoader) {
+		this.language = language;
+		this.scriptPath = scriptPath;
+		this.script = script;
+		this.classLoader = classLoader;
+	}
+
+	/**
+	 * Creates the best available executor for the script's language.
+	 * 
+	 * @param language
+	 * @param scriptPath
+	 * @param script the script source
+	 * @param classLoader the class loader to find classes used by the script
+	 * @param compile false if the script must always be executed via BSF.
+	 * Scripts that refer to the bsf helper object are executed via BSF anyway.
+	 * @return the executor
+	 * @throws BSFException if the script could not be compiled
+	 */
+	public static ScriptExecutor newExecutor(String language, String scriptPath, String script, ClassLoader classLoader, boolean compile)
+			throws BSFException {
+		if (compile && !BSF_HELPER_PATTERN.matcher(script).find()) {
+			if (JYTHON.equals(language)) {
+				return new JythonExecutor(language, scriptPath, script, classLoader);
+			} else if (JAVASCRIPT.equals(language)) {
+				return new RhinoExecutor(language, scriptPath, script, classLoader);
+			} else if (Jsr223Executor.isAvailable(language, classLoader)) {
+				return new Jsr223Executor(language, scriptPath, script, classLoader);
+			}
+		}
+		return new BSFExecutor(language, scriptPath, script, classLoader);
+	}
+
+	/**
+	 * Executes the script, with the given bean bound to the given name.
+	 * 
+	 * @param beanName
+	 * @param bean
+	 * @throws BSFException if the script execution failed
+	 */
+	public void exec(String beanName, Object bean) throws BSFException {
+		Object e = engine.get();
+		if (e == null) {
+			e = createEngine();
+			engine.set(e);
+			synchronized (allEngines) {
+				allEngines.add(e);
+			}
+		}
+		exec(e, beanName, bean);
+	}
+
+	/**
+	 * Releases the engines of all threads.
+	 * The executor should not be used anymore afterwards.
+	 */
+	public void terminate() {
+		synchronized (allEngines) {
+			for (Object e : allEngines) {
+				terminateEngine(e);
+			}
+			allEngines.clear();
+		}
+	}
+
+	/**
+	 * @return true if the script has been compiled, i.e. it is not parsed again for each execution
+	 */
+	public abstract boolean isCompiled();
+
+	protected abstract Object createEngine() throws BSFException;
+
+	protected abstract void exec(Object engine, String beanName, Object bean) throws BSFException;
+
+	protected void terminateEngine(Object engine) {
+	}
+
+	protected BSFException newExecutionException(Throwable t) {
+		return new BSFException(BSFException.REASON_EXECUTION_ERROR, "Error executing " + scriptPath + " : " + t, t);
+	}
+
+	/**
+	 * Executes the script source via a BSFManager per thread, i.e. the script is parsed on each execution.
+	 */
+	private static class BSFExecutor extends ScriptExecutor {
+		BSFExecutor(String language, String scriptPath, String script, ClassLoader classLoader) {
+			super(language, scriptPath, script, classLoader);
+		}
+
+		public boolean isCompiled() {
+			return false;
+		}
+
+		protected Object createEngine() {
+			BSFManager manager = new BSFManager();
+			manager.setClassLoader(classLoader);
+			return manager;
+		}
+
+		protected void exec(Object engine, String beanName, Object bean) throws BSFException {
+			BSFManager manager = (BSFManager) engine;
+			// the BSF javascript engine wraps declared beans outside of its own Rhino context
+			boolean enterContext = JAVASCRIPT.equals(language);
+			if (enterContext) {
+				Context.enter();
+			}
+			try {
+				manager.declareBean(beanName, bean, bean.getClass());
+				manager.exec(language, scriptPath, -1, -1, script);
+			} finally {
+				if (enterContext) {
+					Context.exit();
+				}
+			}
+		}
+
+		protected void terminateEngine(Object engine) {
+			((BSFManager) engine).terminate();
+		}
+	}
+
+	/**
+	 * Compiles the script once to Python byte code, that is shared by the interpreters of all threads.
+	 */
+	private static class JythonExecutor extends ScriptExecutor {
+		private final PyCode code;
+
+		JythonExecutor(String language, String scriptPath, String script, ClassLoader classLoader) throws BSFException {
+			super(language, scriptPath, script, classLoader);
+			try {
+				code = __builtin__.compile(script, scriptPath, "exec");
+			} catch (PyException e) {
+				throw new BSFException(BSFException.REASON_OTHER_ERROR, "Error compiling " + scriptPath + " : " + e, e);
+			}
+		}
+
+		public boolean isCompiled() {
+			return true;
+		}
+
+		protected Object createEngine() {
+			return new PythonInterpreter();
+		}
+
+		protected void exec(Object engine, String beanName, Object bean) throws BSFException {
+			PythonInterpreter interpreter = (PythonInterpreter) engine;
+			try {
+				interpreter.set(beanName, bean);
+				interpreter.exec(code);
+			} catch (PyException e) {
+				throw newExecutionException(e);
+			}
+		}
+
+		protected void terminateEngine(Object engine) {
+			((PythonInterpreter) engine).cleanup();
+		}
+	}
+
+	/**
+	 * Compiles the script once with Rhino. Each thread executes it in its own top-level scope.
+	 */
+	private static class RhinoExecutor extends ScriptExecutor {
+		private final Script compiledScript;
+
+		RhinoExecutor(String language, String scriptPath, String script, ClassLoader classLoader) throws BSFException {
+			super(language, scriptPath, script, classLoader);
+			Context cx = enterContext();
+			try {
+				compiledScript = cx.compileString(script, scriptPath, 1, null);
+			} catch (RhinoException e) {
+				throw new BSFException(BSFException.REASON_OTHER_ERROR, "Error compiling " + scriptPath + " : " + e, e);
+			} finally {
+				Context.exit();
+			}
+		}
+
+		public boolean isCompiled() {
+			return true;
+		}
+
+		private Context enterContext() {
+			Context cx = Context.enter();
+			if (classLoader != null) {
+				cx.setApplicationClassLoader(classLoader);
+			}
+			return cx;
+		}
+
+		protected Object createEngine() {
+			Context cx = enterContext();
+			try {
+				return new ImporterTopLevel(cx);
+			} finally {
+				Context.exit();
+			}
+		}
+
+		protected void exec(Object engine, String beanName, Object bean) throws BSFException {
+			ImporterTopLevel scope = (ImporterTopLevel) engine;
+			Context cx = enterContext();
+			try {
+				scope.put(beanName, scope, Context.toObject(bean, scope));
+				compiledScript.exec(cx, scope);
+			} catch (RhinoException e) {
+				throw newExecutionException(e);
+			} finally {
+				Context.exit();
+			}
+		}
+	}
+
+	/**
+	 * Compiles the script with a JSR-223 engine, once per thread as a CompiledScript is tied to its engine.
+	 * The engine's bindings are reused for all executions.
+	 */
+	private static class Jsr223Executor extends ScriptExecutor {
+		private final ScriptEngineManager engineManager;
+
+		Jsr223Executor(String language, String scriptPath, String script, ClassLoader classLoader) throws BSFException {
+			super(language, scriptPath, script, classLoader);
+			engineManager = new ScriptEngineManager(classLoader);
+			// compile once already, to report script errors during initialization
+			createEngine();
+		}
+
+		/**
+		 * @return true if javax.script is available and offers a Compilable engine for the language
+		 */
+		static boolean isAvailable(String language, ClassLoader classLoader) {
+			try {
+				return new ScriptEngineManager(classLoader).getEngineByName(language) instanceof Compilable;
+			} catch (LinkageError e) {
+				// no JSR-223 on a Java 5 runtime
+				return false;
+			}
+		}
+
+		public boolean isCompiled() {
+			return true;
+		}
+
+		protected Object createEngine() throws BSFException {
+			ScriptEngine scriptEngine = engineManager.getEngineByName(language);
+			try {
+				return ((Compilable) scriptEngine).compile(script);
+			} catch (ScriptException e) {
+				throw new BSFException(BSFException.REASON_OTHER_ERROR, "Error compiling " + scriptPath + " : " + e, e);
+			}
+		}
+
+		protected void exec(Object engine, String beanName, Object bean) throws BSFException {
+			CompiledScript compiledScript = (CompiledScript) engine;
+			Bindings bindings = compiledScript.getEngine().getBindings(ScriptContext.ENGINE_SCOPE);
+			bindings.put(beanName, bean);
+			try {
+				compiledScript.eval();
+			} catch (ScriptException e) {
+				throw newExecutionException(e);
+			}
+		}
+	}
+}
@@ -17,7 +17,6 @@ package com.isencia.passerelle.actor.convert;
 import java.util.Iterator;
 
 import org.apache.bsf.BSFException;
-import org.apache.bsf.BSFManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,8 +47,6 @@ import ptolemy.kernel.util.NameDuplicationException;
 public class SynchronizingScriptConverter extends DynamicPortScriptConverter {
 	private static Logger logger = LoggerFactory.getLogger(SynchronizingScriptConverter.class);
 
-    private BSFManager scriptManager = new BSFManager();
-
 	/**
 	 * @param container
 	 * @param name
@@ -119,13 +116,6 @@ public class SynchronizingScriptConverter extends DynamicPortScriptConverter {
 		return true;
 	}
 	
-	@Override
-	protected void initializeScriptingEngines() {
-		scriptManager = new BSFManager();
-		scriptManager.setClassLoader(this.getClass().getClassLoader());
-        bsfManagers.add(scriptManager);
-	}
-	
 	@Override
 	protected void changeNumberOfPorts(int newPortCount, int currPortCount,
 			PortType portType) throws IllegalActionException, IllegalArgumentException {
@@ -201,8 +191,7 @@ public class SynchronizingScriptConverter extends DynamicPortScriptConverter {
         }
         if(messages!=null) {
 	        try {
-	            scriptManager.declareBean(containerName, messages, messages.getClass());
-	            scriptManager.exec(language, scriptPath, -1, -1, script);
+	            scriptExecutor.exec(containerName, messages);
 	        } catch (BSFException e) {
 	            throw new ProcessingException("",scriptPath,e);
 	        }
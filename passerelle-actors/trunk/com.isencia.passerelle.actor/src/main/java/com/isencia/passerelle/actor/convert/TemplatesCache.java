@@ -0,0 +1,95 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.actor.convert;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+
+/**
+ * Maintains compiled XSLT stylesheets, so they must not be parsed and compiled again
+ * for each transformation.
+ * <p>
+ * Stylesheets are identified by their file path. When the file has been modified
+ * since it was compiled, it is compiled again on the next lookup.
+ * </p>
+ * <p>
+ * The Templates are thread-safe and can be shared by all actors.
+ * Each thread should create its own Transformer from them.
+ * </p>
+ *
+ * @author erwin dl
+ */
+public final class TemplatesCache {
+	private static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(TemplatesCache.class);
+
+	private final static TemplatesCache instance = new TemplatesCache();
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	private TemplatesCache() {
+	}
+
+	public static TemplatesCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * 
+	 * @param xsltPath the path of the stylesheet file
+	 * @return the compiled stylesheet
+	 * @throws TransformerConfigurationException if the stylesheet could not be read or compiled
+	 */
+	public Templates getTemplates(String xsltPath) throws TransformerConfigurationException {
+		if (xsltPath == null) {
+			throw new TransformerConfigurationException("No stylesheet path");
+		}
+		long lastModified = new File(xsltPath).lastModified();
+		Entry entry = entries.get(xsltPath);
+		if (entry == null || entry.lastModified != lastModified) {
+			// a TransformerFactory is not thread-safe, and compiling is rare,
+			// so just use a new one each time
+			Templates templates = TransformerFactory.newInstance().newTemplates(new StreamSource(xsltPath));
+			entry = new Entry(templates, lastModified);
+			entries.put(xsltPath, entry);
+			if (logger.isDebugEnabled()) {
+				logger.debug("Compiled stylesheet " + xsltPath);
+			}
+		}
+		return entry.templates;
+	}
+
+	/**
+	 * Removes all compiled stylesheets.
+	 */
+	public void clear() {
+		entries.clear();
+	}
+
+	private static class Entry {
+		private final Templates templates;
+		private final long lastModified;
+
+		Entry(Templates templates, long lastModified) {
+			this.templates = templates;
+			this.lastModified = lastModified;
+		}
+	}
+}
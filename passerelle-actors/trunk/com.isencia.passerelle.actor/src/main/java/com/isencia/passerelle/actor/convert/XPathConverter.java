@@ -17,40 +17,48 @@ package com.isencia.passerelle.actor.convert;
 import java.io.StringReader;
 import java.io.StringWriter;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
 
 
 import org.apache.xml.serialize.OutputFormat;
 import org.apache.xml.serialize.XMLSerializer;
-import org.apache.xpath.XPathAPI;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
 
 import com.isencia.passerelle.actor.ProcessingException;
 import com.isencia.passerelle.actor.Transformer;
 import com.isencia.passerelle.message.ManagedMessage;
 import com.isencia.passerelle.message.MessageFactory;
 import com.isencia.passerelle.message.MessageHelper;
+import com.isencia.passerelle.message.xml.CompiledXPath;
+import com.isencia.passerelle.message.xml.XmlMessageHelper;
 
+import ptolemy.data.BooleanToken;
 import ptolemy.data.StringToken;
 import ptolemy.data.expr.Parameter;
 import ptolemy.data.expr.StringParameter;
+import ptolemy.data.type.BaseType;
 import ptolemy.kernel.CompositeEntity;
 import ptolemy.kernel.util.Attribute;
 import ptolemy.kernel.util.IllegalActionException;
 import ptolemy.kernel.util.NameDuplicationException;
 
  /* 
+ * Sets the text of the nodes selected by an XPATH expression, in the XML body of the received messages.
+ * <p>
+ * The expression is compiled only once.
+ * With the "Stream content" option, simple paths like <code>/order/item/@id</code> 
+ * are applied while copying the XML, without building a DOM.
+ * Other expressions are still applied on a DOM.
+ * </p>
+ * 
  * @version 	1.0
  * @author		oscar.bueno@isencia.com
  */
 public class XPathConverter extends Transformer 
 {
 
+	public static final String STREAMING_PARAM = "Stream content";
 	private static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(XPathConverter.class);
 
 	/** Construct an actor with the given container and name.
@@ -72,15 +80,21 @@ public class XPathConverter extends Transformer
 		xpathSelectorParam.setExpression("");
 		valueParam = new StringParameter(this, "Value");
 		valueParam.setExpression("");		
+
+		streamingParam = new Parameter(this, STREAMING_PARAM, new BooleanToken(streaming));
+		streamingParam.setTypeEquals(BaseType.BOOLEAN);
 	}
 
 	///////////////////////////////////////////////////////////////////
 	////                     ports and parameters                  ////
 	public Parameter xpathSelectorParam = null;
 	public Parameter valueParam = null;
+	public Parameter streamingParam = null;
 	
 	// private variables
 	private String xpathSelector = "";
+	private CompiledXPath compiledSelector = new CompiledXPath(xpathSelector);
+	private boolean streaming = false;
 	private String value = null;
 	
 	public void attributeChanged(Attribute attribute)
@@ -93,6 +107,12 @@ public class XPathConverter extends Transformer
 			value = ((StringToken) valueParam.getToken()).stringValue();
 		} else if (attribute == xpathSelectorParam) {
 			xpathSelector = ((StringToken) xpathSelectorParam.getToken()).stringValue();
+			compiledSelector = new CompiledXPath(xpathSelector);
+		} else if (attribute == streamingParam) {
+			BooleanToken streamingToken = (BooleanToken) streamingParam.getToken();
+			if (streamingToken != null) {
+				streaming = streamingToken.booleanValue();
+			}
 		}
 		
 		if(logger.isTraceEnabled())
@@ -108,16 +128,19 @@ public class XPathConverter extends Transformer
 			{
 	        	message = MessageFactory.getInstance().copyMessage(message);
 				Object content = message.getBodyContentAsString();
-				if (content instanceof String) 
+				if (content instanceof String && streaming && compiledSelector.isStreamable()) 
+				{
+					StringWriter writer = new StringWriter(((String) content).length());
+					compiledSelector.replaceText(new StringReader((String) content), writer, value);
+					message.setBodyContent(writer.toString(),"text/xml");
+				}
+				else if (content instanceof String) 
 				{
 					// deserialize
-					DocumentBuilderFactory docBldFactory = DocumentBuilderFactory.newInstance();
-					DocumentBuilder docBld = docBldFactory.newDocumentBuilder();
-					InputSource data = new InputSource(new StringReader((String) message.getBodyContentAsString()));
-					Document doc = docBld.parse(data);
+					Document doc = XmlMessageHelper.parseDocument((String) content);
 					
 					// apply xpath expression
-					NodeList nodeList = XPathAPI.selectNodeList(doc, xpathSelector);
+					NodeList nodeList = compiledSelector.selectNodes(doc);
 					
 					// replace the content
 					if(nodeList!=null && nodeList.getLength()>0) {
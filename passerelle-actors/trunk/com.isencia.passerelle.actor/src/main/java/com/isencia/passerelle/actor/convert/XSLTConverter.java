@@ -0,0 +1,398 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.isencia.passerelle.actor.convert;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.Part;
+import javax.mail.internet.MimePartDataSource;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+
+
+
+import ptolemy.data.BooleanToken;
+import ptolemy.data.expr.FileParameter;
+import ptolemy.data.expr.Parameter;
+import ptolemy.data.type.BaseType;
+import ptolemy.kernel.CompositeEntity;
+import ptolemy.kernel.util.Attribute;
+import ptolemy.kernel.util.IllegalActionException;
+import ptolemy.kernel.util.NameDuplicationException;
+
+import com.isencia.passerelle.actor.InitializationException;
+import com.isencia.passerelle.actor.ProcessingException;
+import com.isencia.passerelle.actor.Transformer;
+import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.message.MessageFactory;
+import com.isencia.passerelle.message.MessageHelper;
+import com.isencia.passerelle.message.internal.PasserelleBodyPart;
+import com.isencia.passerelle.message.internal.SettableMessage;
+import com.isencia.passerelle.util.EnvironmentUtils;
+import com.isencia.util.StringConvertor;
+
+
+/**
+ * Transforms each text/xml part of the received messages with an XSLT stylesheet,
+ * and sends a message with the result for each part.
+ * <p>
+ * The stylesheet is compiled once, and compiled again only when the file has been modified.
+ * Each thread reuses its own Transformer and XML parser,
+ * as looking up a new parser for each document is often more expensive than the transformation itself.
+ * </p>
+ * <p>
+ * With the "Stream content" option, the transformation reads text/xml parts that arrived as bytes
+ * (e.g. from a previous XSLTConverter with this option) directly from the message body,
+ * and writes its result as bytes into the body of the new message.
+ * That way, large documents are not converted into Strings in between.
+ * </p>
+ *
+ * @version $Id: XSLTConverter.java,v 1.6 2006/02/15 16:34:48 erwin Exp $
+ * @author Dirk Jacobs
+ */
+public class XSLTConverter extends Transformer {
+    //~ Static variables/initializers ��������������������������������������������������������������������������������������������������������������������������
+
+    public static final String PATH_PARAM = "Path";
+    public static final String STREAMING_PARAM = "Stream content";
+    private static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(XSLTConverter.class);
+
+    //~ Instance variables �������������������������������������������������������������������������������������������������������������������������������������
+
+    public FileParameter xsltPathParam = null;
+    protected String xsltPath = null;
+
+    public Parameter streamingParam = null;
+    protected boolean streaming = false;
+
+    // each thread has its own Transformer for the current stylesheet
+    private ThreadLocal<CachedTransformer> transformers = new ThreadLocal<CachedTransformer>();
+
+    //~ Constructors �������������������������������������������������������������������������������������������������������������������������������������������
+
+    /**
+     * Construct an actor in the specified container with the specified name.
+     * 
+     * @param container The container.
+     * @param name The name of this actor within the container.
+     * 
+     * @exception IllegalActionException If the actor cannot be contained by the proposed container.
+     * @exception NameDuplicationException If the name coincides with an actor already in the container.
+     */
+    public XSLTConverter(CompositeEntity container, String name)
+                  throws IllegalActionException, NameDuplicationException {
+        super(container, name);
+        input.setExpectedMessageContentType(String.class);
+        
+        xsltPathParam = new FileParameter(this, PATH_PARAM);
+		try {
+			URI baseURI = new URI("file://"+StringConvertor.convertPathDelimiters(EnvironmentUtils.getApplicationRootFolder()));
+			xsltPathParam.setBaseDirectory(baseURI);
+		} catch (URISyntaxException e) {
+			// just give up
+		}
+
+        streamingParam = new Parameter(this, STREAMING_PARAM, new BooleanToken(streaming));
+        streamingParam.setTypeEquals(BaseType.BOOLEAN);
+    }
+
+    //~ Methods ������������������������������������������������������������������������������������������������������������������������������������������������
+
+    /**
+     * DOCUMENT ME!
+     * 
+     * @param attribute The attribute that changed.
+     * 
+     * @exception IllegalActionException
+     */
+    public void attributeChanged(Attribute attribute) throws IllegalActionException {
+        if (logger.isTraceEnabled()) {
+            logger.trace(getInfo() + " :" + attribute);
+        }
+
+        if (attribute == xsltPathParam) {
+            try {
+				xsltPath = xsltPathParam.asURL().getPath();
+				logger.debug("Xslt Path changed to : " + xsltPath);
+			} catch (Exception e) {
+				// ignore
+			}
+        } else if (attribute == streamingParam) {
+            BooleanToken streamingToken = (BooleanToken) streamingParam.getToken();
+            if (streamingToken != null) {
+                streaming = streamingToken.booleanValue();
+                logger.debug("Stream content changed to : " + streaming);
+            }
+        } else {
+            super.attributeChanged(attribute);
+        }
+
+        if (logger.isTraceEnabled()) {
+            logger.trace(getInfo()+" - exit ");
+        }
+    }
+
+	protected void doInitialize() throws InitializationException {
+		super.doInitialize();
+		// drop the transformers of a previous run
+		transformers = new ThreadLocal<CachedTransformer>();
+	}
+
+	public void doFire(ManagedMessage message) throws ProcessingException {
+		if(logger.isTraceEnabled())
+			logger.trace(getInfo()+" - message :"+message);
+			
+		if( message != null && streaming ) {
+			doFireStreaming(message);
+		} else if( message != null ) {
+            Object[] inputs = MessageHelper.getFilteredContent(message, new String[] { "text/xml" });
+
+            if ((inputs != null) && (inputs.length > 0)) {
+
+				// for EACH message part of the right MIME type, an XSLT-transformed message is generated !!
+				// when there's an exception in processing a part, the loop is interrupted,
+				// and the exception is reported in a ProcessingException
+                for (int i = 0; (i < inputs.length); ++i) {
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Content :" + inputs[i]);
+                        logger.debug("XsltPath :" + xsltPath);
+                    }
+
+                    StringWriter outputWriter = new StringWriter();
+
+					String contentType = null;
+                    try {
+                        CachedTransformer cached = getCachedTransformer();
+                        cached.transformer.transform(cached.newSource(new InputSource(new StringReader((String) inputs[i]))), 
+                                              new StreamResult(outputWriter));
+                                              
+						contentType = cached.transformer.getOutputProperty(OutputKeys.MEDIA_TYPE);
+						if (logger.isDebugEnabled()) {
+							logger.debug("Seems like something came out : " + outputWriter.toString());
+						}
+                    } catch (Exception e) {
+						throw new ProcessingException(getInfo()+" - doFire() generated an exception while transforming part of the message "+e,inputs[i],e);
+                    }
+
+                    try {
+						message = MessageFactory.getInstance().copyMessage(message);
+                        message.setBodyContentPlainText(outputWriter.toString());
+						message.addBodyHeader("Content-Type", contentType);                        
+                    } catch (Exception e) {
+                        throw new ProcessingException(getInfo()+" - doFire() generated an exception while generating/sending the result message "+e,message,e);
+                    }
+            		try {
+            			sendOutputMsg(output,message);
+            		} catch (IllegalArgumentException e) {
+            			throw new ProcessingException(getInfo() + " - doFire() generated exception "+e,message,e);
+            		}
+                }
+            } else if (logger.isDebugEnabled()) {
+                logger.debug(getInfo() + " :no valid content");
+            }
+        }
+
+        if (logger.isTraceEnabled()) {
+            logger.trace(getInfo()+" - exit ");
+        }
+    }
+
+	/**
+	 * Transforms the text/xml parts from their byte content when possible,
+	 * and puts the result bytes in the new messages.
+	 * 
+	 * @param message
+	 * @throws ProcessingException
+	 */
+	protected void doFireStreaming(ManagedMessage message) throws ProcessingException {
+		if (!(message instanceof SettableMessage)) {
+			throw new ProcessingException(getInfo()+" - doFire() can not stream the content of message ",message,null);
+		}
+		List<Part> parts = new ArrayList<Part>();
+		try {
+			collectXmlParts(((SettableMessage) message).getBody(), parts);
+		} catch (Exception e) {
+			throw new ProcessingException(getInfo()+" - doFire() generated an exception while reading the message "+e,message,e);
+		}
+		if (parts.isEmpty() && logger.isDebugEnabled()) {
+			logger.debug(getInfo() + " :no valid content");
+		}
+
+		for (Part part : parts) {
+			ResultDataSource result = new ResultDataSource();
+			try {
+				CachedTransformer cached = getCachedTransformer();
+				cached.transformer.transform(cached.newSource(getInputSource(part)), new StreamResult(result));
+
+				String mediaType = cached.transformer.getOutputProperty(OutputKeys.MEDIA_TYPE);
+				String encoding = cached.transformer.getOutputProperty(OutputKeys.ENCODING);
+				result.contentType = (mediaType != null ? mediaType : "text/xml") + (encoding != null ? "; charset=" + encoding : "");
+			} catch (Exception e) {
+				throw new ProcessingException(getInfo()+" - doFire() generated an exception while transforming part of the message "+e,part,e);
+			}
+
+			try {
+				message = MessageFactory.getInstance().copyMessage(message);
+				// a new body, i.o. a copy of the previous one that is replaced anyway
+				PasserelleBodyPart body = new PasserelleBodyPart();
+				body.setDataHandler(new DataHandler(result));
+				body.setHeader("Content-Type", result.contentType);
+				((SettableMessage) message).setBody(body);
+			} catch (Exception e) {
+				throw new ProcessingException(getInfo()+" - doFire() generated an exception while generating/sending the result message "+e,message,e);
+			}
+			try {
+				sendOutputMsg(output,message);
+			} catch (IllegalArgumentException e) {
+				throw new ProcessingException(getInfo() + " - doFire() generated exception "+e,message,e);
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @return a Transformer and parser for the current stylesheet, for usage in the current thread only
+	 * @throws TransformerConfigurationException
+	 */
+	private CachedTransformer getCachedTransformer() throws TransformerConfigurationException {
+		Templates templates = TemplatesCache.getInstance().getTemplates(xsltPath);
+		CachedTransformer cached = transformers.get();
+		if (cached == null || cached.templates != templates) {
+			cached = new CachedTransformer(templates);
+			transformers.set(cached);
+		}
+		return cached;
+	}
+
+	private static void collectXmlParts(Part part, List<Part> parts) throws MessagingException, IOException {
+		if (part == null) {
+			return;
+		}
+		if (part.isMimeType("text/xml")) {
+			parts.add(part);
+		} else if (part.isMimeType("multipart/*")) {
+			Multipart multipart = (Multipart) part.getContent();
+			for (int i = 0; i < multipart.getCount(); ++i) {
+				collectXmlParts(multipart.getBodyPart(i), parts);
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @param part
+	 * @return an InputSource that reads the part's bytes if it has them, or else its String content
+	 * @throws MessagingException
+	 * @throws IOException
+	 */
+	private static InputSource getInputSource(Part part) throws MessagingException, IOException {
+		DataSource dataSource = part.getDataHandler().getDataSource();
+		if (dataSource instanceof ResultDataSource || dataSource instanceof MimePartDataSource) {
+			// let the parser deal with the encoding
+			return new InputSource(dataSource.getInputStream());
+		} else {
+			return new InputSource(new StringReader(part.getContent().toString()));
+		}
+	}
+
+	private static class CachedTransformer {
+		private final Templates templates;
+		private final javax.xml.transform.Transformer transformer;
+		private final XMLReader xmlReader;
+
+		CachedTransformer(Templates templates) throws TransformerConfigurationException {
+			this.templates = templates;
+			this.transformer = templates.newTransformer();
+			try {
+				SAXParserFactory parserFactory = SAXParserFactory.newInstance();
+				parserFactory.setNamespaceAware(true);
+				this.xmlReader = parserFactory.newSAXParser().getXMLReader();
+			} catch (Exception e) {
+				throw new TransformerConfigurationException("Could not create XML parser", e);
+			}
+		}
+
+		Source newSource(InputSource inputSource) {
+			return new SAXSource(xmlReader, inputSource);
+		}
+	}
+
+	/**
+	 * Collects the transformation result, and offers it as message body content
+	 * without copying the bytes.
+	 */
+	private static class ResultDataSource extends ByteArrayOutputStream implements DataSource {
+		private String contentType = "text/xml";
+
+		ResultDataSource() {
+			super(8192);
+		}
+
+		public String getContentType() {
+			return contentType;
+		}
+
+		public InputStream getInputStream() {
+			return new ByteArrayInputStream(buf, 0, count);
+		}
+
+		public String getName() {
+			return "XSLT result";
+		}
+
+		public OutputStream getOutputStream() throws IOException {
+			throw new IOException("Read-only data source");
+		}
+	}
+	
+    /**
+     * @see be.tuple.passerelle.engine.actor.Actor#getExtendedInfo()
+     */
+    protected String getExtendedInfo() {
+        return xsltPath;
+    }
+
+    /**
+     * @see be.tuple.passerelle.engine.actor.Actor#createPaneFactory()
+     */
+//	  no longer supported in Ptolemy II 4.x
+//    protected void createPaneFactory() throws IllegalActionException, NameDuplicationException {
+//        PaneFactoryCreator.createPaneFactory(this, be.isencia.passerelle.actor.gui.pane.custom.XSLTConverterParamEditPane.class);
+//    }
+}
\ No newline at end of file
@@ -17,8 +17,8 @@ package com.isencia.passerelle.actor.filter;
 
 
 
-import org.apache.regexp.RE;
-import org.apache.regexp.RESyntaxException;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import com.isencia.passerelle.actor.Filter;
 import com.isencia.passerelle.actor.FilterException;
@@ -61,6 +61,8 @@ public class HeaderFilter extends Filter {
     public Parameter filterTypeParam;
     private String filter = "";
     private String filterType = null;
+    // compiled filter, for the RegularExpression type
+    private Pattern filterPattern = null;
 
     ///////////////////////////////////////////////////////////////////
     ////                         private variables                 ////
@@ -113,9 +115,11 @@ public class HeaderFilter extends Filter {
         } else if (attribute == filterParam) {
             filter = ((StringToken) filterParam.getToken()).stringValue();
             logger.debug("Filter set to : " + filter);
+            compileFilter();
         } else if (attribute == filterTypeParam) {
             filterType = filterTypeParam.getExpression();
             logger.debug("FilterType set to : " + filterType);
+            compileFilter();
         } else {
             super.attributeChanged(attribute);
         }
@@ -191,22 +195,38 @@ public class HeaderFilter extends Filter {
     }
 
     /**
-     * Checks whether the given item matches the given regular expression
+     * Checks whether the given item contains a region that matches the given regular expression
      * 
-     * @param item DOCUMENT ME!
-     * @param expression DOCUMENT ME!
+     * @param item the header value
+     * @param expression the regular expression
      * 
-     * @return DOCUMENT ME!
+     * @return true if the item matches
      */
     protected boolean matchesRegExp(String item, String expression) {
-        try {
-            RE r = new RE(expression);
-
-            return r.match(item);
-        } catch (RESyntaxException e) {
-            logger.error("Syntax error in regular expression " + expression, e);
+        Pattern p = filterPattern;
+        if (p == null || !p.pattern().equals(expression)) {
+            try {
+                p = Pattern.compile(expression);
+            } catch (PatternSyntaxException e) {
+                logger.error("Syntax error in regular expression " + expression, e);
+
+                return false;
+            }
+        }
+        return p.matcher(item).find();
+    }
 
-            return false;
+    /**
+     * Compiles the filter once, when it is a regular expression.
+     */
+    private void compileFilter() {
+        filterPattern = null;
+        if (REGEXP.equals(filterType) && filter != null) {
+            try {
+                filterPattern = Pattern.compile(filter);
+            } catch (PatternSyntaxException e) {
+                logger.error(getInfo() + " - Syntax error in regular expression " + filter, e);
+            }
         }
     }
 
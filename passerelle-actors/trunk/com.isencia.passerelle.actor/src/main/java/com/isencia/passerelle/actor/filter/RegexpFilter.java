@@ -17,8 +17,8 @@ package com.isencia.passerelle.actor.filter;
 
 
 
-import org.apache.regexp.RE;
-import org.apache.regexp.RESyntaxException;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import com.isencia.passerelle.actor.Filter;
 import com.isencia.passerelle.actor.FilterException;
@@ -39,6 +39,7 @@ import ptolemy.kernel.util.NameDuplicationException;
  * 
  * A filter that checks whether the textual data contains a region that matches
  * a given regular expression.
+ * The expression is compiled once, when it is set.
  * 
  * @author erwin dl
  */
@@ -51,6 +52,7 @@ public class RegexpFilter extends Filter {
 
 	public Parameter expressionParam = null;
 	private String expression = null;
+	private Pattern pattern = null;
 
 	//~ Constructors �������������������������������������������������������������������������������������������������������������������������������������������
 
@@ -82,10 +84,10 @@ public class RegexpFilter extends Filter {
 			String tmp = ((StringToken) expressionParam.getToken()).stringValue();
 
 			try {
-				new RE(tmp);
+				pattern = Pattern.compile(tmp);
 				expression = tmp;
 				logger.debug("Expression set to : " + expression);
-			} catch (RESyntaxException e) {
+			} catch (PatternSyntaxException e) {
 				throw new IllegalActionException("Invalid RegExp expression : " + tmp + " : " + e.getMessage());
 			}
 		} else {
@@ -113,26 +115,18 @@ public class RegexpFilter extends Filter {
 				MessageHelper.getFilteredContent(message, new String[] { "text/plain", "text/html", "text/xml" });
 
 			if ((inputs != null) && (inputs.length > 0)) {
-				try {
-					RE r = new RE(expression);
-
-					for (int i = 0;(i < inputs.length) && !matchFound; ++i) {
-						if (logger.isDebugEnabled()) {
-							logger.debug("Content :" + inputs[i]);
-						}
+				for (int i = 0;(i < inputs.length) && !matchFound; ++i) {
+					if (logger.isDebugEnabled()) {
+						logger.debug("Content :" + inputs[i]);
+					}
 
-						if (inputs[i] instanceof String) {
-							matchFound = r.match((String) inputs[i]);
+					if (inputs[i] instanceof String) {
+						matchFound = pattern.matcher((String) inputs[i]).find();
 
-							if (logger.isDebugEnabled() && matchFound) {
-								logger.debug("Matches :" + expression);
-							}
+						if (logger.isDebugEnabled() && matchFound) {
+							logger.debug("Matches :" + expression);
 						}
 					}
-
-				} catch (RESyntaxException e) {
-					// should not happen, as expression is checked in attributeChanged()
-					throw new FilterException("Invalid RegExp expression : " + expression + " : " + e,msg,e);
 				}
 			} else if (logger.isDebugEnabled()) {
 				logger.debug(getInfo() + " : no valid content in "+msg);
@@ -0,0 +1,231 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.actor.filter;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.isencia.passerelle.actor.InitializationException;
+import com.isencia.passerelle.actor.ProcessingException;
+import com.isencia.passerelle.actor.Transformer;
+import com.isencia.passerelle.core.Port;
+import com.isencia.passerelle.core.PortFactory;
+import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.message.MessageHelper;
+
+import ptolemy.data.IntToken;
+import ptolemy.data.StringToken;
+import ptolemy.data.expr.Parameter;
+import ptolemy.data.expr.StringParameter;
+import ptolemy.data.type.BaseType;
+import ptolemy.kernel.CompositeEntity;
+import ptolemy.kernel.util.Attribute;
+import ptolemy.kernel.util.IllegalActionException;
+import ptolemy.kernel.util.NameDuplicationException;
+
+/**
+ * 
+ * RegexpRouter
+ * 
+ * Routes each message to the output of the first rule whose regular expression matches
+ * a region of the textual data, or to the default output if no rule matches.
+ * <p>
+ * This replaces a chain of RegexpFilters : the text is obtained from the message only once,
+ * and the expressions are compiled once, at initialization.
+ * They are not combined into one alternation pattern, as java.util.regex would then try each alternative
+ * at each position of the text, which is much slower than searching the expressions one by one.
+ * </p>
+ * <p>
+ * For each rule i, there is an "Expression i" parameter and an "output i" port.
+ * </p>
+ * 
+ * @author erwin dl
+ */
+public class RegexpRouter extends Transformer {
+	//~ Static variables/initializers
+
+	private static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RegexpRouter.class);
+
+	public static final String RULE_COUNT_PARAM = "Number of rules";
+	public static final String EXPRESSION_PARAM_PREFIX = "Expression ";
+	public static final String OUTPUT_PORT_PREFIX = "output ";
+
+	//~ Instance variables
+
+	public Parameter ruleCountParam = null;
+	private int ruleCount = 0;
+
+	// built at initialization
+	private Pattern[] rules = null;
+	private Port[] ruleOutputs = null;
+
+	//~ Constructors
+
+	/**
+	 * Construct an actor in the specified container with the specified name.
+	 * 
+	 * @param container The container.
+	 * @param name The name of this actor within the container.
+	 * 
+	 * @exception IllegalActionException If the actor cannot be contained by the proposed container.
+	 * @exception NameDuplicationException If the name coincides with an actor already in the container.
+	 */
+	public RegexpRouter(CompositeEntity container, String name) throws IllegalActionException, NameDuplicationException {
+		super(container, name);
+		input.setExpectedMessageContentType(String.class);
+
+		ruleCountParam = new Parameter(this, RULE_COUNT_PARAM, new IntToken(1));
+		ruleCountParam.setTypeEquals(BaseType.INT);
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see ptolemy.kernel.util.NamedObj#attributeChanged(ptolemy.kernel.util.Attribute)
+	 */
+	public void attributeChanged(Attribute attribute) throws IllegalActionException {
+		if (logger.isTraceEnabled()) {
+			logger.trace(getInfo() + " :" + attribute);
+		}
+
+		if (attribute == ruleCountParam) {
+			int newRuleCount = ((IntToken) ruleCountParam.getToken()).intValue();
+			if (newRuleCount < 0) {
+				throw new IllegalActionException(this, "Number of rules can not be negative");
+			}
+			changeRuleCount(newRuleCount);
+			logger.debug("Number of rules set to : " + ruleCount);
+		} else if (attribute instanceof StringParameter && attribute.getName().startsWith(EXPRESSION_PARAM_PREFIX)) {
+			String tmp = ((StringToken) ((StringParameter) attribute).getToken()).stringValue();
+			try {
+				Pattern.compile(tmp);
+				logger.debug(attribute.getName() + " set to : " + tmp);
+			} catch (PatternSyntaxException e) {
+				throw new IllegalActionException("Invalid RegExp expression : " + tmp + " : " + e.getMessage());
+			}
+		} else {
+			super.attributeChanged(attribute);
+		}
+
+		if (logger.isTraceEnabled()) {
+			logger.trace(getInfo() + " - exit ");
+		}
+	}
+
+	protected void doInitialize() throws InitializationException {
+		super.doInitialize();
+
+		rules = new Pattern[ruleCount];
+		ruleOutputs = new Port[ruleCount];
+		try {
+			for (int i = 0; i < ruleCount; i++) {
+				StringParameter expressionParam = (StringParameter) getAttribute(EXPRESSION_PARAM_PREFIX + i);
+				rules[i] = Pattern.compile(((StringToken) expressionParam.getToken()).stringValue());
+				ruleOutputs[i] = (Port) getPort(OUTPUT_PORT_PREFIX + i);
+			}
+		} catch (Exception e) {
+			throw new InitializationException(getInfo() + " - Invalid rules", this, e);
+		}
+	}
+
+	protected void doFire(ManagedMessage message) throws ProcessingException {
+		if (logger.isTraceEnabled()) {
+			logger.trace(getInfo() + " - message :" + message);
+		}
+
+		int rule = -1;
+		Object[] inputs = MessageHelper.getFilteredContent(message, new String[] { "text/plain", "text/html", "text/xml" });
+		if ((inputs != null) && (inputs.length > 0)) {
+			for (int i = 0; (i < inputs.length) && (rule != 0); ++i) {
+				if (inputs[i] instanceof String) {
+					int partRule = getFirstMatchingRule((String) inputs[i], rule < 0 ? rules.length : rule);
+					if (partRule >= 0 && (rule < 0 || partRule < rule)) {
+						rule = partRule;
+					}
+				}
+			}
+		} else if (logger.isDebugEnabled()) {
+			logger.debug(getInfo() + " : no valid content in " + message);
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug(getInfo() + " : matching rule " + rule);
+		}
+
+		try {
+			sendOutputMsg(rule >= 0 ? ruleOutputs[rule] : output, message);
+		} catch (IllegalArgumentException e) {
+			throw new ProcessingException(getInfo() + " - doFire() generated exception " + e, message, e);
+		}
+
+		if (logger.isTraceEnabled()) {
+			logger.trace(getInfo() + " - exit ");
+		}
+	}
+
+	/**
+	 * 
+	 * @param text
+	 * @param ruleLimit only the rules before this one must be checked
+	 * @return the index of the first rule that matches a region of the text, or -1
+	 */
+	private int getFirstMatchingRule(String text, int ruleLimit) {
+		for (int i = 0; i < ruleLimit; i++) {
+			if (rules[i].matcher(text).find()) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Creates or removes the expression parameters and output ports,
+	 * looking them up by name as they may already have been created while loading a model.
+	 * 
+	 * @param newRuleCount
+	 * @throws IllegalActionException
+	 */
+	private void changeRuleCount(int newRuleCount) throws IllegalActionException {
+		try {
+			for (int i = 0; i < newRuleCount; i++) {
+				if (getAttribute(EXPRESSION_PARAM_PREFIX + i) == null) {
+					StringParameter expressionParam = new StringParameter(this, EXPRESSION_PARAM_PREFIX + i);
+					expressionParam.setExpression("");
+				}
+				if (getPort(OUTPUT_PORT_PREFIX + i) == null) {
+					PortFactory.getInstance().createOutputPort(this, OUTPUT_PORT_PREFIX + i);
+				}
+			}
+			for (int i = newRuleCount; i < ruleCount; i++) {
+				Attribute expressionParam = getAttribute(EXPRESSION_PARAM_PREFIX + i);
+				if (expressionParam != null) {
+					expressionParam.setContainer(null);
+				}
+				Port outputPort = (Port) getPort(OUTPUT_PORT_PREFIX + i);
+				if (outputPort != null) {
+					outputPort.setContainer(null);
+				}
+			}
+		} catch (NameDuplicationException e) {
+			throw new IllegalActionException(this, e, "failed to change the number of rules");
+		}
+		ruleCount = newRuleCount;
+	}
+
+	/**
+	 * @see be.tuple.passerelle.engine.actor.Actor#getExtendedInfo()
+	 */
+	protected String getExtendedInfo() {
+		return ruleCount + " rules";
+	}
+}
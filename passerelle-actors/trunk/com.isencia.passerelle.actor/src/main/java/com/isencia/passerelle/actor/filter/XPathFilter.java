@@ -17,11 +17,10 @@ package com.isencia.passerelle.actor.filter;
 
 
 
-import org.w3c.dom.NodeList;
-
 import com.isencia.passerelle.actor.Filter;
 import com.isencia.passerelle.actor.FilterException;
 import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.message.xml.CompiledXPath;
 import com.isencia.passerelle.message.xml.XmlMessageHelper;
 
 import ptolemy.data.StringToken;
@@ -36,7 +35,9 @@ import ptolemy.kernel.util.NameDuplicationException;
  * 
  * XPathFilter
  * 
- * TODO: class comment
+ * A filter that checks whether an XPATH expression selects any node in the message body.
+ * The expression is compiled only once. Simple paths like <code>/order/item/@id</code> 
+ * are evaluated while reading the XML, without building a DOM.
  * 
  * @author erwin dl
  */
@@ -49,6 +50,7 @@ public class XPathFilter extends Filter {
 
     public Parameter expressionParam = null;
     private String expression = null;
+    private CompiledXPath compiledExpression = null;
 
     //~ Constructors �������������������������������������������������������������������������������������������������������������������������������������������
 
@@ -81,6 +83,7 @@ public class XPathFilter extends Filter {
             String tmp = ((StringToken) expressionParam.getToken()).stringValue();
 
             expression = tmp;
+            compiledExpression = new CompiledXPath(expression);
             logger.debug("Expression set to : " + expression);
         } else {
             super.attributeChanged(attribute);
@@ -109,8 +112,7 @@ public class XPathFilter extends Filter {
 		} else if(msg instanceof ManagedMessage){
 			ManagedMessage message = (ManagedMessage) msg;
 			try {
-				NodeList nodeList = XmlMessageHelper.selectWithXPath(expression, message);
-				matchFound = (nodeList!=null && nodeList.getLength() > 0);
+				matchFound = XmlMessageHelper.matchesXPath(compiledExpression, message);
 				logger.debug("Does " + (matchFound ? "" : "not") + " match " + expression);
 			} catch (Exception e) {
 				throw new FilterException(getInfo() + " exception in isMatchingFilter() :"+e,msg,e);
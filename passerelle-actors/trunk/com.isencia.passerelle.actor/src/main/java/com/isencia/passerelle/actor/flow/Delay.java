@@ -0,0 +1,315 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.actor.flow;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ptolemy.data.BooleanToken;
+import ptolemy.data.DoubleToken;
+import ptolemy.data.IntToken;
+import ptolemy.data.expr.Parameter;
+import ptolemy.data.type.BaseType;
+import ptolemy.kernel.CompositeEntity;
+import ptolemy.kernel.util.Attribute;
+import ptolemy.kernel.util.IllegalActionException;
+import ptolemy.kernel.util.NameDuplicationException;
+
+import com.isencia.passerelle.actor.InitializationException;
+import com.isencia.passerelle.actor.ProcessingException;
+import com.isencia.passerelle.actor.TerminationException;
+import com.isencia.passerelle.actor.Transformer;
+import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.util.HashedWheelTimer;
+
+/**
+ * Simple actor that reads input tokens and and forwards them to the output port
+ * after a configurable delay.
+ * <p>
+ * The delay is set in seconds, with a resolution of 1 ms.
+ * Each message is scheduled for release on a timer that is shared by all Delay actors,
+ * so the actor keeps on accepting new messages while others are waiting.
+ * Messages are released in the order in which they arrived.
+ * </p>
+ * <p>
+ * When the input is exhausted, the actor by default waits until all pending msgs
+ * have been released. Otherwise, or when the model is stopped, pending msgs are dropped.
+ * </p>
+ * 
+ * @version 1.0
+ * @author erwin dl
+ */
+public class Delay extends Transformer {
+	
+	private static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(Delay.class);
+	
+	public final static String TIME_PARAM = "time(s)";
+	public final static String RELEASE_ON_END_PARAM = "Release pending msgs at end";
+	
+	// shared pool of threads to send the released msgs,
+	// as the timer's thread must not be blocked by a send
+	private final static ExecutorService releaseDispatcher = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger threadCount = new AtomicInteger();
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Delay-dispatcher-" + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	
+	public Parameter timeParameter = null;
+	public Parameter releaseOnEndParameter = null;
+	// in ms
+	private long time = 1000;
+	private boolean releaseOnEnd = true;
+	
+	// the msgs waiting for their release time, in order of arrival
+	private final LinkedList<DelayedMessage> pendingMsgs = new LinkedList<DelayedMessage>();
+	private boolean releasePending = false;
+	private boolean releasing = false;
+	// no msgs may be sent anymore after the wrapup
+	private boolean wrappedUp = false;
+	private volatile boolean stopRequested = false;
+	
+	private final Runnable releaseTask = new Runnable() {
+		public void run() {
+			releaseDueMessages();
+		}
+	};
+	private final Runnable timeoutTask = new Runnable() {
+		public void run() {
+			dispatchRelease();
+		}
+	};
+	
+	/**
+	 * Construct an actor with the given container and name.
+	 * 
+	 * @param container
+	 *            The container.
+	 * @param name
+	 *            The name of this actor.
+	 * @exception IllegalActionException
+	 *                If the actor cannot be contained by the proposed
+	 *                container.
+	 * @exception NameDuplicationException
+	 *                If the container already has an actor with this name.
+	 */
+	public Delay(CompositeEntity container, String name)
+			throws NameDuplicationException, IllegalActionException {
+		super(container, name);
+		// models with an int value remain valid
+		timeParameter = new Parameter(this, TIME_PARAM, new IntToken(1));
+		timeParameter.setTypeEquals(BaseType.DOUBLE);
+        registerConfigurableParameter(timeParameter);
+        
+		releaseOnEndParameter = new Parameter(this, RELEASE_ON_END_PARAM, new BooleanToken(releaseOnEnd));
+		releaseOnEndParameter.setTypeEquals(BaseType.BOOLEAN);
+        registerConfigurableParameter(releaseOnEndParameter);
+	}
+	
+	protected void doInitialize() throws InitializationException {
+		super.doInitialize();
+		stopRequested = false;
+		synchronized (pendingMsgs) {
+			pendingMsgs.clear();
+			releasePending = false;
+			releasing = false;
+			wrappedUp = false;
+		}
+	}
+	
+	public void doFire(ManagedMessage message) throws ProcessingException {
+		if (logger.isTraceEnabled())
+			logger.trace(getInfo()+" doFire() - entry");
+		
+		boolean sendNow = false;
+		synchronized (pendingMsgs) {
+			// only bypass the timer if no earlier msgs are still waiting
+			sendNow = (time <= 0 && pendingMsgs.isEmpty() && !releasing);
+			if (!sendNow) {
+				long releaseTime = System.nanoTime() + time * 1000000L;
+				DelayedMessage delayedMsg = new DelayedMessage(message, releaseTime);
+				pendingMsgs.add(delayedMsg);
+				delayedMsg.timeout = HashedWheelTimer.getDefault().newTimeout(timeoutTask, time);
+				if (logger.isDebugEnabled())
+					logger.debug(getInfo()+" delaying msg "+message.getID()+" for "+time+" ms");
+			}
+		}
+		
+		if (sendNow) {
+			try {
+				sendOutputMsg(output,message);
+			} catch (IllegalArgumentException e) {
+				throw new ProcessingException(getInfo() + " - doFire() generated exception "+e,message,e);
+			}
+		}
+
+		if (logger.isTraceEnabled())
+			logger.trace(getInfo()+" doFire() - exit");
+	}
+	
+	/**
+	 * When the input is exhausted, waits for the pending msgs to be released, if so configured.
+	 * This is done here, and not in the wrapup, so the director is not locked meanwhile.
+	 */
+	protected boolean doPostFire() throws ProcessingException {
+		boolean res = super.doPostFire();
+		if (!res && releaseOnEnd) {
+			synchronized (pendingMsgs) {
+				try {
+					while ((!pendingMsgs.isEmpty() || releasing) && !stopRequested) {
+						pendingMsgs.wait();
+					}
+				} catch (InterruptedException e) {
+					// pending msgs will be dropped
+				}
+			}
+		}
+		return res;
+	}
+	
+	protected void doStop() {
+		stopRequested = true;
+		synchronized (pendingMsgs) {
+			pendingMsgs.notifyAll();
+		}
+		super.doStop();
+	}
+	
+	protected void doWrapUp() throws TerminationException {
+		int droppedCount = 0;
+		synchronized (pendingMsgs) {
+			wrappedUp = true;
+			droppedCount = pendingMsgs.size();
+			for (Iterator<DelayedMessage> msgItr = pendingMsgs.iterator(); msgItr.hasNext();) {
+				msgItr.next().timeout.cancel();
+			}
+			pendingMsgs.clear();
+			// a dispatcher thread may still be sending msgs that were due before the wrapup
+			try {
+				while (releasing) {
+					pendingMsgs.wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (droppedCount > 0) {
+			logger.warn(getInfo()+" dropped "+droppedCount+" pending msgs at wrapup");
+		}
+		super.doWrapUp();
+	}
+	
+	public void attributeChanged(Attribute attribute)
+			throws IllegalActionException {
+		if (logger.isTraceEnabled())
+			logger.trace(getInfo() + " attributeChanged() - entry :" + attribute);
+		if (attribute == timeParameter) {
+			double seconds = ((DoubleToken) timeParameter.getToken()).doubleValue();
+			if (seconds < 0) {
+				throw new IllegalActionException(timeParameter, "The delay can not be negative");
+			}
+			time = Math.round(seconds * 1000);
+		} else if (attribute == releaseOnEndParameter) {
+			releaseOnEnd = ((BooleanToken) releaseOnEndParameter.getToken()).booleanValue();
+		} else {
+			super.attributeChanged(attribute);
+		}
+		if (logger.isTraceEnabled())
+			logger.trace(getInfo()+" attributeChanged() - exit");
+	}
+	
+	/**
+	 * @return the nr of msgs waiting to be released
+	 */
+	public int getPendingMessageCount() {
+		synchronized (pendingMsgs) {
+			return pendingMsgs.size();
+		}
+	}
+	
+	protected String getExtendedInfo() {
+		return Double.toString(time / 1000.0)+" (s)";
+	}
+	
+	/**
+	 * Called by the timer : makes sure that a dispatcher thread will release the due msgs.
+	 */
+	private void dispatchRelease() {
+		synchronized (pendingMsgs) {
+			if (wrappedUp) {
+				return;
+			}
+			releasePending = true;
+			if (releasing) {
+				return;
+			}
+			releasing = true;
+		}
+		releaseDispatcher.execute(releaseTask);
+	}
+	
+	/**
+	 * Sends the msgs whose release time has passed, in order of arrival.
+	 * Only one dispatcher thread at a time executes this for an actor.
+	 * It stops as soon as the model is stopped or the actor is wrapped up.
+	 */
+	private void releaseDueMessages() {
+		while (true) {
+			List<ManagedMessage> dueMsgs = new ArrayList<ManagedMessage>();
+			synchronized (pendingMsgs) {
+				if (!releasePending || wrappedUp || stopRequested) {
+					releasing = false;
+					pendingMsgs.notifyAll();
+					return;
+				}
+				releasePending = false;
+				long now = System.nanoTime();
+				while (!pendingMsgs.isEmpty() && pendingMsgs.getFirst().releaseTime - now <= 0) {
+					dueMsgs.add(pendingMsgs.removeFirst().message);
+				}
+			}
+			try {
+				sendOutputMsgs(output, dueMsgs);
+			} catch (Exception e) {
+				try {
+					sendErrorMessage(new ProcessingException(getInfo()+" error sending delayed msgs", dueMsgs.get(0), e));
+				} catch (IllegalActionException e1) {
+					// can't do much more...
+					logger.error("",e1);
+				}
+			}
+		}
+	}
+	
+	private static class DelayedMessage {
+		private final ManagedMessage message;
+		// in ns, as from System.nanoTime()
+		private final long releaseTime;
+		private HashedWheelTimer.Timeout timeout;
+		
+		DelayedMessage(ManagedMessage message, long releaseTime) {
+			this.message = message;
+			this.releaseTime = releaseTime;
+		}
+	}
+}
@@ -0,0 +1,648 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.actor.general;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.Header;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.isencia.passerelle.actor.Actor;
+import com.isencia.passerelle.actor.InitializationException;
+import com.isencia.passerelle.actor.ProcessingException;
+import com.isencia.passerelle.core.PasserelleException;
+import com.isencia.passerelle.core.Port;
+import com.isencia.passerelle.core.PortFactory;
+import com.isencia.passerelle.core.PortHandler;
+import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.message.MessageException;
+import com.isencia.passerelle.message.MessageHelper;
+import com.isencia.passerelle.model.Flow;
+import com.isencia.passerelle.model.FlowManager;
+
+import ptolemy.actor.Manager;
+import ptolemy.data.BooleanToken;
+import ptolemy.data.IntToken;
+import ptolemy.data.Token;
+import ptolemy.data.expr.FileParameter;
+import ptolemy.data.expr.Parameter;
+import ptolemy.data.type.BaseType;
+import ptolemy.kernel.CompositeEntity;
+import ptolemy.kernel.util.Attribute;
+import ptolemy.kernel.util.IllegalActionException;
+import ptolemy.kernel.util.NameDuplicationException;
+import ptolemy.kernel.util.NamedObj;
+
+
+/**
+ * Executes a Passerelle Model.
+ * The model is read from a file, as defined in the configuration.
+ * Optionally, the incoming trigger message may contain a body header "model" with 
+ * as value a model path.
+ * <p>
+ * By default, parsed models are kept in a cache shared by all ModelExecutors, per model path.
+ * A parsed model instance is only used by one execution at a time, and is reused by later executions,
+ * so a model file is parsed once per concurrent execution instead of on each trigger.
+ * Instances are not cloned, as a clone would share the private state of its actors with the original.
+ * The cached instances are dropped when the file has been modified.
+ * </p>
+ * <p>
+ * The other body headers of the trigger message are applied as parameter settings on the model :
+ * "actor_name.param_name" for actor parameters, or just the name for a parameter of the model itself.
+ * After the execution, the parameters of a cached model are set back to their values in the model file.
+ * </p>
+ * <p>
+ * With "Max concurrent runs" set to 1, a model is executed in the actor's thread.
+ * With a higher value, up to that nr of executions run concurrently in separate threads,
+ * and the actor only blocks on a trigger when that limit is reached.
+ * After each successful execution, a message is sent on the "completed" port.
+ * </p>
+ * 
+ * @author Dirk Jacobs
+ */
+public class ModelExecutor extends Actor {
+    //~ Static variables/initializers 
+
+    public static final String MODEL_HEADER = "Model";
+    public static final String TRIGGER_PORT = "trigger";
+    public static final String MODEL_PARAMETER = "model";
+    public static final String CACHE_MODELS_PARAMETER = "Cache models";
+    public static final String MAX_CONCURRENT_RUNS_PARAMETER = "Max concurrent runs";
+    public static final String COMPLETED_PORT = "completed";
+    public static final String DURATION_HEADER = "Duration";
+    private static Logger logger = LoggerFactory.getLogger(ModelExecutor.class);
+
+    // parsed models per model path, shared by all ModelExecutors
+    private final static Map<String, CachedModel> modelCache = new HashMap<String, CachedModel>();
+
+    // shared pool of threads for concurrent model executions
+    private final static ExecutorService runDispatcher = Executors.newCachedThreadPool(new ThreadFactory() {
+    	private final AtomicInteger threadCount = new AtomicInteger();
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "ModelExecutor-runner-" + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+    //~ Instance variables 
+
+    private PortHandler triggerHandler = null;
+    public FileParameter modelParameter;
+    private String defaultModelPath;
+    public Port trigger = null;
+    public Port completed = null;
+    private boolean triggerConnected = false;
+
+    public Parameter cacheModelsParameter;
+    private boolean cacheModels = true;
+    public Parameter maxConcurrentRunsParameter;
+    private int maxConcurrentRuns = 1;
+
+    // the nr of concurrent runs for the current model execution, as set in doInitialize()
+    private int runPermitCount = 1;
+    private Semaphore runPermits;
+    // the models that are being executed
+    private final Set<Flow> runningFlows = new HashSet<Flow>();
+    private volatile boolean stopRequested = false;
+
+    //~ Constructors 
+
+    public ModelExecutor(CompositeEntity container, String name)
+                  throws IllegalActionException, NameDuplicationException {
+        super(container, name);
+
+        modelParameter = new FileParameter(this, MODEL_PARAMETER);
+        modelParameter.setExpression("");
+        registerConfigurableParameter(modelParameter);
+
+        cacheModelsParameter = new Parameter(this, CACHE_MODELS_PARAMETER, new BooleanToken(cacheModels));
+        cacheModelsParameter.setTypeEquals(BaseType.BOOLEAN);
+        registerConfigurableParameter(cacheModelsParameter);
+
+        maxConcurrentRunsParameter = new Parameter(this, MAX_CONCURRENT_RUNS_PARAMETER, new IntToken(maxConcurrentRuns));
+        maxConcurrentRunsParameter.setTypeEquals(BaseType.INT);
+        registerConfigurableParameter(maxConcurrentRunsParameter);
+        
+        trigger =PortFactory.getInstance().createInputPort(this, TRIGGER_PORT, null);
+        completed = PortFactory.getInstance().createOutputPort(this, COMPLETED_PORT);
+        defaultModelPath = null;
+        _attachText("_iconDescription", 
+                    "<svg>\n" + "<rect x=\"-20\" y=\"-20\" width=\"40\" " + "height=\"40\" style=\"fill:lightgrey;stroke:lightgrey\"/>\n" + 
+                    "<line x1=\"-19\" y1=\"-19\" x2=\"19\" y2=\"-19\" " + "style=\"stroke-width:1.0;stroke:white\"/>\n" + 
+                    "<line x1=\"-19\" y1=\"-19\" x2=\"-19\" y2=\"19\" " + "style=\"stroke-width:1.0;stroke:white\"/>\n" + 
+                    "<line x1=\"20\" y1=\"-19\" x2=\"20\" y2=\"20\" " + "style=\"stroke-width:1.0;stroke:black\"/>\n" + 
+                    "<line x1=\"-19\" y1=\"20\" x2=\"20\" y2=\"20\" " + "style=\"stroke-width:1.0;stroke:black\"/>\n" + 
+                    "<line x1=\"19\" y1=\"-18\" x2=\"19\" y2=\"19\" " + "style=\"stroke-width:1.0;stroke:grey\"/>\n" + 
+                    "<line x1=\"-18\" y1=\"19\" x2=\"19\" y2=\"19\" " + "style=\"stroke-width:1.0;stroke:grey\"/>\n" + 
+                    
+        // body
+        "<line x1=\"-9\" y1=\"-16\" x2=\"-12\" y2=\"-8\" " + "style=\"stroke-width:2.0\"/>\n" + 
+        // backwards leg
+        "<line x1=\"-11\" y1=\"-7\" x2=\"-16\" y2=\"-7\" " + "style=\"stroke-width:1.0\"/>\n" + "<line x1=\"-13\" y1=\"-8\" x2=\"-15\" y2=\"-8\" " + 
+                    "style=\"stroke-width:1.0;stroke:grey\"/>\n" + "<line x1=\"-16\" y1=\"-7\" x2=\"-16\" y2=\"-5\" " + "style=\"stroke-width:1.0\"/>\n" + 
+                    
+        // forward leg
+        "<line x1=\"-11\" y1=\"-11\" x2=\"-8\" y2=\"-8\" " + "style=\"stroke-width:1.5\"/>\n" + "<line x1=\"-8\" y1=\"-8\" x2=\"-8\" y2=\"-6\" " + 
+                    "style=\"stroke-width:1.0\"/>\n" + "<line x1=\"-8\" y1=\"-5\" x2=\"-6\" y2=\"-5\" " + "style=\"stroke-width:1.0\"/>\n" + 
+                    
+        // forward arm
+        "<line x1=\"-10\" y1=\"-14\" x2=\"-7\" y2=\"-11\" " + "style=\"stroke-width:1.0\"/>\n" + "<line x1=\"-7\" y1=\"-11\" x2=\"-5\" y2=\"-14\" " + 
+                    "style=\"stroke-width:1.0\"/>\n" + 
+        // backward arm
+        "<line x1=\"-11\" y1=\"-14\" x2=\"-14\" y2=\"-14\" " + "style=\"stroke-width:1.0\"/>\n" + "<line x1=\"-14\" y1=\"-14\" x2=\"-12\" y2=\"-11\" " + 
+                    "style=\"stroke-width:1.0\"/>\n" + 
+        // miniature model
+        "<rect x=\"-16\" y=\"-2\" width=\"32\" " + "height=\"20\" style=\"fill:white;stroke:darkgrey\"/>\n" + 
+        // director
+        "<circle cx=\"-12\" cy=\"2\" r=\"2\"" + "style=\"fill:red;stroke:red\"/>\n" + 
+        //source
+        "<rect x=\"-14\" y=\"10\" width=\"6\" " + "height=\"6\" style=\"fill:orange;stroke:orange\"/>\n" + "<circle cx=\"-12\" cy=\"12\" r=\"2\"" + 
+                    "style=\"fill:white;stroke:black\"/>\n" + 
+        //other actors
+        "<rect x=\"-4\" y=\"10\" width=\"4\" " + "height=\"4\" style=\"fill:grey;stroke:grey\"/>\n" + "<rect x=\"-2\" y=\"2\" width=\"4\" " + 
+                    "height=\"4\" style=\"fill:grey;stroke:grey\"/>\n" + 
+        //sinks
+        "<rect x=\"8\" y=\"0\" width=\"6\" " + "height=\"6\" style=\"fill:green;stroke:green\"/>\n" + "<circle cx=\"10\" cy=\"2\" r=\"2\"" + 
+                    "style=\"fill:white;stroke:black\"/>\n" + "<rect x=\"8\" y=\"8\" width=\"6\" " + "height=\"6\" style=\"fill:green;stroke:green\"/>\n" + 
+                    "<circle cx=\"10\" cy=\"10\" r=\"2\"" + "style=\"fill:white;stroke:black\"/>\n" + 
+        //connections
+        "<line x1=\"-7\" y1=\"13\" x2=\"-3\" y2=\"5\" " + "style=\"stroke-width:0.5;stroke:grey\"/>\n" + "<line x1=\"-7\" y1=\"13\" x2=\"-5\" y2=\"12\" " + 
+                    "style=\"stroke-width:0.5;stroke:grey\"/>\n" + "<line x1=\"3\" y1=\"4\" x2=\"7\" y2=\"3\" " + 
+                    "style=\"stroke-width:0.5;stroke:grey\"/>\n" + "<line x1=\"1\" y1=\"12\" x2=\"7\" y2=\"11\" " + 
+                    "style=\"stroke-width:0.5;stroke:grey\"/>\n" + "</svg>\n");
+    }
+
+    //~ Methods 
+
+    /**
+     * DOCUMENT ME!
+     * 
+     * @param attribute The attribute that changed.
+     * 
+     * @exception IllegalActionException
+     */
+    public void attributeChanged(Attribute attribute) throws IllegalActionException {
+        if (logger.isTraceEnabled()) {
+            logger.trace(getInfo() + " :" + attribute);
+        }
+
+        if (attribute == modelParameter) {
+			try {
+				defaultModelPath = modelParameter.asURL().getPath();
+				logger.debug("Model Path changed to : " + defaultModelPath);
+			} catch (NullPointerException e) {
+				// Ignore. Means that path is not a valid URL.
+			}
+        } else if (attribute == cacheModelsParameter) {
+        	cacheModels = ((BooleanToken) cacheModelsParameter.getToken()).booleanValue();
+        } else if (attribute == maxConcurrentRunsParameter) {
+        	int runs = ((IntToken) maxConcurrentRunsParameter.getToken()).intValue();
+        	if (runs < 1) {
+        		throw new IllegalActionException(maxConcurrentRunsParameter, "At least 1 run must be allowed");
+        	}
+        	maxConcurrentRuns = runs;
+        } else {
+            super.attributeChanged(attribute);
+        }
+
+        if (logger.isTraceEnabled()) {
+            logger.trace(getInfo()+" - exit ");
+        }
+    }
+
+	/*
+	 *  (non-Javadoc)
+	 * @see be.isencia.passerelle.actor.Actor#doFire()
+	 */
+    protected void doFire() throws ProcessingException {
+    	ManagedMessage msg = null;
+        String[] modelPath = null;
+
+        if (logger.isTraceEnabled()) {
+            logger.trace(getInfo());
+        }
+
+        if (triggerConnected) {
+            if (logger.isDebugEnabled()) {
+                logger.debug(getInfo() + " - Waiting for trigger");
+            }
+
+            Token token = triggerHandler.getToken();
+
+            if (token == null) {
+                requestFinish();
+            }
+
+            try {
+				msg = MessageHelper.getMessageFromToken(token);
+			} catch (PasserelleException e) {
+            	throw new ProcessingException(getInfo()+" - doFire() generated an exception while reading message",token,e);
+			}
+
+            if (msg == null) {
+                requestFinish();
+            }
+
+            logger.debug("Received msg :" + msg);
+
+            if (logger.isInfoEnabled()) {
+                logger.info(getInfo() + " - Trigger received");
+            }
+        }
+
+        if (!isFinishRequested()) {
+            try {
+				// Check for command in header
+				if ((msg != null) && msg.hasBodyHeader(MODEL_HEADER)) {
+				    modelPath = msg.getBodyHeader(MODEL_HEADER);
+				}
+			} catch (MessageException e) {
+				//just log it
+				logger.error("",e);
+			}
+
+            if ((modelPath == null) || (modelPath.length == 0)) {
+                modelPath = new String[] { defaultModelPath };
+            }
+
+            if ((modelPath != null) && (modelPath.length > 0)) {
+            	Map<String, String> modelParameters = getModelParameters(msg);
+
+                for (int i = 0; i < modelPath.length && !stopRequested; i++) {
+                	ModelRun run = new ModelRun(modelPath[i], msg, modelParameters);
+                	if (runPermitCount > 1) {
+                		try {
+                			runPermits.acquire();
+                		} catch (InterruptedException e) {
+                			break;
+                		}
+                		runDispatcher.execute(run);
+                	} else {
+                		run.execute();
+                	}
+                }
+            }
+        }
+
+        if (logger.isTraceEnabled()) {
+            logger.trace(getInfo()+" - exit ");
+        }
+    }
+
+    protected void doInitialize() throws InitializationException {
+        if (logger.isTraceEnabled()) {
+            logger.trace(getInfo());
+        }
+
+        super.doInitialize();
+
+        stopRequested = false;
+        runPermitCount = maxConcurrentRuns;
+        runPermits = new Semaphore(runPermitCount);
+        triggerConnected = trigger.getWidth() > 0;
+
+        if (triggerConnected) {
+        	if(logger.isDebugEnabled())
+            	logger.debug(getInfo() + " - Trigger(s) connected");
+            triggerHandler = new PortHandler(trigger);
+            triggerHandler.start();
+        }
+
+        if (logger.isTraceEnabled()) {
+            logger.trace(getInfo()+" - exit ");
+        }
+    }
+
+	/*
+	 *  (non-Javadoc)
+	 * @see be.isencia.passerelle.actor.Actor#doPostFire()
+	 */
+    protected boolean doPostFire() throws ProcessingException {
+        if (logger.isTraceEnabled()) {
+            logger.trace(getInfo());
+        }
+
+        boolean res = triggerConnected;
+
+        if (res) {
+            res = super.doPostFire();
+        }
+
+        if (!res && runPermitCount > 1) {
+        	// wait till all concurrent runs are done
+        	try {
+        		runPermits.acquire(runPermitCount);
+        		runPermits.release(runPermitCount);
+        	} catch (InterruptedException e) {
+        		// just stop waiting
+        	}
+        }
+
+        if (logger.isTraceEnabled()) {
+            logger.trace(getInfo()+" - exit " + " :" + res);
+        }
+
+        return res;
+    }
+
+    /* (non-Javadoc)
+	 * @see be.isencia.passerelle.actor.Actor#doStop()
+	 */
+	protected void doStop() {
+		stopRequested = true;
+		super.doStop();
+		finishRunningModels();
+	}
+
+	private void finishRunningModels() {
+		List<Flow> flows = null;
+		synchronized (runningFlows) {
+			flows = new ArrayList<Flow>(runningFlows);
+		}
+		for (Iterator<Flow> flowItr = flows.iterator(); flowItr.hasNext();) {
+			Manager manager = flowItr.next().getManager();
+			if (manager != null)
+				manager.finish();
+		}
+	}
+
+	/**
+	 * 
+	 * @param msg the trigger msg, may be null
+	 * @return the trigger msg's body headers, except the model path(s)
+	 */
+	private Map<String, String> getModelParameters(ManagedMessage msg) {
+		Map<String, String> result = new HashMap<String, String>();
+		if (msg != null) {
+			try {
+				for (Iterator hdrItr = msg.getAllBodyHeaders().iterator(); hdrItr.hasNext();) {
+					Header header = (Header) hdrItr.next();
+					if (!MODEL_HEADER.equals(header.getName())) {
+						result.put(header.getName(), header.getValue());
+					}
+				}
+			} catch (MessageException e) {
+				//just log it
+				logger.error("",e);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 
+	 * @param modelPath
+	 * @return a model instance that is not used by any other execution, 
+	 * taken from the cache or parsed from the file
+	 * @throws Exception
+	 */
+	private ParsedModel getModel(String modelPath) throws Exception {
+		File file = new File(modelPath);
+		CachedModel cachedModel = null;
+		if (cacheModels) {
+			synchronized (modelCache) {
+				cachedModel = modelCache.get(modelPath);
+				long lastModified = file.lastModified();
+				if (cachedModel == null || cachedModel.lastModified != lastModified) {
+					cachedModel = new CachedModel(lastModified);
+					modelCache.put(modelPath, cachedModel);
+				} else if (!cachedModel.idleModels.isEmpty()) {
+					return cachedModel.idleModels.removeFirst();
+				}
+			}
+		}
+		// parsed outside of the cache lock, so the executions of other models need not wait for it
+		return new ParsedModel(cachedModel, FlowManager.readMoml(file.toURI().toURL()));
+	}
+
+	/**
+	 * Makes a model instance available for later executions, if it is cached and its file has not been modified.
+	 * 
+	 * @param modelPath
+	 * @param model
+	 */
+	private void releaseModel(String modelPath, ParsedModel model) {
+		if (model.cachedModel == null) {
+			return;
+		}
+		try {
+			model.resetParameters();
+		} catch (IllegalActionException e) {
+			// don't reuse it then
+			logger.warn(getInfo() + " - error resetting parameters of " + modelPath, e);
+			return;
+		}
+		synchronized (modelCache) {
+			if (modelCache.get(modelPath) == model.cachedModel) {
+				model.cachedModel.idleModels.addFirst(model);
+			}
+		}
+	}
+
+	/**
+	 * Sets the parameters of the model itself.
+	 * Parameters of the model's actors are set by the FlowManager.
+	 */
+	private void applyModelParameters(Flow flow, Map<String, String> modelParameters) throws IllegalActionException {
+		for (Iterator<Map.Entry<String, String>> paramItr = modelParameters.entrySet().iterator(); paramItr.hasNext();) {
+			Map.Entry<String, String> param = paramItr.next();
+			if (param.getKey().indexOf('.') < 0) {
+				Parameter p = (Parameter) flow.getAttribute(param.getKey(), Parameter.class);
+				if (p != null)
+					p.setExpression(param.getValue());
+			}
+		}
+	}
+
+	/**
+     * @see be.tuple.passerelle.engine.actor.Actor#getExtendedInfo()
+     */
+    protected String getExtendedInfo() {
+        return defaultModelPath;
+    }
+
+    private static class CachedModel {
+    	private final long lastModified;
+    	// the parsed instances that are not being executed, i.e. at most as many as the concurrent executions
+    	private final LinkedList<ParsedModel> idleModels = new LinkedList<ParsedModel>();
+
+    	CachedModel(long lastModified) {
+    		this.lastModified = lastModified;
+    	}
+    }
+
+    /**
+     * A parsed model instance, with the parameter expressions as they were parsed.
+     */
+    private static class ParsedModel {
+    	// null if the instance is not cached
+    	private final CachedModel cachedModel;
+    	private final Flow flow;
+    	private final Map<Parameter, String> parsedExpressions = new HashMap<Parameter, String>();
+
+    	ParsedModel(CachedModel cachedModel, Flow flow) {
+    		this.cachedModel = cachedModel;
+    		this.flow = flow;
+    		if (cachedModel != null) {
+    			collectParameters(flow);
+    		}
+    	}
+
+    	/**
+    	 * Sets the parameters that were changed by an execution, e.g. by its parameter settings, back to their parsed expressions.
+    	 */
+    	void resetParameters() throws IllegalActionException {
+    		for (Iterator<Map.Entry<Parameter, String>> paramItr = parsedExpressions.entrySet().iterator(); paramItr.hasNext();) {
+    			Map.Entry<Parameter, String> param = paramItr.next();
+    			if (!param.getValue().equals(param.getKey().getExpression())) {
+    				param.getKey().setExpression(param.getValue());
+    				param.getKey().validate();
+    			}
+    		}
+    	}
+
+    	/**
+    	 * Collects the parameters of the model, its directors and all contained actors.
+    	 */
+    	private void collectParameters(NamedObj container) {
+    		for (Iterator attrItr = container.attributeList().iterator(); attrItr.hasNext();) {
+    			Attribute attribute = (Attribute) attrItr.next();
+    			if (attribute instanceof Parameter) {
+    				parsedExpressions.put((Parameter) attribute, ((Parameter) attribute).getExpression());
+    			}
+    			collectParameters(attribute);
+    		}
+    		if (container instanceof CompositeEntity) {
+    			for (Iterator entityItr = ((CompositeEntity) container).entityList().iterator(); entityItr.hasNext();) {
+    				collectParameters((NamedObj) entityItr.next());
+    			}
+    		}
+    	}
+    }
+
+    /**
+     * One execution of a model, in the actor's thread or in a runner thread.
+     */
+    private class ModelRun implements Runnable {
+    	private final String modelPath;
+    	private final ManagedMessage triggerMsg;
+    	private final Map<String, String> modelParameters;
+
+    	ModelRun(String modelPath, ManagedMessage triggerMsg, Map<String, String> modelParameters) {
+    		this.modelPath = modelPath;
+    		this.triggerMsg = triggerMsg;
+    		this.modelParameters = modelParameters;
+    	}
+
+		public void run() {
+			try {
+				execute();
+			} catch (ProcessingException e) {
+				try {
+					sendErrorMessage(e);
+				} catch (IllegalActionException e1) {
+					logger.error("",e1);
+				}
+			} finally {
+				runPermits.release();
+			}
+		}
+
+		void execute() throws ProcessingException {
+			if (modelPath == null) {
+				throw new ProcessingException(getInfo()+" - no model defined", triggerMsg, null);
+			}
+			long startTime = System.currentTimeMillis();
+			ParsedModel model = null;
+			try {
+				model = getModel(modelPath);
+			} catch (Exception e) {
+				throw new ProcessingException(getInfo()+" - error reading model "+modelPath, triggerMsg, e);
+			}
+			Flow flow = model.flow;
+			synchronized (runningFlows) {
+				if (stopRequested) {
+					releaseModel(modelPath, model);
+					return;
+				}
+				runningFlows.add(flow);
+			}
+            if (getAuditLogger().isInfoEnabled()) {
+            	getAuditLogger().info("Executing "+modelPath);
+            }
+            // a model instance is only reused after a normal execution
+            boolean reusable = false;
+			try {
+				applyModelParameters(flow, modelParameters);
+				// each run has its own FlowManager, as it is not thread-safe
+				new FlowManager().executeBlocking(flow, modelParameters);
+				reusable = !stopRequested;
+			} catch (IllegalActionException e) {
+				throw new ProcessingException(getInfo()+" - error setting parameters of model "+modelPath, triggerMsg, e);
+			} catch (PasserelleException e) {
+				throw new ProcessingException(getInfo()+" - error executing model "+modelPath, triggerMsg, e);
+			} catch (RuntimeException e) {
+				throw new ProcessingException(getInfo()+" - error executing model "+modelPath, triggerMsg, e);
+			} finally {
+				synchronized (runningFlows) {
+					runningFlows.remove(flow);
+				}
+				if (reusable) {
+					releaseModel(modelPath, model);
+				}
+			}
+			if (!stopRequested) {
+				long duration = System.currentTimeMillis() - startTime;
+				try {
+					ManagedMessage resultMsg = createMessage();
+					if (triggerMsg != null) {
+						resultMsg.addCauseID(triggerMsg.getID());
+					}
+					resultMsg.setBodyHeader(MODEL_HEADER, modelPath);
+					resultMsg.setBodyHeader(DURATION_HEADER, Long.toString(duration));
+					resultMsg.setBodyContentPlainText("Executed " + modelPath + " in " + duration + " ms");
+					sendOutputMsg(completed, resultMsg);
+				} catch (MessageException e) {
+					throw new ProcessingException(getInfo()+" - error creating completion msg for "+modelPath, triggerMsg, e);
+				} catch (IllegalArgumentException e) {
+					throw new ProcessingException(getInfo()+" - error sending completion msg for "+modelPath, triggerMsg, e);
+				}
+			}
+		}
+    }
+
+    /**
+     * @see be.tuple.passerelle.engine.actor.Actor#createPaneFactory()
+     */
+//    protected void createPaneFactory() throws IllegalActionException, NameDuplicationException {
+//        PaneFactoryCreator.createPaneFactory(this, be.isencia.passerelle.actor.gui.pane.custom.ModelExecutorParamEditPane.class);
+//    }
+}
\ No newline at end of file
@@ -27,9 +27,9 @@ import ptolemy.kernel.util.IllegalActionException;
 import ptolemy.kernel.util.NameDuplicationException;
 
 import com.isencia.message.IReceiverChannel;
-import com.isencia.message.extractor.EndOfMsgCharMsgExtractor;
 import com.isencia.message.extractor.IMessageExtractor;
-import com.isencia.message.extractor.TextLineMessageExtractor;
+import com.isencia.message.extractor.NioEndOfMsgCharMsgExtractor;
+import com.isencia.message.extractor.NioTextLineMessageExtractor;
 import com.isencia.message.extractor.XmlMessageExtractor;
 import com.isencia.message.interceptor.IMessageInterceptorChain;
 import com.isencia.message.interceptor.MessageInterceptorChain;
@@ -57,8 +57,8 @@ public class FileReader extends TriggeredChannelSource {
     protected static class InputType {
         
         public final static InputType 
-                        TEXT_LINES = new InputType("text-lines","text/plain", new TextLineMessageExtractor(), new TextToMessageConverter(null)),
-                        TEXT_FILE = new InputType("text-file","text/plain", new EndOfMsgCharMsgExtractor(), new TextToMessageConverter(null)),
+                        TEXT_LINES = new InputType("text-lines","text/plain", new NioTextLineMessageExtractor(), new TextToMessageConverter(null)),
+                        TEXT_FILE = new InputType("text-file","text/plain", new NioEndOfMsgCharMsgExtractor(), new TextToMessageConverter(null)),
                         XML_DOC = new InputType("xml-doc","text/xml", new XmlMessageExtractor(), new XMLToMessageConverter(null));
         
         public final static InputType[] choices = new InputType[] {TEXT_LINES,TEXT_FILE,XML_DOC};
@@ -22,6 +22,7 @@ import java.net.URISyntaxException;
 
 
 import ptolemy.data.BooleanToken;
+import ptolemy.data.IntToken;
 import ptolemy.data.expr.FileParameter;
 import ptolemy.data.expr.Parameter;
 import ptolemy.data.expr.StringParameter;
@@ -32,14 +33,27 @@ import ptolemy.kernel.util.IllegalActionException;
 import ptolemy.kernel.util.NameDuplicationException;
 
 import com.isencia.message.ChannelException;
+import com.isencia.message.IFlushListener;
 import com.isencia.message.ISenderChannel;
 import com.isencia.message.generator.MessageTextLineGenerator;
 import com.isencia.message.io.FileSenderChannel;
 import com.isencia.passerelle.actor.ChannelSink;
+import com.isencia.passerelle.actor.InitializationException;
+import com.isencia.passerelle.actor.ProcessingException;
+import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.statistics.FlushStatistics;
+import com.isencia.passerelle.statistics.StatisticsServiceFactory;
 import com.isencia.passerelle.util.EnvironmentUtils;
 import com.isencia.util.StringConvertor;
 /**
  * This actor writes all received msgs in a file.
+ * <p>
+ * By default, the file is flushed after each msg.
+ * In buffered mode, the msgs are collected in a large buffer, and the file is flushed
+ * after a nr of msgs, when msgs have been pending for some time, and/or at the end of a sequence.
+ * Optionally, each flush also forces the data to disk.
+ * The nr of flushes, the flush times and the bytes written are then available as statistics.
+ * </p>
  *
  */
 public class FileWriter extends ChannelSink {
@@ -49,6 +63,11 @@ public class FileWriter extends ChannelSink {
 	public final static String PATH_PARAM = "Path";
 	public final static String APPEND_PARAM = "Append";
 	public final static String ENCODING_PARAM = "Encoding";
+	public final static String BUFFERED_PARAM = "Buffered";
+	public final static String FLUSH_COUNT_PARAM = "Flush after nr of msgs";
+	public final static String FLUSH_INTERVAL_PARAM = "Flush interval (ms)";
+	public final static String FLUSH_ON_SEQ_END_PARAM = "Flush on sequence end";
+	public final static String FORCE_PARAM = "Force to disk on flush";
 
 	public FileParameter destinationPathParam;
 	private String destinationPath = null;
@@ -58,6 +77,19 @@ public class FileWriter extends ChannelSink {
 	public Parameter fileEncodingParam = null;
 	private String fileEncoding = null;
 
+	public Parameter bufferedParam;
+	private boolean buffered = false;
+	public Parameter flushCountParam;
+	private int flushCount = 1000;
+	public Parameter flushIntervalParam;
+	private int flushInterval = 1000;
+	public Parameter flushOnSeqEndParam;
+	private boolean flushOnSeqEnd = true;
+	public Parameter forceParam;
+	private boolean force = false;
+
+	private FlushStatistics flushStatistics;
+
 
 	/** Construct an actor with the given container and name.
 	 *  @param container The container.
@@ -85,6 +117,26 @@ public class FileWriter extends ChannelSink {
 		appendModeParam = new Parameter(this,APPEND_PARAM, new BooleanToken(true));
 		appendModeParam.setTypeEquals(BaseType.BOOLEAN);
 		registerConfigurableParameter(appendModeParam);
+
+		bufferedParam = new Parameter(this,BUFFERED_PARAM, new BooleanToken(buffered));
+		bufferedParam.setTypeEquals(BaseType.BOOLEAN);
+		registerConfigurableParameter(bufferedParam);
+
+		flushCountParam = new Parameter(this,FLUSH_COUNT_PARAM, new IntToken(flushCount));
+		flushCountParam.setTypeEquals(BaseType.INT);
+		registerConfigurableParameter(flushCountParam);
+
+		flushIntervalParam = new Parameter(this,FLUSH_INTERVAL_PARAM, new IntToken(flushInterval));
+		flushIntervalParam.setTypeEquals(BaseType.INT);
+		registerConfigurableParameter(flushIntervalParam);
+
+		flushOnSeqEndParam = new Parameter(this,FLUSH_ON_SEQ_END_PARAM, new BooleanToken(flushOnSeqEnd));
+		flushOnSeqEndParam.setTypeEquals(BaseType.BOOLEAN);
+		registerConfigurableParameter(flushOnSeqEndParam);
+
+		forceParam = new Parameter(this,FORCE_PARAM, new BooleanToken(force));
+		forceParam.setTypeEquals(BaseType.BOOLEAN);
+		registerConfigurableParameter(forceParam);
 	}
 
 	/**
@@ -114,6 +166,24 @@ public class FileWriter extends ChannelSink {
 			if (appendToken != null) {
 				setAppendMode(appendToken.booleanValue());
 			}
+		} else if (attribute == bufferedParam) {
+			buffered = ((BooleanToken) bufferedParam.getToken()).booleanValue();
+		} else if (attribute == flushCountParam) {
+			int count = ((IntToken) flushCountParam.getToken()).intValue();
+			if (count < 0) {
+				throw new IllegalActionException(flushCountParam, "The nr of msgs can not be negative");
+			}
+			flushCount = count;
+		} else if (attribute == flushIntervalParam) {
+			int interval = ((IntToken) flushIntervalParam.getToken()).intValue();
+			if (interval < 0) {
+				throw new IllegalActionException(flushIntervalParam, "The flush interval can not be negative");
+			}
+			flushInterval = interval;
+		} else if (attribute == flushOnSeqEndParam) {
+			flushOnSeqEnd = ((BooleanToken) flushOnSeqEndParam.getToken()).booleanValue();
+		} else if (attribute == forceParam) {
+			force = ((BooleanToken) forceParam.getToken()).booleanValue();
 		} else super.attributeChanged(attribute);
 
 		if(logger.isTraceEnabled())
@@ -136,10 +206,51 @@ public class FileWriter extends ChannelSink {
 	 * @see be.tuple.passerelle.engine.actor.ChannelSink#createSendChannel()
 	 */
 	protected ISenderChannel createChannel() {
+		FileSenderChannel channel = null;
 		if(getFileEncoding()!=null && getFileEncoding().length()>0){
-			return new FileSenderChannel(new File(getDestinationPath()),getFileEncoding(), new MessageTextLineGenerator());
+			channel = new FileSenderChannel(new File(getDestinationPath()),getFileEncoding(), new MessageTextLineGenerator());
+		} else {
+			channel = new FileSenderChannel(new File(getDestinationPath()), new MessageTextLineGenerator());
+		}
+		if(buffered) {
+			channel.setFlushPolicy(flushCount, flushInterval);
+			channel.setForceOnFlush(force);
+			channel.setFlushListener(new IFlushListener() {
+				public void flushed(ISenderChannel channel, long duration, long byteCount) {
+					flushStatistics.acceptFlush(duration, byteCount);
+				}
+			});
+		}
+		return channel;
+	}
+
+	protected void doInitialize() throws InitializationException {
+		flushStatistics = new FlushStatistics(this);
+		super.doInitialize();
+		if(buffered) {
+			StatisticsServiceFactory.getService().registerStatistics(flushStatistics);
+		}
+	}
+
+	/**
+	 * In buffered mode, the file is flushed after the last msg of a sequence, if so configured.
+	 */
+	protected void sendMessage(ManagedMessage message) throws ProcessingException {
+		super.sendMessage(message);
+		if(buffered && flushOnSeqEnd && message!=null && message.isSequenceEnd()) {
+			try {
+				((FileSenderChannel)getChannel()).flush();
+			} catch (ChannelException e) {
+				throw new ProcessingException(getInfo()+" - error flushing the file at the end of a sequence", message, e);
+			}
 		}
-		return new FileSenderChannel(new File(getDestinationPath()), new MessageTextLineGenerator());
+	}
+
+	/**
+	 * @return the flush statistics, that are maintained in buffered mode
+	 */
+	public FlushStatistics getFlushStatistics() {
+		return flushStatistics;
 	}
 
 
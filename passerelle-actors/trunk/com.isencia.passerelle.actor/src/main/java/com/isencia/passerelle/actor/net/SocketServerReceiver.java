@@ -16,20 +16,26 @@
 package com.isencia.passerelle.actor.net;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
 
 
 
 
 import com.isencia.message.ChannelException;
 import com.isencia.message.IReceiverChannel;
+import com.isencia.message.extractor.IFramingMessageExtractor;
 import com.isencia.message.extractor.IMessageExtractor;
+import com.isencia.message.net.NioSocketServer;
+import com.isencia.message.net.NioSocketServerReceiverChannel;
 import com.isencia.message.net.SocketServerReceiverChannel;
 import com.isencia.passerelle.actor.ChannelSource;
 import com.isencia.passerelle.actor.InitializationException;
 import com.isencia.passerelle.actor.gui.IOptionsFactory.Option;
 import com.isencia.passerelle.core.PasserelleException;
 
+import ptolemy.data.BooleanToken;
 import ptolemy.data.IntToken;
 import ptolemy.data.expr.Parameter;
 import ptolemy.data.expr.StringParameter;
@@ -39,7 +45,12 @@ import ptolemy.kernel.util.IllegalActionException;
 
 
 /**
- * DOCUMENT ME!
+ * Receives msgs from all clients that connect to a server socket.
+ * <p>
+ * By default, a thread is used per connection. In non-blocking IO mode,
+ * a small fixed nr of IO threads serves all connections, which scales to
+ * many (short-lived) connections.
+ * </p>
  *
  * @version $Id: SocketServerReceiver.java,v 1.5 2006/02/06 20:08:50 erwin Exp $
  * @author Dirk Jacobs
@@ -63,6 +74,15 @@ public class SocketServerReceiver extends ChannelSource {
     public Parameter msgExtractorType;
     final static String MSG_EXTRACTOR_PARAM_NAME = "Msg End";
 
+    /** Serve all connections with a few IO threads, instead of a thread per connection. */
+    public Parameter nonBlockingParam;
+    private boolean nonBlocking = false;
+    final static String NON_BLOCKING_PARAM_NAME = "Non-blocking IO";
+
+    public Parameter ioThreadCountParam;
+    private int ioThreadCount = NioSocketServer.DEFAULT_IO_THREAD_COUNT;
+    final static String IO_THREAD_COUNT_PARAM_NAME = "IO threads";
+
     //~ Constructors �������������������������������������������������������������������������������������������������������������������������������������������
 
     /**
@@ -83,6 +103,14 @@ public class SocketServerReceiver extends ChannelSource {
         socketPort = new Parameter(this, "port", new IntToken(getPort()));
         socketPort.setTypeEquals(BaseType.INT);
         msgExtractorType = new StringParameter(this, MSG_EXTRACTOR_PARAM_NAME);
+
+        nonBlockingParam = new Parameter(this, NON_BLOCKING_PARAM_NAME, new BooleanToken(nonBlocking));
+        nonBlockingParam.setTypeEquals(BaseType.BOOLEAN);
+        registerConfigurableParameter(nonBlockingParam);
+
+        ioThreadCountParam = new Parameter(this, IO_THREAD_COUNT_PARAM_NAME, new IntToken(ioThreadCount));
+        ioThreadCountParam.setTypeEquals(BaseType.INT);
+        registerConfigurableParameter(ioThreadCountParam);
     }
 
     //~ Methods ������������������������������������������������������������������������������������������������������������������������������������������������
@@ -121,6 +149,14 @@ public class SocketServerReceiver extends ChannelSource {
             if ((portToken != null) && (portToken.intValue() > 0)) {
                 setPort(portToken.intValue());
             }
+        } else if (attribute == nonBlockingParam) {
+            nonBlocking = ((BooleanToken) nonBlockingParam.getToken()).booleanValue();
+        } else if (attribute == ioThreadCountParam) {
+            int count = ((IntToken) ioThreadCountParam.getToken()).intValue();
+            if (count < 1) {
+                throw new IllegalActionException(ioThreadCountParam, "At least 1 IO thread is needed");
+            }
+            ioThreadCount = count;
         } else {
             super.attributeChanged(attribute);
         }
@@ -138,8 +174,17 @@ public class SocketServerReceiver extends ChannelSource {
         IMessageExtractor extractor = getExtractorFromSelectedOption();
         IReceiverChannel res = null;
         try {
-            ServerSocket sSocket = new ServerSocket(getPort());
-            res = new SocketServerReceiverChannel(sSocket, extractor);
+            if (nonBlocking) {
+                if (!(extractor instanceof IFramingMessageExtractor)) {
+                    throw new InitializationException(PasserelleException.Severity.FATAL, "Msg End " + msgExtractorType.getExpression() + " not supported with non-blocking IO", this, null);
+                }
+                ServerSocketChannel serverChannel = ServerSocketChannel.open();
+                serverChannel.socket().bind(new InetSocketAddress(getPort()));
+                res = new NioSocketServerReceiverChannel(serverChannel, (IFramingMessageExtractor) extractor, ioThreadCount);
+            } else {
+                ServerSocket sSocket = new ServerSocket(getPort());
+                res = new SocketServerReceiverChannel(sSocket, extractor);
+            }
         } catch (IOException e) {
             throw new InitializationException(PasserelleException.Severity.FATAL, "Error opening server socket on port" + getPort(), this, e);
         }
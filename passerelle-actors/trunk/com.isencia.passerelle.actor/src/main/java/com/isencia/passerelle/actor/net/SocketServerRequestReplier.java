@@ -16,21 +16,28 @@
 package com.isencia.passerelle.actor.net;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
 
 
 
 
-import com.isencia.message.extractor.EndOfMsgCharMsgExtractor;
+import com.isencia.message.extractor.IFramingMessageExtractor;
 import com.isencia.message.extractor.IMessageExtractor;
+import com.isencia.message.extractor.LengthPrefixedMsgExtractor;
+import com.isencia.message.extractor.NioEndOfMsgCharMsgExtractor;
 import com.isencia.message.generator.IMessageGenerator;
 import com.isencia.message.generator.MessageTextLineGenerator;
+import com.isencia.message.net.NioSocketServer;
+import com.isencia.message.net.requestreply.NioSocketServerRequestReplier;
 import com.isencia.message.requestreply.IRequestReplyChannel;
 import com.isencia.passerelle.actor.InitializationException;
 import com.isencia.passerelle.actor.ReqReplyChannelSource;
 import com.isencia.passerelle.actor.gui.IOptionsFactory.Option;
 import com.isencia.passerelle.core.PasserelleException;
 
+import ptolemy.data.BooleanToken;
 import ptolemy.data.IntToken;
 import ptolemy.data.expr.Parameter;
 import ptolemy.data.expr.StringParameter;
@@ -42,6 +49,12 @@ import ptolemy.kernel.util.IllegalActionException;
  * 
  * A socket server that is able to send responses to incoming msgs.
  * It's a bit of a mix of a source and a sink...
+ * <p>
+ * By default, a thread is used per connection. In non-blocking IO mode,
+ * a small fixed nr of IO threads serves all connections.
+ * Length-prefixed requests are only supported in that mode,
+ * and then get length-prefixed responses.
+ * </p>
  *
  * @author erwin
  */
@@ -64,6 +77,15 @@ public class SocketServerRequestReplier extends ReqReplyChannelSource {
     public Parameter msgExtractorType;
     final static String MSG_EXTRACTOR_PARAM_NAME = "Msg End";
 
+    /** Serve all connections with a few IO threads, instead of a thread per connection. */
+    public Parameter nonBlockingParam;
+    private boolean nonBlocking = false;
+    final static String NON_BLOCKING_PARAM_NAME = "Non-blocking IO";
+
+    public Parameter ioThreadCountParam;
+    private int ioThreadCount = NioSocketServer.DEFAULT_IO_THREAD_COUNT;
+    final static String IO_THREAD_COUNT_PARAM_NAME = "IO threads";
+
 
     //~ Constructors �������������������������������������������������������������������������������������������������������������������������������������������
 
@@ -84,6 +106,14 @@ public class SocketServerRequestReplier extends ReqReplyChannelSource {
         socketPort = new Parameter(this, "port", new IntToken(getPort()));
         socketPort.setTypeEquals(BaseType.INT);
         msgExtractorType = new StringParameter(this, MSG_EXTRACTOR_PARAM_NAME);
+
+        nonBlockingParam = new Parameter(this, NON_BLOCKING_PARAM_NAME, new BooleanToken(nonBlocking));
+        nonBlockingParam.setTypeEquals(BaseType.BOOLEAN);
+        registerConfigurableParameter(nonBlockingParam);
+
+        ioThreadCountParam = new Parameter(this, IO_THREAD_COUNT_PARAM_NAME, new IntToken(ioThreadCount));
+        ioThreadCountParam.setTypeEquals(BaseType.INT);
+        registerConfigurableParameter(ioThreadCountParam);
     }
 
     //~ Methods ������������������������������������������������������������������������������������������������������������������������������������������������
@@ -122,6 +152,14 @@ public class SocketServerRequestReplier extends ReqReplyChannelSource {
             if ((portToken != null) && (portToken.intValue() > 0)) {
                 setPort(portToken.intValue());
             }
+        } else if (attribute == nonBlockingParam) {
+            nonBlocking = ((BooleanToken) nonBlockingParam.getToken()).booleanValue();
+        } else if (attribute == ioThreadCountParam) {
+            int count = ((IntToken) ioThreadCountParam.getToken()).intValue();
+            if (count < 1) {
+                throw new IllegalActionException(ioThreadCountParam, "At least 1 IO thread is needed");
+            }
+            ioThreadCount = count;
         } else {
             super.attributeChanged(attribute);
         }
@@ -140,14 +178,26 @@ public class SocketServerRequestReplier extends ReqReplyChannelSource {
         IMessageExtractor extractor = getExtractorFromSelectedOption();
         IMessageGenerator generator = null;
         
-        if(EndOfMsgCharMsgExtractor.class.isInstance(extractor)) {
+        if(NioEndOfMsgCharMsgExtractor.class.isInstance(extractor)) {
             generator = new MessageTextLineGenerator(String.valueOf('\u001C'));
         } else {
             generator = new MessageTextLineGenerator();
         }
         try {
-            ServerSocket sSocket = new ServerSocket(getPort());
-            res = new com.isencia.message.net.requestreply.SocketServerRequestReplier(sSocket, extractor, generator);
+            if (nonBlocking) {
+                if (!(extractor instanceof IFramingMessageExtractor)) {
+                    throw new InitializationException(PasserelleException.Severity.FATAL, "Msg End " + msgExtractorType.getExpression() + " not supported with non-blocking IO", this, null);
+                }
+                ServerSocketChannel serverChannel = ServerSocketChannel.open();
+                serverChannel.socket().bind(new InetSocketAddress(getPort()));
+                res = new NioSocketServerRequestReplier(serverChannel, (IFramingMessageExtractor) extractor, generator, ioThreadCount);
+            } else {
+                if (extractor instanceof LengthPrefixedMsgExtractor) {
+                    throw new InitializationException(PasserelleException.Severity.FATAL, "Msg End " + msgExtractorType.getExpression() + " only supported with non-blocking IO", this, null);
+                }
+                ServerSocket sSocket = new ServerSocket(getPort());
+                res = new com.isencia.message.net.requestreply.SocketServerRequestReplier(sSocket, extractor, generator);
+            }
         } catch (IOException e) {
             throw new InitializationException(PasserelleException.Severity.FATAL, "Error opening server socket on port" + getPort(), this, e);
         }
@@ -14,10 +14,11 @@
 */
 package com.isencia.passerelle.actor.net;
 
-import com.isencia.message.extractor.EndOfMsgCharMsgExtractor;
 import com.isencia.message.extractor.IMessageExtractor;
+import com.isencia.message.extractor.LengthPrefixedMsgExtractor;
+import com.isencia.message.extractor.NioEndOfMsgCharMsgExtractor;
+import com.isencia.message.extractor.NioTextLineMessageExtractor;
 import com.isencia.message.extractor.StreamClosedMsgExtractor;
-import com.isencia.message.extractor.TextLineMessageExtractor;
 import com.isencia.passerelle.actor.Actor;
 import com.isencia.passerelle.actor.gui.OptionsFactory;
 
@@ -34,10 +35,12 @@ public class SocketSvrRcvOptionsFactory extends OptionsFactory {
     private static final String FS_CHAR = "FS msg delimiter char";
     private static final String CONNECTION_CLOSED = "Connection closed";
     private static final String LINEFEED = "Linefeed";
+    private static final String LENGTH_PREFIX = "Length prefix";
     
-    private static final IMessageExtractor FS_CHAR_EXTRACTOR = new EndOfMsgCharMsgExtractor();
+    private static final IMessageExtractor FS_CHAR_EXTRACTOR = new NioEndOfMsgCharMsgExtractor();
     private static final IMessageExtractor CONNECTION_CLOSED_EXTRACTOR = new StreamClosedMsgExtractor();
-    private static final IMessageExtractor LINEFEED_EXTRACTOR = new TextLineMessageExtractor();
+    private static final IMessageExtractor LINEFEED_EXTRACTOR = new NioTextLineMessageExtractor();
+    private static final IMessageExtractor LENGTH_PREFIX_EXTRACTOR = new LengthPrefixedMsgExtractor();
 
     /**
      * @param container
@@ -53,6 +56,7 @@ public class SocketSvrRcvOptionsFactory extends OptionsFactory {
     protected void initializeOptions() {
         addOption(SocketServerReceiver.MSG_EXTRACTOR_PARAM_NAME, FS_CHAR, FS_CHAR_EXTRACTOR);
         addOption(SocketServerReceiver.MSG_EXTRACTOR_PARAM_NAME, CONNECTION_CLOSED, CONNECTION_CLOSED_EXTRACTOR);
+        addOption(SocketServerReceiver.MSG_EXTRACTOR_PARAM_NAME, LENGTH_PREFIX, LENGTH_PREFIX_EXTRACTOR);
         Option o = addOption(SocketServerReceiver.MSG_EXTRACTOR_PARAM_NAME, LINEFEED,LINEFEED_EXTRACTOR);
         setDefaultOption(SocketServerReceiver.MSG_EXTRACTOR_PARAM_NAME, o);
     }
@@ -14,9 +14,9 @@
 */
 package com.isencia.passerelle.actor.net;
 
-import com.isencia.message.extractor.EndOfMsgCharMsgExtractor;
 import com.isencia.message.extractor.IMessageExtractor;
-import com.isencia.message.extractor.TextLineMessageExtractor;
+import com.isencia.message.extractor.NioEndOfMsgCharMsgExtractor;
+import com.isencia.message.extractor.NioTextLineMessageExtractor;
 import com.isencia.passerelle.actor.Actor;
 import com.isencia.passerelle.actor.gui.OptionsFactory;
 
@@ -33,8 +33,8 @@ public class SocketSvrReqReplierOptionsFactory extends OptionsFactory {
     private static final String FS_CHAR = "FS msg delimiter char";
     private static final String LINEFEED = "Linefeed";
     
-    private static final IMessageExtractor FS_CHAR_EXTRACTOR = new EndOfMsgCharMsgExtractor();
-    private static final IMessageExtractor LINEFEED_EXTRACTOR = new TextLineMessageExtractor();
+    private static final IMessageExtractor FS_CHAR_EXTRACTOR = new NioEndOfMsgCharMsgExtractor();
+    private static final IMessageExtractor LINEFEED_EXTRACTOR = new NioTextLineMessageExtractor();
 
     /**
      * @param container
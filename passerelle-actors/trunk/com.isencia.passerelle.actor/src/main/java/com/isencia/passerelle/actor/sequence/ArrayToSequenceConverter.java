@@ -17,6 +17,9 @@ package com.isencia.passerelle.actor.sequence;
 
 
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.isencia.passerelle.actor.ProcessingException;
 import com.isencia.passerelle.actor.Transformer;
 import com.isencia.passerelle.message.ManagedMessage;
@@ -63,12 +66,14 @@ public final class ArrayToSequenceConverter extends Transformer {
 			try {
 				Object[] contentAsArray = (Object[]) content;
 				Long seqID = MessageFactory.getInstance().createSequenceID();
+				List<ManagedMessage> elementMsgs = new ArrayList<ManagedMessage>(contentAsArray.length);
 				for(int i=0;i<contentAsArray.length;++i) {
 					ManagedMessage elementMsg = MessageFactory.getInstance().createMessageInSequence(seqID,new Long(i),(i >= contentAsArray.length-1),getStandardMessageHeaders());
 					elementMsg.addCauseID(message.getID());
 					elementMsg.setBodyContent(contentAsArray[i],ManagedMessage.objectContentType);
-					sendOutputMsg(output,elementMsg);
+					elementMsgs.add(elementMsg);
 				}
+				sendOutputMsgs(output,elementMsgs);
 			} catch (ClassCastException e) {
 				// it's not an array, so just send it out unmodified
 				sendOutputMsg(output, message);
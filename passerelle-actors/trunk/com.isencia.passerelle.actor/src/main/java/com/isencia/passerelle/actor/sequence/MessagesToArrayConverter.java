@@ -14,13 +14,6 @@
 */
 package com.isencia.passerelle.actor.sequence;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-
-
-
-
 import com.isencia.passerelle.actor.InitializationException;
 import com.isencia.passerelle.actor.ProcessingException;
 import com.isencia.passerelle.actor.TerminationException;
@@ -33,6 +26,7 @@ import com.isencia.passerelle.core.PortListener;
 import com.isencia.passerelle.message.ManagedMessage;
 import com.isencia.passerelle.message.MessageException;
 import com.isencia.passerelle.message.MessageHelper;
+import com.isencia.passerelle.message.internal.sequence.SequenceAccumulator;
 
 import ptolemy.kernel.CompositeEntity;
 import ptolemy.kernel.util.IllegalActionException;
@@ -52,6 +46,8 @@ import ptolemy.kernel.util.NameDuplicationException;
  * For tighter control, use message sequences as input together with
  * the SequenceToArrayConverter.
  * 
+ * Only the msg contents are kept until the trigger arrives, not the complete msgs.
+ * 
  * @author erwin dl
  */
 public class MessagesToArrayConverter extends Transformer {
@@ -63,7 +59,8 @@ public class MessagesToArrayConverter extends Transformer {
 	private boolean triggerConnected = false;
 	private PortHandler triggerHandler = null;
 
-	private List<ManagedMessage> msgQueue = new ArrayList<ManagedMessage>();
+	// filled by the actor's thread, flushed by the trigger handler's thread
+	private SequenceAccumulator msgQueue = new SequenceAccumulator(null);
 
 	/**
 	 * @param container
@@ -158,7 +155,11 @@ public class MessagesToArrayConverter extends Transformer {
 		}
 		
 		if(isTriggerConnected()) {
-			msgQueue.add(message);
+			try {
+				msgQueue.append(message.getID(), message.getBodyContent());
+			} catch (MessageException e) {
+				throw new ProcessingException("Error reading message content",message,e);
+			}
 			if(logger.isDebugEnabled()) {
 				logger.debug(getInfo()+" - doFire() - queued message :"+message);
 			}
@@ -202,16 +203,19 @@ public class MessagesToArrayConverter extends Transformer {
 		if(logger.isTraceEnabled()) {
 			logger.trace(getInfo()+" - flushQueue() - entry");
 		}
-		if(!msgQueue.isEmpty()) {
+		Object[] msgBodies = null;
+		long[] msgIDs = null;
+		synchronized (msgQueue) {
+			msgBodies = msgQueue.getElements();
+			msgIDs = msgQueue.getMessageIDs();
+			msgQueue.clear();
+		}
+		if(msgBodies.length>0) {
 			ManagedMessage resultMsg = createMessage();
-			List msgBodies = new ArrayList();
-			for (Iterator iter = msgQueue.iterator(); iter.hasNext();) {
-				ManagedMessage msg = (ManagedMessage) iter.next();
-				resultMsg.addCauseID(msg.getID());
-				msgBodies.add(msg.getBodyContent());
+			for (int i = 0; i < msgIDs.length; i++) {
+				resultMsg.addCauseID(new Long(msgIDs[i]));
 			}
-			resultMsg.setBodyContent(msgBodies.toArray(),ManagedMessage.objectContentType);
-			msgQueue.clear();
+			resultMsg.setBodyContent(msgBodies,ManagedMessage.objectContentType);
 			
 			sendOutputMsg(output, resultMsg);
 		}
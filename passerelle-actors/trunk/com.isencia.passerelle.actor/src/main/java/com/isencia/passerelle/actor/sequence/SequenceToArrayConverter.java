@@ -0,0 +1,190 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.actor.sequence;
+
+import com.isencia.passerelle.actor.InitializationException;
+import com.isencia.passerelle.actor.ProcessingException;
+import com.isencia.passerelle.actor.Transformer;
+import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.message.MessageException;
+import com.isencia.passerelle.message.internal.sequence.SequenceAccumulator;
+import com.isencia.passerelle.message.internal.sequence.SequenceRegistry;
+import com.isencia.passerelle.statistics.SequenceStatistics;
+import com.isencia.passerelle.statistics.StatisticsServiceFactory;
+
+import ptolemy.data.IntToken;
+import ptolemy.data.expr.Parameter;
+import ptolemy.data.type.BaseType;
+import ptolemy.kernel.CompositeEntity;
+import ptolemy.kernel.util.Attribute;
+import ptolemy.kernel.util.IllegalActionException;
+import ptolemy.kernel.util.NameDuplicationException;
+
+/**
+ * Keeps track of all sequences for which messages pass through it.
+ * The content of each message in a sequence is maintained in cache until its 
+ * complete sequence has passed.
+ * Then the sequence is sent out in the form of a message containing
+ * an array of all original msg contents.
+ * 
+ * So the msg contents in a sequence had better been of the same type!
+ * <p>
+ * A max nr of sequences and/or a timeout can be configured, to drop sequences
+ * that never complete. Dropped sequences are reported as an error.
+ * The nrs of live, completed and dropped sequences are available as statistics.
+ * </p>
+ * 
+ * @author erwin dl
+ */
+public class SequenceToArrayConverter extends Transformer {
+	private static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(SequenceToArrayConverter.class);
+	
+	public final static String MAX_SEQUENCES_PARAM = "Max sequences";
+	public final static String SEQUENCE_TIMEOUT_PARAM = "Sequence timeout (s)";
+
+	private SequenceRegistry<SequenceAccumulator> sequences = new SequenceRegistry<SequenceAccumulator>(0, 0);
+	private SequenceStatistics sequenceStatistics;
+	private int maxSequences = 0;
+	private int sequenceTimeout = 0;
+	
+	// 0 means no limit
+	public Parameter maxSequencesParam;
+	// in seconds, 0 means no timeout
+	public Parameter sequenceTimeoutParam;
+
+	/**
+	 * @param container
+	 * @param name
+	 * @throws NameDuplicationException
+	 * @throws IllegalActionException
+	 */
+	public SequenceToArrayConverter(CompositeEntity container, String name) throws NameDuplicationException, IllegalActionException {
+		super(container, name);
+		
+		maxSequencesParam = new Parameter(this, MAX_SEQUENCES_PARAM, new IntToken(maxSequences));
+		maxSequencesParam.setTypeEquals(BaseType.INT);
+		registerConfigurableParameter(maxSequencesParam);
+
+		sequenceTimeoutParam = new Parameter(this, SEQUENCE_TIMEOUT_PARAM, new IntToken(sequenceTimeout));
+		sequenceTimeoutParam.setTypeEquals(BaseType.INT);
+		registerConfigurableParameter(sequenceTimeoutParam);
+	}
+
+	/**
+	 *  @param attribute The attribute that changed.
+	 *  @exception IllegalActionException   */
+	public void attributeChanged(Attribute attribute) throws IllegalActionException {
+		if (attribute == maxSequencesParam) {
+			int max = ((IntToken) maxSequencesParam.getToken()).intValue();
+			if (max < 0) {
+				throw new IllegalActionException(maxSequencesParam, "The max nr of sequences can not be negative");
+			}
+			maxSequences = max;
+		} else if (attribute == sequenceTimeoutParam) {
+			int timeout = ((IntToken) sequenceTimeoutParam.getToken()).intValue();
+			if (timeout < 0) {
+				throw new IllegalActionException(sequenceTimeoutParam, "The sequence timeout can not be negative");
+			}
+			sequenceTimeout = timeout;
+		} else super.attributeChanged(attribute);
+	}
+
+	/* (non-Javadoc)
+	 * @see be.isencia.passerelle.actor.Actor#doInitialize()
+	 */
+	protected void doInitialize() throws InitializationException {
+		if (logger.isTraceEnabled())
+			logger.trace(getInfo()+" doInitialize() - entry");
+			
+		super.doInitialize();
+		sequences = new SequenceRegistry<SequenceAccumulator>(maxSequences, sequenceTimeout * 1000L);
+		sequences.setEvictionListener(new SequenceRegistry.EvictionListener<SequenceAccumulator>() {
+			public void sequenceEvicted(Long sequenceID, SequenceAccumulator entry) {
+				try {
+					sendErrorMessage(new ProcessingException("Incomplete sequence "+sequenceID+" dropped",entry,null));
+				} catch (IllegalActionException e) {
+					// can't do much more...
+					logger.error("",e);
+				}
+			}
+		});
+		sequenceStatistics = new SequenceStatistics(this, sequences);
+		StatisticsServiceFactory.getService().registerStatistics(sequenceStatistics);
+		
+		if (logger.isTraceEnabled())
+			logger.trace(getInfo()+" doInitialize() - exit");
+			
+	}
+
+	/* (non-Javadoc)
+	 * @see be.isencia.passerelle.actor.Transformer#doFire(be.isencia.passerelle.message.ManagedMessage)
+	 */
+	protected void doFire(ManagedMessage message) throws ProcessingException {
+		if(logger.isTraceEnabled())
+			logger.trace(getInfo()+" doFire() - entry - message :"+message);
+		
+			if(message.isPartOfSequence()) {
+				SequenceAccumulator accumulator = sequences.getOrCreate(message.getSequenceID(), ACCUMULATOR_FACTORY);
+				try {
+					accumulator.add(message.getSequencePosition().longValue(), message.isSequenceEnd(), message.getID(), message.getBodyContent());
+				} catch (MessageException e) {
+					throw new ProcessingException("Error reading content of message in sequence",message,e);
+				}
+				
+				if(accumulator.isComplete()) {
+					ManagedMessage resultMsg=null;
+					try {
+						resultMsg = createMessage();
+						long[] msgIDs = accumulator.getMessageIDs();
+						for (int i = 0; i < msgIDs.length; i++) {
+							resultMsg.addCauseID(new Long(msgIDs[i]));
+						}
+						resultMsg.setBodyContent(accumulator.getElements(),ManagedMessage.objectContentType);
+						accumulator.clear();
+						sequences.remove(accumulator.getSequenceID());
+					} catch (MessageException e) {
+						throw new ProcessingException("Error during processing of complete sequence",accumulator,e);
+					}
+					
+					sendOutputMsg(output,resultMsg);
+				}
+			} else {
+				sendOutputMsg(output,message);
+			}
+			
+		
+		if(logger.isTraceEnabled())
+			logger.trace(getInfo()+" doFire() - exit");
+
+	}
+
+	/* (non-Javadoc)
+	 * @see be.isencia.passerelle.actor.Actor#getExtendedInfo()
+	 */
+	protected String getExtendedInfo() {
+		return "";
+	}
+
+	public SequenceStatistics getSequenceStatistics() {
+		return sequenceStatistics;
+	}
+
+	private final static SequenceRegistry.EntryFactory<SequenceAccumulator> ACCUMULATOR_FACTORY = new SequenceRegistry.EntryFactory<SequenceAccumulator>() {
+		public SequenceAccumulator createEntry(Long sequenceID) {
+			return new SequenceAccumulator(sequenceID);
+		}
+	};
+
+}
@@ -14,12 +14,6 @@
 */
 package com.isencia.passerelle.actor.sequence;
 
-import java.util.HashMap;
-import java.util.Map;
-
-
-
-
 import com.isencia.passerelle.actor.InitializationException;
 import com.isencia.passerelle.actor.ProcessingException;
 import com.isencia.passerelle.actor.Transformer;
@@ -31,10 +25,17 @@ import com.isencia.passerelle.core.PortListener;
 import com.isencia.passerelle.domain.cap.Director;
 import com.isencia.passerelle.message.ManagedMessage;
 import com.isencia.passerelle.message.MessageHelper;
+import com.isencia.passerelle.message.internal.sequence.SequenceRegistry;
 import com.isencia.passerelle.message.internal.sequence.SequenceTrace;
+import com.isencia.passerelle.statistics.SequenceStatistics;
+import com.isencia.passerelle.statistics.StatisticsServiceFactory;
 
+import ptolemy.data.IntToken;
 import ptolemy.data.Token;
+import ptolemy.data.expr.Parameter;
+import ptolemy.data.type.BaseType;
 import ptolemy.kernel.CompositeEntity;
+import ptolemy.kernel.util.Attribute;
 import ptolemy.kernel.util.IllegalActionException;
 import ptolemy.kernel.util.NameDuplicationException;
 
@@ -47,13 +48,27 @@ import ptolemy.kernel.util.NameDuplicationException;
  * a corresponding notification msg via its <code>seqFinished</code> output
  * port.
  * </ul>
+ * <p>
+ * The messages of the input port and the feedback messages are handled in different threads,
+ * so the sequences are kept in a thread-safe SequenceRegistry.
+ * To protect against sequences that never complete, e.g. because a message got lost in the model,
+ * a max nr of sequences and/or a timeout can be configured. Sequences that exceed these limits
+ * are dropped, and reported as an error.
+ * The nrs of live, completed and dropped sequences are available as statistics.
+ * </p>
  * 
  * @author erwin dl
  */
 public class SequenceTracker extends Transformer {
 	private static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(SequenceTracker.class);
 	
-	private Map sequences = new HashMap();
+	public final static String MAX_SEQUENCES_PARAM = "Max sequences";
+	public final static String SEQUENCE_TIMEOUT_PARAM = "Sequence timeout (s)";
+
+	private SequenceRegistry<SequenceTrace> sequences = new SequenceRegistry<SequenceTrace>(0, 0);
+	private SequenceStatistics sequenceStatistics;
+	private int maxSequences = 0;
+	private int sequenceTimeout = 0;
 	// flag to catch race conditions between threads of handled and input message processing
 	private boolean seqFinishedMsgPending = false;
 	
@@ -67,6 +82,11 @@ public class SequenceTracker extends Transformer {
 	// completely handled
 	public Port seqFinished;
 	
+	// 0 means no limit
+	public Parameter maxSequencesParam;
+	// in seconds, 0 means no timeout
+	public Parameter sequenceTimeoutParam;
+	
 	/**
 	 * @param container
 	 * @param name
@@ -77,6 +97,33 @@ public class SequenceTracker extends Transformer {
 		super(container, name);
 		handled = PortFactory.getInstance().createInputPort(this,"handledMsg", null);
 		seqFinished = PortFactory.getInstance().createOutputPort(this,"seqFinished");
+		
+		maxSequencesParam = new Parameter(this, MAX_SEQUENCES_PARAM, new IntToken(maxSequences));
+		maxSequencesParam.setTypeEquals(BaseType.INT);
+		registerConfigurableParameter(maxSequencesParam);
+
+		sequenceTimeoutParam = new Parameter(this, SEQUENCE_TIMEOUT_PARAM, new IntToken(sequenceTimeout));
+		sequenceTimeoutParam.setTypeEquals(BaseType.INT);
+		registerConfigurableParameter(sequenceTimeoutParam);
+	}
+
+	/**
+	 *  @param attribute The attribute that changed.
+	 *  @exception IllegalActionException   */
+	public void attributeChanged(Attribute attribute) throws IllegalActionException {
+		if (attribute == maxSequencesParam) {
+			int max = ((IntToken) maxSequencesParam.getToken()).intValue();
+			if (max < 0) {
+				throw new IllegalActionException(maxSequencesParam, "The max nr of sequences can not be negative");
+			}
+			maxSequences = max;
+		} else if (attribute == sequenceTimeoutParam) {
+			int timeout = ((IntToken) sequenceTimeoutParam.getToken()).intValue();
+			if (timeout < 0) {
+				throw new IllegalActionException(sequenceTimeoutParam, "The sequence timeout can not be negative");
+			}
+			sequenceTimeout = timeout;
+		} else super.attributeChanged(attribute);
 	}
 
 	/* (non-Javadoc)
@@ -87,8 +134,20 @@ public class SequenceTracker extends Transformer {
 			logger.trace(getInfo()+" doInitialize() - entry");
 			
 		super.doInitialize();
-		sequences.clear();
+		sequences = new SequenceRegistry<SequenceTrace>(maxSequences, sequenceTimeout * 1000L);
+		sequences.setEvictionListener(new SequenceRegistry.EvictionListener<SequenceTrace>() {
+			public void sequenceEvicted(Long sequenceID, SequenceTrace entry) {
+				try {
+					sendErrorMessage(new ProcessingException("Sequence "+sequenceID+" dropped before it was completely handled",entry,null));
+				} catch (IllegalActionException e) {
+					// can't do much more...
+					logger.error("",e);
+				}
+			}
+		});
 		seqFinishedMsgPending = false;
+		sequenceStatistics = new SequenceStatistics(this, sequences);
+		StatisticsServiceFactory.getService().registerStatistics(sequenceStatistics);
 
 		
 		handledHandler = new PortHandler(handled, new PortListener() {
@@ -124,7 +183,7 @@ public class SequenceTracker extends Transformer {
 	 * @throws IllegalActionException 
 	 */
 	protected void acceptHandledMessage(ManagedMessage message) {
-		SequenceTrace seqTrace = (SequenceTrace) sequences.get(message.getSequenceID());
+		SequenceTrace seqTrace = sequences.get(message.getSequenceID());
 		if(seqTrace==null) {
 			// notify our director about the problem
 			try {
@@ -172,11 +231,7 @@ public class SequenceTracker extends Transformer {
 		
 		try {
 			if(message.isPartOfSequence()) {
-				SequenceTrace seqTrace = (SequenceTrace) sequences.get(message.getSequenceID());
-				if(seqTrace==null) {
-					seqTrace = new SequenceTrace(message.getSequenceID());
-					sequences.put(seqTrace.getSequenceID(),seqTrace);
-				}
+				SequenceTrace seqTrace = sequences.getOrCreate(message.getSequenceID(), TRACE_FACTORY);
 				seqTrace.addMessage(message);
 			}
 		} catch (Exception e) {
@@ -201,6 +256,7 @@ public class SequenceTracker extends Transformer {
 		// so we need another criterium to determine the end of this actor's
 		// meaningful lifetime: e.g. whether there are still sequences active
 		//return super.doPostFire() || handledInputStillAlive;
+		sequences.evictExpired();
 		return super.doPostFire() || (handled.getWidth()>0 && (!sequences.isEmpty() || seqFinishedMsgPending));
 	}
 	/* (non-Javadoc)
@@ -210,4 +266,14 @@ public class SequenceTracker extends Transformer {
 		return "";
 	}
 
+	public SequenceStatistics getSequenceStatistics() {
+		return sequenceStatistics;
+	}
+
+	private final static SequenceRegistry.EntryFactory<SequenceTrace> TRACE_FACTORY = new SequenceRegistry.EntryFactory<SequenceTrace>() {
+		public SequenceTrace createEntry(Long sequenceID) {
+			return new SequenceTrace(sequenceID);
+		}
+	};
+
 }
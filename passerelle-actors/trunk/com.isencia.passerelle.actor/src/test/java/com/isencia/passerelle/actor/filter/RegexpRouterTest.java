@@ -0,0 +1,221 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.actor.filter;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import ptolemy.data.IntToken;
+import ptolemy.data.expr.StringParameter;
+import ptolemy.kernel.CompositeEntity;
+import ptolemy.kernel.util.IllegalActionException;
+import ptolemy.kernel.util.NameDuplicationException;
+
+import com.isencia.passerelle.actor.InitializationException;
+import com.isencia.passerelle.actor.ProcessingException;
+import com.isencia.passerelle.actor.Sink;
+import com.isencia.passerelle.actor.Source;
+import com.isencia.passerelle.core.Port;
+import com.isencia.passerelle.domain.cap.Director;
+import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.model.Flow;
+import com.isencia.passerelle.model.FlowManager;
+
+/**
+ * RegexpRouterTest
+ * 
+ * Checks that each msg goes to the output of the first matching rule, or to the default output,
+ * and that the rule parameters and ports follow the "Number of rules", also on a model loaded from MoML.
+ * 
+ * @author erwin dl
+ */
+public class RegexpRouterTest extends TestCase {
+
+	private static final String[] TEXTS = new String[] { "xaby", "xay", "zzz", "ab", "bb" };
+
+	public void testRouting() throws Exception {
+		Flow flow = createFlow();
+
+		new FlowManager().executeBlocking(flow, null);
+
+		assertRouted(flow);
+	}
+
+	public void testRuleOrder() throws Exception {
+		Flow flow = createFlow();
+		RegexpRouter router = (RegexpRouter) flow.getEntity("router");
+		// now the more general rule comes first, so it gets all msgs matching "a"
+		setExpression(router, 0, "a");
+		setExpression(router, 1, "ab");
+
+		new FlowManager().executeBlocking(flow, null);
+
+		assertEquals(list("xaby", "xay", "ab"), ((TextSink) flow.getEntity("sink0")).texts);
+		assertEquals(list(), ((TextSink) flow.getEntity("sink1")).texts);
+		assertEquals(list("zzz", "bb"), ((TextSink) flow.getEntity("defaultSink")).texts);
+	}
+
+	public void testLoadedModel() throws Exception {
+		StringWriter moml = new StringWriter();
+		FlowManager.writeMoml(createFlow(), moml);
+		Flow flow = FlowManager.readMoml(new StringReader(moml.toString()));
+		((TextSource) flow.getEntity("source")).texts = TEXTS;
+		RegexpRouter router = (RegexpRouter) flow.getEntity("router");
+
+		// the parameters and ports created for the rules are found again, and not duplicated
+		assertEquals(2, ((IntToken) router.ruleCountParam.getToken()).intValue());
+		assertEquals("ab", getExpression(router, 0));
+		assertEquals("a", getExpression(router, 1));
+		assertEquals(1, router.getPort("output 0").linkedRelationList().size());
+		assertEquals(1, router.getPort("output 1").linkedRelationList().size());
+		assertEquals(2, getRuleOutputCount(router));
+
+		new FlowManager().executeBlocking(flow, null);
+		assertRouted(flow);
+
+		router.ruleCountParam.setToken(new IntToken(1));
+		assertNotNull(router.getAttribute("Expression 0"));
+		assertNotNull(router.getPort("output 0"));
+		assertNull(router.getAttribute("Expression 1"));
+		assertNull(router.getPort("output 1"));
+		assertEquals(1, getRuleOutputCount(router));
+
+		router.ruleCountParam.setToken(new IntToken(3));
+		assertEquals("ab", getExpression(router, 0));
+		assertEquals("", getExpression(router, 1));
+		assertEquals("", getExpression(router, 2));
+		assertTrue(router.getPort("output 1") instanceof Port);
+		assertTrue(router.getPort("output 2") instanceof Port);
+		assertEquals(3, getRuleOutputCount(router));
+
+		try {
+			router.ruleCountParam.setToken(new IntToken(-1));
+			fail("A negative number of rules must be refused");
+		} catch (IllegalActionException e) {
+			// expected
+		}
+	}
+
+	private Flow createFlow() throws Exception {
+		Flow flow = new Flow("RegexpRouterTest", null);
+		new Director(flow, "director");
+		TextSource source = new TextSource(flow, "source");
+		source.texts = TEXTS;
+		RegexpRouter router = new RegexpRouter(flow, "router");
+		router.ruleCountParam.setToken(new IntToken(2));
+		setExpression(router, 0, "ab");
+		setExpression(router, 1, "a");
+		TextSink sink0 = new TextSink(flow, "sink0");
+		TextSink sink1 = new TextSink(flow, "sink1");
+		TextSink defaultSink = new TextSink(flow, "defaultSink");
+		flow.connect(source.output, router.input);
+		flow.connect((Port) router.getPort("output 0"), sink0.input);
+		flow.connect((Port) router.getPort("output 1"), sink1.input);
+		flow.connect(router.output, defaultSink.input);
+		return flow;
+	}
+
+	private void assertRouted(Flow flow) {
+		// "xaby" matches both rules, and must go to the first one
+		assertEquals(list("xaby", "ab"), ((TextSink) flow.getEntity("sink0")).texts);
+		assertEquals(list("xay"), ((TextSink) flow.getEntity("sink1")).texts);
+		assertEquals(list("zzz", "bb"), ((TextSink) flow.getEntity("defaultSink")).texts);
+	}
+
+	private static void setExpression(RegexpRouter router, int rule, String expression) {
+		((StringParameter) router.getAttribute(RegexpRouter.EXPRESSION_PARAM_PREFIX + rule)).setExpression(expression);
+	}
+
+	private static String getExpression(RegexpRouter router, int rule) {
+		return ((StringParameter) router.getAttribute(RegexpRouter.EXPRESSION_PARAM_PREFIX + rule)).getExpression();
+	}
+
+	private static int getRuleOutputCount(RegexpRouter router) {
+		int count = 0;
+		for (Object port : router.portList()) {
+			if (((Port) port).getName().startsWith(RegexpRouter.OUTPUT_PORT_PREFIX)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static List<String> list(String... texts) {
+		List<String> result = new ArrayList<String>();
+		Collections.addAll(result, texts);
+		return result;
+	}
+
+	public static class TextSource extends Source {
+		String[] texts = new String[0];
+		private int sent;
+
+		public TextSource(CompositeEntity container, String name) throws NameDuplicationException, IllegalActionException {
+			super(container, name);
+		}
+
+		protected void doInitialize() throws InitializationException {
+			super.doInitialize();
+			sent = 0;
+		}
+
+		protected ManagedMessage getMessage() throws ProcessingException {
+			if (sent == texts.length) {
+				return null;
+			}
+			ManagedMessage msg = createMessage();
+			try {
+				msg.setBodyContentPlainText(texts[sent++]);
+			} catch (Exception e) {
+				throw new ProcessingException("", msg, e);
+			}
+			return msg;
+		}
+
+		protected String getExtendedInfo() {
+			return "";
+		}
+	}
+
+	public static class TextSink extends Sink {
+		final List<String> texts = Collections.synchronizedList(new ArrayList<String>());
+
+		public TextSink(CompositeEntity container, String name) throws NameDuplicationException, IllegalActionException {
+			super(container, name);
+		}
+
+		protected void doInitialize() throws InitializationException {
+			super.doInitialize();
+			texts.clear();
+		}
+
+		protected void sendMessage(ManagedMessage message) throws ProcessingException {
+			try {
+				texts.add(message.getBodyContentAsString());
+			} catch (Exception e) {
+				throw new ProcessingException("", message, e);
+			}
+		}
+
+		protected String getExtendedInfo() {
+			return "";
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.actor.flow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import ptolemy.data.DoubleToken;
+import ptolemy.kernel.CompositeEntity;
+import ptolemy.kernel.util.IllegalActionException;
+import ptolemy.kernel.util.NameDuplicationException;
+
+import com.isencia.passerelle.actor.InitializationException;
+import com.isencia.passerelle.actor.ProcessingException;
+import com.isencia.passerelle.actor.Sink;
+import com.isencia.passerelle.actor.Source;
+import com.isencia.passerelle.domain.cap.Director;
+import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.model.Flow;
+import com.isencia.passerelle.model.FlowManager;
+
+/**
+ * DelayTest
+ * 
+ * Runs a burst of msgs through a Delay actor : each msg must be released at least the delay after it was sent,
+ * in the order in which they were sent, and the msgs must wait concurrently.
+ * The concurrency is checked against the time that sequential delays would take,
+ * so the test does not depend on the speed of the machine or on the logging.
+ * 
+ * @author erwin dl
+ */
+public class DelayTest extends TestCase {
+
+	public void testConcurrentDelays() throws Exception {
+		int nrOfMessages = 500;
+		double delay = 0.5;
+
+		Flow flow = new Flow("DelayTest", null);
+		new Director(flow, "director");
+		BurstSource source = new BurstSource(flow, "source");
+		source.nrOfMessages = nrOfMessages;
+		Delay delayActor = new Delay(flow, "delay");
+		delayActor.timeParameter.setToken(new DoubleToken(delay));
+		ArrivalSink sink = new ArrivalSink(flow, "sink");
+		flow.connect(source.output, delayActor.input);
+		flow.connect(delayActor.output, sink.input);
+
+		new FlowManager().executeBlocking(flow, null);
+
+		assertEquals("Wrong nr of msgs", nrOfMessages, sink.arrivals.size());
+		for (int i = 0; i < nrOfMessages; i++) {
+			assertEquals("Msgs not in order", Integer.toString(i), sink.arrivals.get(i));
+			double msgDelay = (sink.arrivalTimes.get(i).longValue() - source.sentTimes[i]) / 1.0E9;
+			assertTrue("Msg " + i + " released too early, after " + msgDelay + " s", msgDelay >= delay);
+		}
+		double duration = (sink.arrivalTimes.get(nrOfMessages - 1).longValue() - source.sentTimes[0]) / 1.0E9;
+		assertTrue("Msgs not delayed concurrently, took " + duration + " s", duration < nrOfMessages * delay / 10);
+		assertEquals(0, delayActor.getPendingMessageCount());
+	}
+
+	public static class BurstSource extends Source {
+		int nrOfMessages;
+		// as from System.nanoTime(), by msg nr
+		long[] sentTimes;
+		private int sent;
+
+		public BurstSource(CompositeEntity container, String name) throws NameDuplicationException, IllegalActionException {
+			super(container, name);
+		}
+
+		protected void doInitialize() throws InitializationException {
+			super.doInitialize();
+			sent = 0;
+			sentTimes = new long[nrOfMessages];
+		}
+
+		protected ManagedMessage getMessage() throws ProcessingException {
+			if (sent == nrOfMessages) {
+				return null;
+			}
+			ManagedMessage msg = createMessage();
+			sentTimes[sent] = System.nanoTime();
+			try {
+				msg.setBodyContentPlainText(Integer.toString(sent++));
+			} catch (Exception e) {
+				throw new ProcessingException("", msg, e);
+			}
+			return msg;
+		}
+
+		protected String getExtendedInfo() {
+			return "";
+		}
+	}
+
+	public static class ArrivalSink extends Sink {
+		final List<String> arrivals = Collections.synchronizedList(new ArrayList<String>());
+		// as from System.nanoTime(), in the order of the arrivals
+		final List<Long> arrivalTimes = Collections.synchronizedList(new ArrayList<Long>());
+
+		public ArrivalSink(CompositeEntity container, String name) throws NameDuplicationException, IllegalActionException {
+			super(container, name);
+		}
+
+		protected void sendMessage(ManagedMessage message) throws ProcessingException {
+			long arrival = System.nanoTime();
+			try {
+				arrivals.add(message.getBodyContentAsString());
+				arrivalTimes.add(Long.valueOf(arrival));
+			} catch (Exception e) {
+				throw new ProcessingException("", message, e);
+			}
+		}
+
+		protected String getExtendedInfo() {
+			return "";
+		}
+	}
+}
@@ -0,0 +1,243 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.actor.general;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import ptolemy.data.BooleanToken;
+import ptolemy.data.IntToken;
+import ptolemy.kernel.CompositeEntity;
+import ptolemy.kernel.util.IllegalActionException;
+import ptolemy.kernel.util.NameDuplicationException;
+import ptolemy.kernel.util.NamedObj;
+
+import com.isencia.passerelle.actor.InitializationException;
+import com.isencia.passerelle.actor.ProcessingException;
+import com.isencia.passerelle.actor.Sink;
+import com.isencia.passerelle.actor.Source;
+import com.isencia.passerelle.domain.cap.Director;
+import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.model.Flow;
+import com.isencia.passerelle.model.FlowManager;
+
+/**
+ * ModelExecutorTest
+ * 
+ * Executes a sub-model with a Const and a recording sink for each trigger,
+ * and checks that cached model instances are reused one execution at a time,
+ * with the parameter settings of one execution not leaking into the next ones.
+ * 
+ * @author erwin dl
+ */
+public class ModelExecutorTest extends TestCase {
+
+	private File modelFile;
+
+	protected void setUp() throws Exception {
+		RecordingSink.clear();
+		modelFile = File.createTempFile("ModelExecutorTest", ".moml");
+		writeModel("default");
+	}
+
+	protected void tearDown() throws Exception {
+		modelFile.delete();
+	}
+
+	public void testCachedModelIsReused() throws Exception {
+		runExecutor(new String[] { "a", null, "c" }, true, 1);
+
+		assertEquals(list("a", "default", "c"), RecordingSink.getValues());
+		assertEquals("Model parsed more than once", 1, RecordingSink.getModelCount());
+	}
+
+	public void testModifiedModelIsParsedAgain() throws Exception {
+		runExecutor(new String[] { null }, true, 1);
+		writeModel("modified");
+		// the file time may have a resolution of seconds
+		modelFile.setLastModified(modelFile.lastModified() + 2000);
+		runExecutor(new String[] { null, "b" }, true, 1);
+
+		assertEquals(list("default", "modified", "b"), RecordingSink.getValues());
+		assertEquals(2, RecordingSink.getModelCount());
+	}
+
+	public void testUncachedModelIsParsedPerExecution() throws Exception {
+		runExecutor(new String[] { "a", null }, false, 1);
+
+		assertEquals(list("a", "default"), RecordingSink.getValues());
+		assertEquals(2, RecordingSink.getModelCount());
+	}
+
+	public void testConcurrentExecutions() throws Exception {
+		int nrOfTriggers = 40;
+		int maxConcurrentRuns = 4;
+		String[] values = new String[nrOfTriggers];
+		for (int i = 0; i < nrOfTriggers; i++) {
+			values[i] = (i % 3 == 0) ? null : Integer.toString(i);
+		}
+		CompletionSink completions = runExecutor(values, true, maxConcurrentRuns);
+
+		assertEquals(nrOfTriggers, completions.count);
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < nrOfTriggers; i++) {
+			expected.add(values[i] != null ? values[i] : "default");
+		}
+		List<String> received = RecordingSink.getValues();
+		Collections.sort(expected);
+		Collections.sort(received);
+		assertEquals(expected, received);
+		// each instance is used by one execution at a time
+		assertTrue("Parsed " + RecordingSink.getModelCount() + " models", RecordingSink.getModelCount() <= maxConcurrentRuns);
+	}
+
+	private CompletionSink runExecutor(String[] values, boolean cacheModels, int maxConcurrentRuns) throws Exception {
+		Flow flow = new Flow("ModelExecutorTest", null);
+		new Director(flow, "director");
+		TriggerSource source = new TriggerSource(flow, "source");
+		source.values = values;
+		ModelExecutor executor = new ModelExecutor(flow, "executor");
+		executor.modelParameter.setExpression(modelFile.getAbsolutePath());
+		executor.cacheModelsParameter.setToken(new BooleanToken(cacheModels));
+		executor.maxConcurrentRunsParameter.setToken(new IntToken(maxConcurrentRuns));
+		CompletionSink sink = new CompletionSink(flow, "sink");
+		flow.connect(source.output, executor.trigger);
+		flow.connect(executor.completed, sink.input);
+
+		new FlowManager().executeBlocking(flow, null);
+		return sink;
+	}
+
+	private void writeModel(String value) throws Exception {
+		Flow subModel = new Flow("SubModel", null);
+		new Director(subModel, "director");
+		Const constActor = new Const(subModel, "const");
+		constActor.value.setExpression(value);
+		RecordingSink sink = new RecordingSink(subModel, "sink");
+		subModel.connect(constActor.output, sink.input);
+		FileWriter out = new FileWriter(modelFile);
+		try {
+			FlowManager.writeMoml(subModel, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static List<String> list(String... values) {
+		List<String> result = new ArrayList<String>();
+		Collections.addAll(result, values);
+		return result;
+	}
+
+	public static class TriggerSource extends Source {
+		// the Const value per trigger, or null to send a trigger without parameter settings
+		String[] values = new String[0];
+		private int sent;
+
+		public TriggerSource(CompositeEntity container, String name) throws NameDuplicationException, IllegalActionException {
+			super(container, name);
+		}
+
+		protected void doInitialize() throws InitializationException {
+			super.doInitialize();
+			sent = 0;
+		}
+
+		protected ManagedMessage getMessage() throws ProcessingException {
+			if (sent == values.length) {
+				return null;
+			}
+			ManagedMessage msg = createMessage();
+			try {
+				if (values[sent] != null) {
+					msg.setBodyHeader("const.value", values[sent]);
+				}
+				sent++;
+			} catch (Exception e) {
+				throw new ProcessingException("", msg, e);
+			}
+			return msg;
+		}
+
+		protected String getExtendedInfo() {
+			return "";
+		}
+	}
+
+	public static class CompletionSink extends Sink {
+		volatile int count;
+
+		public CompletionSink(CompositeEntity container, String name) throws NameDuplicationException, IllegalActionException {
+			super(container, name);
+		}
+
+		protected void sendMessage(ManagedMessage message) throws ProcessingException {
+			count++;
+		}
+
+		protected String getExtendedInfo() {
+			return "";
+		}
+	}
+
+	/**
+	 * Records the received values, and the models in which it was executed,
+	 * in static lists, as the sink is created by parsing the sub-model.
+	 */
+	public static class RecordingSink extends Sink {
+		private final static List<String> values = new ArrayList<String>();
+		private final static Map<NamedObj, Boolean> models = new IdentityHashMap<NamedObj, Boolean>();
+
+		public RecordingSink(CompositeEntity container, String name) throws NameDuplicationException, IllegalActionException {
+			super(container, name);
+		}
+
+		static synchronized void clear() {
+			values.clear();
+			models.clear();
+		}
+
+		static synchronized List<String> getValues() {
+			return new ArrayList<String>(values);
+		}
+
+		static synchronized int getModelCount() {
+			return models.size();
+		}
+
+		protected void sendMessage(ManagedMessage message) throws ProcessingException {
+			try {
+				String value = message.getBodyContentAsString();
+				synchronized (RecordingSink.class) {
+					values.add(value);
+					models.put(toplevel(), Boolean.TRUE);
+				}
+			} catch (Exception e) {
+				throw new ProcessingException("", message, e);
+			}
+		}
+
+		protected String getExtendedInfo() {
+			return "";
+		}
+	}
+}
@@ -0,0 +1,70 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.actor.convert;
+
+import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.message.MessageFactory;
+
+/**
+ * Measures the per-message cost of a small header-rewriting script,
+ * as executed by the ScriptConverter actors.
+ * <p>
+ * The "BSF" figures repeat what the actors used to do : pass the script source
+ * to a BSFManager for each message. The "compiled" figures use the script
+ * that is compiled once at initialization.
+ * </p>
+ * <p>
+ * Usage : ScriptExecutionBenchmark [nrOfMessages]
+ * </p>
+ *
+ * @author erwin dl
+ */
+public class ScriptExecutionBenchmark {
+
+	private final static String SCRIPT = "container.setBodyHeader(\"status\", \"processed\")\n";
+
+	public static void main(String[] args) throws Exception {
+		int nrOfMessages = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		ManagedMessage msg = MessageFactory.getInstance().createMessage();
+		msg.setBodyContentPlainText("hello");
+
+		String[] languages = new String[] {ScriptExecutor.JYTHON, ScriptExecutor.JAVASCRIPT};
+		for (int run = 0; run < 3; run++) {
+			System.out.println("--- run " + run);
+			for (int i = 0; i < languages.length; i++) {
+				String language = languages[i];
+				report(language + " BSF", runExecutor(language, false, msg, nrOfMessages), nrOfMessages);
+				report(language + " compiled", runExecutor(language, true, msg, nrOfMessages), nrOfMessages);
+			}
+		}
+	}
+
+	private static void report(String label, long duration, int nrOfMessages) {
+		System.out.println(label + " : " + (duration / nrOfMessages / 1000) + " us/message");
+	}
+
+	private static long runExecutor(String language, boolean compile, ManagedMessage msg, int nrOfMessages) throws Exception {
+		ScriptExecutor executor = ScriptExecutor.newExecutor(language, "benchmark", SCRIPT, ScriptExecutionBenchmark.class.getClassLoader(), compile);
+		try {
+			long start = System.nanoTime();
+			for (int i = 0; i < nrOfMessages; i++) {
+				executor.exec("container", msg);
+			}
+			return System.nanoTime() - start;
+		} finally {
+			executor.terminate();
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.actor.flow;
+
+import ptolemy.data.DoubleToken;
+import ptolemy.kernel.CompositeEntity;
+import ptolemy.kernel.util.IllegalActionException;
+import ptolemy.kernel.util.NameDuplicationException;
+
+import com.isencia.passerelle.actor.InitializationException;
+import com.isencia.passerelle.actor.ProcessingException;
+import com.isencia.passerelle.actor.Sink;
+import com.isencia.passerelle.actor.Source;
+import com.isencia.passerelle.domain.cap.Director;
+import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.model.Flow;
+import com.isencia.passerelle.model.FlowManager;
+
+/**
+ * Runs a flow where a source sends a burst of msgs through a Delay actor,
+ * and measures the time until the last msg has arrived in the sink.
+ * <p>
+ * As the msgs are waiting concurrently, this should be about 1 delay period,
+ * and not nrOfMessages times the delay, as when the Delay slept on each msg.
+ * The sink also checks that the msgs arrive in the order in which they were sent.
+ * </p>
+ * <p>
+ * Usage : DelayTrial [nrOfMessages] [delay in s]
+ * </p>
+ *
+ * @author erwin dl
+ */
+public class DelayTrial {
+
+	public static void main(String[] args) throws Exception {
+		int nrOfMessages = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		double delay = args.length > 1 ? Double.parseDouble(args[1]) : 0.5;
+
+		for (int run = 0; run < 3; run++) {
+			Flow flow = new Flow("DelayTrial", null);
+			new Director(flow, "director");
+			BurstSource source = new BurstSource(flow, "source");
+			source.nrOfMessages = nrOfMessages;
+			Delay delayActor = new Delay(flow, "delay");
+			delayActor.timeParameter.setToken(new DoubleToken(delay));
+			ArrivalSink sink = new ArrivalSink(flow, "sink");
+			flow.connect(source.output, delayActor.input);
+			flow.connect(delayActor.output, sink.input);
+
+			long start = System.nanoTime();
+			new FlowManager().executeBlocking(flow, null);
+			long duration = (sink.lastArrival - start) / 1000000;
+			System.out.println("run " + run + " : " + sink.count + " msgs with delay " + delay + " s in " + duration + " ms"
+					+ (sink.inOrder ? "" : " - NOT IN ORDER"));
+		}
+	}
+
+	public static class BurstSource extends Source {
+		int nrOfMessages;
+		private int sent;
+
+		public BurstSource(CompositeEntity container, String name) throws NameDuplicationException, IllegalActionException {
+			super(container, name);
+		}
+
+		protected void doInitialize() throws InitializationException {
+			super.doInitialize();
+			sent = 0;
+		}
+
+		protected ManagedMessage getMessage() throws ProcessingException {
+			if (sent == nrOfMessages) {
+				return null;
+			}
+			ManagedMessage msg = createMessage();
+			try {
+				msg.setBodyContentPlainText(Integer.toString(sent++));
+			} catch (Exception e) {
+				throw new ProcessingException("", msg, e);
+			}
+			return msg;
+		}
+
+		protected String getExtendedInfo() {
+			return "";
+		}
+	}
+
+	public static class ArrivalSink extends Sink {
+		int count;
+		boolean inOrder = true;
+		long lastArrival;
+
+		public ArrivalSink(CompositeEntity container, String name) throws NameDuplicationException, IllegalActionException {
+			super(container, name);
+		}
+
+		protected void sendMessage(ManagedMessage message) throws ProcessingException {
+			lastArrival = System.nanoTime();
+			try {
+				inOrder &= Integer.parseInt(message.getBodyContentAsString()) == count;
+			} catch (Exception e) {
+				throw new ProcessingException("", message, e);
+			}
+			count++;
+		}
+
+		protected String getExtendedInfo() {
+			return "";
+		}
+	}
+}
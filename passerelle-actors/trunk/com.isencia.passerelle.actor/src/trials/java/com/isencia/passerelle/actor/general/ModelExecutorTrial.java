@@ -0,0 +1,140 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.actor.general;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import ptolemy.data.BooleanToken;
+import ptolemy.data.IntToken;
+import ptolemy.kernel.CompositeEntity;
+import ptolemy.kernel.util.IllegalActionException;
+import ptolemy.kernel.util.NameDuplicationException;
+
+import com.isencia.passerelle.actor.InitializationException;
+import com.isencia.passerelle.actor.ProcessingException;
+import com.isencia.passerelle.actor.Sink;
+import com.isencia.passerelle.actor.Source;
+import com.isencia.passerelle.domain.cap.Director;
+import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.model.Flow;
+import com.isencia.passerelle.model.FlowManager;
+
+/**
+ * Runs a flow where a source sends a burst of trigger msgs to a ModelExecutor,
+ * and measures the time until all sub-model executions have been reported as completed.
+ * <p>
+ * The sub-model is a small flow with a Const and a DevNullActor, written to a temporary file.
+ * The runs compare parsing the model on each trigger with reusing the cached parsed model instances,
+ * and executing the models one by one or concurrently. The trigger msgs also set the
+ * Const's value, so the parameter settings are applied and reset on each execution.
+ * </p>
+ * <p>
+ * Usage : ModelExecutorTrial [nrOfTriggers] [maxConcurrentRuns]
+ * </p>
+ *
+ * @author erwin dl
+ */
+public class ModelExecutorTrial {
+
+	public static void main(String[] args) throws Exception {
+		int nrOfTriggers = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int maxConcurrentRuns = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+		File modelFile = File.createTempFile("ModelExecutorTrial", ".moml");
+		modelFile.deleteOnExit();
+		Flow subModel = new Flow("SubModel", null);
+		new Director(subModel, "director");
+		Const constActor = new Const(subModel, "const");
+		DevNullActor sink = new DevNullActor(subModel, "sink");
+		subModel.connect(constActor.output, sink.input);
+		FileWriter out = new FileWriter(modelFile);
+		FlowManager.writeMoml(subModel, out);
+		out.close();
+
+		for (int run = 0; run < 3; run++) {
+			runTrial(modelFile, nrOfTriggers, false, 1);
+			runTrial(modelFile, nrOfTriggers, true, 1);
+			runTrial(modelFile, nrOfTriggers, true, maxConcurrentRuns);
+		}
+	}
+
+	private static void runTrial(File modelFile, int nrOfTriggers, boolean cacheModels, int maxConcurrentRuns) throws Exception {
+		Flow flow = new Flow("ModelExecutorTrial", null);
+		new Director(flow, "director");
+		TriggerSource source = new TriggerSource(flow, "source");
+		source.nrOfMessages = nrOfTriggers;
+		ModelExecutor executor = new ModelExecutor(flow, "executor");
+		executor.modelParameter.setExpression(modelFile.getAbsolutePath());
+		executor.cacheModelsParameter.setToken(new BooleanToken(cacheModels));
+		executor.maxConcurrentRunsParameter.setToken(new IntToken(maxConcurrentRuns));
+		CompletionSink sink = new CompletionSink(flow, "sink");
+		flow.connect(source.output, executor.trigger);
+		flow.connect(executor.completed, sink.input);
+
+		long start = System.nanoTime();
+		new FlowManager().executeBlocking(flow, null);
+		long duration = (System.nanoTime() - start) / 1000000;
+		System.out.println((cacheModels ? "cached" : "parsed") + ", " + maxConcurrentRuns + " concurrent runs : "
+				+ sink.count + " executions in " + duration + " ms");
+	}
+
+	public static class TriggerSource extends Source {
+		int nrOfMessages;
+		private int sent;
+
+		public TriggerSource(CompositeEntity container, String name) throws NameDuplicationException, IllegalActionException {
+			super(container, name);
+		}
+
+		protected void doInitialize() throws InitializationException {
+			super.doInitialize();
+			sent = 0;
+		}
+
+		protected ManagedMessage getMessage() throws ProcessingException {
+			if (sent == nrOfMessages) {
+				return null;
+			}
+			ManagedMessage msg = createMessage();
+			try {
+				msg.setBodyHeader("const.value", Integer.toString(sent++));
+			} catch (Exception e) {
+				throw new ProcessingException("", msg, e);
+			}
+			return msg;
+		}
+
+		protected String getExtendedInfo() {
+			return "";
+		}
+	}
+
+	public static class CompletionSink extends Sink {
+		int count;
+
+		public CompletionSink(CompositeEntity container, String name) throws NameDuplicationException, IllegalActionException {
+			super(container, name);
+		}
+
+		protected void sendMessage(ManagedMessage message) throws ProcessingException {
+			count++;
+		}
+
+		protected String getExtendedInfo() {
+			return "";
+		}
+	}
+}
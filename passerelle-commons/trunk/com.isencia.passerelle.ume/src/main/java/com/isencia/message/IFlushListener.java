@@ -0,0 +1,33 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message;
+
+/**
+ * Listener for flushes of buffered sender channels, e.g. to maintain statistics.
+ * 
+ * @author erwin dl
+ */
+public interface IFlushListener {
+
+	/**
+	 * Called after each flush of a channel's buffered data.
+	 * 
+	 * @param channel
+	 * @param duration the duration of the flush in ns
+	 * @param byteCount the nr of bytes written since the previous flush, 
+	 * or -1 if the channel can not count them
+	 */
+	public void flushed(ISenderChannel channel, long duration, long byteCount);
+}
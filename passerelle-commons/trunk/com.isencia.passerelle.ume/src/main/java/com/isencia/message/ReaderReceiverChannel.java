@@ -125,11 +125,22 @@ public class ReaderReceiverChannel extends ReceiverChannel {
 		if (logger.isTraceEnabled())
 			logger.trace("open() - entry");
 		super.open();
-		getExtractor().open(getReader());
+		openExtractor();
 		if (logger.isTraceEnabled())
 			logger.trace("open() - exit");
 	}
 
+	/**
+	 * Starts the extractor on the channel's input.
+	 * By default, the extractor reads from the reader.
+	 * Subclasses can override this, e.g. to let an IByteChannelMessageExtractor 
+	 * read directly from a byte channel.
+	 * @throws ChannelException
+	 */
+	protected void openExtractor() throws ChannelException {
+		getExtractor().open(getReader());
+	}
+
 	/**
 	 * Returns the extractor.
 	 * @return IMessageExtractor
@@ -14,8 +14,14 @@
 */
 package com.isencia.message;
 
+import java.io.FilterWriter;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,6 +35,12 @@ import com.isencia.message.generator.MessageTextLineGenerator;
  * WriterSenderChannel
  * 
  * A sender channel implementation based on using a java.io.Writer implementation.
+ * <p>
+ * By default, the generator flushes the writer after each message.
+ * With a flush policy, the channel is buffered : the generator's flushes are ignored,
+ * and the channel flushes the writer after a number of messages, and/or when data has been
+ * pending for some time. Users can also flush explicitly, e.g. at the end of a sequence.
+ * </p>
  * 
  * @author erwin dl
  */
@@ -38,6 +50,26 @@ public class WriterSenderChannel extends SenderChannel {
 
 	private Writer writer = null;
 	private IMessageGenerator generator = null;
+
+	// checks the flush interval of all buffered channels
+	private final static ScheduledExecutorService flushScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "WriterSenderChannel-flusher");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	// default : the generator flushes after each message
+	private int flushMessageCount = 1;
+	private long flushIntervalMillis = 0;
+	private IFlushListener flushListener = null;
+
+	private final Object flushLock = new Object();
+	private int unflushedMessageCount = 0;
+	private long lastFlushTime = 0;
+	private long bytesWrittenAtLastFlush = 0;
+	private ScheduledFuture flushTask = null;
 	
 	/**
 	 * Constructor for WriterSenderChannel.
@@ -61,7 +93,17 @@ public class WriterSenderChannel extends SenderChannel {
 		if(logger.isTraceEnabled())
 			logger.trace("doSendMessage() - entry - message :"+message);
 			
-		getGenerator().sendMessage(message);
+		if(!isBuffered()) {
+			getGenerator().sendMessage(message);
+		} else {
+			synchronized (flushLock) {
+				getGenerator().sendMessage(message);
+				unflushedMessageCount++;
+				if(flushMessageCount>0 && unflushedMessageCount>=flushMessageCount) {
+					flush();
+				}
+			}
+		}
 				
 		if(logger.isTraceEnabled())
 			logger.trace("doSendMessage() - exit");
@@ -77,7 +119,23 @@ public class WriterSenderChannel extends SenderChannel {
 
 		if(!isOpen()) {
 			super.open();
-			getGenerator().open(getWriter());
+			if(!isBuffered()) {
+				getGenerator().open(getWriter());
+			} else {
+				getGenerator().open(new DeferredFlushWriter(getWriter()));
+				synchronized (flushLock) {
+					unflushedMessageCount = 0;
+					lastFlushTime = System.currentTimeMillis();
+					bytesWrittenAtLastFlush = Math.max(0, getBytesWritten());
+				}
+				if(flushIntervalMillis>0) {
+					flushTask = flushScheduler.scheduleWithFixedDelay(new Runnable() {
+						public void run() {
+							flushIfDue();
+						}
+					}, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+				}
+			}
 		}
 
 		if (logger.isTraceEnabled())
@@ -93,6 +151,13 @@ public class WriterSenderChannel extends SenderChannel {
 			logger.trace("close() - entry");
 
 		if(isOpen()) {
+			if(flushTask!=null) {
+				flushTask.cancel(false);
+				flushTask = null;
+			}
+			if(isBuffered() && getWriter()!=null) {
+				flush();
+			}
 			super.close();
 			getGenerator().close();
 			if(getWriter()!=null) {
@@ -108,6 +173,99 @@ public class WriterSenderChannel extends SenderChannel {
 	}
 
 
+	/**
+	 * Sets when the channel flushes its writer.
+	 * Both limits are applied when they are set. 
+	 * A count of 1 and an interval of 0 means that the generator flushes after each message,
+	 * which is the default behaviour.
+	 * The policy must be set before the channel is opened.
+	 * 
+	 * @param messageCount flush after this nr of messages; 0 means no limit
+	 * @param intervalMillis flush pending data at least after this time; 0 means no limit
+	 */
+	public void setFlushPolicy(int messageCount, long intervalMillis) {
+		this.flushMessageCount = messageCount;
+		this.flushIntervalMillis = intervalMillis;
+	}
+
+	public int getFlushMessageCount() {
+		return flushMessageCount;
+	}
+
+	public long getFlushIntervalMillis() {
+		return flushIntervalMillis;
+	}
+
+	/**
+	 * @return true if the channel determines when its writer is flushed
+	 */
+	public boolean isBuffered() {
+		return flushMessageCount!=1 || flushIntervalMillis>0;
+	}
+
+	public IFlushListener getFlushListener() {
+		return flushListener;
+	}
+
+	public void setFlushListener(IFlushListener flushListener) {
+		this.flushListener = flushListener;
+	}
+
+	/**
+	 * Writes all pending data of the writer.
+	 * 
+	 * @throws ChannelException
+	 */
+	public void flush() throws ChannelException {
+		synchronized (flushLock) {
+			if(getWriter()==null) {
+				return;
+			}
+			long start = System.nanoTime();
+			try {
+				getWriter().flush();
+			} catch (IOException e) {
+				throw new ChannelException(e.getMessage());
+			}
+			long duration = System.nanoTime() - start;
+			long bytesWritten = getBytesWritten();
+			long byteCount = -1;
+			if(bytesWritten>=0) {
+				byteCount = bytesWritten - bytesWrittenAtLastFlush;
+				bytesWrittenAtLastFlush = bytesWritten;
+			}
+			unflushedMessageCount = 0;
+			lastFlushTime = System.currentTimeMillis();
+			if(flushListener!=null) {
+				flushListener.flushed(this, duration, byteCount);
+			}
+		}
+	}
+
+	/**
+	 * Flushes when messages have been pending longer than the flush interval.
+	 */
+	private void flushIfDue() {
+		synchronized (flushLock) {
+			if(unflushedMessageCount>0 && System.currentTimeMillis()-lastFlushTime>=flushIntervalMillis) {
+				try {
+					flush();
+				} catch (Exception e) {
+					logger.error("flushIfDue() - Error flushing channel", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Can be overridden by channels that know how many bytes their writer has written.
+	 * 
+	 * @return the nr of bytes written to the channel's destination, or -1 if unknown
+	 */
+	protected long getBytesWritten() {
+		return -1;
+	}
+
 	/**
 	 * Returns the generator.
 	 * @return IMessageGenerator
@@ -150,4 +308,18 @@ public class WriterSenderChannel extends SenderChannel {
 			logger.trace("setWriter() - exit");
 	}
 
+	/**
+	 * Passes the generator's output to the channel's writer, 
+	 * but leaves the flushing to the channel.
+	 */
+	private static class DeferredFlushWriter extends FilterWriter {
+		DeferredFlushWriter(Writer out) {
+			super(out);
+		}
+
+		public void flush() {
+			// the channel's flush policy decides
+		}
+	}
+
 }
@@ -17,6 +17,8 @@ package com.isencia.message.db;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.HashMap;
 
 import org.slf4j.Logger;
@@ -30,6 +32,18 @@ import com.isencia.message.ReceiverChannel;
  * 
  * DatabaseReceiverChannel
  * 
+ * Sends the rows of a query result as messages.
+ * <p>
+ * By default, each row is sent as a map with the column labels as keys.
+ * In batch mode, up to batchSize rows are sent together as a columnar RowBatch.
+ * </p>
+ * <p>
+ * For large results, setting a fetch size lets the driver retrieve the rows
+ * from the database in blocks of that size. Accessing the columns by index
+ * avoids a lookup of the column label per value. In batch mode, the columns
+ * are always accessed by index.
+ * </p>
+ * 
  * @author wim geeraerts
  */
 public class DatabaseReceiverChannel extends ReceiverChannel {
@@ -37,9 +51,16 @@ public class DatabaseReceiverChannel extends ReceiverChannel {
 
 	private Connection connection;
 	private String query;
+	private Statement statement;
 	private ResultSet resultSet;
 	private ResultSetMetaData metaData;
 	private String[] columnNames;
+	private int[] columnTypes;
+
+	// 0 means the driver's default
+	private int fetchSize = 0;
+	private boolean columnAccessByIndex = false;
+	private int batchSize = 1;
 
 	/**
 	 * 
@@ -57,12 +78,17 @@ public class DatabaseReceiverChannel extends ReceiverChannel {
 		}
 
 		try {
-			resultSet = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)
-					.executeQuery(getQuery());
+			statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			if (fetchSize > 0) {
+				statement.setFetchSize(fetchSize);
+			}
+			resultSet = statement.executeQuery(getQuery());
 			metaData = resultSet.getMetaData();
 			columnNames = new String[metaData.getColumnCount()];
+			columnTypes = new int[metaData.getColumnCount()];
 			for (int column = 0; column < metaData.getColumnCount(); column++) {
 				columnNames[column] = metaData.getColumnLabel(column + 1);
+				columnTypes[column] = metaData.getColumnType(column + 1);
 			}
 		} catch (Exception e) {
 			throw new ChannelException(e.toString());
@@ -75,6 +101,7 @@ public class DatabaseReceiverChannel extends ReceiverChannel {
 		super.close();
 		try {
 			resultSet.close();
+			statement.close();
 			connection.close();
 			logger.debug("Channel Closed");
 		} catch (Exception e) {
@@ -83,13 +110,20 @@ public class DatabaseReceiverChannel extends ReceiverChannel {
 	}
 
 	protected Object doGetMessage() throws ChannelException {
+		if (batchSize > 1) {
+			return getBatch();
+		}
 		HashMap<String, Object> msg = null;
 		try {
 			if (resultSet.next()) {
 				msg = new HashMap<String, Object>();
 				for (int i = 0; i < columnNames.length; i++) {
 					String columnName = columnNames[i];
-					msg.put(columnName, resultSet.getObject(columnName));
+					if (columnAccessByIndex) {
+						msg.put(columnName, resultSet.getObject(i + 1));
+					} else {
+						msg.put(columnName, resultSet.getObject(columnName));
+					}
 				}
 			}
 			return msg;
@@ -98,6 +132,26 @@ public class DatabaseReceiverChannel extends ReceiverChannel {
 		}
 	}
 
+	/**
+	 * 
+	 * @return the next rows, or null if there are no more rows
+	 * @throws ChannelException
+	 */
+	private RowBatch getBatch() throws ChannelException {
+		RowBatch batch = null;
+		try {
+			while ((batch == null || batch.getRowCount() < batchSize) && resultSet.next()) {
+				if (batch == null) {
+					batch = new RowBatch(columnNames, columnTypes, batchSize);
+				}
+				batch.readRow(resultSet);
+			}
+			return batch;
+		} catch (SQLException e) {
+			throw new ChannelException(e.getMessage());
+		}
+	}
+
 	public String getQuery() {
 		return query;
 	}
@@ -105,4 +159,43 @@ public class DatabaseReceiverChannel extends ReceiverChannel {
 	public void setQuery(String query) {
 		this.query = query;
 	}
+
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * To be set before opening the channel.
+	 * 
+	 * @param fetchSize the nr of rows that the driver should retrieve at once, 
+	 * or 0 for the driver's default
+	 */
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	public boolean isColumnAccessByIndex() {
+		return columnAccessByIndex;
+	}
+
+	/**
+	 * 
+	 * @param columnAccessByIndex if true, the values are retrieved by column index
+	 * instead of by column label
+	 */
+	public void setColumnAccessByIndex(boolean columnAccessByIndex) {
+		this.columnAccessByIndex = columnAccessByIndex;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * 
+	 * @param batchSize if larger than 1, up to this nr of rows are sent as one RowBatch msg
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
 }
\ No newline at end of file
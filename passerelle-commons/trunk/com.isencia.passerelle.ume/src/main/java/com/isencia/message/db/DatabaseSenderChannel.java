@@ -0,0 +1,348 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.isencia.message.ChannelException;
+import com.isencia.message.SenderChannel;
+
+
+/**
+ * 
+ * DatabaseSenderChannel
+ * 
+ * Executes a prepared statement, typically an insert, for each row it receives.
+ * <p>
+ * A row can be sent as an Object[] or a List with the statement parameters in order, 
+ * or as a Map with the parameter names as keys. A RowBatch, e.g. from a DatabaseReceiverChannel
+ * in batch mode, is sent as all its rows, with its columns in the order of the parameters.
+ * </p>
+ * <p>
+ * With a batch size larger than 1, the rows are collected in a JDBC batch,
+ * which is executed when it is full, on flush() and on close.
+ * With a commit interval, auto-commit is switched off and a commit is done
+ * each time that nr of rows has been executed.
+ * </p>
+ * 
+ * @author erwin dl
+ */
+public class DatabaseSenderChannel extends SenderChannel {
+	private final static Logger logger = LoggerFactory.getLogger(DatabaseSenderChannel.class);
+
+	private Connection connection;
+	private String statementSQL;
+	private String[] parameterNames;
+	private int batchSize = 1;
+	// 0 means that the connection's auto-commit setting is used
+	private int commitInterval = 0;
+
+	private PreparedStatement statement;
+	private boolean autoCommitBeforeOpen;
+	// rows added to the JDBC batch, but not yet executed
+	private int pendingRowCount;
+	// rows executed, but not yet committed
+	private int uncommittedRowCount;
+	private long rowCount;
+
+	/**
+	 * 
+	 * @param connection
+	 */
+	public DatabaseSenderChannel(Connection connection) {
+		this.connection = connection;
+	}
+
+	public void open() throws ChannelException {
+		if (connection == null) {
+			throw new ChannelException("No connection specified");
+		} else if (statementSQL == null) {
+			throw new ChannelException("No statement specified");
+		}
+
+		try {
+			statement = connection.prepareStatement(statementSQL);
+			if (commitInterval > 0) {
+				autoCommitBeforeOpen = connection.getAutoCommit();
+				connection.setAutoCommit(false);
+			}
+		} catch (Exception e) {
+			throw new ChannelException(e.toString());
+		}
+		pendingRowCount = 0;
+		uncommittedRowCount = 0;
+		rowCount = 0;
+
+		super.open();
+	}
+
+	/**
+	 * Executes and commits the pending rows, and closes the statement and the connection.
+	 * If the pending rows can not be executed or committed, the uncommitted rows are rolled back,
+	 * the statement and connection are closed anyway, and the error is thrown.
+	 */
+	public void close() throws ChannelException {
+		super.close();
+		boolean flushed = false;
+		try {
+			flush();
+			flushed = true;
+		} finally {
+			if (!flushed) {
+				rollback();
+			}
+			closeStatementAndConnection();
+		}
+		logger.debug("Channel Closed");
+	}
+
+	/**
+	 * Executes the pending batch, and commits the executed rows if a commit interval is set.
+	 * 
+	 * @throws ChannelException
+	 */
+	public void flush() throws ChannelException {
+		try {
+			executeBatch();
+			if (uncommittedRowCount > 0) {
+				connection.commit();
+				uncommittedRowCount = 0;
+			}
+		} catch (SQLException e) {
+			throw new ChannelException(e.getMessage());
+		}
+	}
+
+	protected void doSendMessage(Object message) throws Exception {
+		if (message instanceof RowBatch) {
+			RowBatch batch = (RowBatch) message;
+			int[] columns = getBatchColumns(batch);
+			for (int row = 0; row < batch.getRowCount(); row++) {
+				for (int i = 0; i < columns.length; i++) {
+					setParameter(i + 1, batch, row, columns[i]);
+				}
+				rowAdded();
+			}
+		} else if (message instanceof Object[]) {
+			setParameters((Object[]) message);
+			rowAdded();
+		} else if (message instanceof List) {
+			setParameters(((List) message).toArray());
+			rowAdded();
+		} else if (message instanceof Map) {
+			if (parameterNames == null) {
+				throw new ChannelException("No parameter names specified for map messages");
+			}
+			Map row = (Map) message;
+			Object[] values = new Object[parameterNames.length];
+			for (int i = 0; i < parameterNames.length; i++) {
+				values[i] = row.get(parameterNames[i]);
+			}
+			setParameters(values);
+			rowAdded();
+		} else {
+			throw new ChannelException("Unsupported message type " + (message != null ? message.getClass().getName() : null));
+		}
+	}
+
+	/**
+	 * @return per statement parameter, the batch column
+	 */
+	private int[] getBatchColumns(RowBatch batch) throws ChannelException {
+		int[] columns = null;
+		if (parameterNames == null) {
+			columns = new int[batch.getColumnCount()];
+			for (int i = 0; i < columns.length; i++) {
+				columns[i] = i;
+			}
+		} else {
+			columns = new int[parameterNames.length];
+			for (int i = 0; i < columns.length; i++) {
+				columns[i] = batch.getColumnIndex(parameterNames[i]);
+				if (columns[i] < 0) {
+					throw new ChannelException("No column " + parameterNames[i] + " in " + batch);
+				}
+			}
+		}
+		return columns;
+	}
+
+	private void setParameters(Object[] values) throws SQLException {
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null) {
+				statement.setObject(i + 1, values[i]);
+			} else {
+				statement.setNull(i + 1, Types.NULL);
+			}
+		}
+	}
+
+	private void setParameter(int index, RowBatch batch, int row, int column) throws SQLException {
+		if (batch.isNull(row, column)) {
+			statement.setNull(index, batch.getColumnType(column));
+			return;
+		}
+		// avoid boxing for the primitive columns
+		Object values = batch.getColumn(column);
+		if (values instanceof int[]) {
+			statement.setInt(index, ((int[]) values)[row]);
+		} else if (values instanceof long[]) {
+			statement.setLong(index, ((long[]) values)[row]);
+		} else if (values instanceof double[]) {
+			statement.setDouble(index, ((double[]) values)[row]);
+		} else if (values instanceof boolean[]) {
+			statement.setBoolean(index, ((boolean[]) values)[row]);
+		} else {
+			statement.setObject(index, ((Object[]) values)[row]);
+		}
+	}
+
+	private void rowAdded() throws SQLException {
+		if (batchSize > 1) {
+			statement.addBatch();
+			if (++pendingRowCount >= batchSize) {
+				executeBatch();
+			}
+		} else {
+			statement.executeUpdate();
+			rowsExecuted(1);
+		}
+	}
+
+	private void executeBatch() throws SQLException {
+		if (pendingRowCount > 0) {
+			int count = pendingRowCount;
+			// the rows of a failed batch are not retried
+			pendingRowCount = 0;
+			try {
+				statement.executeBatch();
+			} catch (SQLException e) {
+				statement.clearBatch();
+				throw e;
+			}
+			rowsExecuted(count);
+		}
+	}
+
+	private void rollback() {
+		if (commitInterval > 0) {
+			logger.error("rollback() - Rolling back " + uncommittedRowCount + " uncommitted rows");
+			try {
+				connection.rollback();
+			} catch (SQLException e) {
+				logger.error("rollback() - Error rolling back", e);
+			}
+			uncommittedRowCount = 0;
+		}
+	}
+
+	private void closeStatementAndConnection() {
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			logger.error("close() - Error closing statement", e);
+		}
+		try {
+			if (commitInterval > 0) {
+				connection.setAutoCommit(autoCommitBeforeOpen);
+			}
+		} catch (SQLException e) {
+			logger.error("close() - Error restoring auto-commit", e);
+		} finally {
+			try {
+				connection.close();
+			} catch (SQLException e) {
+				logger.error("close() - Error closing connection", e);
+			}
+		}
+	}
+
+	private void rowsExecuted(int count) throws SQLException {
+		rowCount += count;
+		if (commitInterval > 0) {
+			uncommittedRowCount += count;
+			if (uncommittedRowCount >= commitInterval) {
+				connection.commit();
+				uncommittedRowCount = 0;
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @return the nr of rows executed since the channel was opened
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	public String getStatement() {
+		return statementSQL;
+	}
+
+	/**
+	 * 
+	 * @param statementSQL an SQL statement with a '?' per parameter
+	 */
+	public void setStatement(String statementSQL) {
+		this.statementSQL = statementSQL;
+	}
+
+	public String[] getParameterNames() {
+		return parameterNames;
+	}
+
+	/**
+	 * 
+	 * @param parameterNames the map keys or batch column names for the statement parameters, in order
+	 */
+	public void setParameterNames(String[] parameterNames) {
+		this.parameterNames = parameterNames;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * 
+	 * @param batchSize if larger than 1, rows are executed in JDBC batches of this size
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public int getCommitInterval() {
+		return commitInterval;
+	}
+
+	/**
+	 * To be set before opening the channel.
+	 * 
+	 * @param commitInterval if larger than 0, auto-commit is switched off
+	 * and a commit is done after each such nr of rows
+	 */
+	public void setCommitInterval(int commitInterval) {
+		this.commitInterval = commitInterval;
+	}
+}
@@ -0,0 +1,230 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message.db;
+
+import java.io.Serializable;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 
+ * RowBatch
+ * 
+ * A compact, columnar copy of a number of rows of a query result.
+ * <p>
+ * The values of INTEGER, SMALLINT and TINYINT columns are kept in an int[],
+ * of BIGINT columns in a long[], of DOUBLE and FLOAT columns in a double[],
+ * and of BIT and BOOLEAN columns in a boolean[]. 
+ * For these columns, SQL NULLs are flagged in a separate boolean[].
+ * All other columns are kept in an Object[].
+ * </p>
+ * <p>
+ * The column arrays may be larger than the row count, 
+ * only the first getRowCount() entries are valid.
+ * </p>
+ * 
+ * @author erwin dl
+ */
+public class RowBatch implements Serializable {
+
+	private final String[] columnNames;
+	private final int[] columnTypes;
+	// per column : an int[], long[], double[], boolean[] or Object[]
+	private final Object[] columns;
+	// per column : the SQL NULL flags for primitive columns, or null for Object columns
+	private final boolean[][] nulls;
+	private int rowCount;
+
+	/**
+	 * 
+	 * @param columnNames
+	 * @param columnTypes the java.sql.Types of the columns
+	 * @param capacity the max nr of rows
+	 */
+	public RowBatch(String[] columnNames, int[] columnTypes, int capacity) {
+		this.columnNames = columnNames;
+		this.columnTypes = columnTypes;
+		columns = new Object[columnNames.length];
+		nulls = new boolean[columnNames.length][];
+		for (int column = 0; column < columns.length; column++) {
+			columns[column] = createColumn(columnTypes[column], capacity);
+			if (!(columns[column] instanceof Object[])) {
+				nulls[column] = new boolean[capacity];
+			}
+		}
+	}
+
+	private static Object createColumn(int columnType, int capacity) {
+		switch (columnType) {
+		case Types.INTEGER:
+		case Types.SMALLINT:
+		case Types.TINYINT:
+			return new int[capacity];
+		case Types.BIGINT:
+			return new long[capacity];
+		case Types.DOUBLE:
+		case Types.FLOAT:
+			return new double[capacity];
+		case Types.BIT:
+		case Types.BOOLEAN:
+			return new boolean[capacity];
+		default:
+			return new Object[capacity];
+		}
+	}
+
+	/**
+	 * Copies the current row of the result set, accessing the columns by index.
+	 * 
+	 * @param resultSet
+	 * @throws SQLException
+	 * @throws IndexOutOfBoundsException when the batch is full
+	 */
+	void readRow(ResultSet resultSet) throws SQLException {
+		int row = rowCount;
+		for (int column = 0; column < columns.length; column++) {
+			Object values = columns[column];
+			int index = column + 1;
+			if (values instanceof int[]) {
+				((int[]) values)[row] = resultSet.getInt(index);
+			} else if (values instanceof long[]) {
+				((long[]) values)[row] = resultSet.getLong(index);
+			} else if (values instanceof double[]) {
+				((double[]) values)[row] = resultSet.getDouble(index);
+			} else if (values instanceof boolean[]) {
+				((boolean[]) values)[row] = resultSet.getBoolean(index);
+			} else {
+				((Object[]) values)[row] = resultSet.getObject(index);
+				continue;
+			}
+			nulls[column][row] = resultSet.wasNull();
+		}
+		rowCount++;
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	public int getColumnCount() {
+		return columnNames.length;
+	}
+
+	public String getColumnName(int column) {
+		return columnNames[column];
+	}
+
+	/**
+	 * @param column
+	 * @return the java.sql.Types of the column
+	 */
+	public int getColumnType(int column) {
+		return columnTypes[column];
+	}
+
+	/**
+	 * @param columnName
+	 * @return the index of the column, or -1 if there is no such column
+	 */
+	public int getColumnIndex(String columnName) {
+		for (int column = 0; column < columnNames.length; column++) {
+			if (columnNames[column].equals(columnName)) {
+				return column;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 
+	 * @param column
+	 * @return the values of the column : an int[], long[], double[], boolean[] or Object[]
+	 */
+	public Object getColumn(int column) {
+		return columns[column];
+	}
+
+	public boolean isNull(int row, int column) {
+		checkRow(row);
+		if (nulls[column] != null) {
+			return nulls[column][row];
+		} else {
+			return ((Object[]) columns[column])[row] == null;
+		}
+	}
+
+	/**
+	 * 
+	 * @param row
+	 * @param column
+	 * @return the value, boxed for primitive columns, or null for SQL NULL
+	 */
+	public Object getObject(int row, int column) {
+		if (isNull(row, column)) {
+			return null;
+		}
+		Object values = columns[column];
+		if (values instanceof int[]) {
+			return new Integer(((int[]) values)[row]);
+		} else if (values instanceof long[]) {
+			return new Long(((long[]) values)[row]);
+		} else if (values instanceof double[]) {
+			return new Double(((double[]) values)[row]);
+		} else if (values instanceof boolean[]) {
+			return Boolean.valueOf(((boolean[]) values)[row]);
+		} else {
+			return ((Object[]) values)[row];
+		}
+	}
+
+	/**
+	 * 
+	 * @param row
+	 * @return the row as a map with the column names as keys,
+	 * as sent by a DatabaseReceiverChannel without batching
+	 */
+	public Map<String, Object> getRow(int row) {
+		Map<String, Object> result = new HashMap<String, Object>();
+		for (int column = 0; column < columnNames.length; column++) {
+			result.put(columnNames[column], getObject(row, column));
+		}
+		return result;
+	}
+
+	private void checkRow(int row) {
+		if (row < 0 || row >= rowCount) {
+			throw new IndexOutOfBoundsException("Row " + row + " not in batch of " + rowCount + " rows");
+		}
+	}
+
+	public String toString() {
+		StringBuffer buffer = new StringBuffer();
+		buffer.append("[RowBatch:");
+		buffer.append(" rows: ");
+		buffer.append(rowCount);
+		buffer.append(" columns: ");
+		for (int column = 0; column < columnNames.length; column++) {
+			if (column > 0) {
+				buffer.append(",");
+			}
+			buffer.append(columnNames[column]);
+		}
+		buffer.append("]");
+		return buffer.toString();
+	}
+}
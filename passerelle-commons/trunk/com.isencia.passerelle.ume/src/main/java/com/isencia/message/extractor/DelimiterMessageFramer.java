@@ -0,0 +1,154 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message.extractor;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.List;
+
+/**
+ * A framer that chops messages at a delimiter character, 
+ * with the same message semantics as a given NioDelimitedMessageExtractor.
+ * <p>
+ * The received bytes are scanned for the delimiter, and each message is decoded
+ * in one go with a reusable CharsetDecoder. So the delimiter must be encoded 
+ * as a single byte that can not be part of another character's encoding,
+ * which is the case for UTF-8 and all single-byte charsets.
+ * </p>
+ * 
+ * @author erwin dl
+ */
+public class DelimiterMessageFramer implements IMessageFramer {
+
+	private final NioDelimitedMessageExtractor extractor;
+	private final Charset charset;
+	private final byte byteDelimiter;
+	private final CharsetDecoder decoder;
+
+	// the bytes of a message that started in a previous chunk
+	private byte[] pendingBytes = new byte[256];
+	private int pendingByteCount;
+	// reused to decode the messages
+	private CharBuffer decodedChars = CharBuffer.allocate(256);
+
+	/**
+	 * 
+	 * @param extractor determines the delimiter and how the chars are converted into a message
+	 * @param charset if null, the platform default encoding is used
+	 * @throws IllegalArgumentException if the delimiter can not be found in the raw bytes for the charset
+	 */
+	public DelimiterMessageFramer(NioDelimitedMessageExtractor extractor, Charset charset) {
+		this.extractor = extractor;
+		this.charset = charset != null ? charset : Charset.defaultCharset();
+		int encodedDelimiter = NioDelimitedMessageExtractor.getByteDelimiter(extractor.getDelimiter(), this.charset);
+		if (encodedDelimiter < 0) {
+			throw new IllegalArgumentException("Delimiter " + (int) extractor.getDelimiter() + " can not be framed in charset " + this.charset.name());
+		}
+		byteDelimiter = (byte) encodedDelimiter;
+		decoder = this.charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see com.isencia.message.extractor.IMessageFramer#frame(java.nio.ByteBuffer, java.util.List)
+	 */
+	public void frame(ByteBuffer data, List messages) {
+		int start = data.position();
+		int limit = data.limit();
+		for (int i = start; i < limit; i++) {
+			if (data.get(i) == byteDelimiter) {
+				ByteBuffer messageBytes = null;
+				if (pendingByteCount == 0) {
+					messageBytes = data.duplicate();
+					messageBytes.position(start);
+					messageBytes.limit(i);
+				} else {
+					appendPendingBytes(data, start, i);
+					messageBytes = ByteBuffer.wrap(pendingBytes, 0, pendingByteCount);
+					pendingByteCount = 0;
+				}
+				addMessage(decode(messageBytes), true, messages);
+				start = i + 1;
+			}
+		}
+		appendPendingBytes(data, start, limit);
+		data.position(limit);
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see com.isencia.message.extractor.IMessageFramer#endOfData(java.util.List)
+	 */
+	public void endOfData(List messages) {
+		addMessage(decode(ByteBuffer.wrap(pendingBytes, 0, pendingByteCount)), false, messages);
+		pendingByteCount = 0;
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see com.isencia.message.extractor.IMessageFramer#cloneFramer()
+	 */
+	public IMessageFramer cloneFramer() {
+		return new DelimiterMessageFramer(extractor, charset);
+	}
+
+	private void addMessage(char[] chars, boolean delimited, List messages) {
+		// the extractor returns null for messages it does not accept, e.g. an empty msg between two end chars.
+		// For the blocking extractor that ends the stream, but a connection may go on after it.
+		Object message = extractor.createMessage(chars, 0, decodedChars.position(), delimited);
+		if (message != null) {
+			messages.add(message);
+		}
+	}
+
+	private void appendPendingBytes(ByteBuffer data, int start, int end) {
+		int length = end - start;
+		if (length == 0) {
+			return;
+		}
+		if (pendingByteCount + length > pendingBytes.length) {
+			byte[] newBytes = new byte[Math.max(pendingBytes.length * 2, pendingByteCount + length)];
+			System.arraycopy(pendingBytes, 0, newBytes, 0, pendingByteCount);
+			pendingBytes = newBytes;
+		}
+		ByteBuffer source = data.duplicate();
+		source.position(start);
+		source.limit(end);
+		source.get(pendingBytes, pendingByteCount, length);
+		pendingByteCount += length;
+	}
+
+	/**
+	 * Decodes the bytes into the reusable decodedChars buffer.
+	 * 
+	 * @return the array of decodedChars, filled up to its position
+	 */
+	private char[] decode(ByteBuffer bytes) {
+		int maxLength = (int) (bytes.remaining() * (double) decoder.maxCharsPerByte()) + 1;
+		if (decodedChars.capacity() < maxLength) {
+			decodedChars = CharBuffer.allocate(Math.max(decodedChars.capacity() * 2, maxLength));
+		}
+		decodedChars.clear();
+		decoder.reset();
+		decoder.decode(bytes, decodedChars, true);
+		decoder.flush(decodedChars);
+		return decodedChars.array();
+	}
+}
@@ -0,0 +1,39 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message.extractor;
+
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Extension of IMessageExtractor for extractors that can also work directly on a
+ * byte channel, e.g. a FileChannel or a socket's channel.
+ * Channels check for this interface, and when present, open the extractor on their
+ * underlying byte channel instead of on a Reader.
+ * 
+ * @author erwin dl
+ */
+public interface IByteChannelMessageExtractor extends IMessageExtractor {
+
+	/**
+	 * Starts the extraction process on the given channel.
+	 * 
+	 * @param channel
+	 * @param charset the encoding of the channel's data; 
+	 * if null, the platform default encoding is used
+	 */
+	public void open(ReadableByteChannel channel, Charset charset);
+
+}
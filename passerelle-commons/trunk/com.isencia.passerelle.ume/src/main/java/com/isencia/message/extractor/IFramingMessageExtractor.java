@@ -0,0 +1,36 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message.extractor;
+
+import java.nio.charset.Charset;
+
+/**
+ * Extension of IMessageExtractor for extractors that can create an IMessageFramer
+ * with the same message semantics, to be used with non-blocking IO.
+ * 
+ * @author erwin dl
+ */
+public interface IFramingMessageExtractor extends IMessageExtractor {
+
+	/**
+	 * @param charset the encoding of the received data; 
+	 * if null, the platform default encoding is used
+	 * @return a new framer
+	 * @throws IllegalArgumentException if the extractor's framing can not be applied 
+	 * on data in the given charset
+	 */
+	public IMessageFramer createFramer(Charset charset);
+
+}
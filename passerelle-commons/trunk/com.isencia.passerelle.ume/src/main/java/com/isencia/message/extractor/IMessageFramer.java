@@ -0,0 +1,58 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message.extractor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Interface for objects that extract messages from the raw bytes
+ * received on a connection, in the chunks in which they arrive.
+ * This is the counterpart of IMessageExtractor for non-blocking IO : 
+ * a framer never waits for data, but keeps the bytes of an incomplete message 
+ * until the next chunk arrives.
+ * REMARK: NOT THREAD_SAFE! Use a separate framer per connection!
+ * 
+ * @author erwin dl
+ */
+public interface IMessageFramer {
+
+	/**
+	 * Adds the messages that are completed by the given data to the list.
+	 * All remaining data is consumed and kept for the next call.
+	 * 
+	 * @param data
+	 * @param messages
+	 * @throws IOException when the data does not respect the framing, 
+	 * e.g. a message is too large. The connection should then be closed.
+	 */
+	public void frame(ByteBuffer data, List messages) throws IOException;
+
+	/**
+	 * Adds the last message, if any, when no more data will arrive.
+	 * 
+	 * @param messages
+	 */
+	public void endOfData(List messages);
+
+	/**
+	 * Creates a new framer with the same settings, 
+	 * but without pending data.
+	 * 
+	 * @return
+	 */
+	public IMessageFramer cloneFramer();
+}
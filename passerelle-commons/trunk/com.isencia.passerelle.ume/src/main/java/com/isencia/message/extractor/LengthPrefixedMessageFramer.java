@@ -0,0 +1,117 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message.extractor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.List;
+
+/**
+ * A framer for messages that are preceded by their length in bytes,
+ * as a 4-byte big-endian integer.
+ * Each message is decoded to a String.
+ * 
+ * @author erwin dl
+ */
+public class LengthPrefixedMessageFramer implements IMessageFramer {
+
+	public static final int DEFAULT_MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+
+	private final Charset charset;
+	private final int maxMessageSize;
+	private final CharsetDecoder decoder;
+
+	private final ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+	// null while reading the length
+	private ByteBuffer messageBuffer;
+
+	/**
+	 * 
+	 * @param charset if null, the platform default encoding is used
+	 * @param maxMessageSize larger messages are refused
+	 */
+	public LengthPrefixedMessageFramer(Charset charset, int maxMessageSize) {
+		this.charset = charset != null ? charset : Charset.defaultCharset();
+		this.maxMessageSize = maxMessageSize;
+		decoder = this.charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	public LengthPrefixedMessageFramer(Charset charset) {
+		this(charset, DEFAULT_MAX_MESSAGE_SIZE);
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see com.isencia.message.extractor.IMessageFramer#frame(java.nio.ByteBuffer, java.util.List)
+	 */
+	public void frame(ByteBuffer data, List messages) throws IOException {
+		while (data.hasRemaining()) {
+			if (messageBuffer == null) {
+				transfer(data, lengthBuffer);
+				if (lengthBuffer.hasRemaining()) {
+					return;
+				}
+				lengthBuffer.flip();
+				int length = lengthBuffer.getInt();
+				lengthBuffer.clear();
+				if (length < 0 || length > maxMessageSize) {
+					throw new IOException("Invalid message length " + length);
+				}
+				messageBuffer = ByteBuffer.allocate(length);
+			}
+			transfer(data, messageBuffer);
+			if (!messageBuffer.hasRemaining()) {
+				messageBuffer.flip();
+				messages.add(decoder.decode(messageBuffer).toString());
+				messageBuffer = null;
+			}
+		}
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see com.isencia.message.extractor.IMessageFramer#endOfData(java.util.List)
+	 */
+	public void endOfData(List messages) {
+		// an incomplete message is dropped
+		lengthBuffer.clear();
+		messageBuffer = null;
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see com.isencia.message.extractor.IMessageFramer#cloneFramer()
+	 */
+	public IMessageFramer cloneFramer() {
+		return new LengthPrefixedMessageFramer(charset, maxMessageSize);
+	}
+
+	private static void transfer(ByteBuffer source, ByteBuffer destination) {
+		int count = Math.min(source.remaining(), destination.remaining());
+		if (count == source.remaining()) {
+			destination.put(source);
+		} else {
+			ByteBuffer part = source.duplicate();
+			part.limit(part.position() + count);
+			destination.put(part);
+			source.position(source.position() + count);
+		}
+	}
+}
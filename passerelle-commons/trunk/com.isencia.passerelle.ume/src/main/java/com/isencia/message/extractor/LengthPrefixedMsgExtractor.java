@@ -0,0 +1,149 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message.extractor;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.LinkedList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An extractor for messages that are preceded by their length in bytes,
+ * as a 4-byte big-endian integer.
+ * <p>
+ * As the length is expressed in bytes, the extractor can only be opened on a byte channel,
+ * e.g. by a SocketReceiverChannel or FileReceiverChannel.
+ * </p>
+ * 
+ * @author erwin dl
+ */
+public class LengthPrefixedMsgExtractor implements IByteChannelMessageExtractor, IFramingMessageExtractor {
+
+	private static final Logger logger = LoggerFactory.getLogger(LengthPrefixedMsgExtractor.class);
+
+	private int maxMessageSize = LengthPrefixedMessageFramer.DEFAULT_MAX_MESSAGE_SIZE;
+
+	private ReadableByteChannel channel;
+	private IMessageFramer framer;
+	private ByteBuffer block;
+	private LinkedList messages = new LinkedList();
+	private boolean endOfData;
+
+	public LengthPrefixedMsgExtractor() {
+		super();
+	}
+
+	/**
+	 * @param maxMessageSize larger messages are refused
+	 */
+	public LengthPrefixedMsgExtractor(int maxMessageSize) {
+		super();
+		this.maxMessageSize = maxMessageSize;
+	}
+
+	public int getMaxMessageSize() {
+		return maxMessageSize;
+	}
+
+	/**
+	 * Not supported, as the message lengths are expressed in bytes.
+	 * 
+	 * @throws IllegalArgumentException
+	 */
+	public void open(Reader reader) {
+		throw new IllegalArgumentException("Length-prefixed messages must be read from a byte channel");
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see com.isencia.message.extractor.IByteChannelMessageExtractor#open(java.nio.channels.ReadableByteChannel, java.nio.charset.Charset)
+	 */
+	public synchronized void open(ReadableByteChannel channel, Charset charset) {
+		this.channel = channel;
+		framer = createFramer(charset);
+		block = ByteBuffer.allocate(NioDelimitedMessageExtractor.DEFAULT_BLOCK_SIZE);
+		messages.clear();
+		endOfData = false;
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see com.isencia.message.extractor.IMessageExtractor#isOpen()
+	 */
+	public boolean isOpen() {
+		return channel != null;
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see com.isencia.message.extractor.IMessageExtractor#getMessage()
+	 */
+	public synchronized Object getMessage() {
+		if (channel == null) {
+			return null;
+		}
+		while (messages.isEmpty() && !endOfData) {
+			try {
+				block.clear();
+				int count = channel.read(block);
+				block.flip();
+				if (count < 0) {
+					endOfData = true;
+					framer.endOfData(messages);
+				} else {
+					framer.frame(block, messages);
+				}
+			} catch (IOException e) {
+				// hope it is because the channel has been closed, so same as
+				// end of data !?
+				logger.debug("getMessage() - Error reading channel, treated as end of data", e);
+				endOfData = true;
+			}
+		}
+		return messages.isEmpty() ? null : messages.removeFirst();
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see com.isencia.message.extractor.IMessageExtractor#close()
+	 */
+	public void close() {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				logger.error("close() - Error closing channel", e);
+			}
+		}
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see com.isencia.message.extractor.IFramingMessageExtractor#createFramer(java.nio.charset.Charset)
+	 */
+	public IMessageFramer createFramer(Charset charset) {
+		return new LengthPrefixedMessageFramer(charset, maxMessageSize);
+	}
+
+	public IMessageExtractor cloneExtractor() {
+		return new LengthPrefixedMsgExtractor(maxMessageSize);
+	}
+
+}
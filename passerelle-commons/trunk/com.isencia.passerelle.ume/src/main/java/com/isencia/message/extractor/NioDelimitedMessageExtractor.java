@@ -0,0 +1,465 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message.extractor;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base class for extractors that chop messages at a delimiter character,
+ * reading their data in large blocks instead of char per char.
+ * <p>
+ * When opened on a byte channel, and when the delimiter is encoded as a single byte
+ * that can not be part of another character's encoding (e.g. for UTF-8 and
+ * all single-byte charsets), the raw bytes are scanned for the delimiter
+ * and each message is decoded in one go, with a reusable CharsetDecoder.
+ * Files are read via memory-mapped regions of their FileChannel.
+ * For other charsets, and when opened on a Reader, the data is read in blocks of chars
+ * that are scanned for the delimiter.
+ * </p>
+ * <p>
+ * As data is read ahead, the extractor must be the only one reading
+ * from its channel or reader, until the extractor is closed.
+ * </p>
+ * <p>
+ * Subclasses determine how a series of chars is converted into a message.
+ * </p>
+ * <p>
+ * For non-blocking IO, the extractor can create DelimiterMessageFramers
+ * that produce the same messages.
+ * </p>
+ * 
+ * @author erwin dl
+ */
+public abstract class NioDelimitedMessageExtractor implements IByteChannelMessageExtractor, IFramingMessageExtractor {
+
+	private static final Logger logger = LoggerFactory.getLogger(NioDelimitedMessageExtractor.class);
+
+	public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+	public static final int DEFAULT_MAPPED_REGION_SIZE = 16 * 1024 * 1024;
+
+	private final char delimiter;
+	private int blockSize = DEFAULT_BLOCK_SIZE;
+	private int mappedRegionSize = DEFAULT_MAPPED_REGION_SIZE;
+
+	// byte mode
+	private ReadableByteChannel channel;
+	private CharsetDecoder decoder;
+	private byte byteDelimiter;
+	private ByteBuffer byteBlock;
+	private long mappedPosition;
+	// the bytes of a message that started in a previous block
+	private byte[] pendingBytes = new byte[256];
+	private int pendingByteCount;
+	// reused to decode the messages
+	private CharBuffer decodedChars = CharBuffer.allocate(256);
+
+	// char mode
+	private Reader reader;
+	private char[] charBlock;
+	private int charBlockPosition;
+	private int charBlockLimit;
+	// the chars of a message that started in a previous block
+	private char[] pendingChars = new char[256];
+	private int pendingCharCount;
+
+	protected NioDelimitedMessageExtractor(char delimiter) {
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * Converts the chars, found before a delimiter or the end of the data, into a message.
+	 * 
+	 * @param chars
+	 * @param offset the index of the first char to use
+	 * @param length the number of chars to use from the array, can be 0
+	 * @param delimited true if the chars were followed by a delimiter, false if the data ended
+	 * @return the message, or null if no message must be returned
+	 */
+	protected abstract Object createMessage(char[] chars, int offset, int length, boolean delimited);
+
+	public char getDelimiter() {
+		return delimiter;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * @param blockSize the nr of bytes or chars read from the channel or reader at once
+	 */
+	public void setBlockSize(int blockSize) {
+		this.blockSize = blockSize;
+	}
+
+	public int getMappedRegionSize() {
+		return mappedRegionSize;
+	}
+
+	/**
+	 * @param mappedRegionSize the nr of bytes of a file that are mapped in memory at once
+	 */
+	public void setMappedRegionSize(int mappedRegionSize) {
+		this.mappedRegionSize = mappedRegionSize;
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see com.isencia.message.extractor.IMessageExtractor#open(java.io.Reader)
+	 */
+	public synchronized void open(Reader reader) {
+		if (logger.isTraceEnabled()) {
+			logger.trace("open() - entry");
+		}
+		reset();
+		this.reader = reader;
+		charBlock = new char[blockSize];
+		if (logger.isTraceEnabled()) {
+			logger.trace("open() - exit");
+		}
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see com.isencia.message.extractor.IByteChannelMessageExtractor#open(java.nio.channels.ReadableByteChannel, java.nio.charset.Charset)
+	 */
+	public synchronized void open(ReadableByteChannel channel, Charset charset) {
+		if (logger.isTraceEnabled()) {
+			logger.trace("open() - entry");
+		}
+		if (charset == null) {
+			charset = Charset.defaultCharset();
+		}
+		CharsetDecoder decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		int encodedDelimiter = getByteDelimiter(delimiter, charset);
+		if (encodedDelimiter >= 0) {
+			reset();
+			byteDelimiter = (byte) encodedDelimiter;
+			this.channel = channel;
+			this.decoder = decoder;
+			if (!(channel instanceof FileChannel)) {
+				byteBlock = ByteBuffer.allocate(blockSize);
+				byteBlock.flip();
+			}
+		} else {
+			// the channel's decoder works in bulk as well
+			open(Channels.newReader(channel, decoder, blockSize));
+		}
+		if (logger.isTraceEnabled()) {
+			logger.trace("open() - exit - scanning bytes : " + (this.channel != null));
+		}
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see com.isencia.message.extractor.IMessageExtractor#isOpen()
+	 */
+	public boolean isOpen() {
+		return channel != null || reader != null;
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see com.isencia.message.extractor.IMessageExtractor#getMessage()
+	 */
+	public synchronized Object getMessage() {
+		if (logger.isTraceEnabled()) {
+			logger.trace("getMessage() - entry");
+		}
+		Object message = null;
+		if (channel != null) {
+			message = getMessageFromBytes();
+		} else if (reader != null) {
+			message = getMessageFromChars();
+		}
+		if (logger.isTraceEnabled()) {
+			logger.trace("getMessage() - exit - result :" + message);
+		}
+		return message;
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see com.isencia.message.extractor.IMessageExtractor#close()
+	 */
+	public void close() {
+		if (logger.isTraceEnabled()) {
+			logger.trace("close() - entry");
+		}
+		try {
+			if (channel != null) {
+				channel.close();
+			} else if (reader != null) {
+				reader.close();
+			}
+		} catch (IOException e) {
+			logger.error("close() - Error closing input", e);
+		}
+		if (logger.isTraceEnabled()) {
+			logger.trace("close() - exit");
+		}
+	}
+
+	private void reset() {
+		channel = null;
+		decoder = null;
+		byteBlock = null;
+		mappedPosition = 0;
+		pendingByteCount = 0;
+		reader = null;
+		charBlock = null;
+		charBlockPosition = 0;
+		charBlockLimit = 0;
+		pendingCharCount = 0;
+	}
+
+	/*
+	 *  (non-Javadoc)
+	 * @see com.isencia.message.extractor.IFramingMessageExtractor#createFramer(java.nio.charset.Charset)
+	 */
+	public IMessageFramer createFramer(Charset charset) {
+		return new DelimiterMessageFramer(this, charset);
+	}
+
+	/**
+	 * The bytes can only be scanned if the delimiter is encoded as a single byte,
+	 * and if that byte value is never used inside the encoding of another char.
+	 * 
+	 * @return the encoded delimiter as an unsigned byte value, or -1 if the bytes can not be scanned
+	 */
+	static int getByteDelimiter(char delimiter, Charset charset) {
+		try {
+			CharsetEncoder encoder = charset.newEncoder();
+			ByteBuffer encodedDelimiter = encoder.encode(CharBuffer.wrap(new char[] { delimiter }));
+			if (encodedDelimiter.remaining() != 1) {
+				return -1;
+			}
+			byte b = encodedDelimiter.get();
+			if (encoder.maxBytesPerChar() == 1.0f || ("UTF-8".equals(charset.name()) && b >= 0)) {
+				return b & 0xFF;
+			}
+			return -1;
+		} catch (CharacterCodingException e) {
+			return -1;
+		} catch (UnsupportedOperationException e) {
+			// charset without encoder
+			return -1;
+		}
+	}
+
+	private Object getMessageFromBytes() {
+		while (true) {
+			if ((byteBlock == null || !byteBlock.hasRemaining()) && !readBytes()) {
+				// end of data
+				Object message = createMessage(decode(ByteBuffer.wrap(pendingBytes, 0, pendingByteCount)), 0, decodedChars.position(), false);
+				pendingByteCount = 0;
+				return message;
+			}
+			int start = byteBlock.position();
+			int limit = byteBlock.limit();
+			int end = indexOfDelimiter(byteBlock, start, limit);
+			if (end >= 0) {
+				byteBlock.position(end + 1);
+				ByteBuffer messageBytes = null;
+				if (pendingByteCount == 0) {
+					messageBytes = byteBlock.duplicate();
+					messageBytes.position(start);
+					messageBytes.limit(end);
+				} else {
+					appendPendingBytes(start, end);
+					messageBytes = ByteBuffer.wrap(pendingBytes, 0, pendingByteCount);
+					pendingByteCount = 0;
+				}
+				return createMessage(decode(messageBytes), 0, decodedChars.position(), true);
+			} else {
+				appendPendingBytes(start, limit);
+				byteBlock.position(limit);
+			}
+		}
+	}
+
+	/**
+	 * Reads the next block of bytes from the channel, or maps the next region of a file.
+	 * 
+	 * @return false if the end of the data is reached
+	 */
+	private boolean readBytes() {
+		try {
+			if (channel instanceof FileChannel) {
+				FileChannel fileChannel = (FileChannel) channel;
+				long size = fileChannel.size();
+				if (mappedPosition >= size) {
+					return false;
+				}
+				long regionSize = Math.min(mappedRegionSize, size - mappedPosition);
+				byteBlock = fileChannel.map(FileChannel.MapMode.READ_ONLY, mappedPosition, regionSize);
+				mappedPosition += regionSize;
+				return true;
+			} else {
+				byteBlock.clear();
+				int count = 0;
+				while ((count = channel.read(byteBlock)) == 0) {
+					// a blocking channel only returns 0 bytes for an empty buffer
+				}
+				byteBlock.flip();
+				return count > 0;
+			}
+		} catch (IOException e) {
+			// hope it is because the channel has been closed, so same as
+			// end of data !?
+			if (logger.isDebugEnabled()) {
+				logger.debug("readBytes() - Error reading channel, treated as end of data", e);
+			}
+			if (byteBlock != null) {
+				byteBlock.limit(byteBlock.position());
+			}
+			return false;
+		}
+	}
+
+	private int indexOfDelimiter(ByteBuffer buffer, int start, int limit) {
+		if (buffer.hasArray()) {
+			byte[] bytes = buffer.array();
+			int offset = buffer.arrayOffset();
+			for (int i = start + offset; i < limit + offset; i++) {
+				if (bytes[i] == byteDelimiter) {
+					return i - offset;
+				}
+			}
+		} else {
+			for (int i = start; i < limit; i++) {
+				if (buffer.get(i) == byteDelimiter) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private void appendPendingBytes(int start, int end) {
+		int length = end - start;
+		if (pendingByteCount + length > pendingBytes.length) {
+			byte[] newBytes = new byte[Math.max(pendingBytes.length * 2, pendingByteCount + length)];
+			System.arraycopy(pendingBytes, 0, newBytes, 0, pendingByteCount);
+			pendingBytes = newBytes;
+		}
+		ByteBuffer source = byteBlock.duplicate();
+		source.position(start);
+		source.limit(end);
+		source.get(pendingBytes, pendingByteCount, length);
+		pendingByteCount += length;
+	}
+
+	/**
+	 * Decodes the bytes into the reusable decodedChars buffer.
+	 * 
+	 * @return the array of decodedChars, filled up to its position
+	 */
+	private char[] decode(ByteBuffer bytes) {
+		int maxLength = (int) (bytes.remaining() * (double) decoder.maxCharsPerByte()) + 1;
+		if (decodedChars.capacity() < maxLength) {
+			decodedChars = CharBuffer.allocate(Math.max(decodedChars.capacity() * 2, maxLength));
+		}
+		decodedChars.clear();
+		decoder.reset();
+		decoder.decode(bytes, decodedChars, true);
+		decoder.flush(decodedChars);
+		return decodedChars.array();
+	}
+
+	private Object getMessageFromChars() {
+		while (true) {
+			if (charBlockPosition >= charBlockLimit && !readChars()) {
+				// end of data
+				Object message = createMessage(pendingChars, 0, pendingCharCount, false);
+				pendingCharCount = 0;
+				return message;
+			}
+			int start = charBlockPosition;
+			int end = start;
+			while (end < charBlockLimit && charBlock[end] != delimiter) {
+				end++;
+			}
+			if (end < charBlockLimit) {
+				charBlockPosition = end + 1;
+				if (pendingCharCount == 0) {
+					return createMessage(charBlock, start, end - start, true);
+				} else {
+					appendPendingChars(start, end);
+					Object message = createMessage(pendingChars, 0, pendingCharCount, true);
+					pendingCharCount = 0;
+					return message;
+				}
+			} else {
+				appendPendingChars(start, end);
+				charBlockPosition = end;
+			}
+		}
+	}
+
+	/**
+	 * Reads the next block of chars from the reader.
+	 * 
+	 * @return false if the end of the data is reached
+	 */
+	private boolean readChars() {
+		charBlockPosition = 0;
+		charBlockLimit = 0;
+		try {
+			int count = 0;
+			while ((count = reader.read(charBlock)) == 0) {
+				// a Reader only returns 0 chars for an empty array
+			}
+			if (count > 0) {
+				charBlockLimit = count;
+				return true;
+			}
+		} catch (IOException e) {
+			// hope it is because the reader has been closed, so same as
+			// end of data !?
+			if (logger.isDebugEnabled()) {
+				logger.debug("readChars() - Error reading reader, treated as end of data", e);
+			}
+		}
+		return false;
+	}
+
+	private void appendPendingChars(int start, int end) {
+		int length = end - start;
+		if (pendingCharCount + length > pendingChars.length) {
+			char[] newChars = new char[Math.max(pendingChars.length * 2, pendingCharCount + length)];
+			System.arraycopy(pendingChars, 0, newChars, 0, pendingCharCount);
+			pendingChars = newChars;
+		}
+		System.arraycopy(charBlock, start, pendingChars, pendingCharCount, length);
+		pendingCharCount += length;
+	}
+}
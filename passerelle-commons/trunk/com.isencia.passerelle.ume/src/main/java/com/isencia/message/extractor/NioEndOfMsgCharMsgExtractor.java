@@ -0,0 +1,46 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message.extractor;
+
+/**
+ * An extractor that chops messages after receiving a specific character, like the
+ * EndOfMsgCharMsgExtractor, but that reads and decodes its data in large blocks.
+ * By default it uses 0x1C, the file separator (FS) ASCII char.
+ *
+ * @author erwin dl
+ */
+public class NioEndOfMsgCharMsgExtractor extends NioDelimitedMessageExtractor {
+
+	public NioEndOfMsgCharMsgExtractor() {
+		super((char) 0x1C);
+	}
+
+	public NioEndOfMsgCharMsgExtractor(char endOfMsgChar) {
+		super(endOfMsgChar);
+	}
+
+	protected Object createMessage(char[] chars, int offset, int length, boolean delimited) {
+		// same as EndOfMsgCharMsgExtractor : no message when nothing was read
+		return length > 0 ? new String(chars, offset, length) : null;
+	}
+
+	public IMessageExtractor cloneExtractor() {
+		NioEndOfMsgCharMsgExtractor result = new NioEndOfMsgCharMsgExtractor(getDelimiter());
+		result.setBlockSize(getBlockSize());
+		result.setMappedRegionSize(getMappedRegionSize());
+		return result;
+	}
+
+}
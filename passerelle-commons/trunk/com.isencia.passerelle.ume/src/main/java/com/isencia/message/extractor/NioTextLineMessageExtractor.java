@@ -0,0 +1,65 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message.extractor;
+
+/**
+ * 
+ * NioTextLineMessageExtractor
+ * 
+ * An extractor that chops messages at each line feed, like the TextLineMessageExtractor,
+ * but that reads and decodes its data in large blocks.
+ * <p>
+ * \r chars are ignored, \n\n produces an empty record,
+ * and a last line without \n is returned as well.
+ * </p>
+ * 
+ * @author erwin dl
+ */
+public class NioTextLineMessageExtractor extends NioDelimitedMessageExtractor {
+
+	public NioTextLineMessageExtractor() {
+		super('\n');
+	}
+
+	protected Object createMessage(char[] chars, int offset, int length, boolean delimited) {
+		if (!delimited && length == 0) {
+			return null;
+		}
+		int end = offset + length;
+		int i = offset;
+		while (i < end && chars[i] != '\r') {
+			i++;
+		}
+		if (i == end) {
+			return new String(chars, offset, length);
+		}
+		// skip \r
+		StringBuffer buffer = new StringBuffer(length);
+		for (i = offset; i < end; i++) {
+			if (chars[i] != '\r') {
+				buffer.append(chars[i]);
+			}
+		}
+		return buffer.toString();
+	}
+
+	public IMessageExtractor cloneExtractor() {
+		NioTextLineMessageExtractor result = new NioTextLineMessageExtractor();
+		result.setBlockSize(getBlockSize());
+		result.setMappedRegionSize(getMappedRegionSize());
+		return result;
+	}
+
+}
@@ -0,0 +1,181 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message.io;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A Writer that encodes its chars in a large direct buffer,
+ * that is only written to the FileChannel when it is full, or on flush().
+ * <p>
+ * Optionally, each flush() also forces the written data to the storage device.
+ * </p>
+ * 
+ * @author erwin dl
+ */
+public class FileChannelWriter extends Writer {
+
+	public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+	private FileChannel channel;
+	private CharsetEncoder encoder;
+	private ByteBuffer buffer;
+	private boolean forceOnFlush;
+	private long bytesWritten;
+	// a high surrogate char, waiting for its low surrogate in the next write
+	private CharBuffer leftOver = CharBuffer.allocate(2);
+
+	/**
+	 * 
+	 * @param channel
+	 * @param charset if null, the platform default encoding is used
+	 * @param bufferSize in bytes
+	 */
+	public FileChannelWriter(FileChannel channel, Charset charset, int bufferSize) {
+		super();
+		this.channel = channel;
+		if (charset == null) {
+			charset = Charset.defaultCharset();
+		}
+		// same behaviour as an OutputStreamWriter
+		encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, 16));
+		leftOver.flip();
+	}
+
+	public FileChannelWriter(FileChannel channel, Charset charset) {
+		this(channel, charset, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param forceOnFlush true if each flush() must force the data to the storage device
+	 */
+	public void setForceOnFlush(boolean forceOnFlush) {
+		this.forceOnFlush = forceOnFlush;
+	}
+
+	public boolean isForceOnFlush() {
+		return forceOnFlush;
+	}
+
+	/**
+	 * @return the nr of bytes written to the file channel, not including the bytes that are still buffered
+	 */
+	public long getBytesWritten() {
+		synchronized (lock) {
+			return bytesWritten;
+		}
+	}
+
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		synchronized (lock) {
+			encode(CharBuffer.wrap(cbuf, off, len), false);
+		}
+	}
+
+	public void write(String str, int off, int len) throws IOException {
+		synchronized (lock) {
+			encode(CharBuffer.wrap(str, off, off + len), false);
+		}
+	}
+
+	public void flush() throws IOException {
+		synchronized (lock) {
+			checkOpen();
+			writeBuffer();
+			if (forceOnFlush) {
+				channel.force(false);
+			}
+		}
+	}
+
+	public void close() throws IOException {
+		synchronized (lock) {
+			if (channel == null) {
+				return;
+			}
+			try {
+				encode(CharBuffer.allocate(0), true);
+				while (encoder.flush(buffer).isOverflow()) {
+					writeBuffer();
+				}
+				flush();
+			} finally {
+				channel.close();
+				channel = null;
+			}
+		}
+	}
+
+	private void encode(CharBuffer chars, boolean endOfInput) throws IOException {
+		checkOpen();
+		if (leftOver.hasRemaining() && (chars.hasRemaining() || endOfInput)) {
+			// complete the pending surrogate pair first
+			CharBuffer pair = CharBuffer.allocate(2);
+			pair.put(leftOver.get());
+			if (chars.hasRemaining()) {
+				pair.put(chars.get());
+			}
+			pair.flip();
+			encodeChars(pair, endOfInput);
+			if (pair.hasRemaining()) {
+				// another high surrogate : the pending one has been replaced as malformed,
+				// and the new one is encoded with the following chars, or carried over in its turn
+				chars.position(chars.position() - 1);
+			}
+		}
+		encodeChars(chars, endOfInput);
+		if (chars.hasRemaining()) {
+			leftOver.clear();
+			leftOver.put(chars);
+			leftOver.flip();
+		}
+	}
+
+	private void encodeChars(CharBuffer chars, boolean endOfInput) throws IOException {
+		while (true) {
+			CoderResult result = encoder.encode(chars, buffer, endOfInput);
+			if (result.isOverflow()) {
+				writeBuffer();
+			} else if (result.isUnderflow()) {
+				return;
+			} else {
+				result.throwException();
+			}
+		}
+	}
+
+	private void writeBuffer() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			bytesWritten += channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private void checkOpen() throws IOException {
+		if (channel == null) {
+			throw new IOException("Writer closed");
+		}
+	}
+}
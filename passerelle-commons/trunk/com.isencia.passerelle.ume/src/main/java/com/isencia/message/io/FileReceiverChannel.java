@@ -21,12 +21,17 @@ import java.io.FileReader;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.isencia.message.ChannelException;
 import com.isencia.message.ReaderReceiverChannel;
+import com.isencia.message.extractor.IByteChannelMessageExtractor;
 import com.isencia.message.extractor.IMessageExtractor;
 
 
@@ -34,7 +39,9 @@ import com.isencia.message.extractor.IMessageExtractor;
  * 
  * FileReceiverChannel
  * 
- * TODO: class comment
+ * Reads messages from a file.
+ * When the extractor is an IByteChannelMessageExtractor, it reads directly
+ * from the file's FileChannel. Otherwise it uses a Reader on the file.
  * 
  * @author erwin dl
  */
@@ -43,6 +50,7 @@ public class FileReceiverChannel extends ReaderReceiverChannel {
 
 	private File source = null;
 	private String encoding = null;
+	private FileChannel fileChannel = null;
 	/**
 	 * 
 	 * @param srcFile
@@ -71,7 +79,12 @@ public class FileReceiverChannel extends ReaderReceiverChannel {
 		
 		try {
 			Reader reader = null;
-			if(encoding!=null){
+			fileChannel = null;
+			if(getExtractor() instanceof IByteChannelMessageExtractor) {
+				// check the encoding before opening the file
+				getCharset();
+				fileChannel = new FileInputStream(source).getChannel();
+			}else if(encoding!=null){
 				FileInputStream fileInputStream = new FileInputStream(source);
 				reader = new InputStreamReader(fileInputStream,encoding);
 			}else{
@@ -90,6 +103,32 @@ public class FileReceiverChannel extends ReaderReceiverChannel {
 			logger.trace("open() - exit");
 	}
 
+	protected void openExtractor() throws ChannelException {
+		if(fileChannel!=null) {
+			((IByteChannelMessageExtractor)getExtractor()).open(fileChannel, getCharset());
+		} else {
+			super.openExtractor();
+		}
+	}
+
+	/**
+	 * 
+	 * @return the charset for the configured encoding, or null for the platform default
+	 * @throws ChannelException if the encoding is not supported
+	 */
+	private Charset getCharset() throws ChannelException {
+		if(encoding==null) {
+			return null;
+		}
+		try {
+			return Charset.forName(encoding);
+		} catch (IllegalCharsetNameException e) {
+			throw new ChannelException("UnsupportedEncodingException "+encoding);
+		} catch (UnsupportedCharsetException e) {
+			throw new ChannelException("UnsupportedEncodingException "+encoding);
+		}
+	}
+
 	/**
 	 * Gets the source info, being the absolute path of the source file.
 	 * @return String
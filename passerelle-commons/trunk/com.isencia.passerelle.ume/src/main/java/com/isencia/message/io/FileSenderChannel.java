@@ -20,6 +20,9 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,7 +36,11 @@ import com.isencia.message.generator.IMessageGenerator;
  * 
  * FileSenderChannel
  * 
- * TODO: class comment
+ * Writes messages to a file.
+ * When the channel is buffered, i.e. when it has a flush policy,
+ * the messages are written via a FileChannelWriter, with a large direct buffer
+ * that is written to the file's FileChannel when it is full or when the channel is flushed.
+ * Optionally, each flush also forces the data to the storage device.
  * 
  * @author erwin dl
  */
@@ -42,6 +49,9 @@ public class FileSenderChannel extends WriterSenderChannel {
 
 	private File destFile = null;
 	private String encoding = null;
+	private int bufferSize = FileChannelWriter.DEFAULT_BUFFER_SIZE;
+	private boolean forceOnFlush = false;
+	private FileChannelWriter fileChannelWriter = null;
 
 	/**
 	 * 
@@ -81,8 +91,23 @@ public class FileSenderChannel extends WriterSenderChannel {
 			throw new ChannelException("Destination file is not specified");
 		
 		try {
-			if(encoding!=null){
-				FileOutputStream fileOutputStream = new FileOutputStream(destFile);
+			fileChannelWriter = null;
+			if(isBuffered()) {
+				Charset charset = null;
+				if(encoding!=null) {
+					try {
+						charset = Charset.forName(encoding);
+					} catch (IllegalCharsetNameException e) {
+						throw new UnsupportedEncodingException(encoding);
+					} catch (UnsupportedCharsetException e) {
+						throw new UnsupportedEncodingException(encoding);
+					}
+				}
+				fileChannelWriter = new FileChannelWriter(new FileOutputStream(destFile,append).getChannel(), charset, bufferSize);
+				fileChannelWriter.setForceOnFlush(forceOnFlush);
+				setWriter(fileChannelWriter);
+			}else if(encoding!=null){
+				FileOutputStream fileOutputStream = new FileOutputStream(destFile,append);
 				setWriter(new OutputStreamWriter(fileOutputStream,encoding));
 			}else{
 				setWriter(new FileWriter(destFile,append));
@@ -101,4 +126,30 @@ public class FileSenderChannel extends WriterSenderChannel {
 			logger.trace("open() - exit");
 	}
 
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * @param bufferSize the size in bytes of the buffer that is used when the channel is buffered
+	 */
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	public boolean isForceOnFlush() {
+		return forceOnFlush;
+	}
+
+	/**
+	 * @param forceOnFlush true if each flush of a buffered channel must force the data to the storage device
+	 */
+	public void setForceOnFlush(boolean forceOnFlush) {
+		this.forceOnFlush = forceOnFlush;
+	}
+
+	protected long getBytesWritten() {
+		return fileChannelWriter!=null ? fileChannelWriter.getBytesWritten() : -1;
+	}
+
 }
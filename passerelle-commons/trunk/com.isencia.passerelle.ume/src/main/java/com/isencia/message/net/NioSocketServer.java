@@ -0,0 +1,452 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message.net;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.isencia.message.extractor.IMessageFramer;
+
+/**
+ * A socket server with non-blocking IO.
+ * <p>
+ * One acceptor thread accepts the connections, and hands them out round-robin
+ * to a small fixed pool of IO threads. Each IO thread multiplexes its connections on its own Selector,
+ * reads the available data in a reusable buffer, and passes it to the connection's IMessageFramer.
+ * So the number of threads does not grow with the number of connections,
+ * as it does for the SocketServerReceiverChannel.
+ * </p>
+ * <p>
+ * Completed messages and closed connections are reported to a Listener, on the IO thread.
+ * So the listener must not block.
+ * </p>
+ * 
+ * @author erwin dl
+ */
+public class NioSocketServer {
+	private final static Logger logger = LoggerFactory.getLogger(NioSocketServer.class);
+
+	public final static int DEFAULT_IO_THREAD_COUNT = 2;
+
+	private final static int READ_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Receives the results of the IO threads.
+	 */
+	public interface Listener {
+		/**
+		 * @param connection
+		 * @param message a message that was completely received on the connection
+		 */
+		void messageReceived(Connection connection, Object message);
+
+		/**
+		 * @param connection a connection that was closed by the client, by an IO error or by the server
+		 */
+		void connectionClosed(Connection connection);
+	}
+
+	private final ServerSocketChannel serverChannel;
+	private final IMessageFramer framer;
+	private final Listener listener;
+	private final IoWorker[] workers;
+	private final AtomicInteger connectionCount = new AtomicInteger();
+
+	private Thread acceptor;
+	private volatile boolean running;
+
+	/**
+	 * 
+	 * @param serverChannel a bound server socket channel
+	 * @param framer a framer that is cloned for each new connection
+	 * @param ioThreadCount
+	 * @param listener
+	 */
+	public NioSocketServer(ServerSocketChannel serverChannel, IMessageFramer framer, int ioThreadCount, Listener listener) {
+		this.serverChannel = serverChannel;
+		this.framer = framer;
+		this.listener = listener;
+		workers = new IoWorker[ioThreadCount > 0 ? ioThreadCount : DEFAULT_IO_THREAD_COUNT];
+	}
+
+	/**
+	 * Starts the IO threads and the acceptor thread.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void start() throws IOException {
+		if (running) {
+			return;
+		}
+		serverChannel.configureBlocking(true);
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new IoWorker("NioSocketServer-io-" + getLocalPort() + "-" + i);
+			workers[i].start();
+		}
+		running = true;
+		acceptor = new Thread("NioSocketServer-acceptor-" + getLocalPort()) {
+			public void run() {
+				acceptConnections();
+			}
+		};
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Stops accepting connections, closes all open connections and stops the IO threads.
+	 */
+	public void stop() {
+		synchronized (this) {
+			if (!running) {
+				return;
+			}
+			running = false;
+		}
+		try {
+			// this also ends a blocked accept()
+			serverChannel.close();
+		} catch (IOException e) {
+			logger.error("stop() - Error closing server socket", e);
+		}
+		// the acceptor must not register a new connection with a worker that has stopped already
+		if (acceptor != Thread.currentThread()) {
+			try {
+				acceptor.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		for (int i = 0; i < workers.length; i++) {
+			workers[i].shutdown();
+		}
+		for (int i = 0; i < workers.length; i++) {
+			if (workers[i] != Thread.currentThread()) {
+				try {
+					workers[i].join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	public int getConnectionCount() {
+		return connectionCount.get();
+	}
+
+	public int getIoThreadCount() {
+		return workers.length;
+	}
+
+	public int getLocalPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	private void acceptConnections() {
+		if (logger.isTraceEnabled())
+			logger.trace("acceptConnections() - entry");
+
+		int nextWorker = 0;
+		while (running) {
+			SocketChannel socketChannel = null;
+			try {
+				socketChannel = serverChannel.accept();
+			} catch (IOException e) {
+				if (running) {
+					logger.info("acceptConnections() - " + e.getMessage() + ". Terminating...");
+				}
+				break;
+			}
+			try {
+				socketChannel.configureBlocking(false);
+				IoWorker worker = workers[nextWorker];
+				nextWorker = (nextWorker + 1) % workers.length;
+				Connection connection = new Connection(socketChannel, framer.cloneFramer(), worker);
+				connectionCount.incrementAndGet();
+				if (logger.isDebugEnabled())
+					logger.debug("acceptConnections() - Accepted connection " + connection);
+				worker.register(connection);
+			} catch (IOException e) {
+				logger.error("acceptConnections() - Unable to register new connection", e);
+				try {
+					socketChannel.close();
+				} catch (IOException ex) {
+				}
+			}
+		}
+
+		if (logger.isTraceEnabled())
+			logger.trace("acceptConnections() - exit");
+	}
+
+	/**
+	 * A client connection, served by one of the IO threads.
+	 */
+	public final class Connection {
+		private final SocketChannel socketChannel;
+		private final IMessageFramer framer;
+		private final IoWorker worker;
+		// only used by the IO thread
+		private SelectionKey key;
+		private final LinkedList pendingWrites = new LinkedList();
+		private volatile boolean closed;
+
+		private Connection(SocketChannel socketChannel, IMessageFramer framer, IoWorker worker) {
+			this.socketChannel = socketChannel;
+			this.framer = framer;
+			this.worker = worker;
+		}
+
+		public SocketAddress getRemoteAddress() {
+			return socketChannel.socket().getRemoteSocketAddress();
+		}
+
+		public boolean isOpen() {
+			return !closed;
+		}
+
+		/**
+		 * Sends the data to the client.
+		 * As much data as the socket accepts is written immediately, 
+		 * the remainder is written by the IO thread when the client is ready to receive more.
+		 * 
+		 * @param data
+		 * @throws IOException
+		 */
+		public void send(ByteBuffer data) throws IOException {
+			if (closed) {
+				throw new ClosedChannelException();
+			}
+			synchronized (pendingWrites) {
+				if (pendingWrites.isEmpty()) {
+					socketChannel.write(data);
+					if (!data.hasRemaining()) {
+						return;
+					}
+				}
+				pendingWrites.add(data);
+			}
+			worker.requestWrite(this);
+		}
+
+		/**
+		 * Closes the connection, after the IO thread has finished its current work.
+		 */
+		public void close() {
+			worker.requestClose(this);
+		}
+
+		public String toString() {
+			return "Connection[" + getRemoteAddress() + "]";
+		}
+	}
+
+	/**
+	 * An IO thread, serving a set of connections with its own selector.
+	 * Other threads pass work to it via a task queue, and wake up the selector.
+	 */
+	private class IoWorker extends Thread {
+		private final Selector selector;
+		private final Queue tasks = new ConcurrentLinkedQueue();
+		private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+		private final List messages = new ArrayList();
+		private volatile boolean shuttingDown;
+
+		IoWorker(String name) throws IOException {
+			super(name);
+			setDaemon(true);
+			selector = Selector.open();
+		}
+
+		void register(final Connection connection) {
+			execute(new Runnable() {
+				public void run() {
+					try {
+						connection.key = connection.socketChannel.register(selector, SelectionKey.OP_READ, connection);
+					} catch (ClosedChannelException e) {
+						closeConnection(connection);
+					}
+				}
+			});
+		}
+
+		void requestWrite(final Connection connection) {
+			execute(new Runnable() {
+				public void run() {
+					if (connection.key != null && connection.key.isValid()) {
+						connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					}
+				}
+			});
+		}
+
+		void requestClose(final Connection connection) {
+			execute(new Runnable() {
+				public void run() {
+					closeConnection(connection);
+				}
+			});
+		}
+
+		void shutdown() {
+			shuttingDown = true;
+			selector.wakeup();
+		}
+
+		private void execute(Runnable task) {
+			tasks.add(task);
+			selector.wakeup();
+		}
+
+		public void run() {
+			if (logger.isTraceEnabled())
+				logger.trace("run() - entry");
+
+			try {
+				while (!shuttingDown) {
+					selector.select();
+					runTasks();
+					Iterator keyItr = selector.selectedKeys().iterator();
+					while (keyItr.hasNext()) {
+						SelectionKey key = (SelectionKey) keyItr.next();
+						keyItr.remove();
+						Connection connection = (Connection) key.attachment();
+						try {
+							if (key.isValid() && key.isReadable()) {
+								read(connection);
+							}
+							if (key.isValid() && key.isWritable()) {
+								write(connection);
+							}
+						} catch (IOException e) {
+							logger.debug("run() - Error on connection " + connection + ", closing it", e);
+							closeConnection(connection);
+						}
+					}
+				}
+			} catch (Exception e) {
+				logger.error("run() - IO thread failed", e);
+			} finally {
+				runTasks();
+				Iterator keyItr = selector.keys().iterator();
+				while (keyItr.hasNext()) {
+					closeConnection((Connection) ((SelectionKey) keyItr.next()).attachment());
+				}
+				try {
+					selector.close();
+				} catch (IOException e) {
+				}
+			}
+
+			if (logger.isTraceEnabled())
+				logger.trace("run() - exit");
+		}
+
+		private void runTasks() {
+			Runnable task;
+			while ((task = (Runnable) tasks.poll()) != null) {
+				task.run();
+			}
+		}
+
+		private void read(Connection connection) throws IOException {
+			readBuffer.clear();
+			int count = connection.socketChannel.read(readBuffer);
+			if (count < 0) {
+				connection.framer.endOfData(messages);
+				deliverMessages(connection);
+				closeConnection(connection);
+			} else {
+				readBuffer.flip();
+				try {
+					connection.framer.frame(readBuffer, messages);
+				} finally {
+					deliverMessages(connection);
+				}
+			}
+		}
+
+		private void write(Connection connection) throws IOException {
+			synchronized (connection.pendingWrites) {
+				while (!connection.pendingWrites.isEmpty()) {
+					ByteBuffer data = (ByteBuffer) connection.pendingWrites.getFirst();
+					connection.socketChannel.write(data);
+					if (data.hasRemaining()) {
+						// wait till the client is ready for more
+						return;
+					}
+					connection.pendingWrites.removeFirst();
+				}
+				connection.key.interestOps(SelectionKey.OP_READ);
+			}
+		}
+
+		private void deliverMessages(Connection connection) {
+			for (int i = 0; i < messages.size(); i++) {
+				try {
+					listener.messageReceived(connection, messages.get(i));
+				} catch (RuntimeException e) {
+					logger.error("deliverMessages() - Listener failed for message from " + connection, e);
+				}
+			}
+			messages.clear();
+		}
+
+		private void closeConnection(Connection connection) {
+			if (connection.closed) {
+				return;
+			}
+			connection.closed = true;
+			if (connection.key != null) {
+				connection.key.cancel();
+			}
+			try {
+				connection.socketChannel.close();
+			} catch (IOException e) {
+				logger.debug("closeConnection() - Error closing " + connection, e);
+			}
+			connectionCount.decrementAndGet();
+			if (logger.isDebugEnabled())
+				logger.debug("closeConnection() - Closed connection " + connection);
+			try {
+				listener.connectionClosed(connection);
+			} catch (RuntimeException e) {
+				logger.error("closeConnection() - Listener failed for " + connection, e);
+			}
+		}
+	}
+}
@@ -0,0 +1,144 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message.net;
+
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.isencia.message.ChannelException;
+import com.isencia.message.NoMoreMessagesException;
+import com.isencia.message.ReceiverChannel;
+import com.isencia.message.extractor.IFramingMessageExtractor;
+
+
+/**
+ * 
+ * NioSocketServerReceiverChannel
+ * 
+ * Receives messages from all clients of a server socket, like a SocketServerReceiverChannel,
+ * but with non-blocking IO : a NioSocketServer with a small fixed number of IO threads
+ * serves all connections, instead of a thread per connection.
+ * <br/>
+ * The messages of all connections are collected in one queue.
+ * 
+ * @author erwin dl
+ */
+public class NioSocketServerReceiverChannel extends ReceiverChannel {
+	private final static Logger logger = LoggerFactory.getLogger(NioSocketServerReceiverChannel.class);
+
+	// marks the end of the queue, when the channel is closed
+	private final static Object END_OF_DATA = new Object();
+
+	private ServerSocketChannel serverChannel = null;
+	private IFramingMessageExtractor extractor = null;
+	private int ioThreadCount = NioSocketServer.DEFAULT_IO_THREAD_COUNT;
+	private NioSocketServer server = null;
+	private final BlockingQueue messages = new LinkedBlockingQueue();
+
+	/**
+	 * 
+	 * @param serverChannel a bound server socket channel
+	 * @param extractor determines the framing of the messages, with the platform default encoding
+	 * @param ioThreadCount
+	 */
+	public NioSocketServerReceiverChannel(ServerSocketChannel serverChannel, IFramingMessageExtractor extractor, int ioThreadCount) {
+		super();
+		this.serverChannel = serverChannel;
+		this.extractor = extractor;
+		this.ioThreadCount = ioThreadCount;
+	}
+
+	public ServerSocketChannel getServerChannel() {
+		return serverChannel;
+	}
+
+	public IFramingMessageExtractor getExtractor() {
+		return extractor;
+	}
+
+	/**
+	 * 
+	 * @return the number of currently open client connections
+	 */
+	public int getConnectionCount() {
+		return server != null ? server.getConnectionCount() : 0;
+	}
+
+	public void open() throws ChannelException {
+		if(logger.isTraceEnabled())
+			logger.trace("open() - entry");
+
+		super.open();
+		messages.clear();
+		server = new NioSocketServer(serverChannel, extractor.createFramer(null), ioThreadCount, new NioSocketServer.Listener() {
+			public void messageReceived(NioSocketServer.Connection connection, Object message) {
+				messages.add(message);
+			}
+			public void connectionClosed(NioSocketServer.Connection connection) {
+			}
+		});
+		try {
+			server.start();
+		} catch (IOException e) {
+			logger.error("open() - Error starting server",e);
+			throw new ChannelException("Error starting server "+e.getMessage());
+		}
+
+		if(logger.isTraceEnabled())
+			logger.trace("open() - exit");
+	}
+
+	public void close() throws ChannelException {
+		if(logger.isTraceEnabled())
+			logger.trace("close() - entry");
+
+		super.close();
+		if(server!=null) {
+			server.stop();
+		}
+		messages.add(END_OF_DATA);
+
+		if(logger.isTraceEnabled())
+			logger.trace("close() - exit");
+	}
+
+	protected Object doGetMessage() throws ChannelException, NoMoreMessagesException {
+		if(logger.isTraceEnabled())
+			logger.trace("doGetMessage() - entry");
+
+		Object msg = null;
+		try {
+			msg = messages.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new NoMoreMessagesException("Interrupted");
+		}
+		if(msg==END_OF_DATA) {
+			// leave it for other readers
+			messages.add(END_OF_DATA);
+			throw new NoMoreMessagesException("Channel closed");
+		}
+
+		if(logger.isTraceEnabled())
+			logger.trace("doGetMessage() - exit : " + msg);
+
+		return msg;
+	}
+}
@@ -18,12 +18,15 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.isencia.message.ChannelException;
 import com.isencia.message.ReaderReceiverChannel;
+import com.isencia.message.extractor.IByteChannelMessageExtractor;
 import com.isencia.message.extractor.IMessageExtractor;
 
 
@@ -31,7 +34,9 @@ import com.isencia.message.extractor.IMessageExtractor;
  * 
  * SocketReceiverChannel
  * 
- * TODO: class comment
+ * Reads messages from a socket's input stream.
+ * When the extractor is an IByteChannelMessageExtractor, it reads directly
+ * from a byte channel on the stream. Otherwise it uses a Reader.
  * 
  * @author erwin dl
  */
@@ -40,6 +45,7 @@ public class SocketReceiverChannel extends ReaderReceiverChannel {
 
 	
 	private Socket socket = null;
+	private ReadableByteChannel byteChannel = null;
 	
 	/**
 	 * 
@@ -67,8 +73,13 @@ public class SocketReceiverChannel extends ReaderReceiverChannel {
 		}
 		
 		try {
-			Reader rdr = new InputStreamReader(getSocket().getInputStream());
-			setReader(rdr);
+			if(getExtractor() instanceof IByteChannelMessageExtractor) {
+				byteChannel = Channels.newChannel(getSocket().getInputStream());
+			} else {
+				byteChannel = null;
+				Reader rdr = new InputStreamReader(getSocket().getInputStream());
+				setReader(rdr);
+			}
 		} catch (IOException e) {
 			logger.error("open() - Error getting inputstream from socket",e);
 			throw new ChannelException(
@@ -80,6 +91,15 @@ public class SocketReceiverChannel extends ReaderReceiverChannel {
 			logger.trace("open() - exit");
 	}
 
+	protected void openExtractor() throws ChannelException {
+		if(byteChannel!=null) {
+			// platform default encoding, as for the reader
+			((IByteChannelMessageExtractor)getExtractor()).open(byteChannel, null);
+		} else {
+			super.openExtractor();
+		}
+	}
+
 	/**
 	 * Gets the socket.
 	 * @return Returns a Socket
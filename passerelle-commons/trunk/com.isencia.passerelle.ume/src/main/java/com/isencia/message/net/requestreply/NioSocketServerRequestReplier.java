@@ -0,0 +1,256 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message.net.requestreply;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.isencia.message.ChannelException;
+import com.isencia.message.NoMoreMessagesException;
+import com.isencia.message.ReceiverChannel;
+import com.isencia.message.extractor.IFramingMessageExtractor;
+import com.isencia.message.extractor.LengthPrefixedMsgExtractor;
+import com.isencia.message.generator.IMessageGenerator;
+import com.isencia.message.interceptor.IMessageInterceptorChain;
+import com.isencia.message.net.NioSocketServer;
+import com.isencia.message.requestreply.IMessage;
+import com.isencia.message.requestreply.IRequestReplyChannel;
+import com.isencia.message.requestreply.RequestMessage;
+
+
+/**
+ * 
+ * NioSocketServerRequestReplier
+ * 
+ * A request/reply channel on a server socket, like SocketServerRequestReplier,
+ * but with non-blocking IO : a NioSocketServer with a small fixed number of IO threads
+ * serves all connections, instead of a reader thread per connection.
+ * <br/>
+ * Responses are formatted by the generator, unless the requests are length-prefixed :
+ * then the responses are length-prefixed as well.
+ * 
+ * @author erwin dl
+ */
+public class NioSocketServerRequestReplier extends ReceiverChannel implements IRequestReplyChannel {
+	private final static Logger logger = LoggerFactory.getLogger(NioSocketServerRequestReplier.class);
+
+	// marks the end of the queue, when the channel is closed
+	private final static IMessage END_OF_DATA = new RequestMessage(null);
+
+	private IMessageInterceptorChain interceptorChainForResponse = null;
+
+	private ServerSocketChannel serverChannel = null;
+	private IFramingMessageExtractor extractor = null;
+	private IMessageGenerator generator = null;
+	private int ioThreadCount = NioSocketServer.DEFAULT_IO_THREAD_COUNT;
+	private Charset charset = Charset.defaultCharset();
+	private NioSocketServer server = null;
+	private final BlockingQueue requests = new LinkedBlockingQueue();
+	// the connections that are waiting for a response, with the correlation ID as key
+	private final Map responseConnections = new ConcurrentHashMap();
+	// the correlation IDs of the requests that are waiting for a response, per connection
+	private final Map pendingCorrelationIDs = new ConcurrentHashMap();
+
+	/**
+	 * 
+	 * @param serverChannel a bound server socket channel
+	 * @param extractor determines the framing of the requests, with the platform default encoding
+	 * @param generator
+	 * @param ioThreadCount
+	 */
+	public NioSocketServerRequestReplier(ServerSocketChannel serverChannel, IFramingMessageExtractor extractor, IMessageGenerator generator, int ioThreadCount) {
+		super();
+		this.serverChannel = serverChannel;
+		this.extractor = extractor;
+		this.generator = generator;
+		this.ioThreadCount = ioThreadCount;
+	}
+
+	public ServerSocketChannel getServerChannel() {
+		return serverChannel;
+	}
+
+	public IFramingMessageExtractor getExtractor() {
+		return extractor;
+	}
+
+	/**
+	 * 
+	 * @return the number of currently open client connections
+	 */
+	public int getConnectionCount() {
+		return server != null ? server.getConnectionCount() : 0;
+	}
+
+	public void open() throws ChannelException {
+		if(logger.isTraceEnabled())
+			logger.trace("open() - entry");
+
+		super.open();
+		requests.clear();
+		server = new NioSocketServer(serverChannel, extractor.createFramer(charset), ioThreadCount, new NioSocketServer.Listener() {
+			public void messageReceived(NioSocketServer.Connection connection, Object message) {
+				IMessage request = new RequestMessage(message);
+				// only the connection's IO thread adds and removes its set
+				Set correlationIDs = (Set) pendingCorrelationIDs.get(connection);
+				if (correlationIDs == null) {
+					correlationIDs = Collections.synchronizedSet(new HashSet());
+					pendingCorrelationIDs.put(connection, correlationIDs);
+				}
+				correlationIDs.add(request.getCorrelationID());
+				responseConnections.put(request.getCorrelationID(), connection);
+				requests.add(request);
+			}
+			public void connectionClosed(NioSocketServer.Connection connection) {
+				// no more responses can be sent on it
+				Set correlationIDs = (Set) pendingCorrelationIDs.remove(connection);
+				if (correlationIDs != null) {
+					synchronized (correlationIDs) {
+						Iterator idItr = correlationIDs.iterator();
+						while (idItr.hasNext()) {
+							responseConnections.remove(idItr.next());
+						}
+					}
+				}
+			}
+		});
+		try {
+			server.start();
+		} catch (IOException e) {
+			logger.error("open() - Error starting server",e);
+			throw new ChannelException("Error starting server "+e.getMessage());
+		}
+
+		if(logger.isTraceEnabled())
+			logger.trace("open() - exit");
+	}
+
+	public void close() throws ChannelException {
+		if(logger.isTraceEnabled())
+			logger.trace("close() - entry");
+
+		super.close();
+		if(server!=null) {
+			server.stop();
+		}
+		requests.add(END_OF_DATA);
+
+		if(logger.isTraceEnabled())
+			logger.trace("close() - exit");
+	}
+
+	public IMessage receiveRequest() throws NoMoreMessagesException {
+		if(logger.isTraceEnabled())
+			logger.trace("receiveRequest() - entry");
+
+		IMessage msg = null;
+		try {
+			msg = (IMessage) requests.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new NoMoreMessagesException("Interrupted");
+		}
+		if(msg==END_OF_DATA) {
+			// leave it for other readers
+			requests.add(END_OF_DATA);
+			throw new NoMoreMessagesException("Channel closed");
+		}
+
+		if(logger.isTraceEnabled())
+			logger.trace("receiveRequest() - exit : " + msg);
+
+		return msg;
+	}
+
+	/**
+	 * BEWARE: this method returns just the message contents,
+	 * no correlation info.
+	 */
+	protected Object doGetMessage() throws ChannelException, NoMoreMessagesException {
+		return receiveRequest().getMessage();
+	}
+
+	/**
+	 * Sends the response on the connection on which the request was received.
+	 * If that connection has been closed meanwhile, the response is dropped.
+	 */
+	public void sendResponse(Object response, Object correlationID) throws ChannelException {
+		if(logger.isTraceEnabled())
+			logger.trace("sendResponse() - entry - correlationID :"+correlationID);
+
+		NioSocketServer.Connection connection = (NioSocketServer.Connection) responseConnections.remove(correlationID);
+		if(connection==null) {
+			logger.warn("sendResponse() - No open connection for correlationID "+correlationID+", response dropped");
+			return;
+		}
+		Set correlationIDs = (Set) pendingCorrelationIDs.get(connection);
+		if (correlationIDs != null) {
+			correlationIDs.remove(correlationID);
+		}
+		try {
+			if (interceptorChainForResponse != null) {
+				response = interceptorChainForResponse.accept(response);
+			}
+			connection.send(encode(response));
+		} catch (IOException e) {
+			logger.warn("sendResponse() - Error sending response to "+connection, e);
+		} catch (Exception e) {
+			throw new ChannelException("Error formatting response "+e.getMessage());
+		}
+
+		if(logger.isTraceEnabled())
+			logger.trace("sendResponse() - exit");
+	}
+
+	private ByteBuffer encode(Object response) throws Exception {
+		if(extractor instanceof LengthPrefixedMsgExtractor) {
+			ByteBuffer body = charset.encode(response.toString());
+			ByteBuffer res = ByteBuffer.allocate(4 + body.remaining());
+			res.putInt(body.remaining()).put(body);
+			res.flip();
+			return res;
+		} else {
+			StringWriter writer = new StringWriter();
+			synchronized (generator) {
+				generator.open(writer);
+				generator.sendMessage(response);
+				generator.close();
+			}
+			return charset.encode(writer.toString());
+		}
+	}
+
+	public void setInterceptorChainForResponse(IMessageInterceptorChain interceptorChain) {
+		if (logger.isTraceEnabled())
+			logger.trace("setInterceptorChainForResponse() - entry - chain :"+interceptorChain);
+		this.interceptorChainForResponse = interceptorChain;
+		if (logger.isTraceEnabled())
+			logger.trace("setInterceptorChainForResponse() - exit");
+	}
+}
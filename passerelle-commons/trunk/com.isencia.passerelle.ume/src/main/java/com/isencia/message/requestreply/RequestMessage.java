@@ -15,7 +15,8 @@
 package com.isencia.message.requestreply;
 
 /**
- * @todo Class comment
+ * A received request, with a correlation ID that is unique in the JVM,
+ * to route the response to the connection on which the request was received.
  * 
  * @author erwin
  */
@@ -24,7 +25,7 @@ public class RequestMessage implements IMessage {
     private Object message;
     private Object corrID;
 
-    RequestMessage(Object message) {
+    public RequestMessage(Object message) {
         this.message = message;
         this.corrID = getNewCorrelationID();
     }
@@ -37,7 +38,8 @@ public class RequestMessage implements IMessage {
         return corrID;
     }
 
-    private synchronized Object getNewCorrelationID() {
+    // static, as the counter is shared by all request replier channels
+    private static synchronized Object getNewCorrelationID() {
         return new Long(corrCounter++);
     }
 }
@@ -0,0 +1,398 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.isencia.message.ChannelException;
+
+/**
+ * DatabaseChannelTest
+ * 
+ * Reads and writes rows through the database channels.
+ * As no JDBC driver is available to the tests, the database is simulated
+ * by a single in-memory table, behind dynamic proxies for the JDBC interfaces.
+ * 
+ * @author erwin dl
+ */
+public class DatabaseChannelTest extends TestCase {
+
+    private static final String[] COLUMN_NAMES = new String[] {"ID", "NAME", "AMOUNT", "ACTIVE", "COUNT"};
+    private static final int[] COLUMN_TYPES = new int[] {Types.BIGINT, Types.VARCHAR, Types.DOUBLE, Types.BOOLEAN, Types.INTEGER};
+
+    private InMemoryTable table;
+
+    protected void setUp() throws Exception {
+        table = new InMemoryTable(COLUMN_NAMES, COLUMN_TYPES);
+        for (int i = 0; i < 25; i++) {
+            table.rows.add(new Object[] {new Long(i), "name " + i, new Double(i * 1.5), Boolean.valueOf(i % 2 == 0),
+                    i % 5 == 0 ? null : new Integer(i)});
+        }
+    }
+
+    public void testRowsAsMaps() throws Exception {
+        checkRowsAsMaps(false);
+    }
+
+    public void testRowsAsMapsByIndex() throws Exception {
+        checkRowsAsMaps(true);
+    }
+
+    public void testFetchSize() throws Exception {
+        DatabaseReceiverChannel channel = new DatabaseReceiverChannel(table.createConnection());
+        channel.setQuery("select * from T");
+        channel.setFetchSize(500);
+        channel.open();
+        assertEquals(500, table.fetchSize);
+        channel.close();
+    }
+
+    public void testRowBatches() throws Exception {
+        DatabaseReceiverChannel channel = new DatabaseReceiverChannel(table.createConnection());
+        channel.setQuery("select * from T");
+        channel.setBatchSize(10);
+        channel.open();
+        int[] expectedRowCounts = new int[] {10, 10, 5};
+        int row = 0;
+        for (int b = 0; b < expectedRowCounts.length; b++) {
+            RowBatch batch = (RowBatch) channel.getMessage();
+            assertEquals(expectedRowCounts[b], batch.getRowCount());
+            assertTrue(batch.getColumn(0) instanceof long[]);
+            assertTrue(batch.getColumn(1) instanceof Object[]);
+            assertTrue(batch.getColumn(2) instanceof double[]);
+            assertTrue(batch.getColumn(3) instanceof boolean[]);
+            assertTrue(batch.getColumn(4) instanceof int[]);
+            for (int r = 0; r < batch.getRowCount(); r++, row++) {
+                assertEquals(getExpectedRow(row), batch.getRow(r));
+                assertEquals(row % 5 == 0, batch.isNull(r, 4));
+            }
+        }
+        assertNull(channel.getMessage());
+        channel.close();
+        assertEquals(0, table.lookupsByLabel);
+    }
+
+    public void testSingleRowInserts() throws Exception {
+        InMemoryTable target = new InMemoryTable(COLUMN_NAMES, COLUMN_TYPES);
+        DatabaseSenderChannel sender = new DatabaseSenderChannel(target.createConnection());
+        sender.setStatement("insert into T values (?,?,?,?,?)");
+        sender.setParameterNames(COLUMN_NAMES);
+        sender.open();
+        for (int i = 0; i < table.rows.size(); i++) {
+            sender.sendMessage(getExpectedRow(i));
+        }
+        sender.close();
+        assertRowsEqual(table.rows, target.rows);
+        assertEquals(0, target.executedBatches);
+    }
+
+    public void testBatchedInsertsWithCommitInterval() throws Exception {
+        InMemoryTable target = new InMemoryTable(COLUMN_NAMES, COLUMN_TYPES);
+        DatabaseSenderChannel sender = new DatabaseSenderChannel(target.createConnection());
+        sender.setStatement("insert into T values (?,?,?,?,?)");
+        sender.setBatchSize(4);
+        sender.setCommitInterval(8);
+        sender.open();
+        assertFalse(target.autoCommit);
+        for (int i = 0; i < table.rows.size(); i++) {
+            sender.sendMessage(table.rows.get(i));
+        }
+        // 6 full batches, 3 commits; 1 row pending
+        assertEquals(24, target.rows.size());
+        assertEquals(3, target.commits);
+        sender.close();
+        assertRowsEqual(table.rows, target.rows);
+        assertEquals(7, target.executedBatches);
+        assertEquals(4, target.commits);
+        assertTrue(target.autoCommit);
+        assertTrue(target.closed);
+    }
+
+    public void testFailedBatchIsNotRetried() throws Exception {
+        InMemoryTable target = new InMemoryTable(COLUMN_NAMES, COLUMN_TYPES);
+        DatabaseSenderChannel sender = new DatabaseSenderChannel(target.createConnection());
+        sender.setStatement("insert into T values (?,?,?,?,?)");
+        sender.setBatchSize(2);
+        sender.open();
+        sender.sendMessage(table.rows.get(0));
+        target.failBatches = true;
+        try {
+            sender.sendMessage(table.rows.get(1));
+            fail("Batch failure not reported");
+        } catch (ChannelException e) {
+            // expected
+        }
+        target.failBatches = false;
+        sender.sendMessage(table.rows.get(2));
+        assertEquals("Failed rows still pending", 0, target.executedBatches);
+        sender.sendMessage(table.rows.get(3));
+        assertEquals(1, target.executedBatches);
+        sender.close();
+        assertRowsEqual(table.rows.subList(2, 4), target.rows);
+    }
+
+    public void testFailedFinalBatch() throws Exception {
+        InMemoryTable target = new InMemoryTable(COLUMN_NAMES, COLUMN_TYPES);
+        DatabaseSenderChannel sender = new DatabaseSenderChannel(target.createConnection());
+        sender.setStatement("insert into T values (?,?,?,?,?)");
+        sender.setBatchSize(4);
+        sender.setCommitInterval(8);
+        sender.open();
+        for (int i = 0; i < 5; i++) {
+            sender.sendMessage(table.rows.get(i));
+        }
+        target.failBatches = true;
+        try {
+            sender.close();
+            fail("Failure of the final batch not reported");
+        } catch (ChannelException e) {
+            // expected
+        }
+        assertEquals(0, target.commits);
+        assertEquals(1, target.rollbacks);
+        assertTrue(target.autoCommit);
+        assertTrue(target.statementClosed);
+        assertTrue(target.closed);
+    }
+
+    public void testRowBatchesToSender() throws Exception {
+        DatabaseReceiverChannel receiver = new DatabaseReceiverChannel(table.createConnection());
+        receiver.setQuery("select * from T");
+        receiver.setBatchSize(7);
+        receiver.open();
+        InMemoryTable target = new InMemoryTable(COLUMN_NAMES, COLUMN_TYPES);
+        DatabaseSenderChannel sender = new DatabaseSenderChannel(target.createConnection());
+        sender.setStatement("insert into T values (?,?,?,?,?)");
+        sender.setBatchSize(7);
+        sender.open();
+        Object batch = null;
+        while ((batch = receiver.getMessage()) != null) {
+            sender.sendMessage(batch);
+        }
+        receiver.close();
+        sender.close();
+        assertRowsEqual(table.rows, target.rows);
+        assertEquals(table.rows.size(), sender.getRowCount());
+        assertEquals(4, target.executedBatches);
+    }
+
+    private void checkRowsAsMaps(boolean byIndex) throws Exception {
+        DatabaseReceiverChannel channel = new DatabaseReceiverChannel(table.createConnection());
+        channel.setQuery("select * from T");
+        channel.setColumnAccessByIndex(byIndex);
+        channel.open();
+        for (int i = 0; i < table.rows.size(); i++) {
+            assertEquals(getExpectedRow(i), channel.getMessage());
+        }
+        assertNull(channel.getMessage());
+        channel.close();
+        assertEquals(byIndex ? 0 : table.rows.size() * COLUMN_NAMES.length, table.lookupsByLabel);
+        assertEquals(0, table.fetchSize);
+    }
+
+    private Map getExpectedRow(int row) {
+        Map result = new HashMap();
+        Object[] values = (Object[]) table.rows.get(row);
+        for (int i = 0; i < COLUMN_NAMES.length; i++) {
+            result.put(COLUMN_NAMES[i], values[i]);
+        }
+        return result;
+    }
+
+    private static void assertRowsEqual(List expected, List actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Object[] expectedRow = (Object[]) expected.get(i);
+            Object[] actualRow = (Object[]) actual.get(i);
+            for (int c = 0; c < expectedRow.length; c++) {
+                assertEquals("Row " + i + " column " + c, expectedRow[c], actualRow[c]);
+            }
+        }
+    }
+
+    /**
+     * A table whose rows are returned by any query, and to which any prepared statement inserts.
+     */
+    private static class InMemoryTable {
+        final String[] columnNames;
+        final int[] columnTypes;
+        final List rows = new ArrayList();
+
+        int fetchSize;
+        int lookupsByLabel;
+        int executedBatches;
+        int commits;
+        int rollbacks;
+        boolean autoCommit = true;
+        boolean closed;
+        boolean statementClosed;
+        boolean failBatches;
+
+        InMemoryTable(String[] columnNames, int[] columnTypes) {
+            this.columnNames = columnNames;
+            this.columnTypes = columnTypes;
+        }
+
+        Connection createConnection() {
+            return (Connection) proxy(Connection.class, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    if ("createStatement".equals(name)) {
+                        return createStatement();
+                    } else if ("prepareStatement".equals(name)) {
+                        return createPreparedStatement();
+                    } else if ("getAutoCommit".equals(name)) {
+                        return Boolean.valueOf(autoCommit);
+                    } else if ("setAutoCommit".equals(name)) {
+                        autoCommit = ((Boolean) args[0]).booleanValue();
+                    } else if ("commit".equals(name)) {
+                        commits++;
+                    } else if ("rollback".equals(name)) {
+                        rollbacks++;
+                    } else if ("close".equals(name)) {
+                        closed = true;
+                    } else {
+                        throw new UnsupportedOperationException(name);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        private Statement createStatement() {
+            return (Statement) proxy(Statement.class, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    if ("setFetchSize".equals(name)) {
+                        fetchSize = ((Integer) args[0]).intValue();
+                    } else if ("executeQuery".equals(name)) {
+                        return createResultSet();
+                    } else if (!"close".equals(name)) {
+                        throw new UnsupportedOperationException(name);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        private ResultSet createResultSet() {
+            return (ResultSet) proxy(ResultSet.class, new InvocationHandler() {
+                int row = -1;
+                Object lastValue;
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    if ("next".equals(name)) {
+                        return Boolean.valueOf(++row < rows.size());
+                    } else if ("getMetaData".equals(name)) {
+                        return createMetaData();
+                    } else if ("wasNull".equals(name)) {
+                        return Boolean.valueOf(lastValue == null);
+                    } else if ("close".equals(name)) {
+                        return null;
+                    } else if (name.startsWith("get")) {
+                        int column = 0;
+                        if (args[0] instanceof String) {
+                            lookupsByLabel++;
+                            while (!columnNames[column].equals(args[0])) {
+                                column++;
+                            }
+                        } else {
+                            column = ((Integer) args[0]).intValue() - 1;
+                        }
+                        lastValue = ((Object[]) rows.get(row))[column];
+                        if (lastValue == null && method.getReturnType().isPrimitive()) {
+                            return method.getReturnType() == boolean.class ? (Object) Boolean.FALSE
+                                    : method.getReturnType() == double.class ? (Object) new Double(0)
+                                    : method.getReturnType() == long.class ? (Object) new Long(0) : (Object) new Integer(0);
+                        }
+                        return lastValue;
+                    }
+                    throw new UnsupportedOperationException(name);
+                }
+            });
+        }
+
+        private ResultSetMetaData createMetaData() {
+            return (ResultSetMetaData) proxy(ResultSetMetaData.class, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    if ("getColumnCount".equals(name)) {
+                        return new Integer(columnNames.length);
+                    } else if ("getColumnLabel".equals(name)) {
+                        return columnNames[((Integer) args[0]).intValue() - 1];
+                    } else if ("getColumnType".equals(name)) {
+                        return new Integer(columnTypes[((Integer) args[0]).intValue() - 1]);
+                    }
+                    throw new UnsupportedOperationException(name);
+                }
+            });
+        }
+
+        private PreparedStatement createPreparedStatement() {
+            return (PreparedStatement) proxy(PreparedStatement.class, new InvocationHandler() {
+                Object[] parameters = new Object[columnNames.length];
+                List batch = new ArrayList();
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    if ("setNull".equals(name)) {
+                        parameters[((Integer) args[0]).intValue() - 1] = null;
+                    } else if (name.startsWith("set")) {
+                        parameters[((Integer) args[0]).intValue() - 1] = args[1];
+                    } else if ("executeUpdate".equals(name)) {
+                        rows.add(parameters.clone());
+                        return new Integer(1);
+                    } else if ("addBatch".equals(name)) {
+                        batch.add(parameters.clone());
+                    } else if ("executeBatch".equals(name)) {
+                        if (failBatches) {
+                            throw new SQLException("Batch failed");
+                        }
+                        rows.addAll(batch);
+                        int[] counts = new int[batch.size()];
+                        batch.clear();
+                        executedBatches++;
+                        return counts;
+                    } else if ("clearBatch".equals(name)) {
+                        batch.clear();
+                    } else if ("close".equals(name)) {
+                        statementClosed = true;
+                    } else {
+                        throw new UnsupportedOperationException(name);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        private static Object proxy(Class type, InvocationHandler handler) {
+            return Proxy.newProxyInstance(DatabaseChannelTest.class.getClassLoader(), new Class[] {type}, handler);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message.extractor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * MessageFramerTest
+ * 
+ * Checks that the framers return the same messages as the blocking extractors,
+ * whatever the chunks in which the data arrives.
+ * Except that the framers skip the msgs that the extractors refuse, 
+ * where the extractors stop.
+ * 
+ * @author erwin dl
+ */
+public class MessageFramerTest extends TestCase {
+
+    private static final String[] TEXTS = new String[] {
+        "",
+        "one line",
+        "line1\nline2\n",
+        "line1\r\nline2\r\n\r\nline4",
+        "ends with cr\r",
+        "caf\u00E9 \u20AC 100\nna\u00EFve\n\u00E9\u00E8\u00EA",
+        "msg1\u001Cmsg2\u001Cmsg3",
+    };
+
+    private static final String[] CHARSETS = new String[] {"UTF-8", "ISO-8859-15"};
+
+    private static final int[] CHUNK_SIZES = new int[] {1, 2, 5, 1000};
+
+    public void testTextLines() throws Exception {
+        checkDelimiterFramer(new NioTextLineMessageExtractor());
+    }
+
+    public void testEndOfMsgChar() throws Exception {
+        checkDelimiterFramer(new NioEndOfMsgCharMsgExtractor());
+    }
+
+    public void testDelimiterFramerRefusesUTF16() {
+        try {
+            new NioTextLineMessageExtractor().createFramer(Charset.forName("UTF-16"));
+            fail("UTF-16 can not be framed on bytes");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testLengthPrefixed() throws Exception {
+        String[] msgs = new String[] {"first", "", "caf\u00E9 \u20AC", "last"};
+        Charset charset = Charset.forName("UTF-8");
+        byte[] bytes = lengthPrefix(msgs, charset);
+        List expected = new ArrayList();
+        for (int i = 0; i < msgs.length; i++) {
+            expected.add(msgs[i]);
+        }
+        for (int j = 0; j < CHUNK_SIZES.length; j++) {
+            IMessageFramer framer = new LengthPrefixedMsgExtractor().createFramer(charset);
+            assertEquals("Wrong msgs with chunk size "+CHUNK_SIZES[j], expected, frame(framer, bytes, CHUNK_SIZES[j]));
+        }
+    }
+
+    public void testLengthPrefixedIncompleteMsgDropped() throws Exception {
+        Charset charset = Charset.forName("UTF-8");
+        byte[] bytes = lengthPrefix(new String[] {"complete", "incomplete"}, charset);
+        byte[] truncated = new byte[bytes.length - 3];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        List msgs = frame(new LengthPrefixedMsgExtractor().createFramer(charset), truncated, 4);
+        assertEquals(1, msgs.size());
+        assertEquals("complete", msgs.get(0));
+    }
+
+    public void testLengthPrefixedTooLarge() throws Exception {
+        Charset charset = Charset.forName("UTF-8");
+        byte[] bytes = lengthPrefix(new String[] {"this message is too large"}, charset);
+        try {
+            frame(new LengthPrefixedMsgExtractor(10).createFramer(charset), bytes, 1000);
+            fail("Message larger than the maximum should be refused");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testLengthPrefixedExtractor() throws Exception {
+        String[] msgs = new String[] {"first", "", "caf\u00E9 \u20AC", "last"};
+        Charset charset = Charset.forName("UTF-8");
+        LengthPrefixedMsgExtractor extractor = new LengthPrefixedMsgExtractor();
+        extractor.open(Channels.newChannel(new ByteArrayInputStream(lengthPrefix(msgs, charset))), charset);
+        for (int i = 0; i < msgs.length; i++) {
+            assertEquals(msgs[i], extractor.getMessage());
+        }
+        assertNull(extractor.getMessage());
+    }
+
+    public void testEmptyMsgSkipped() throws Exception {
+        byte[] bytes = "msg1\u001C\u001Cmsg3\u001C".getBytes("UTF-8");
+        List msgs = frame(new NioEndOfMsgCharMsgExtractor().createFramer(Charset.forName("UTF-8")), bytes, 3);
+        assertEquals(2, msgs.size());
+        assertEquals("msg1", msgs.get(0));
+        assertEquals("msg3", msgs.get(1));
+    }
+
+    private void checkDelimiterFramer(NioDelimitedMessageExtractor prototype) throws Exception {
+        for (int i = 0; i < TEXTS.length; i++) {
+            for (int c = 0; c < CHARSETS.length; c++) {
+                Charset charset = Charset.forName(CHARSETS[c]);
+                byte[] bytes = TEXTS[i].getBytes(CHARSETS[c]);
+                NioDelimitedMessageExtractor extractor = (NioDelimitedMessageExtractor) prototype.cloneExtractor();
+                extractor.open(Channels.newChannel(new ByteArrayInputStream(bytes)), charset);
+                List expected = new ArrayList();
+                Object msg = null;
+                while ((msg = extractor.getMessage()) != null) {
+                    expected.add(msg);
+                }
+                IMessageFramer framer = prototype.createFramer(charset);
+                for (int j = 0; j < CHUNK_SIZES.length; j++) {
+                    assertEquals("Wrong msgs for text "+i+" in "+CHARSETS[c]+" with chunk size "+CHUNK_SIZES[j], 
+                            expected, frame(framer.cloneFramer(), bytes, CHUNK_SIZES[j]));
+                }
+            }
+        }
+    }
+
+    private static List frame(IMessageFramer framer, byte[] bytes, int chunkSize) throws IOException {
+        List msgs = new ArrayList();
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            framer.frame(ByteBuffer.wrap(bytes, offset, Math.min(chunkSize, bytes.length - offset)), msgs);
+        }
+        framer.endOfData(msgs);
+        return msgs;
+    }
+
+    private static byte[] lengthPrefix(String[] msgs, Charset charset) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int i = 0; i < msgs.length; i++) {
+            byte[] msg = msgs[i].getBytes(charset.name());
+            out.writeInt(msg.length);
+            out.write(msg);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,147 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message.extractor;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * NioDelimitedMessageExtractorTest
+ * 
+ * Checks that the NIO extractors return the same messages as the char-per-char extractors,
+ * for Readers, byte channels and files, and with block sizes that cut messages
+ * and multi-byte chars in pieces.
+ * 
+ * @author erwin dl
+ */
+public class NioDelimitedMessageExtractorTest extends TestCase {
+
+    private static final String[] TEXTS = new String[] {
+        "",
+        "one line",
+        "line1\nline2\n",
+        "line1\r\nline2\r\n\r\nline4",
+        "\n\nafter empty lines\n",
+        "ends with cr\r",
+        "\r",
+        "caf\u00E9 \u20AC 100\nna\u00EFve\n\u00E9\u00E8\u00EA",
+        "msg1\u001Cmsg2\u001C\u001Cmsg4",
+        "msg1\u001Cmsg2\u001C",
+    };
+
+    private static final String[] CHARSETS = new String[] {"UTF-8", "ISO-8859-15", "UTF-16"};
+
+    private static final int[] BLOCK_SIZES = new int[] {1, 3, 7, NioDelimitedMessageExtractor.DEFAULT_BLOCK_SIZE};
+
+    public void testTextLinesFromReader() {
+        for (int i = 0; i < TEXTS.length; i++) {
+            for (int j = 0; j < BLOCK_SIZES.length; j++) {
+                NioDelimitedMessageExtractor extractor = new NioTextLineMessageExtractor();
+                extractor.setBlockSize(BLOCK_SIZES[j]);
+                extractor.open(new StringReader(TEXTS[i]));
+                assertEquals("Wrong lines for text "+i+" with block size "+BLOCK_SIZES[j], 
+                        getExpectedMessages(new TextLineMessageExtractor(), TEXTS[i]), getMessages(extractor));
+            }
+        }
+    }
+
+    public void testTextLinesFromChannel() throws Exception {
+        for (int i = 0; i < TEXTS.length; i++) {
+            for (int c = 0; c < CHARSETS.length; c++) {
+                byte[] bytes = TEXTS[i].getBytes(CHARSETS[c]);
+                for (int j = 0; j < BLOCK_SIZES.length; j++) {
+                    NioDelimitedMessageExtractor extractor = new NioTextLineMessageExtractor();
+                    extractor.setBlockSize(BLOCK_SIZES[j]);
+                    extractor.open(Channels.newChannel(new ByteArrayInputStream(bytes)), Charset.forName(CHARSETS[c]));
+                    assertEquals("Wrong lines for text "+i+" in "+CHARSETS[c]+" with block size "+BLOCK_SIZES[j], 
+                            getExpectedMessages(new TextLineMessageExtractor(), new String(bytes, CHARSETS[c])), getMessages(extractor));
+                }
+            }
+        }
+    }
+
+    public void testTextLinesFromFile() throws Exception {
+        File file = File.createTempFile("NioDelimitedMessageExtractorTest", ".txt");
+        try {
+            for (int i = 0; i < TEXTS.length; i++) {
+                for (int c = 0; c < CHARSETS.length; c++) {
+                    FileOutputStream out = new FileOutputStream(file);
+                    byte[] bytes = TEXTS[i].getBytes(CHARSETS[c]);
+                    out.write(bytes);
+                    out.close();
+                    for (int j = 0; j < BLOCK_SIZES.length; j++) {
+                        NioDelimitedMessageExtractor extractor = new NioTextLineMessageExtractor();
+                        extractor.setMappedRegionSize(BLOCK_SIZES[j]);
+                        extractor.open(new FileInputStream(file).getChannel(), Charset.forName(CHARSETS[c]));
+                        assertEquals("Wrong lines for text "+i+" in "+CHARSETS[c]+" with region size "+BLOCK_SIZES[j], 
+                                getExpectedMessages(new TextLineMessageExtractor(), new String(bytes, CHARSETS[c])), getMessages(extractor));
+                    }
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testEndOfMsgCharFromReaderAndChannel() throws Exception {
+        for (int i = 0; i < TEXTS.length; i++) {
+            List expected = getExpectedMessages(new EndOfMsgCharMsgExtractor(), TEXTS[i]);
+            for (int j = 0; j < BLOCK_SIZES.length; j++) {
+                NioDelimitedMessageExtractor extractor = new NioEndOfMsgCharMsgExtractor();
+                extractor.setBlockSize(BLOCK_SIZES[j]);
+                extractor.open(new StringReader(TEXTS[i]));
+                assertEquals("Wrong messages for text "+i+" with block size "+BLOCK_SIZES[j], expected, getMessages(extractor));
+
+                extractor = new NioEndOfMsgCharMsgExtractor();
+                extractor.setBlockSize(BLOCK_SIZES[j]);
+                extractor.open(Channels.newChannel(new ByteArrayInputStream(TEXTS[i].getBytes("UTF-8"))), Charset.forName("UTF-8"));
+                assertEquals("Wrong messages for text "+i+" in UTF-8 with block size "+BLOCK_SIZES[j], expected, getMessages(extractor));
+            }
+        }
+    }
+
+    public void testCloneExtractor() {
+        NioDelimitedMessageExtractor extractor = new NioEndOfMsgCharMsgExtractor('|');
+        extractor.setBlockSize(5);
+        NioDelimitedMessageExtractor clone = (NioDelimitedMessageExtractor) extractor.cloneExtractor();
+        assertEquals("Wrong delimiter in clone", '|', clone.getDelimiter());
+        assertEquals("Wrong block size in clone", 5, clone.getBlockSize());
+        assertFalse("Clone should not be open", clone.isOpen());
+    }
+
+    private List getExpectedMessages(IMessageExtractor extractor, String text) {
+        extractor.open(new StringReader(text));
+        return getMessages(extractor);
+    }
+
+    private List getMessages(IMessageExtractor extractor) {
+        List result = new ArrayList();
+        Object msg = null;
+        while ((msg = extractor.getMessage()) != null) {
+            result.add(msg);
+        }
+        extractor.close();
+        return result;
+    }
+}
@@ -0,0 +1,156 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.isencia.message.IFlushListener;
+import com.isencia.message.ISenderChannel;
+import com.isencia.message.generator.MessageTextLineGenerator;
+
+/**
+ * FileSenderChannelTest
+ * 
+ * Checks the buffered mode of the FileSenderChannel.
+ * 
+ * @author erwin dl
+ */
+public class FileSenderChannelTest extends TestCase {
+    File file = null;
+    List flushes = new ArrayList();
+
+    /*
+     * @see TestCase#setUp()
+     */
+    protected void setUp() throws Exception {
+        file = File.createTempFile("FileSenderChannelTest", ".txt");
+    }
+
+    /*
+     * @see TestCase#tearDown()
+     */
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testBufferedContents() throws Exception {
+        FileSenderChannel channel = createChannel("UTF-8", 0, 0);
+        channel.setBufferSize(20);
+        channel.open(false);
+        StringBuffer expected = new StringBuffer();
+        for (int i = 0; i < 100; i++) {
+            String msg = "msg " + i + " caf\u00E9 \u20AC \uD834\uDD1E";
+            channel.sendMessage(msg);
+            expected.append(msg).append('\n');
+        }
+        channel.close();
+        assertEquals("Wrong file contents", expected.toString(), readFile("UTF-8"));
+    }
+
+    public void testSurrogatesSplitOverWrites() throws Exception {
+        FileOutputStream out = new FileOutputStream(file);
+        FileChannelWriter writer = new FileChannelWriter(out.getChannel(), Charset.forName("UTF-8"), 16);
+        // a pair split over 2 writes
+        writer.write("a\uD834");
+        writer.write("\uDD1E");
+        // a lone high surrogate followed by a split pair
+        writer.write("b\uD834");
+        writer.write("\uD834");
+        writer.write("\uDD1E");
+        // a lone high surrogate followed by another lone one, and by a normal char
+        writer.write("c\uD834");
+        writer.write("\uD834d");
+        // a lone high surrogate at the end
+        writer.write("e\uD834");
+        writer.close();
+        out.close();
+        assertEquals("Wrong file contents", "a\uD834\uDD1Eb?\uD834\uDD1Ec??de?", readFile("UTF-8"));
+    }
+
+    public void testFlushAfterNrOfMessages() throws Exception {
+        FileSenderChannel channel = createChannel(null, 3, 0);
+        channel.open(false);
+        channel.sendMessage("one");
+        channel.sendMessage("two");
+        assertEquals("Nothing should be flushed yet", 0, flushes.size());
+        assertEquals("Nothing should be written yet", "", readFile("ISO-8859-1"));
+        channel.sendMessage("three");
+        assertEquals("Should be flushed after 3 msgs", 1, flushes.size());
+        assertEquals("Wrong nr of flushed bytes", new Long(14), flushes.get(0));
+        assertEquals("Wrong file contents", "one\ntwo\nthree\n", readFile("ISO-8859-1"));
+        channel.sendMessage("four");
+        channel.flush();
+        assertEquals("Explicit flush not done", 2, flushes.size());
+        assertEquals("Wrong nr of flushed bytes", new Long(5), flushes.get(1));
+        channel.close();
+        assertEquals("Wrong file contents", "one\ntwo\nthree\nfour\n", readFile("ISO-8859-1"));
+    }
+
+    public void testFlushInterval() throws Exception {
+        FileSenderChannel channel = createChannel(null, 0, 50);
+        channel.open(false);
+        channel.sendMessage("one");
+        long timeout = System.currentTimeMillis() + 5000;
+        while (flushes.size() == 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals("Pending msg should be flushed after the interval", "one\n", readFile("ISO-8859-1"));
+        channel.close();
+    }
+
+    public void testBufferedAppend() throws Exception {
+        FileSenderChannel channel = createChannel(null, 0, 0);
+        channel.open(false);
+        channel.sendMessage("one");
+        channel.close();
+        channel = createChannel(null, 0, 0);
+        channel.open(true);
+        channel.sendMessage("two");
+        channel.close();
+        assertEquals("Wrong file contents", "one\ntwo\n", readFile("ISO-8859-1"));
+    }
+
+    private FileSenderChannel createChannel(String encoding, int flushCount, long flushInterval) {
+        FileSenderChannel channel = new FileSenderChannel(file, encoding, new MessageTextLineGenerator("\n"));
+        channel.setFlushPolicy(flushCount, flushInterval);
+        channel.setFlushListener(new IFlushListener() {
+            public void flushed(ISenderChannel channel, long duration, long byteCount) {
+                flushes.add(new Long(byteCount));
+            }
+        });
+        return channel;
+    }
+
+    private String readFile(String encoding) throws Exception {
+        Reader reader = new InputStreamReader(new FileInputStream(file), encoding);
+        StringBuffer result = new StringBuffer();
+        char[] chars = new char[1024];
+        int count = 0;
+        while ((count = reader.read(chars)) != -1) {
+            result.append(chars, 0, count);
+        }
+        reader.close();
+        return result.toString();
+    }
+}
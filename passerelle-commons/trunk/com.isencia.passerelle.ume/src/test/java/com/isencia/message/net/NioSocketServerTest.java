@@ -0,0 +1,108 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message.net;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import com.isencia.message.NoMoreMessagesException;
+import com.isencia.message.extractor.NioTextLineMessageExtractor;
+import com.isencia.message.generator.MessageTextLineGenerator;
+import com.isencia.message.net.requestreply.NioSocketServerRequestReplier;
+import com.isencia.message.requestreply.IMessage;
+
+/**
+ * NioSocketServerTest
+ * 
+ * Sends msgs over loopback connections to the non-blocking server channels.
+ * 
+ * @author erwin dl
+ */
+public class NioSocketServerTest extends TestCase {
+
+    public void testReceiverChannel() throws Exception {
+        ServerSocketChannel serverChannel = openServerChannel();
+        int port = serverChannel.socket().getLocalPort();
+        NioSocketServerReceiverChannel channel = new NioSocketServerReceiverChannel(serverChannel, new NioTextLineMessageExtractor(), 2);
+        channel.open();
+        try {
+            Set expected = new HashSet();
+            for (int c = 0; c < 10; c++) {
+                Socket s = new Socket("localhost", port);
+                OutputStream out = s.getOutputStream();
+                for (int m = 0; m < 5; m++) {
+                    String msg = "client " + c + " msg " + m;
+                    expected.add(msg);
+                    // send the line terminator separately, to split the msgs
+                    out.write(msg.getBytes());
+                    out.flush();
+                    out.write("\r\n".getBytes());
+                }
+                s.close();
+            }
+            Set received = new HashSet();
+            while (received.size() < expected.size()) {
+                received.add(channel.getMessage());
+            }
+            assertEquals(expected, received);
+        } finally {
+            channel.close();
+        }
+        assertFalse(serverChannel.isOpen());
+        try {
+            channel.getMessage();
+            fail("A closed channel should not return msgs");
+        } catch (NoMoreMessagesException e) {
+            // expected
+        }
+    }
+
+    public void testRequestReplier() throws Exception {
+        ServerSocketChannel serverChannel = openServerChannel();
+        int port = serverChannel.socket().getLocalPort();
+        NioSocketServerRequestReplier channel = new NioSocketServerRequestReplier(serverChannel, new NioTextLineMessageExtractor(), new MessageTextLineGenerator("\n"), 1);
+        channel.open();
+        try {
+            Socket s1 = new Socket("localhost", port);
+            Socket s2 = new Socket("localhost", port);
+            s1.getOutputStream().write("request 1\n".getBytes());
+            s2.getOutputStream().write("request 2\n".getBytes());
+            for (int i = 0; i < 2; i++) {
+                IMessage request = channel.receiveRequest();
+                channel.sendResponse("reply to " + request.getMessage(), request.getCorrelationID());
+            }
+            assertEquals("reply to request 1", new BufferedReader(new InputStreamReader(s1.getInputStream())).readLine());
+            assertEquals("reply to request 2", new BufferedReader(new InputStreamReader(s2.getInputStream())).readLine());
+            s1.close();
+            s2.close();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static ServerSocketChannel openServerChannel() throws Exception {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().bind(new InetSocketAddress("localhost", 0));
+        return serverChannel;
+    }
+}
@@ -0,0 +1,74 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message.extractor;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+
+import com.isencia.message.io.FileReceiverChannel;
+
+/**
+ * Compares the throughput of reading a text file line per line through a FileReceiverChannel,
+ * with the char-per-char TextLineMessageExtractor and with the NioTextLineMessageExtractor.
+ * <p>
+ * Usage : LineExtractionBenchmark [nrOfLines]
+ * </p>
+ *
+ * @author erwin dl
+ */
+public class LineExtractionBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int nrOfLines = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+		File file = File.createTempFile("LineExtractionBenchmark", ".txt");
+		file.deleteOnExit();
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		for (int i = 0; i < nrOfLines; i++) {
+			writer.write("2010-06-01 12:00:00,000 INFO  [some.logger.Name] log record number " + i);
+			writer.newLine();
+		}
+		writer.close();
+		System.out.println("File size : " + (file.length() / 1024 / 1024) + " MB");
+
+		for (int run = 0; run < 3; run++) {
+			System.out.println("--- run " + run);
+			report("TextLineMessageExtractor", file, readLines(file, new TextLineMessageExtractor()));
+			report("NioTextLineMessageExtractor", file, readLines(file, new NioTextLineMessageExtractor()));
+		}
+		file.delete();
+	}
+
+	private static void report(String label, File file, long duration) {
+		System.out.println(label + " : " + (duration / 1000000) + " ms, " + (file.length() * 1000 / duration) + " MB/s");
+	}
+
+	private static long readLines(File file, IMessageExtractor extractor) throws Exception {
+		long start = System.nanoTime();
+		FileReceiverChannel channel = new FileReceiverChannel(file, extractor);
+		channel.open();
+		long count = 0;
+		while (channel.getMessage() != null) {
+			count++;
+		}
+		channel.close();
+		long duration = System.nanoTime() - start;
+		if (count == 0) {
+			System.out.println("no lines read");
+		}
+		return duration;
+	}
+}
@@ -0,0 +1,62 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message.io;
+
+import java.io.File;
+
+import com.isencia.message.generator.MessageTextLineGenerator;
+
+/**
+ * Compares writing msgs to a file through a FileSenderChannel that flushes after each msg,
+ * with a buffered FileSenderChannel that flushes every nrOfMsgsPerFlush msgs.
+ * <p>
+ * Usage : FileSenderChannelBenchmark [nrOfMsgs] [nrOfMsgsPerFlush]
+ * </p>
+ *
+ * @author erwin dl
+ */
+public class FileSenderChannelBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int nrOfMsgs = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+		int nrOfMsgsPerFlush = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+		File file = File.createTempFile("FileSenderChannelBenchmark", ".txt");
+		file.deleteOnExit();
+
+		for (int run = 0; run < 3; run++) {
+			System.out.println("--- run " + run);
+			report("flush per msg", nrOfMsgs, writeMsgs(file, nrOfMsgs, 1));
+			report("flush per " + nrOfMsgsPerFlush + " msgs", nrOfMsgs, writeMsgs(file, nrOfMsgs, nrOfMsgsPerFlush));
+		}
+		file.delete();
+	}
+
+	private static void report(String label, int nrOfMsgs, long duration) {
+		System.out.println(label + " : " + (duration / 1000000) + " ms, " + (duration / nrOfMsgs) + " ns/msg");
+	}
+
+	private static long writeMsgs(File file, int nrOfMsgs, int nrOfMsgsPerFlush) throws Exception {
+		long start = System.nanoTime();
+		FileSenderChannel channel = new FileSenderChannel(file, new MessageTextLineGenerator());
+		channel.setFlushPolicy(nrOfMsgsPerFlush, 0);
+		channel.open(false);
+		for (int i = 0; i < nrOfMsgs; i++) {
+			channel.sendMessage("2010-06-01 12:00:00,000 INFO  [some.logger.Name] log record number " + i);
+		}
+		channel.close();
+		return System.nanoTime() - start;
+	}
+}
@@ -0,0 +1,107 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.message.net;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+
+import com.isencia.message.ReceiverChannel;
+import com.isencia.message.extractor.NioTextLineMessageExtractor;
+
+/**
+ * A loopback load test for the socket server receiver channels :
+ * a number of client threads each open many short-lived connections,
+ * and send a few lines on each of them.
+ * It reports the time until all msgs have been received, and the peak nr of threads,
+ * for the thread-per-connection SocketServerReceiverChannel and for the NioSocketServerReceiverChannel.
+ * <p>
+ * Usage : NioSocketServerLoadTest [nrOfClients] [connectionsPerClient] [msgsPerConnection]
+ * </p>
+ *
+ * @author erwin dl
+ */
+public class NioSocketServerLoadTest {
+
+	public static void main(String[] args) throws Exception {
+		int nrOfClients = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		int connectionsPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		int msgsPerConnection = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		for (int run = 0; run < 3; run++) {
+			System.out.println("--- run " + run);
+			ServerSocket sSocket = new ServerSocket(0, 1000);
+			runLoad("SocketServerReceiverChannel", new SocketServerReceiverChannel(sSocket, new NioTextLineMessageExtractor()),
+					sSocket.getLocalPort(), nrOfClients, connectionsPerClient, msgsPerConnection);
+
+			ServerSocketChannel serverChannel = ServerSocketChannel.open();
+			serverChannel.socket().bind(new InetSocketAddress(0), 1000);
+			runLoad("NioSocketServerReceiverChannel", new NioSocketServerReceiverChannel(serverChannel, new NioTextLineMessageExtractor(), 2),
+					serverChannel.socket().getLocalPort(), nrOfClients, connectionsPerClient, msgsPerConnection);
+		}
+	}
+
+	private static void runLoad(String label, ReceiverChannel channel, final int port, int nrOfClients,
+			final int connectionsPerClient, final int msgsPerConnection) throws Exception {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		threads.resetPeakThreadCount();
+		int threadCountBefore = threads.getThreadCount();
+
+		channel.open();
+		long start = System.nanoTime();
+		Thread[] clients = new Thread[nrOfClients];
+		for (int i = 0; i < nrOfClients; i++) {
+			final int clientNr = i;
+			clients[i] = new Thread("client-" + i) {
+				public void run() {
+					try {
+						for (int c = 0; c < connectionsPerClient; c++) {
+							Socket s = new Socket("localhost", port);
+							OutputStream out = s.getOutputStream();
+							StringBuffer msgs = new StringBuffer();
+							for (int m = 0; m < msgsPerConnection; m++) {
+								msgs.append("client ").append(clientNr).append(" connection ").append(c).append(" msg ").append(m).append('\n');
+							}
+							out.write(msgs.toString().getBytes());
+							s.close();
+						}
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			};
+			clients[i].start();
+		}
+		int expected = nrOfClients * connectionsPerClient * msgsPerConnection;
+		for (int i = 0; i < expected; i++) {
+			channel.getMessage();
+		}
+		long duration = System.nanoTime() - start;
+		for (int i = 0; i < nrOfClients; i++) {
+			clients[i].join();
+		}
+		// the client threads are included
+		int peakThreads = threads.getPeakThreadCount() - threadCountBefore;
+		channel.close();
+
+		System.out.println(label + " : " + expected + " msgs on " + (nrOfClients * connectionsPerClient) + " connections in "
+				+ (duration / 1000000) + " ms, " + (expected * 1000000000L / duration) + " msgs/s, peak extra threads " + peakThreads);
+	}
+}
@@ -32,6 +32,7 @@ import ptolemy.actor.process.TerminateProcessException;
 import ptolemy.data.IntToken;
 import ptolemy.data.Token;
 import ptolemy.data.expr.Parameter;
+import ptolemy.data.expr.StringParameter;
 import ptolemy.kernel.CompositeEntity;
 import ptolemy.kernel.util.Attribute;
 import ptolemy.kernel.util.IllegalActionException;
@@ -51,6 +52,7 @@ import com.isencia.passerelle.core.PortHandler;
 import com.isencia.passerelle.core.PortListenerAdapter;
 import com.isencia.passerelle.domain.cap.BlockingQueueReceiver;
 import com.isencia.passerelle.domain.cap.Director;
+import com.isencia.passerelle.domain.cap.RingBufferReceiver;
 import com.isencia.passerelle.ext.ErrorControlStrategy;
 import com.isencia.passerelle.ext.impl.DefaultActorErrorControlStrategy;
 import com.isencia.passerelle.message.ManagedMessage;
@@ -284,6 +286,19 @@ public abstract class Actor extends TypedAtomicActor implements IMessageCreator
 	 * </p>
 	 */
 	public Parameter receiverQueueCapacityParam;
+	/**
+	 * Parameter to select what happens when a bounded input port queue is full.
+	 * This is only supported when the Director uses bounded ring buffer receivers.
+	 * <ul>
+	 * <li>Block : the sending actor waits till there's room again
+	 * <li>Drop : the new message is discarded
+	 * <li>Fail : a NoRoomException is thrown to the sending actor
+	 * </ul>
+	 * <p>
+	 * Default value = Block.
+	 * </p>
+	 */
+	public StringParameter receiverQueueOverflowPolicyParam;
 	
 	/**
 	 * Constructor for Actor.
@@ -310,6 +325,12 @@ public abstract class Actor extends TypedAtomicActor implements IMessageCreator
 		receiverQueueWarningSizeParam = new Parameter(this,"Receiver Q warning size (-1)",new IntToken(-1));
 		registerExpertParameter(receiverQueueCapacityParam);
 		registerExpertParameter(receiverQueueWarningSizeParam);
+		receiverQueueOverflowPolicyParam = new StringParameter(this, "Receiver Q overflow policy");
+		receiverQueueOverflowPolicyParam.setExpression("Block");
+		receiverQueueOverflowPolicyParam.addChoice("Block");
+		receiverQueueOverflowPolicyParam.addChoice("Drop");
+		receiverQueueOverflowPolicyParam.addChoice("Fail");
+		registerExpertParameter(receiverQueueOverflowPolicyParam);
 		
 		try {
 			new EditorIcon(this, "_icon");
@@ -413,7 +434,6 @@ public abstract class Actor extends TypedAtomicActor implements IMessageCreator
 	
 	@Override
 	public Receiver newReceiver() throws IllegalActionException {
-		// TODO continue implementing capacity/warning level based on params above
 		Receiver rcver = super.newReceiver();
 		if(rcver instanceof BlockingQueueReceiver) {
 			BlockingQueueReceiver qRcvr = (BlockingQueueReceiver) rcver;
@@ -422,6 +442,22 @@ public abstract class Actor extends TypedAtomicActor implements IMessageCreator
 			
 			int qWarningSize = ((IntToken)receiverQueueWarningSizeParam.getToken()).intValue();
 			qRcvr.setSizeWarningThreshold(qWarningSize);
+		} else if(rcver instanceof RingBufferReceiver) {
+			RingBufferReceiver rbRcvr = (RingBufferReceiver) rcver;
+			int qCapacity = ((IntToken)receiverQueueCapacityParam.getToken()).intValue();
+			rbRcvr.setCapacity(qCapacity);
+			
+			int qWarningSize = ((IntToken)receiverQueueWarningSizeParam.getToken()).intValue();
+			rbRcvr.setSizeWarningThreshold(qWarningSize);
+			
+			String policy = receiverQueueOverflowPolicyParam.getExpression();
+			if("Drop".equalsIgnoreCase(policy)) {
+				rbRcvr.setOverflowPolicy(RingBufferReceiver.OverflowPolicy.DROP);
+			} else if("Fail".equalsIgnoreCase(policy)) {
+				rbRcvr.setOverflowPolicy(RingBufferReceiver.OverflowPolicy.FAIL);
+			} else {
+				rbRcvr.setOverflowPolicy(RingBufferReceiver.OverflowPolicy.BLOCK);
+			}
 		}
 		
 		return rcver;
@@ -1174,26 +1210,76 @@ public abstract class Actor extends TypedAtomicActor implements IMessageCreator
 		try {
 			Token token = new PasserelleToken(messageAndPort.getMessage());
 			messageAndPort.getPort().broadcast(token);
-		    if(logger.isDebugEnabled())
-		    	logger.debug(getInfo()+" sendOutputMsg() - Message "+messageAndPort.getMessage().getID()+
-		    			" sent on port "+messageAndPort.getPort().getName());
-		    
-		    String auditDetail = null;
-		    try {
-		    	auditDetail = getAuditTrailMessage(messageAndPort.getMessage(), messageAndPort.getPort());
-		    } catch (Exception e) {
-		    	// simple hack to log a default msg anyway
-		    	auditDetail = "sent message on port "+messageAndPort.getPort().getFullName();
-		    }
-			if(auditDetail!=null && getAuditLogger().isInfoEnabled()) {
-				getAuditLogger().info(auditDetail);
-			}
-
+			logOutputMsg(messageAndPort.getPort(), messageAndPort.getMessage());
 		} catch (Exception e) {
 			throw new ProcessingException(getInfo()+ " sendOutputMsg() - generated exception for sending msg on port "+
 					messageAndPort.getPort(),messageAndPort.getMessage(),e);
 		}
 	}
+
+	/**
+	 * Send a batch of messages on an output port, in the order of the list.
+	 * This is equivalent to calling sendOutputMsg() for each message, but the 
+	 * port's receivers are looked up only once, and each receiver gets all 
+	 * messages in one bulk operation.
+	 * <p>
+	 * For a batch of more than one message, sendOutputMsg(MessageAndPort) is not called,
+	 * so an override of that method is bypassed. The sent messages are logged in the same way though.
+	 * </p>
+	 * 
+	 * @param port
+	 * @param messages
+	 * @throws ProcessingException
+	 * @throws IllegalArgumentException if the port is not a valid output port of this actor
+	 */
+	protected void sendOutputMsgs(Port port, List<ManagedMessage> messages) throws ProcessingException, IllegalArgumentException {
+		if (messages == null || messages.isEmpty()) {
+			return;
+		}
+		if (messages.size() == 1) {
+			sendOutputMsg(port, messages.get(0));
+			return;
+		}
+		if(port.getContainer()!=this)
+			throw new IllegalArgumentException("port "+port.getFullName()+" not defined in actor "+this.getFullName());
+		
+		Token[] tokens = new Token[messages.size()];
+		for (int i = 0; i < tokens.length; i++) {
+			tokens[i] = new PasserelleToken(messages.get(i));
+		}
+		try {
+			port.broadcast(tokens, tokens.length);
+		} catch (Exception e) {
+			throw new ProcessingException(getInfo()+ " sendOutputMsgs() - generated exception for sending msgs on port "+
+					port,messages.get(0),e);
+		}
+		for (ManagedMessage message : messages) {
+			logOutputMsg(port, message);
+		}
+	}
+
+	/**
+	 * Logs a sent msg on debug level and in the audit trail.
+	 * 
+	 * @param port
+	 * @param message
+	 */
+	private void logOutputMsg(Port port, ManagedMessage message) {
+	    if(logger.isDebugEnabled())
+	    	logger.debug(getInfo()+" sendOutputMsg() - Message "+message.getID()+
+	    			" sent on port "+port.getName());
+	    
+	    String auditDetail = null;
+	    try {
+	    	auditDetail = getAuditTrailMessage(message, port);
+	    } catch (Exception e) {
+	    	// simple hack to log a default msg anyway
+	    	auditDetail = "sent message on port "+port.getFullName();
+	    }
+		if(auditDetail!=null && getAuditLogger().isInfoEnabled()) {
+			getAuditLogger().info(auditDetail);
+		}
+	}
 	
 	/**
 	 * Method to be overridden to specify custom audit logging messages.
@@ -1236,19 +1322,13 @@ public abstract class Actor extends TypedAtomicActor implements IMessageCreator
 		}
 
 		if (messagesAndPorts.length > 1) {
-			Long seqID = MessageFactory.getInstance().createSequenceID();
+			Port[] ports = new Port[messagesAndPorts.length];
+			ManagedMessage[] messages = new ManagedMessage[messagesAndPorts.length];
 			for (int i = 0; i < messagesAndPorts.length; i++) {
-				MessageAndPort msgPort = messagesAndPorts[i];
-				boolean isLastMsg = (i == (messagesAndPorts.length - 1));
-				try {
-					ManagedMessage msgInSeq = 
-						MessageFactory.getInstance().createMessageCopyInSequence(msgPort.getMessage(), seqID, new Long(i), isLastMsg);
-					sendOutputMsg(msgPort.getPort(), msgInSeq);
-				} catch (MessageException e) {
-					throw new ProcessingException("Error creating output sequence msg for msg " + msgPort.getMessage().getID(),
-							msgPort.getMessage(), e);
-				}
+				ports[i] = messagesAndPorts[i].getPort();
+				messages[i] = messagesAndPorts[i].getMessage();
 			}
+			sendOutputMsgBatches(ports, messages, MessageFactory.getInstance().createSequenceID());
 		} else {
 			sendOutputMsg(messagesAndPorts[0].getPort(), messagesAndPorts[0].getMessage());
 		}
@@ -1258,6 +1338,51 @@ public abstract class Actor extends TypedAtomicActor implements IMessageCreator
 		}
 	}
 
+	/**
+	 * Sends the messages in the order of the arrays, where consecutive messages
+	 * for a same port are sent as one batch via sendOutputMsgs(Port, List).
+	 * <p>
+	 * When a sequence ID is given, each message is sent as a copy in that sequence,
+	 * with its array index as position. When such a copy can not be created,
+	 * the messages before it are still sent before the exception is thrown,
+	 * as when each message would be sent on its own.
+	 * </p>
+	 * 
+	 * @param ports the output port per message
+	 * @param messages
+	 * @param seqID the sequence for the messages, or null to send them as they are
+	 * @throws ProcessingException
+	 * @throws IllegalArgumentException if a port is not a valid output port of this actor
+	 */
+	protected final void sendOutputMsgBatches(Port[] ports, ManagedMessage[] messages, Long seqID) throws ProcessingException, IllegalArgumentException {
+		Port batchPort = null;
+		List<ManagedMessage> batch = new ArrayList<ManagedMessage>(messages.length);
+		try {
+			for (int i = 0; i < messages.length; i++) {
+				ManagedMessage message = messages[i];
+				if (seqID != null) {
+					boolean isLastMsg = (i == (messages.length - 1));
+					try {
+						message = MessageFactory.getInstance().createMessageCopyInSequence(message, seqID, new Long(i), isLastMsg);
+					} catch (MessageException e) {
+						throw new ProcessingException("Error creating output sequence msg for msg " + messages[i].getID(), messages[i], e);
+					}
+				}
+				if (batchPort != null && batchPort != ports[i]) {
+					sendOutputMsgs(batchPort, batch);
+					batch.clear();
+				}
+				batchPort = ports[i];
+				batch.add(message);
+			}
+		} catch (ProcessingException e) {
+			// the msgs that precede the failing one must still be sent
+			sendOutputMsgs(batchPort, batch);
+			throw e;
+		}
+		sendOutputMsgs(batchPort, batch);
+	}
+
 	/**
 	 * To be invoked by actors when the actual fire() processing is starting.
 	 * The actor developer must ensure that this method is called 
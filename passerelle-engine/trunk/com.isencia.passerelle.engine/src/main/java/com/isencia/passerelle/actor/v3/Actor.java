@@ -36,7 +36,6 @@ import com.isencia.passerelle.core.PortMode;
 import com.isencia.passerelle.core.PasserelleException.Severity;
 import com.isencia.passerelle.domain.cap.Director;
 import com.isencia.passerelle.message.ManagedMessage;
-import com.isencia.passerelle.message.MessageException;
 import com.isencia.passerelle.message.MessageFactory;
 import com.isencia.passerelle.message.MessageHelper;
 
@@ -340,27 +339,11 @@ public abstract class Actor extends com.isencia.passerelle.actor.Actor {
 			}
 			
 			// and now send out the results
-			MessageOutputContext[] outputs = response.getOutputs();
-			if (outputs != null) {
-				for (MessageOutputContext output : outputs) {
-					sendOutputMsg(output.getPort(), output.getMessage());
-				}
-			}
-			outputs = response.getOutputsInSequence();
+			// consecutive msgs for a same port are sent as a batch
+			sendOutputs(response.getOutputs(), null);
+			MessageOutputContext[] outputs = response.getOutputsInSequence();
 			if (outputs != null && outputs.length > 0) {
-				Long seqID = MessageFactory.getInstance().createSequenceID();
-				for (int i = 0; i < outputs.length; i++) {
-					MessageOutputContext context = outputs[i];
-					boolean isLastMsg = (i == (outputs.length - 1));
-					try {
-						ManagedMessage msgInSeq = MessageFactory.getInstance().createMessageCopyInSequence(
-										context.getMessage(), seqID, new Long(i), isLastMsg);
-						sendOutputMsg(context.getPort(), msgInSeq);
-					} catch (MessageException e) {
-						throw new ProcessingException("Error creating output sequence msg for msg "
-										+ context.getMessage().getID(), context.getMessage(), e);
-					}
-				}
+				sendOutputs(outputs, MessageFactory.getInstance().createSequenceID());
 			}
 		}
 
@@ -368,6 +351,19 @@ public abstract class Actor extends com.isencia.passerelle.actor.Actor {
 			logger.trace(getInfo() + " doFire() - exit ");
 	}
 
+	private void sendOutputs(MessageOutputContext[] outputs, Long seqID) throws ProcessingException {
+		if (outputs == null || outputs.length == 0) {
+			return;
+		}
+		Port[] ports = new Port[outputs.length];
+		ManagedMessage[] messages = new ManagedMessage[outputs.length];
+		for (int i = 0; i < outputs.length; i++) {
+			ports[i] = outputs[i].getPort();
+			messages[i] = outputs[i].getMessage();
+		}
+		sendOutputMsgBatches(ports, messages, seqID);
+	}
+
 	/**
 	 * @return
 	 */
@@ -15,7 +15,10 @@
 package com.isencia.passerelle.core;
 
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,6 +39,8 @@ import ptolemy.data.type.Type;
 import ptolemy.kernel.ComponentEntity;
 import ptolemy.kernel.util.IllegalActionException;
 import ptolemy.kernel.util.NameDuplicationException;
+import ptolemy.kernel.util.NamedObj;
+import ptolemy.kernel.util.Workspace;
 
 /**
  * A customization of the std Ptolemy Ports, that includes automatic conversions
@@ -51,6 +56,10 @@ public class Port extends TypedIOPort {
     // To avoid creating this repeatedly, we use a single version.
     private static final Receiver[][] _EMPTY_RECEIVER_ARRAY = new Receiver[0][0];
 
+    // per model, incremented when the model may have been modified while running,
+    // to trigger a check of the receivers snapshots against the workspace version
+    private static final Map<NamedObj, AtomicLong> topologyEpochs = new WeakHashMap<NamedObj, AtomicLong>();
+
     private PortStatistics statistics;
 
 	/**
@@ -66,6 +75,13 @@ public class Port extends TypedIOPort {
 	// finishing approach that improves handling of models containing
 	// "diamond" relations (vertices)
 	private Set<IOPort> operationalSourcePorts = new HashSet<IOPort>();
+
+	// the receivers are only cached once the port has been initialized
+	// for a model execution, i.e. when the topology is not supposed to change
+	private volatile boolean receiversSnapshotEnabled = false;
+	private volatile ReceiversSnapshot receiversSnapshot;
+	// the epoch counter of the model containing this port, set in initialize()
+	private volatile AtomicLong topologyEpoch;
 	
 	/**
 	 * REMARK : only used for obtaining prototype instances in the UI actions...
@@ -126,6 +142,21 @@ public class Port extends TypedIOPort {
 		setMode(mode);
 		setContainer(container);
 	}
+
+	/**
+	 * Ptolemy clones ports e.g. when instantiating an actor-oriented class from MoML, or on copy/paste.
+	 * The clone gets its own statistics and model finishing state, and it must not use the receivers snapshot
+	 * of the original port, nor the topology epoch of the original's model, until it is initialized itself.
+	 */
+	public Object clone(Workspace workspace) throws CloneNotSupportedException {
+		Port newObject = (Port) super.clone(workspace);
+		newObject.statistics = new PortStatistics(newObject);
+		newObject.operationalSourcePorts = new HashSet<IOPort>();
+		newObject.receiversSnapshotEnabled = false;
+		newObject.receiversSnapshot = null;
+		newObject.topologyEpoch = null;
+		return newObject;
+	}
 	
 	/**
 	 * 
@@ -194,26 +225,34 @@ public class Port extends TypedIOPort {
 		statistics.acceptSentMessage(null);
 
 		Receiver[][] farReceivers;
+		Type[][] farTypes = null;
 		// ptolemy debug listener stuff etc
 		if (_debugging) {
 			_debug("broadcast " + token);
 		}
-		try {
-			_workspace.getReadAccess();
-			_checkType(token);
-			farReceivers = getRemoteReceivers();
-			if (farReceivers == null) {
-				return;
+		ReceiversSnapshot snapshot = getReceiversSnapshot();
+		if (snapshot != null) {
+			snapshot.checkType(token);
+			farReceivers = snapshot.farReceivers;
+			farTypes = snapshot.farTypes;
+		} else {
+			try {
+				_workspace.getReadAccess();
+				_checkType(token);
+				farReceivers = getRemoteReceivers();
+			} finally {
+				_workspace.doneReading();
 			}
-		} finally {
-			_workspace.doneReading();
+		}
+		if (farReceivers == null) {
+			return;
 		}
 		// NOTE: This does not call send() here, because send()
 		// repeats the above on each call.
 		for (int i = 0; i < farReceivers.length; i++) {
 			if (farReceivers[i] == null)
 				continue;
-			putAtFarReceivers(token, farReceivers[i]);
+			putAtFarReceivers(token, farReceivers[i], farTypes != null ? farTypes[i] : null);
 		}
 
 		if (logger.isTraceEnabled()) {
@@ -241,6 +280,11 @@ public class Port extends TypedIOPort {
 	 * that the thread does not hold read access on the workspace when it is
 	 * blocked. Thus this method releases read access on the workspace before
 	 * calling put.
+	 * <p>
+	 * This is the preferred way to send a batch of messages on a port: 
+	 * the workspace access and the receivers lookup are done only once, and
+	 * each far receiver gets all tokens in one putArray() call.
+	 * </p>
 	 * 
 	 * @param tokenArray
 	 *            The token array to send
@@ -257,24 +301,37 @@ public class Port extends TypedIOPort {
 		if (logger.isTraceEnabled()) {
 			logger.trace("broadcast(array) - entry : " + tokenArray + " length :" + vectorLength);
 		}
+		
+		for (int i = 0; i < vectorLength; i++) {
+			statistics.acceptSentMessage(null);
+		}
+		
 		Receiver[][] farReceivers;
+		Type[][] farTypes = null;
 		if (_debugging) {
 			_debug("broadcast token array of length " + vectorLength);
 		}
-		Token token = null;
-		try {
-			_workspace.getReadAccess();
-			// check types
-			for (int i = 0; i < tokenArray.length; i++) {
-				token = tokenArray[i];
-				_checkType(token);
+		ReceiversSnapshot snapshot = getReceiversSnapshot();
+		if (snapshot != null) {
+			for (int i = 0; i < vectorLength; i++) {
+				snapshot.checkType(tokenArray[i]);
 			}
-			farReceivers = getRemoteReceivers();
-			if (farReceivers == null) {
-				return;
+			farReceivers = snapshot.farReceivers;
+			farTypes = snapshot.farTypes;
+		} else {
+			try {
+				_workspace.getReadAccess();
+				// check types
+				for (int i = 0; i < vectorLength; i++) {
+					_checkType(tokenArray[i]);
+				}
+				farReceivers = getRemoteReceivers();
+			} finally {
+				_workspace.doneReading();
 			}
-		} finally {
-			_workspace.doneReading();
+		}
+		if (farReceivers == null) {
+			return;
 		}
 		// NOTE: This does not call send() here, because send()
 		// repeats the above on each call.
@@ -282,7 +339,7 @@ public class Port extends TypedIOPort {
 			if (farReceivers[i] == null)
 				continue;
 
-			putAtFarReceivers(tokenArray, vectorLength, farReceivers[i]);
+			putAtFarReceivers(tokenArray, vectorLength, farReceivers[i], farTypes != null ? farTypes[i] : null);
 		}
 
 		if (logger.isTraceEnabled()) {
@@ -332,25 +389,33 @@ public class Port extends TypedIOPort {
 		statistics.acceptSentMessage(null);
 
 		Receiver[][] farReceivers;
+		Type[][] farTypes = null;
 		if (_debugging) {
 			_debug("send to channel " + channelIndex + ": " + token);
 		}
 		try {
-			try {
-				_workspace.getReadAccess();
-				_checkType(token);
-
-				// Note that the getRemoteReceivers() method doesn't throw
-				// any non-runtime exception.
-				farReceivers = getRemoteReceivers();
-				if (farReceivers == null || farReceivers.length <= channelIndex || farReceivers[channelIndex] == null) {
-					return;
+			ReceiversSnapshot snapshot = getReceiversSnapshot();
+			if (snapshot != null) {
+				snapshot.checkType(token);
+				farReceivers = snapshot.farReceivers;
+				farTypes = snapshot.farTypes;
+			} else {
+				try {
+					_workspace.getReadAccess();
+					_checkType(token);
+	
+					// Note that the getRemoteReceivers() method doesn't throw
+					// any non-runtime exception.
+					farReceivers = getRemoteReceivers();
+				} finally {
+					_workspace.doneReading();
 				}
-			} finally {
-				_workspace.doneReading();
+			}
+			if (farReceivers == null || farReceivers.length <= channelIndex || farReceivers[channelIndex] == null) {
+				return;
 			}
 
-			putAtFarReceivers(token, farReceivers[channelIndex]);
+			putAtFarReceivers(token, farReceivers[channelIndex], farTypes != null ? farTypes[channelIndex] : null);
 		} catch (ArrayIndexOutOfBoundsException ex) {
 			// NOTE: This may occur if the channel index is out of range.
 			// This is allowed, just do nothing.
@@ -420,28 +485,36 @@ public class Port extends TypedIOPort {
 			throw new IllegalActionException(this, "Not enough data supplied to send specified number of samples.");
 		}
 		Receiver[][] farReceivers;
+		Type[][] farTypes = null;
 		if (_debugging) {
 			_debug("send to channel " + channelIndex + " token array of length " + vectorLength);
 		}
-		Token token = null;
 		try {
-			try {
-				_workspace.getReadAccess();
-				// check types
+			ReceiversSnapshot snapshot = getReceiversSnapshot();
+			if (snapshot != null) {
 				for (int i = 0; i < vectorLength; i++) {
-					token = tokenArray[i];
-					_checkType(token);
+					snapshot.checkType(tokenArray[i]);
 				}
-				// Note that the getRemoteReceivers() method doesn't throw
-				// any non-runtime exception.
-				farReceivers = getRemoteReceivers();
-				if (farReceivers == null || farReceivers[channelIndex] == null) {
-					return;
+				farReceivers = snapshot.farReceivers;
+				farTypes = snapshot.farTypes;
+			} else {
+				try {
+					_workspace.getReadAccess();
+					// check types
+					for (int i = 0; i < vectorLength; i++) {
+						_checkType(tokenArray[i]);
+					}
+					// Note that the getRemoteReceivers() method doesn't throw
+					// any non-runtime exception.
+					farReceivers = getRemoteReceivers();
+				} finally {
+					_workspace.doneReading();
 				}
-			} finally {
-				_workspace.doneReading();
 			}
-			putAtFarReceivers(tokenArray, vectorLength, farReceivers[channelIndex]);
+			if (farReceivers == null || farReceivers[channelIndex] == null) {
+				return;
+			}
+			putAtFarReceivers(tokenArray, vectorLength, farReceivers[channelIndex], farTypes != null ? farTypes[channelIndex] : null);
 		} catch (ArrayIndexOutOfBoundsException ex) {
 			// NOTE: This may occur if the channel index is out of range.
 			// This is allowed, just do nothing.
@@ -482,25 +555,29 @@ public class Port extends TypedIOPort {
 		}
 
 		Receiver[][] localReceivers;
-		try {
-			_workspace.getReadAccess();
-			// Note that the getReceivers() method might throw an
-			// IllegalActionException if there's no director.
-			localReceivers = getReceivers();
-			if (channelIndex >= localReceivers.length) {
-				if (!isInput()) {
-					throw new IllegalActionException(this, "Port is not an input port!");
-				} else {
-					throw new IllegalActionException(this, "Channel index " + channelIndex
-							+ " is out of range, because width is only " + getWidth() + ".");
+		ReceiversSnapshot snapshot = getReceiversSnapshot();
+		if (snapshot != null && channelIndex < snapshot.localReceivers.length) {
+			localReceivers = snapshot.localReceivers;
+		} else {
+			try {
+				_workspace.getReadAccess();
+				// Note that the getReceivers() method might throw an
+				// IllegalActionException if there's no director.
+				localReceivers = getReceivers();
+				if (channelIndex >= localReceivers.length) {
+					if (!isInput()) {
+						throw new IllegalActionException(this, "Port is not an input port!");
+					} else {
+						throw new IllegalActionException(this, "Channel index " + channelIndex
+								+ " is out of range, because width is only " + getWidth() + ".");
+					}
 				}
+			} finally {
+				_workspace.doneReading();
 			}
-
-			if (localReceivers[channelIndex] == null) {
-				throw new NoTokenException(this, "No receiver at index: " + channelIndex + ".");
-			}
-		} finally {
-			_workspace.doneReading();
+		}
+		if (localReceivers[channelIndex] == null) {
+			throw new NoTokenException(this, "No receiver at index: " + channelIndex + ".");
 		}
 		Token token = null;
 		for (int j = 0; j < localReceivers[channelIndex].length; j++) {
@@ -525,6 +602,26 @@ public class Port extends TypedIOPort {
 		return token;
 	}
 
+	/**
+	 * Applies the same conversion and statistics handling as get(), on a token
+	 * that was taken directly from one of the receivers of this port. This is
+	 * used by the PortHandler when it polls SelectableReceivers.
+	 * 
+	 * @param token
+	 *            a token obtained from one of this port's receivers
+	 * @return the token, converted as needed for this port
+	 * @exception IllegalActionException
+	 *                If the token conversion failed
+	 */
+	public Token acceptReceivedToken(Token token) throws IllegalActionException {
+		if (_debugging) {
+			_debug("received token : " + token);
+		}
+		token = convertTokenForMe(token);
+		statistics.acceptReceivedMessage(null);
+		return token;
+	}
+
 	/**
 	 * Get an array of tokens from the specified channel. The parameter
 	 * <i>channelIndex</i> specifies the channel and the parameter
@@ -563,14 +660,19 @@ public class Port extends TypedIOPort {
 			logger.trace("get(array) - entry : channel : " + channelIndex + " length : " + vectorLength);
 		}
 		Receiver[][] localReceivers;
-		try {
-			_workspace.getReadAccess();
-			// Note that the getReceivers() method might throw an
-			// IllegalActionException if there's no director.
-			localReceivers = getReceivers();
-
-		} finally {
-			_workspace.doneReading();
+		ReceiversSnapshot snapshot = getReceiversSnapshot();
+		if (snapshot != null) {
+			localReceivers = snapshot.localReceivers;
+		} else {
+			try {
+				_workspace.getReadAccess();
+				// Note that the getReceivers() method might throw an
+				// IllegalActionException if there's no director.
+				localReceivers = getReceivers();
+	
+			} finally {
+				_workspace.doneReading();
+			}
 		}
 
 		if (channelIndex >= localReceivers.length) {
@@ -654,10 +756,11 @@ public class Port extends TypedIOPort {
 	 * @param farReceivers
 	 * @throws IllegalActionException
 	 */
-	private void putAtFarReceivers(Token token, Receiver[] farReceivers) throws IllegalActionException {
+	private void putAtFarReceivers(Token token, Receiver[] farReceivers, Type[] farTypes) throws IllegalActionException {
 		for (int j = 0; j < farReceivers.length; j++) {
 			TypedIOPort farPort = (TypedIOPort) farReceivers[j].getContainer();
-			Token newToken = convertTokenForFarPort(token, farPort);
+			Type farType = (farTypes != null) ? farTypes[j] : farPort.getType();
+			Token newToken = convertTokenForFarPort(token, farPort, farType);
 			farReceivers[j].put(newToken);
 		}
 	}
@@ -669,13 +772,13 @@ public class Port extends TypedIOPort {
 	 * @param i
 	 * @throws IllegalActionException
 	 */
-	private void putAtFarReceivers(Token[] tokenArray, int vectorLength, Receiver[] farReceivers) throws IllegalActionException {
+	private void putAtFarReceivers(Token[] tokenArray, int vectorLength, Receiver[] farReceivers, Type[] farTypes) throws IllegalActionException {
 		for (int j = 0; j < farReceivers.length; j++) {
 			TypedIOPort farPort = (TypedIOPort) farReceivers[j].getContainer();
-			Type farType = farPort.getType();
+			Type farType = (farTypes != null) ? farTypes[j] : farPort.getType();
 
 			boolean needConversion = false;
-			for (int k = 0; k < tokenArray.length; k++) {
+			for (int k = 0; k < vectorLength && !needConversion; k++) {
 				if (!farType.equals(tokenArray[k].getType())) {
 					needConversion = true;
 				}
@@ -685,13 +788,14 @@ public class Port extends TypedIOPort {
 				// Good, no conversion necessary.
 				farReceivers[j].putArray(tokenArray, vectorLength);
 			} else {
-				// Note: This is very bad for performance!
+				// Note: This is bad for performance!
 				// For better efficiency, make sure
 				// all ports have the same type.
+				Token[] newTokens = new Token[vectorLength];
 				for (int k = 0; k < vectorLength; k++) {
-					Token newToken = convertTokenForFarPort(tokenArray[k], farPort);
-					farReceivers[j].put(newToken);
+					newTokens[k] = convertTokenForFarPort(tokenArray[k], farPort, farType);
 				}
+				farReceivers[j].putArray(newTokens, vectorLength);
 			}
 		}
 	}
@@ -703,7 +807,9 @@ public class Port extends TypedIOPort {
 	 */
 	private Token convertTokenForMe(Token token) throws IllegalActionException {
 		Token converted = token;
-		if ((getContainer() instanceof Actor) && (PasserelleType.PASSERELLE_MSG_TYPE.equals(getType()))) {
+		ReceiversSnapshot snapshot = getReceiversSnapshot();
+		Type type = (snapshot != null) ? snapshot.type : getType();
+		if ((getContainer() instanceof Actor) && (PasserelleType.PASSERELLE_MSG_TYPE.equals(type))) {
 			// Need to check/convert for ManagedMessage
 			// The extra check on the port type should allow someone
 			// to define ports with other types on a Passerelle actor
@@ -737,19 +843,19 @@ public class Port extends TypedIOPort {
 	 * @return
 	 * @throws IllegalActionException
 	 */
-	private Token convertTokenForFarPort(Token token, TypedIOPort farPort) throws IllegalActionException {
+	private Token convertTokenForFarPort(Token token, TypedIOPort farPort, Type farType) throws IllegalActionException {
 		Object farActor = farPort.getContainer();
 		Object localActor = getContainer();
 		Token newToken = token;
 		// now decide when Passerelle2Ptolemy conversions are required
 		if (localActor instanceof Actor) {
 			// ok, our container is a Passerelle Actor
-			if (!(farActor instanceof Actor) || !PasserelleType.PASSERELLE_MSG_TYPE.equals(farPort.getType())) {
+			if (!(farActor instanceof Actor) || !PasserelleType.PASSERELLE_MSG_TYPE.equals(farType)) {
 				Token converted = null;
 				try {
 					// token should be a PasserelleToken
 					converted = TypeConversionChain.getInstance().convertPasserelleTokenToPtolemyToken((PasserelleToken) token,
-							farPort.getType());
+							farType);
 				} catch (UnsupportedOperationException e) {
 					// do nothing
 					// the user will get loads of Ptolemy errors anyway
@@ -784,6 +890,13 @@ public class Port extends TypedIOPort {
 	 */
 	public void initialize() {
 		operationalSourcePorts.addAll(this.sourcePortList());
+		// receivers and types are all set by now
+		topologyEpoch = getTopologyEpoch(toplevel());
+		receiversSnapshot = null;
+		receiversSnapshotEnabled = true;
+		// when this port is added to a running model, the connected ports
+		// may have refreshed their snapshots before its receivers were created
+		topologyEpoch.incrementAndGet();
 		// first need to find a way to register the port statistics
 		// as children of the actor statistics
 //		statistics.reset();
@@ -814,4 +927,101 @@ public class Port extends TypedIOPort {
 		}
 	}
 
+	/**
+	 * Signals that a model may have been modified while running, e.g. after executing
+	 * a change request. The model's ports will check if their receivers snapshot is still up-to-date
+	 * on their next send or get.
+	 * 
+	 * @param model the top-level container of the modified model
+	 */
+	public static void topologyChanged(NamedObj model) {
+		getTopologyEpoch(model).incrementAndGet();
+	}
+
+	private static AtomicLong getTopologyEpoch(NamedObj model) {
+		synchronized (topologyEpochs) {
+			AtomicLong epoch = topologyEpochs.get(model);
+			if (epoch == null) {
+				epoch = new AtomicLong();
+				topologyEpochs.put(model, epoch);
+			}
+			return epoch;
+		}
+	}
+
+	/**
+	 * Returns the cached receivers and types of this port.
+	 * <p>
+	 * As long as no topology change has been signalled, this only costs a volatile read, 
+	 * avoiding the synchronized workspace read access on each send/get.
+	 * Otherwise, the snapshot is rebuilt. The receivers lookup itself is then still cached 
+	 * per workspace version by Ptolemy's IOPort, but the port types may have been 
+	 * resolved again.
+	 * </p>
+	 * 
+	 * @return the snapshot, or null if the port has not been initialized yet
+	 */
+	private ReceiversSnapshot getReceiversSnapshot() {
+		AtomicLong modelEpoch = topologyEpoch;
+		if (!receiversSnapshotEnabled || modelEpoch == null) {
+			return null;
+		}
+		ReceiversSnapshot snapshot = receiversSnapshot;
+		long epoch = modelEpoch.get();
+		if (snapshot != null && snapshot.epoch == epoch) {
+			return snapshot;
+		}
+		try {
+			_workspace.getReadAccess();
+			if (logger.isDebugEnabled()) {
+				logger.debug(getFullName() + " - refreshing receivers for workspace version " + _workspace.getVersion());
+			}
+			snapshot = new ReceiversSnapshot(epoch, getType(), getRemoteReceivers(), getReceivers());
+		} finally {
+			_workspace.doneReading();
+		}
+		receiversSnapshot = snapshot;
+		return snapshot;
+	}
+
+	/**
+	 * An immutable view on the receivers of a port, and on the types of the ports involved.
+	 */
+	private class ReceiversSnapshot {
+		final long epoch;
+		final Type type;
+		final Receiver[][] farReceivers;
+		final Type[][] farTypes;
+		final Receiver[][] localReceivers;
+
+		ReceiversSnapshot(long epoch, Type type, Receiver[][] farReceivers, Receiver[][] localReceivers) {
+			this.epoch = epoch;
+			this.type = type;
+			this.farReceivers = farReceivers;
+			this.localReceivers = localReceivers != null ? localReceivers : _EMPTY_RECEIVER_ARRAY;
+			if (farReceivers != null) {
+				farTypes = new Type[farReceivers.length][];
+				for (int i = 0; i < farReceivers.length; i++) {
+					if (farReceivers[i] != null) {
+						farTypes[i] = new Type[farReceivers[i].length];
+						for (int j = 0; j < farReceivers[i].length; j++) {
+							farTypes[i][j] = ((TypedIOPort) farReceivers[i][j].getContainer()).getType();
+						}
+					}
+				}
+			} else {
+				farTypes = null;
+			}
+		}
+
+		/**
+		 * Only does the full Ptolemy type check when the token is not of the port's type.
+		 */
+		void checkType(Token token) throws IllegalActionException {
+			if (token == null || !type.equals(token.getType())) {
+				_checkType(token);
+			}
+		}
+	}
+
 }
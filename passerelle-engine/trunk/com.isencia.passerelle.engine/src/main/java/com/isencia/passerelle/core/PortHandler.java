@@ -20,6 +20,7 @@ import org.slf4j.LoggerFactory;
 
 import ptolemy.actor.IOPort;
 import ptolemy.actor.NoTokenException;
+import ptolemy.actor.Receiver;
 import ptolemy.actor.process.TerminateProcessException;
 import ptolemy.data.Token;
 import ptolemy.kernel.util.IllegalActionException;
@@ -27,6 +28,10 @@ import ptolemy.kernel.util.Nameable;
 import ptolemy.kernel.util.NamedObj;
 
 import com.isencia.passerelle.domain.ProcessThread;
+import com.isencia.passerelle.domain.cap.ActorScheduler;
+import com.isencia.passerelle.domain.cap.PooledProcessThread;
+import com.isencia.passerelle.domain.cap.ReceiverSelector;
+import com.isencia.passerelle.domain.cap.SelectableReceiver;
 import com.isencia.passerelle.util.LoggerManager;
 import com.isencia.util.BlockingReaderQueue;
 import com.isencia.util.EmptyQueueException;
@@ -34,7 +39,19 @@ import com.isencia.util.FIFOQueue;
 
 
 /**
- * DOCUMENT ME!
+ * Reads the tokens from all channels of a port, and offers them to an actor
+ * either via a blocking getToken() or by notifying a PortListener (push mode).
+ * <p>
+ * When all receivers of the port are SelectableReceivers, a handler without listener is multiplexed:
+ * the receivers signal new tokens to the handler, and getToken() reads directly
+ * from whichever receiver has data. A handler with a listener is only multiplexed
+ * when its actor is iterated on the thread pool of the Director's "Thread pool" scheduling mode.
+ * Its listener is then notified from that same pool.
+ * Otherwise, a ChannelHandler thread is started per channel,
+ * that copies the tokens into the handler's queue.
+ * In that way, a listener that blocks can only hold up other actors
+ * in a model that has opted in to the thread pool.
+ * </p>
  *
  * @version $Id: PortHandler.java,v 1.2 2005/10/28 14:06:18 erwin Exp $
  * @author Dirk Jacobs
@@ -54,6 +71,14 @@ public class PortHandler {
     private PortListener listener = null;
     private ChannelHandler[] channelHandlers = null;
     private boolean started = false;
+
+    // multiplexed mode : the receivers per channel, or null if channel handler threads are used
+    private SelectableReceiver[] selectableReceivers = null;
+    private boolean[] finishedChannels = null;
+    private int nextChannel = 0;
+    private Selector selector = null;
+    // set when the actor is iterated on the thread pool, to be told about the tokens passed to the listener
+    private PooledProcessThread pooledProcess = null;
     
     // A counter for channels that are still active
     // When this counter reaches 0 again, it means the handler
@@ -130,7 +155,10 @@ public class PortHandler {
             }
         }
 
-		if(mustUseHandlers()) {
+		if(selectableReceivers!=null && listener==null) {
+			// read directly from whichever receiver has data
+			token = selectToken();
+		} else if(mustUseHandlers()) {
 			// messages will be in the queue
 	        try {
 	            token = (Token) queue.get();
@@ -198,7 +226,23 @@ public class PortHandler {
 		// construction time and start time
         channelCount = getWidth();
 
-		if(mustUseHandlers()) {		
+		// a listener is only notified from the actor pool when its actor is iterated on it
+		PooledProcessThread currentProcess = PooledProcessThread.getCurrentProcess();
+		boolean multiplexed = (listener==null) || (currentProcess!=null);
+
+		if(mustUseHandlers() && multiplexed && (selectableReceivers = getSelectableReceivers())!=null) {
+			finishedChannels = new boolean[selectableReceivers.length];
+			selector = new Selector();
+			for (int i = 0; i < selectableReceivers.length; i++) {
+				selectableReceivers[i].setReceiverSelector(selector);
+			}
+			if(listener!=null) {
+				// the listener's actor may only be iterated when told that it has work
+				pooledProcess = currentProcess;
+				// there may be tokens already
+				selector.dispatch();
+			}
+		} else if(mustUseHandlers()) {		
 			channelHandlers = new ChannelHandler[getWidth()];
 
 			for (int i = 0; i < getWidth(); i++) {
@@ -224,8 +268,206 @@ public class PortHandler {
 		return (getWidth()>1) || (listener!=null);
 	}
 
+	/**
+	 * 
+	 * @return the receivers of the port's channels, if they all support
+	 * multiplexed reading; else null
+	 */
+	private SelectableReceiver[] getSelectableReceivers() {
+		Receiver[][] receivers = ioPort.getReceivers();
+		if(receivers==null || receivers.length!=getWidth()) {
+			return null;
+		}
+		SelectableReceiver[] res = new SelectableReceiver[receivers.length];
+		for (int i = 0; i < receivers.length; i++) {
+			if(receivers[i]==null || receivers[i].length!=1 || !(receivers[i][0] instanceof SelectableReceiver)) {
+				return null;
+			}
+			res[i] = (SelectableReceiver) receivers[i][0];
+		}
+		return res;
+	}
+
+	/**
+	 * Blocks until one of the channels has a token, or until all channels are finished.
+	 * 
+	 * @return the token, or null if all channels are finished
+	 */
+	private Token selectToken() {
+		while(true) {
+			long signalCount = selector.getSignalCount();
+			Token token = pollChannels();
+			if(token!=null) {
+				return token;
+			}
+			synchronized (channelLock) {
+				if(channelCount==0) {
+					return null;
+				}
+			}
+			try {
+				selector.awaitSignal(signalCount);
+			} catch (InterruptedException e) {
+				// same behaviour as the handler queue
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Checks all channels once, starting after the channel that delivered the previous token.
+	 * Finished channels are counted down.
+	 * 
+	 * @return a token, or null if no channel has one right now
+	 */
+	private Token pollChannels() {
+		boolean noMoreChannels = false;
+		Token token = null;
+		synchronized (channelLock) {
+			int width = selectableReceivers.length;
+			for (int i = 0; i < width && token==null; i++) {
+				int channelIndex = (nextChannel + i) % width;
+				if (finishedChannels[channelIndex]) {
+					continue;
+				}
+				token = selectableReceivers[channelIndex].poll();
+				if (token != null) {
+					nextChannel = (channelIndex + 1) % width;
+				} else if (selectableReceivers[channelIndex].isFinished()) {
+					finishedChannels[channelIndex] = true;
+					channelCount--;
+					noMoreChannels = (channelCount == 0);
+				}
+			}
+		}
+		if (token != null && ioPort instanceof Port) {
+			try {
+				token = ((Port) ioPort).acceptReceivedToken(token);
+			} catch (IllegalActionException e) {
+				logger.error(getName()+" error converting received token "+token, e);
+			}
+		}
+		if (noMoreChannels) {
+			// No more channels active
+			// Force queue to return
+			queue.trigger();
+			if (listener != null) {
+				listener.noMoreTokens();
+				notifyPooledProcess();
+			}
+		}
+		return token;
+	}
+
+	private void notifyPooledProcess() {
+		if (pooledProcess != null) {
+			pooledProcess.listenerNotified();
+		}
+	}
+
     //~ Classes 
 
+    /**
+     * Receives the signals from the SelectableReceivers.
+     * In pull mode, it wakes up a blocked getToken().
+     * In push mode, it makes sure that a thread of the actor pool is moving
+     * the tokens to the queue and notifying the listener.
+     */
+    private class Selector implements ReceiverSelector, Runnable {
+    	private long signalCount = 0;
+    	private boolean dispatching = false;
+    	private boolean dispatchPending = false;
+
+		public void tokenAvailable(SelectableReceiver receiver) {
+			signal();
+		}
+
+		public void finishRequested(SelectableReceiver receiver) {
+			signal();
+		}
+
+		private void signal() {
+			synchronized (this) {
+				signalCount++;
+				notifyAll();
+			}
+			if (listener != null) {
+				dispatch();
+			}
+		}
+
+		synchronized long getSignalCount() {
+			return signalCount;
+		}
+
+		synchronized void awaitSignal(long lastSignalCount) throws InterruptedException {
+			boolean managedBlock = false;
+			try {
+				while (signalCount == lastSignalCount) {
+					if (!managedBlock) {
+						managedBlock = ActorScheduler.beginBlocking();
+					}
+					wait();
+				}
+			} finally {
+				if (managedBlock) {
+					ActorScheduler.endBlocking();
+				}
+			}
+		}
+
+		/**
+		 * Ensures that a thread of the actor pool will check the receivers.
+		 */
+		void dispatch() {
+			synchronized (this) {
+				dispatchPending = true;
+				if (dispatching) {
+					return;
+				}
+				dispatching = true;
+			}
+			ActorScheduler.getInstance().execute(this);
+		}
+
+		public void run() {
+			LoggerManager.pushMDC(ProcessThread.ACTOR_MDC_NAME,actorInfo);
+			try {
+				while (true) {
+					synchronized (this) {
+						if (!dispatchPending) {
+							dispatching = false;
+							return;
+						}
+						dispatchPending = false;
+					}
+					Token token = null;
+					while ((token = pollChannels()) != null) {
+	                    if(logger.isDebugEnabled()) {
+	                    	logger.debug(PortHandler.this.getName()+" dispatcher - got token : "+token);
+	                    }
+						queue.put(token);
+						listener.tokenReceived();
+						notifyPooledProcess();
+					}
+				}
+			} catch (RuntimeException e) {
+				boolean redispatch = false;
+				synchronized (this) {
+					dispatching = false;
+					// a signal may have arrived meanwhile, it must not be lost
+					redispatch = dispatchPending;
+				}
+				logger.error(PortHandler.this.getName()+" error notifying listener", e);
+				if (redispatch) {
+					dispatch();
+				}
+			} finally {
+				LoggerManager.popMDC(ProcessThread.ACTOR_MDC_NAME);
+			}
+		}
+    }
+
     private class ChannelHandler extends Thread {
         private Token token = null;
         private boolean terminated = false;
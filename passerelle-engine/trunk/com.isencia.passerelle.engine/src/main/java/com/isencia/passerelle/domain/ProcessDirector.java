@@ -73,7 +73,10 @@ public abstract class ProcessDirector extends CompositeProcessDirector implement
      */
 	private Collection errorCollectors = new HashSet();
 	
-	private ExecutionControlStrategy execCtrlStrategy = new DefaultExecutionControlStrategy();
+	private volatile ExecutionControlStrategy execCtrlStrategy = new DefaultExecutionControlStrategy();
+	// set when the strategy grants all iterations immediately, 
+	// so the actor threads do not need to call it at all
+	private volatile boolean noExecutionControl = true;
 	private ExecutionPrePostProcessor execPrePostProcessor = new DefaultExecutionPrePostProcessor();
 	
 	private ErrorControlStrategy errorCtrlStrategy = new DefaultActorErrorControlStrategy();
@@ -186,20 +189,32 @@ public abstract class ProcessDirector extends CompositeProcessDirector implement
      * whether they can continue or should wait a bit...
      * 
      * The Director's ExecutionControlStrategy handles this request.
+     * This method is not synchronized, so actors do not contend on the director.
+     * Strategies that need to coordinate actors (stepping, suspend/resume...)
+     * are responsible for their own synchronization.
+     * 
      * @param actor
      * @return an object identifying the current permission for the actor
 	 * to do 1 iteration.
      */
-    public synchronized IterationPermission requestNextIteration(Actor actor) {
+    public IterationPermission requestNextIteration(Actor actor) {
+    	if(noExecutionControl) {
+    		return null;
+    	}
     	return execCtrlStrategy.requestNextIteration(actor);
     }
     
 	public void iterationFinished(Actor actor, IterationPermission itPerm) {
+    	if(noExecutionControl) {
+    		return;
+    	}
 		execCtrlStrategy.iterationFinished(actor, itPerm);
 	}
     
     public void setExecutionControlStrategy(ExecutionControlStrategy execCtrlStrategy) {
     	this.execCtrlStrategy = execCtrlStrategy;
+    	// subclasses of the default strategy may add some behaviour, so only the exact class is skipped
+    	this.noExecutionControl = (execCtrlStrategy==null || DefaultExecutionControlStrategy.class.equals(execCtrlStrategy.getClass()));
     }
     
     public ExecutionControlStrategy getExecutionControlStrategy() {
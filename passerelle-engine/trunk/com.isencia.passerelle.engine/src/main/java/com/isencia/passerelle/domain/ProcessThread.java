@@ -51,6 +51,7 @@ public class ProcessThread extends ptolemy.actor.process.ProcessThread {
 
 	public static final String ACTOR_MDC_NAME = "actor";
 	private ExecutionContext ctxt = null;
+	private String actorInfo = "none";
 	/**
 	 * @param actor
 	 * @param director
@@ -61,7 +62,6 @@ public class ProcessThread extends ptolemy.actor.process.ProcessThread {
         _manager = actor.getManager();
 
 		if(actor!=null) {
-			String actorInfo="none";
 			if (actor instanceof NamedObj) {
 				actorInfo = actor.getManager().getName()+((NamedObj)actor).getFullName();
 			} else {
@@ -91,137 +91,173 @@ public class ProcessThread extends ptolemy.actor.process.ProcessThread {
 	public void run() {
 		LoggerManager.setContext(ctxt);
         _debug("-- Starting thread.");
-        Workspace workspace = _director.workspace();
         boolean iterate = true;
         Throwable thrownWhenIterate = null;
-        Throwable thrownWhenWrapup = null;
         try {
             // Initialize the actor.
             getActor().initialize();
 
             // While postfire() returns true and stop() is not called.
             while (iterate) {
-
-            	// check for synchronization/stepping/... of this actor's iterations
-            	ExecutionControlStrategy.IterationPermission itrPerm = _director.requestNextIteration(getActor());
-	            	try {
-	                // NOTE: Possible race condition... actor.stop()
-	                // might be called before we get to this.
-	                // This will cause postfire() on the actor
-	                // to return false, which will stop its execution.
-	                if (_director.isStopFireRequested()) {
-	                    // And wait until the flag has been cleared.
-	                    _debug("-- Thread pause requested. Get lock on director.");
-	                    synchronized (_director) {
-	                        // Tell the director we're stopped (necessary
-	                        // for deadlock detection).
-	                        _director.threadHasPaused(this);
-	                       
-	                        while (_director.isStopFireRequested()) {
-	                            // If a stop has been requested, in addition
-	                            // to a stopFire, then stop execution
-	                            // altogether and skip to wrapup().
-	                            if (_director.isStopRequested()) {
-	                                _debug("-- Thread stop requested, so cancel iteration.");
-	                                break;
-	                            }
-	                            _debug("-- Thread waiting for canceled pause request.");
-	                            try {
-	                                workspace.wait(_director);
-	                            } catch (InterruptedException ex) {
-	                                _debug("-- Thread interrupted, so cancel iteration.");
-	                                break;
-	                            }
-	                        }
-	                        // NOTE: Do we need to indicate that actor has
-	                        // restarted, with something like
-	                        _director.threadHasResumed(this);
-	                    }
-	                    _debug("-- Thread resuming.");
-	                }
-	
-	                if (_director.isStopRequested()) {
-	                    break;
-	                }
-
-	                // container is checked for null to detect the
-	                // deletion of the actor from the topology.
-	                if (((Entity) getActor()).getContainer() != null) {
-	                    if(_director.hasFiringEventListeners()) {
-	                        iterate = doActorIterationWithEvents();
-	                    } else {
-	                        iterate = doActorIterationWithoutEvents();
-	                    }
-	                }
-            	} finally {
-            		_director.iterationFinished(getActor(), itrPerm);
-            	}
+            	iterate = iterateActor();
             }
         } catch (Throwable t) {
             thrownWhenIterate = t;
         } finally {
-            // Let the director know that this thread stopped.
-            // This is synchronized to prevent a race condition
-            // where the director might conclude before the
-            // call to wrapup() below.
-            synchronized (_director) {
-                _director.removeThread(this);
+        	actorFinished(thrownWhenIterate);
+        }
+		LoggerManager.clearContext(ctxt);
+	}
+
+	/**
+	 * Does one iteration of the actor, after checking the director's
+	 * execution control strategy and pause/stop requests.
+	 * 
+	 * @return false if the actor must not be iterated anymore
+	 * @throws IllegalActionException
+	 */
+	protected boolean iterateActor() throws IllegalActionException {
+		boolean iterate = true;
+		Workspace workspace = _director.workspace();
+		// check for synchronization/stepping/... of this actor's iterations
+		ExecutionControlStrategy.IterationPermission itrPerm = _director.requestNextIteration(getActor());
+		try {
+			// NOTE: Possible race condition... actor.stop()
+			// might be called before we get to this.
+			// This will cause postfire() on the actor
+			// to return false, which will stop its execution.
+			if (_director.isStopFireRequested()) {
+				// And wait until the flag has been cleared.
+				_debug("-- Thread pause requested. Get lock on director.");
+				synchronized (_director) {
+					// Tell the director we're stopped (necessary
+					// for deadlock detection).
+					_director.threadHasPaused(this);
 
-                try {
-                    // NOTE: Deadlock risk here.
-                    // Holding a lock on the _director during wrapup()
-                    // might cause deadlock with hierarchical models where
-                    // wrapup() waits for internal actors to conclude,
-                    // doing a wait() on its own internal director.
-                    // Meanwhile, this thread will hold a lock on this
-                    // outside director.  As long as the inside model
-                    // doesn't try to access synchronized methods of
-                    // outside director, this may be OK.
-                    wrapup();
-                } catch (IllegalActionException e) {
-                    thrownWhenWrapup = e;
-                } finally {
-                    _debug("-- Thread stopped.");
+					while (_director.isStopFireRequested()) {
+						// If a stop has been requested, in addition
+						// to a stopFire, then stop execution
+						// altogether and skip to wrapup().
+						if (_director.isStopRequested()) {
+							_debug("-- Thread stop requested, so cancel iteration.");
+							break;
+						}
+						_debug("-- Thread waiting for canceled pause request.");
+						try {
+							workspace.wait(_director);
+						} catch (InterruptedException ex) {
+							_debug("-- Thread interrupted, so cancel iteration.");
+							break;
+						}
+					}
+					// NOTE: Do we need to indicate that actor has
+					// restarted, with something like
+					_director.threadHasResumed(this);
+				}
+				_debug("-- Thread resuming.");
+			}
 
-                    boolean rethrow = false;
+			if (_director.isStopRequested()) {
+				return false;
+			}
 
-                    if (thrownWhenIterate instanceof TerminateProcessException) {
-                        // Process was terminated.
-                        _debug("-- Blocked Receiver call "
-                                + "threw TerminateProcessException.");
-                    } else if (thrownWhenIterate instanceof InterruptedException) {
-                        // Process was terminated by call to stop();
-                        _debug("-- Thread was interrupted: "
-                                + thrownWhenIterate);
-                    } else if (thrownWhenIterate instanceof InterruptedIOException
-                            || ((thrownWhenIterate != null) && thrownWhenIterate
-                                    .getCause() instanceof InterruptedIOException)) {
-                        // PSDF has problems here when run with JavaScope
-                        _debug("-- IO was interrupted: " + thrownWhenIterate);
-                    } else if (thrownWhenIterate instanceof IllegalActionException) {
-                        _debug("-- Exception: " + thrownWhenIterate);
-                        _manager
-                                .notifyListenersOfException((IllegalActionException) thrownWhenIterate);
-                    } else if (thrownWhenIterate != null) {
-                        rethrow = true;
-                    }
+			// container is checked for null to detect the
+			// deletion of the actor from the topology.
+			if (((Entity) getActor()).getContainer() != null) {
+				if(_director.hasFiringEventListeners()) {
+					iterate = doActorIterationWithEvents();
+				} else {
+					iterate = doActorIterationWithoutEvents();
+				}
+			}
+		} finally {
+			_director.iterationFinished(getActor(), itrPerm);
+		}
+		return iterate;
+	}
 
-                    if (thrownWhenWrapup instanceof IllegalActionException) {
-                        _debug("-- Exception: " + thrownWhenWrapup);
-                        _manager
-                                .notifyListenersOfException((IllegalActionException) thrownWhenWrapup);
-                    } else if (thrownWhenWrapup != null) {
-                        // Must be a runtime exception.
-                        // Call notifyListenerOfThrowable() here so that
-                        // the stacktrace appears in the UI and not in stderr.
-                        _manager.notifyListenersOfThrowable(thrownWhenWrapup);
-                    } else if (rethrow) {
-                        _manager.notifyListenersOfThrowable(thrownWhenIterate);
-                    }
-                }
-            }
-        }
-		LoggerManager.clearContext(ctxt);
+	/**
+	 * Lets the director know that the actor has stopped iterating,
+	 * wraps up the actor and notifies the manager of any errors.
+	 * 
+	 * @param thrownWhenIterate the error that stopped the iterations, or null
+	 */
+	protected void actorFinished(Throwable thrownWhenIterate) {
+		Throwable thrownWhenWrapup = null;
+		// Let the director know that this thread stopped.
+		// This is synchronized to prevent a race condition
+		// where the director might conclude before the
+		// call to wrapup() below.
+		synchronized (_director) {
+			_director.removeThread(this);
+
+			try {
+				// NOTE: Deadlock risk here.
+				// Holding a lock on the _director during wrapup()
+				// might cause deadlock with hierarchical models where
+				// wrapup() waits for internal actors to conclude,
+				// doing a wait() on its own internal director.
+				// Meanwhile, this thread will hold a lock on this
+				// outside director.  As long as the inside model
+				// doesn't try to access synchronized methods of
+				// outside director, this may be OK.
+				wrapup();
+			} catch (IllegalActionException e) {
+				thrownWhenWrapup = e;
+			} finally {
+				_debug("-- Thread stopped.");
+
+				boolean rethrow = false;
+
+				if (thrownWhenIterate instanceof TerminateProcessException) {
+					// Process was terminated.
+					_debug("-- Blocked Receiver call "
+							+ "threw TerminateProcessException.");
+				} else if (thrownWhenIterate instanceof InterruptedException) {
+					// Process was terminated by call to stop();
+					_debug("-- Thread was interrupted: "
+							+ thrownWhenIterate);
+				} else if (thrownWhenIterate instanceof InterruptedIOException
+						|| ((thrownWhenIterate != null) && thrownWhenIterate
+								.getCause() instanceof InterruptedIOException)) {
+					// PSDF has problems here when run with JavaScope
+					_debug("-- IO was interrupted: " + thrownWhenIterate);
+				} else if (thrownWhenIterate instanceof IllegalActionException) {
+					_debug("-- Exception: " + thrownWhenIterate);
+					_manager
+							.notifyListenersOfException((IllegalActionException) thrownWhenIterate);
+				} else if (thrownWhenIterate != null) {
+					rethrow = true;
+				}
+
+				if (thrownWhenWrapup instanceof IllegalActionException) {
+					_debug("-- Exception: " + thrownWhenWrapup);
+					_manager
+							.notifyListenersOfException((IllegalActionException) thrownWhenWrapup);
+				} else if (thrownWhenWrapup != null) {
+					// Must be a runtime exception.
+					// Call notifyListenerOfThrowable() here so that
+					// the stacktrace appears in the UI and not in stderr.
+					_manager.notifyListenersOfThrowable(thrownWhenWrapup);
+				} else if (rethrow) {
+					_manager.notifyListenersOfThrowable(thrownWhenIterate);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the execution context of the actor's model, used to set the logging context
+	 */
+	protected ExecutionContext getExecutionContext() {
+		return ctxt;
+	}
+
+	/**
+	 * @return the identification of the actor, as set in the logging context
+	 */
+	protected String getActorInfo() {
+		return actorInfo;
 	}
 
     /**
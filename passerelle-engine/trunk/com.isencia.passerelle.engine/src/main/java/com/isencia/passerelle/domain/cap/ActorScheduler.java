@@ -0,0 +1,150 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.domain.cap;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The bounded pool of threads that is shared by all directors running in
+ * the thread pool scheduling mode. It executes the iterations of the actors,
+ * as tasks that are (re)submitted when input arrives for an actor.
+ * The PortHandlers of those actors also notify their listeners from this pool.
+ * <p>
+ * The nr of threads can be set via the system property
+ * <code>com.isencia.passerelle.scheduler.poolsize</code>.
+ * By default, it is twice the nr of available processors.
+ * </p>
+ * <p>
+ * Actors may still block in their iterations, e.g. while waiting on a second input port.
+ * Blocking receiver operations call <code>beginBlocking()</code> and <code>endBlocking()</code>,
+ * so the pool can start an extra thread for the time that a pool thread is blocked.
+ * This way, the nr of threads that are actually running actor code remains bounded,
+ * without risking that all pool threads are waiting on each other.
+ * </p>
+ *
+ * @author erwin dl
+ */
+public class ActorScheduler {
+
+	private final static Logger logger = LoggerFactory.getLogger(ActorScheduler.class);
+
+	public final static String POOL_SIZE_PROPERTY = "com.isencia.passerelle.scheduler.poolsize";
+
+	private final static ActorScheduler instance = new ActorScheduler();
+
+	private final int poolSize;
+	private final ThreadPoolExecutor executor;
+	// guarded by this
+	private int blockedThreads = 0;
+
+	private ActorScheduler() {
+		int size = 2 * Runtime.getRuntime().availableProcessors();
+		String sizeStr = System.getProperty(POOL_SIZE_PROPERTY);
+		if (sizeStr != null) {
+			try {
+				size = Integer.parseInt(sizeStr.trim());
+			} catch (NumberFormatException e) {
+				logger.error("Invalid " + POOL_SIZE_PROPERTY + " " + sizeStr + ", using default " + size);
+			}
+		}
+		poolSize = Math.max(1, size);
+		executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			private final AtomicInteger threadCount = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				Thread t = new PoolThread(r, "Passerelle-actor-pool-" + threadCount.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		// let the pool shrink again when all models are idle
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	public static ActorScheduler getInstance() {
+		return instance;
+	}
+
+	/**
+	 * @return the nr of threads that may be running actor iterations concurrently
+	 */
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	/**
+	 * @return the nr of pool threads that are currently blocked in a receiver
+	 */
+	public synchronized int getBlockedThreadCount() {
+		return blockedThreads;
+	}
+
+	/**
+	 * Schedules the task to run on one of the pool threads.
+	 *
+	 * @param task
+	 */
+	public void execute(Runnable task) {
+		executor.execute(task);
+	}
+
+	/**
+	 * To be called before the current thread blocks on a receiver.
+	 * When it is a pool thread, an extra thread is allowed in the pool while it is blocked.
+	 *
+	 * @return true if the current thread is a pool thread, in which case
+	 *         <code>endBlocking()</code> must be called once it is no longer blocked
+	 */
+	public static boolean beginBlocking() {
+		if (!(Thread.currentThread() instanceof PoolThread)) {
+			return false;
+		}
+		instance.adjustForBlockedThreads(1);
+		return true;
+	}
+
+	/**
+	 * To be called when a pool thread for which <code>beginBlocking()</code>
+	 * returned true, is no longer blocked.
+	 */
+	public static void endBlocking() {
+		instance.adjustForBlockedThreads(-1);
+	}
+
+	private synchronized void adjustForBlockedThreads(int delta) {
+		blockedThreads += delta;
+		int size = poolSize + blockedThreads;
+		// the max must never be below the core size
+		if (delta > 0) {
+			executor.setMaximumPoolSize(size);
+			executor.setCorePoolSize(size);
+		} else {
+			executor.setCorePoolSize(size);
+			executor.setMaximumPoolSize(size);
+		}
+	}
+
+	private static class PoolThread extends Thread {
+		PoolThread(Runnable r, String name) {
+			super(r, name);
+		}
+	}
+}
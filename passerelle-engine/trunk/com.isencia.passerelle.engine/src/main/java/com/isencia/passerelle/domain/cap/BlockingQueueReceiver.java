@@ -22,7 +22,6 @@ import ptolemy.actor.IOPort;
 import ptolemy.actor.QueueReceiver;
 import ptolemy.actor.process.BoundaryDetector;
 import ptolemy.actor.process.Branch;
-import ptolemy.actor.process.ProcessReceiver;
 import ptolemy.data.Token;
 import ptolemy.kernel.util.IllegalActionException;
 import ptolemy.kernel.util.Workspace;
@@ -35,7 +34,7 @@ import ptolemy.kernel.util.Workspace;
  * @author Dirk Jacobs
  */
 public class BlockingQueueReceiver extends QueueReceiver
-    implements ProcessReceiver {
+    implements SelectableReceiver {
     //~ Instance variables 
 
 	private final static Logger logger = LoggerFactory.getLogger(BlockingQueueReceiver.class);
@@ -44,6 +43,8 @@ public class BlockingQueueReceiver extends QueueReceiver
     private boolean _terminate = false;
 
 	private int sizeWarningThreshold;
+	
+	private volatile ReceiverSelector selector;
 
     //~ Constructors 
 
@@ -174,12 +175,22 @@ public class BlockingQueueReceiver extends QueueReceiver
         Workspace workspace = getContainer().workspace();
         Token result = null;
         synchronized (this) {
-            while (!_terminate && !super.hasToken()) {
-                try {
-					workspace.wait(this);
-				} catch (InterruptedException e) {
-				}
-            }
+        	boolean managedBlock = false;
+        	try {
+	            while (!_terminate && !super.hasToken()) {
+	            	if (!managedBlock) {
+	            		managedBlock = ActorScheduler.beginBlocking();
+	            	}
+	                try {
+						workspace.wait(this);
+					} catch (InterruptedException e) {
+					}
+	            }
+        	} finally {
+        		if (managedBlock) {
+        			ActorScheduler.endBlocking();
+        		}
+        	}
 
             if (super.hasToken()) {
                 result = super.get();
@@ -250,11 +261,13 @@ public class BlockingQueueReceiver extends QueueReceiver
      * @param branch DOCUMENT ME!
      */
     public void put(Token token, Branch branch) {
+    	boolean added = false;
         synchronized (this) {
             if (_terminate) {
 				// throw new
 				// TerminateProcessException(toString()+" in "+this.getContainer().getFullName());
             } else {
+            	added = true;
                 //token can be put in the queue;
                 super.put(token);
                 
@@ -265,17 +278,59 @@ public class BlockingQueueReceiver extends QueueReceiver
                 notifyAll();
             }
         }
+        // notify outside of the lock, the selector may need other locks
+        ReceiverSelector s = selector;
+        if (added && s != null) {
+        	s.tokenAvailable(this);
+        }
+    }
+
+    /**
+     * Adds the first <i>numberOfTokens</i> tokens of the array in one go,
+     * i.e. taking the receiver's lock and waking up readers only once.
+     *
+     * @param tokenArray the tokens to add
+     * @param numberOfTokens the nr of tokens from the array to add
+     */
+	@Override
+    public void putArray(Token[] tokenArray, int numberOfTokens) {
+    	if (numberOfTokens <= 0) {
+    		return;
+    	}
+    	boolean added = false;
+        synchronized (this) {
+            if (!_terminate) {
+            	added = true;
+            	for (int i = 0; i < numberOfTokens; i++) {
+            		super.put(tokenArray[i]);
+            	}
+                if(getSizeWarningThreshold()!=QueueReceiver.INFINITE_CAPACITY && size()>=getSizeWarningThreshold()) {
+                	logger.warn(getContainer().getFullName()+" - reached/passed warning threshold size "+getSizeWarningThreshold());
+                }
+                notifyAll();
+            }
+        }
+        ReceiverSelector s = selector;
+        if (added && s != null) {
+        	s.tokenAvailable(this);
+        }
     }
 
     /**
      * DOCUMENT ME!
      */
-    public synchronized void requestFinish() {
+    public void requestFinish() {
     	if(logger.isTraceEnabled()) {
     		logger.trace("requestFinish() - entry - for "+toString()+" in "+this.getContainer().getFullName());
     	}
-        _terminate = true;
-        notifyAll();
+    	synchronized (this) {
+	        _terminate = true;
+	        notifyAll();
+    	}
+        ReceiverSelector s = selector;
+        if (s != null) {
+        	s.finishRequested(this);
+        }
     	if(logger.isTraceEnabled()) {
     		logger.trace("requestFinish() - exit");
     	}
@@ -298,4 +353,29 @@ public class BlockingQueueReceiver extends QueueReceiver
 		return sizeWarningThreshold;
 	}
 
+	public void setReceiverSelector(ReceiverSelector selector) {
+		this.selector = selector;
+	}
+
+	public ReceiverSelector getReceiverSelector() {
+		return selector;
+	}
+
+	@Override
+	public synchronized int size() {
+		return super.size();
+	}
+
+	public synchronized Token poll() {
+		if (super.hasToken()) {
+			return super.get();
+		} else {
+			return null;
+		}
+	}
+
+	public synchronized boolean isFinished() {
+		return _terminate && !super.hasToken();
+	}
+
 }
\ No newline at end of file
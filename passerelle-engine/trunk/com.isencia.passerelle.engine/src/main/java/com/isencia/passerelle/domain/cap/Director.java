@@ -19,6 +19,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -29,20 +30,31 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.isencia.passerelle.actor.InitializationException;
+import com.isencia.passerelle.actor.Source;
 import com.isencia.passerelle.core.PasserelleException;
+import com.isencia.passerelle.core.Port;
 import com.isencia.passerelle.domain.ProcessDirector;
+import com.isencia.passerelle.statistics.StatisticsServiceFactory;
+import com.isencia.passerelle.statistics.TimeServiceStatistics;
 import com.isencia.passerelle.util.SchedulerUtils;
+import com.isencia.passerelle.util.TimeService;
 
+import ptolemy.actor.Actor;
 import ptolemy.actor.CompositeActor;
+import ptolemy.actor.QueueReceiver;
 import ptolemy.actor.Receiver;
 import ptolemy.actor.gui.style.CheckBoxStyle;
+import ptolemy.actor.process.ProcessReceiver;
 import ptolemy.actor.util.FIFOQueue;
 import ptolemy.data.BooleanToken;
 import ptolemy.data.expr.FileParameter;
 import ptolemy.data.expr.Parameter;
+import ptolemy.data.expr.StringParameter;
 import ptolemy.data.type.BaseType;
 import ptolemy.kernel.CompositeEntity;
 import ptolemy.kernel.util.Attribute;
+import ptolemy.kernel.util.ChangeListener;
+import ptolemy.kernel.util.ChangeRequest;
 import ptolemy.kernel.util.IllegalActionException;
 import ptolemy.kernel.util.NameDuplicationException;
 import ptolemy.kernel.util.Workspace;
@@ -51,7 +63,8 @@ import ptolemy.kernel.util.Workspace;
  * The standard Passerelle director. Besides the std Ptolemy director stuff,
  * such as providing custom receivers and process threads, this director adds:
  * <ul>
- * <li> Support for centralized maintenance of a scheduler instance
+ * <li> Cleanup of the flow's registrations in the shared TimeService, at wrapup
+ * <li> Optional scheduling of the actors' iterations on a shared thread pool
  * </ul>
  * 
  * @author dirk j
@@ -83,10 +96,43 @@ public class Director extends ProcessDirector {
 	public Parameter validateIterationParam = null;
 	public final static String VALIDATE_ITERATION_PARAM = "Validate Iteration";
 
+	/**
+	 * Parameter to select the receiver implementation that is used for
+	 * the input ports of all actors in the model.
+	 * <ul>
+	 * <li>Blocking Queue : the default unbounded BlockingQueueReceiver
+	 * <li>Bounded Ring Buffer : the lock-free RingBufferReceiver, that respects
+	 * each actor's receiver queue capacity and overflow policy.
+	 * </ul>
+	 */
+	public StringParameter receiverTypeParam = null;
+	public final static String RECEIVER_TYPE_PARAM = "Receiver Type";
+	public final static String RECEIVER_TYPE_BLOCKING_QUEUE = "Blocking Queue";
+	public final static String RECEIVER_TYPE_RING_BUFFER = "Bounded Ring Buffer";
+	private boolean useRingBufferReceivers = false;
+
+	/**
+	 * Parameter to select how the actors' iterations are scheduled.
+	 * <ul>
+	 * <li>Thread per actor : the default, each actor runs in its own ProcessThread
+	 * <li>Thread pool : actors with connected inputs are iterated as tasks on the shared
+	 * ActorScheduler pool, when input is available for them. Actors without inputs
+	 * and sources, that also iterate without input, still get their own thread.
+	 * </ul>
+	 */
+	public StringParameter schedulingModeParam = null;
+	public final static String SCHEDULING_MODE_PARAM = "Scheduling Mode";
+	public final static String SCHEDULING_MODE_THREAD_PER_ACTOR = "Thread per actor";
+	public final static String SCHEDULING_MODE_THREAD_POOL = "Thread pool";
+	private boolean useThreadPool = false;
 
 	private Scheduler scheduler = null;
 
-	private Collection<BlockingQueueReceiver> managedReceivers = new HashSet<BlockingQueueReceiver>();
+	private Collection<ProcessReceiver> managedReceivers = new HashSet<ProcessReceiver>();
+
+	// Ports cache their receivers during a run,
+	// so they must be told when the model is modified while running
+	private ChangeListener topologyChangeListener = new TopologyChangeListener();
 	
 	//~ Constructors 
 
@@ -134,6 +180,18 @@ public class Director extends ProcessDirector {
 		validateIterationParam.setTypeEquals(BaseType.BOOLEAN);
 		new CheckBoxStyle(validateIterationParam, "style");
 		registerConfigurableParameter(validateIterationParam);
+
+		receiverTypeParam = new StringParameter(this, RECEIVER_TYPE_PARAM);
+		receiverTypeParam.setExpression(RECEIVER_TYPE_BLOCKING_QUEUE);
+		receiverTypeParam.addChoice(RECEIVER_TYPE_BLOCKING_QUEUE);
+		receiverTypeParam.addChoice(RECEIVER_TYPE_RING_BUFFER);
+		registerConfigurableParameter(receiverTypeParam);
+
+		schedulingModeParam = new StringParameter(this, SCHEDULING_MODE_PARAM);
+		schedulingModeParam.setExpression(SCHEDULING_MODE_THREAD_PER_ACTOR);
+		schedulingModeParam.addChoice(SCHEDULING_MODE_THREAD_PER_ACTOR);
+		schedulingModeParam.addChoice(SCHEDULING_MODE_THREAD_POOL);
+		registerConfigurableParameter(schedulingModeParam);
 	}
 
 	/** Construct a director in the given container with the given name.
@@ -179,6 +237,18 @@ public class Director extends ProcessDirector {
 		new CheckBoxStyle(validateIterationParam, "style");
 		registerConfigurableParameter(validateIterationParam);
 
+		receiverTypeParam = new StringParameter(this, RECEIVER_TYPE_PARAM);
+		receiverTypeParam.setExpression(RECEIVER_TYPE_BLOCKING_QUEUE);
+		receiverTypeParam.addChoice(RECEIVER_TYPE_BLOCKING_QUEUE);
+		receiverTypeParam.addChoice(RECEIVER_TYPE_RING_BUFFER);
+		registerConfigurableParameter(receiverTypeParam);
+
+		schedulingModeParam = new StringParameter(this, SCHEDULING_MODE_PARAM);
+		schedulingModeParam.setExpression(SCHEDULING_MODE_THREAD_PER_ACTOR);
+		schedulingModeParam.addChoice(SCHEDULING_MODE_THREAD_PER_ACTOR);
+		schedulingModeParam.addChoice(SCHEDULING_MODE_THREAD_POOL);
+		registerConfigurableParameter(schedulingModeParam);
+
 		_attachText(
 			"_iconDescription",
 			"<svg>\n"
@@ -241,6 +311,9 @@ public class Director extends ProcessDirector {
 	public Object clone(Workspace workspace)
 		throws CloneNotSupportedException {
 		Director newObject = (Director) super.clone(workspace);
+		// the clone must signal the changes of its own model
+		newObject.topologyChangeListener = newObject.new TopologyChangeListener();
+		newObject.managedReceivers = new HashSet<ProcessReceiver>();
 
 		return newObject;
 	}
@@ -270,6 +343,12 @@ public class Director extends ProcessDirector {
 		} else if (attribute == validateIterationParam) {
 			validateIteration = ((BooleanToken) validateIterationParam.getToken()).booleanValue();
 			logger.debug("Iteration validation set to : " + validateIteration);
+		} else if (attribute == receiverTypeParam) {
+			useRingBufferReceivers = RECEIVER_TYPE_RING_BUFFER.equals(receiverTypeParam.getExpression());
+			logger.debug("Receiver type set to : " + receiverTypeParam.getExpression());
+		} else if (attribute == schedulingModeParam) {
+			useThreadPool = SCHEDULING_MODE_THREAD_POOL.equals(schedulingModeParam.getExpression());
+			logger.debug("Scheduling mode set to : " + schedulingModeParam.getExpression());
 		} else 
 			super.attributeChanged(attribute);
 
@@ -292,33 +371,81 @@ public class Director extends ProcessDirector {
 			}
 		}
 		super.initialize();
+		toplevel().addChangeListener(topologyChangeListener);
+		StatisticsServiceFactory.getService().registerStatistics(new TimeServiceStatistics(TimeService.getInstance()));
 		if(logger.isTraceEnabled())
 			logger.trace(getName()+" initialize() - exit");
 	}
 
 
 	/**
-	 * DOCUMENT ME!
+	 * In the thread pool scheduling mode, creates a PooledProcessThread for actors
+	 * with inputs that can be watched for new tokens, except for sources.
+	 * In all other cases, a normal ProcessThread is created.
+	 */
+	@Override
+	protected ptolemy.actor.process.ProcessThread _newProcessThread(Actor actor, ptolemy.actor.process.ProcessDirector director)
+			throws IllegalActionException {
+		if (useThreadPool && !(actor instanceof Source)) {
+			SelectableReceiver[] inputReceivers = PooledProcessThread.getInputReceivers(actor);
+			if (inputReceivers != null) {
+				return new PooledProcessThread(actor, (ProcessDirector) director, inputReceivers);
+			}
+		}
+		return super._newProcessThread(actor, director);
+	}
+
+	/**
+	 * Creates a receiver of the type selected in the receiverTypeParam.
+	 * The capacity is initially unbounded. Passerelle actors adjust it
+	 * afterwards, based on their receiver queue parameters.
 	 *
-	 * @return DOCUMENT ME!
+	 * @return a new receiver
 	 */
 	public Receiver newReceiver() {
-		BlockingQueueReceiver receiver = new BlockingQueueReceiver();
-		managedReceivers .add(receiver);
+		ProcessReceiver receiver = null;
 		try {
-			receiver.setCapacity(FIFOQueue.INFINITE_CAPACITY);
+			if (useRingBufferReceivers) {
+				RingBufferReceiver rbReceiver = new RingBufferReceiver();
+				rbReceiver.setCapacity(QueueReceiver.INFINITE_CAPACITY);
+				receiver = rbReceiver;
+			} else {
+				BlockingQueueReceiver bqReceiver = new BlockingQueueReceiver();
+				bqReceiver.setCapacity(FIFOQueue.INFINITE_CAPACITY);
+				receiver = bqReceiver;
+			}
 		} catch (IllegalActionException e) {
 		}
+		managedReceivers.add(receiver);
 
 		return receiver;
 	}
 
 	/**
 	 * 
-	 * @return unmodifiable copy of all receivers managed by this Director,
+	 * @return unmodifiable copy of the BlockingQueueReceivers managed by this Director,
 	 * i.e. of the input ports of the actors in this Director's model.
+	 * @deprecated this does not return the RingBufferReceivers,
+	 * use getManagedProcessReceivers() instead
 	 */
+	@Deprecated
 	public Collection<BlockingQueueReceiver> getManagedReceivers() {
+		Collection<BlockingQueueReceiver> result = new ArrayList<BlockingQueueReceiver>();
+		for (ProcessReceiver receiver : managedReceivers) {
+			if (receiver instanceof BlockingQueueReceiver) {
+				result.add((BlockingQueueReceiver) receiver);
+			}
+		}
+		return Collections.unmodifiableCollection(result);
+	}
+
+	/**
+	 * 
+	 * @return unmodifiable copy of all receivers managed by this Director,
+	 * i.e. of the input ports of the actors in this Director's model,
+	 * whatever the selected receiver type.
+	 */
+	public Collection<ProcessReceiver> getManagedProcessReceivers() {
 		return Collections.unmodifiableCollection(managedReceivers);
 	}
 	
@@ -372,6 +499,9 @@ public class Director extends ProcessDirector {
 			}
 			scheduler=null;
 		}
+		// timed tasks of the flow's actors are registered with the director as owner
+		TimeService.getInstance().cancelAll(this);
+		toplevel().removeChangeListener(topologyChangeListener);
 		super.wrapup();
 		if(logger.isTraceEnabled())
 			logger.trace(getName()+" wrapup() - exit");
@@ -393,6 +523,14 @@ public class Director extends ProcessDirector {
 		}
 	}
 	
+	/**
+	 * 
+	 * @return a Quartz scheduler for this director
+	 * @throws InitializationException
+	 * @deprecated each director gets a scheduler with its own thread pool; 
+	 * use the shared TimeService, with the director as owner of the registrations.
+	 */
+	@Deprecated
 	public Scheduler getScheduler() throws InitializationException {
 		if(scheduler==null) {
             try {
@@ -441,4 +579,16 @@ public class Director extends ProcessDirector {
 		return validateIteration;
 	}
 
+	/**
+	 * Tells the ports of this director's model that their cached receivers are stale.
+	 */
+	private class TopologyChangeListener implements ChangeListener {
+		public void changeExecuted(ChangeRequest change) {
+			Port.topologyChanged(toplevel());
+		}
+		public void changeFailed(ChangeRequest change, Exception exception) {
+			// a failed change may have been partially applied
+			Port.topologyChanged(toplevel());
+		}
+	}
 }
\ No newline at end of file
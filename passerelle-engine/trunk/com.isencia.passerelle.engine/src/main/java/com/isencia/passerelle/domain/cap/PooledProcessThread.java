@@ -0,0 +1,279 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.domain.cap;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.isencia.passerelle.domain.ProcessDirector;
+import com.isencia.passerelle.domain.ProcessThread;
+import com.isencia.passerelle.util.LoggerManager;
+
+import ptolemy.actor.Actor;
+import ptolemy.actor.IOPort;
+import ptolemy.actor.Receiver;
+
+/**
+ * A ProcessThread for the thread pool scheduling mode of the Passerelle Director.
+ * <p>
+ * It is never started as a separate thread. Instead, the actor's iterations are run
+ * as a task on the shared {@link ActorScheduler} pool. When none of the actor's input
+ * receivers has something to read, the task ends and the pool thread is released.
+ * The receivers signal this process when new tokens arrive or when a finish is requested,
+ * after which the task is submitted again.
+ * </p>
+ * <p>
+ * PortHandlers with a listener, that are started by the actor while its task is running,
+ * take the tokens from the receivers themselves. They call listenerNotified() after each notification
+ * of their listener, as the actor may then have work for its next iteration.
+ * Actors that iterate without input, i.e. sources, are not run on the pool.
+ * </p>
+ * <p>
+ * The iterations themselves are done via the same code as for the ProcessThread,
+ * so the director's execution control and error handling, and the actor's logging context,
+ * remain the same as in the default thread-per-actor mode.
+ * </p>
+ * 
+ * @author erwin dl
+ */
+public class PooledProcessThread extends ProcessThread implements ReceiverSelector {
+
+	// after this nr of iterations in one go, the task is resubmitted to give other actors a chance
+	private final static int MAX_ITERATIONS_PER_RUN = 64;
+
+	private final static int IDLE = 0;
+	private final static int RUNNING = 1;
+	private final static int SIGNALLED = 2;
+
+	private final AtomicInteger state = new AtomicInteger(IDLE);
+
+	// the process whose task is running in a pool thread
+	private final static ThreadLocal<PooledProcessThread> currentProcess = new ThreadLocal<PooledProcessThread>();
+	// set when a PortHandler has notified one of the actor's listeners
+	private final AtomicBoolean listenerWork = new AtomicBoolean();
+
+	private final SelectableReceiver[] inputReceivers;
+	private final ReceiverSelector[] previousSelectors;
+	// the finished receivers for which an iteration has already been done
+	private final boolean[] finishSeen;
+	// only accessed from the task, that never runs concurrently with itself
+	private boolean initialized = false;
+	private boolean finished = false;
+
+	private final Runnable task = new Runnable() {
+		public void run() {
+			runIterations();
+		}
+	};
+
+	/**
+	 * @param actor
+	 * @param director
+	 * @param inputReceivers the receivers of all the actor's input ports, as obtained via getInputReceivers()
+	 */
+	public PooledProcessThread(Actor actor, ProcessDirector director, SelectableReceiver[] inputReceivers) {
+		super(actor, director);
+		this.inputReceivers = inputReceivers;
+		this.previousSelectors = new ReceiverSelector[inputReceivers.length];
+		this.finishSeen = new boolean[inputReceivers.length];
+	}
+
+	/**
+	 * 
+	 * @param actor
+	 * @return all receivers of the actor's input ports, or null if the actor
+	 * can not be run on the pool, i.e. when it has no connected inputs
+	 * or when some of its receivers are not SelectableReceivers.
+	 */
+	public static SelectableReceiver[] getInputReceivers(Actor actor) {
+		List<SelectableReceiver> res = new ArrayList<SelectableReceiver>();
+		for (Iterator<?> portItr = actor.inputPortList().iterator(); portItr.hasNext();) {
+			IOPort port = (IOPort) portItr.next();
+			Receiver[][] receivers = port.getReceivers();
+			if (receivers == null) {
+				continue;
+			}
+			for (int i = 0; i < receivers.length; i++) {
+				if (receivers[i] == null) {
+					continue;
+				}
+				for (int j = 0; j < receivers[i].length; j++) {
+					if (!(receivers[i][j] instanceof SelectableReceiver)) {
+						return null;
+					}
+					res.add((SelectableReceiver) receivers[i][j]);
+				}
+			}
+		}
+		return res.isEmpty() ? null : res.toArray(new SelectableReceiver[res.size()]);
+	}
+
+	/**
+	 * Submits the actor's task to the pool, i.o. starting a thread.
+	 */
+	@Override
+	public void start() {
+		state.set(RUNNING);
+		ActorScheduler.getInstance().execute(task);
+	}
+
+	public void tokenAvailable(SelectableReceiver receiver) {
+		signal();
+	}
+
+	public void finishRequested(SelectableReceiver receiver) {
+		signal();
+	}
+
+	/**
+	 * 
+	 * @return the process whose task is running in the current thread, or null
+	 */
+	public static PooledProcessThread getCurrentProcess() {
+		return currentProcess.get();
+	}
+
+	/**
+	 * Called by a PortHandler after notifying a listener of the actor,
+	 * to make sure that the actor is iterated again.
+	 */
+	public void listenerNotified() {
+		listenerWork.set(true);
+		signal();
+	}
+
+	/**
+	 * Makes sure that the task will check the receivers again,
+	 * submitting it when it is idle.
+	 */
+	private void signal() {
+		while (true) {
+			int s = state.get();
+			if (s == IDLE) {
+				if (state.compareAndSet(IDLE, RUNNING)) {
+					ActorScheduler.getInstance().execute(task);
+					return;
+				}
+			} else if (s == SIGNALLED || state.compareAndSet(RUNNING, SIGNALLED)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Iterates the actor for as long as it has input,
+	 * up to a max nr of iterations.
+	 */
+	private void runIterations() {
+		LoggerManager.setContext(getExecutionContext());
+		LoggerManager.pushMDC(ACTOR_MDC_NAME, getActorInfo());
+		currentProcess.set(this);
+		Throwable thrownWhenIterate = null;
+		try {
+			if (!initialized) {
+				initialized = true;
+				_debug("-- Starting task.");
+				getActor().initialize();
+				// the actor may have installed its own selectors during its initialization
+				watchInputReceivers();
+			}
+			for (int i = 0; !finished && i < MAX_ITERATIONS_PER_RUN; i++) {
+				// clear any pending signal before checking the receivers
+				state.set(RUNNING);
+				if (hasInput()) {
+					finished = !iterateActor();
+				} else if (state.compareAndSet(RUNNING, IDLE)) {
+					// a signal will resubmit the task
+					return;
+				}
+			}
+		} catch (Throwable t) {
+			thrownWhenIterate = t;
+			finished = true;
+		} finally {
+			if (finished) {
+				unwatchInputReceivers();
+				actorFinished(thrownWhenIterate);
+			}
+			currentProcess.remove();
+			LoggerManager.popMDC(ACTOR_MDC_NAME);
+			LoggerManager.clearContext(getExecutionContext());
+		}
+		if (!finished) {
+			// still busy, but let other actors run first
+			ActorScheduler.getInstance().execute(task);
+		}
+	}
+
+	/**
+	 * @return true if a token is waiting in one of the receivers,
+	 * if one of them has finished since the previous check,
+	 * or if a listener of the actor has been notified since the previous check
+	 */
+	private boolean hasInput() {
+		boolean res = listenerWork.getAndSet(false);
+		for (int i = 0; i < inputReceivers.length; i++) {
+			if (inputReceivers[i].size() > 0) {
+				return true;
+			}
+			if (!finishSeen[i] && inputReceivers[i].isFinished()) {
+				finishSeen[i] = true;
+				res = true;
+			}
+		}
+		return res;
+	}
+
+	private void watchInputReceivers() {
+		for (int i = 0; i < inputReceivers.length; i++) {
+			ReceiverSelector previous = inputReceivers[i].getReceiverSelector();
+			previousSelectors[i] = previous;
+			inputReceivers[i].setReceiverSelector(previous == null ? this : new SelectorPair(previous, this));
+		}
+	}
+
+	private void unwatchInputReceivers() {
+		for (int i = 0; i < inputReceivers.length; i++) {
+			inputReceivers[i].setReceiverSelector(previousSelectors[i]);
+		}
+	}
+
+	/**
+	 * Forwards the signals of a receiver to the selector that was already registered,
+	 * e.g. by a PortHandler, and to this process.
+	 */
+	private static class SelectorPair implements ReceiverSelector {
+		private final ReceiverSelector first;
+		private final ReceiverSelector second;
+
+		SelectorPair(ReceiverSelector first, ReceiverSelector second) {
+			this.first = first;
+			this.second = second;
+		}
+
+		public void tokenAvailable(SelectableReceiver receiver) {
+			first.tokenAvailable(receiver);
+			second.tokenAvailable(receiver);
+		}
+
+		public void finishRequested(SelectableReceiver receiver) {
+			first.finishRequested(receiver);
+			second.finishRequested(receiver);
+		}
+	}
+}
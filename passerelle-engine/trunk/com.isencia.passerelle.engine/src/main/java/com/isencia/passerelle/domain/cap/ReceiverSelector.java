@@ -0,0 +1,43 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.domain.cap;
+
+/**
+ * Gets notified by {@link SelectableReceiver}s when they become readable.
+ * <p>
+ * Notifications are done on the thread of the producer, so implementations
+ * should just register the event and return quickly. In particular, they
+ * should not read the receiver from within the callback.
+ * </p>
+ *
+ * @author erwin dl
+ */
+public interface ReceiverSelector {
+
+	/**
+	 * A token has been added to the given receiver.
+	 *
+	 * @param receiver
+	 */
+	void tokenAvailable(SelectableReceiver receiver);
+
+	/**
+	 * A finish has been requested on the given receiver.
+	 * It may still contain tokens.
+	 *
+	 * @param receiver
+	 */
+	void finishRequested(SelectableReceiver receiver);
+}
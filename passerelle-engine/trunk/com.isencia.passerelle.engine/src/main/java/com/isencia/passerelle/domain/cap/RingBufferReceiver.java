@@ -0,0 +1,551 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.domain.cap;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ptolemy.actor.AbstractReceiver;
+import ptolemy.actor.IOPort;
+import ptolemy.actor.NoRoomException;
+import ptolemy.actor.QueueReceiver;
+import ptolemy.actor.process.BoundaryDetector;
+import ptolemy.data.Token;
+import ptolemy.kernel.util.IllegalActionException;
+
+/**
+ * A bounded, lock-free alternative for the {@link BlockingQueueReceiver}.
+ * <p>
+ * Tokens are stored in a fixed-size ring buffer, where producers claim slots
+ * with a CAS on a shared tail counter. No monitor is held on the put/get path;
+ * a consumer waiting for data, or a producer waiting for room, is parked via
+ * <code>LockSupport</code> and unparked by the other side.
+ * </p>
+ * <p>
+ * When the capacity is reached, the receiver applies its {@link OverflowPolicy}:
+ * <ul>
+ * <li>BLOCK : the producer stalls until the consumer has made room, i.e. real backpressure
+ * <li>DROP : the new token is discarded and a warning is logged
+ * <li>FAIL : a NoRoomException is thrown to the producer
+ * </ul>
+ * When the capacity is set to <code>QueueReceiver.INFINITE_CAPACITY</code>,
+ * the receiver falls back to an unbounded lock-free linked queue,
+ * i.e. it behaves like the BlockingQueueReceiver without the global monitor.
+ * </p>
+ * <p>
+ * Like the BlockingQueueReceiver, <code>hasToken()</code> always returns true
+ * and <code>get()</code> blocks until a token is available or until a finish
+ * has been requested. In that last case, remaining tokens are still delivered
+ * before null is returned.
+ * </p>
+ *
+ * @author erwin dl
+ */
+public class RingBufferReceiver extends AbstractReceiver implements SelectableReceiver {
+
+	private final static Logger logger = LoggerFactory.getLogger(RingBufferReceiver.class);
+
+	/**
+	 * Determines what happens with a new token when the receiver is full.
+	 */
+	public static enum OverflowPolicy {
+		BLOCK, DROP, FAIL;
+	}
+
+	/**
+	 * Max time a blocked producer remains parked before re-checking for room.
+	 * This is only a safety net, as the consumer unparks waiting producers
+	 * each time it takes a token.
+	 */
+	private final static long PRODUCER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private BoundaryDetector _boundaryDetector;
+	private volatile boolean _terminate = false;
+
+	private int capacity = QueueReceiver.INFINITE_CAPACITY;
+	private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+	private int sizeWarningThreshold = QueueReceiver.INFINITE_CAPACITY;
+
+	// bounded mode : ring of slots, with a sequence nr per slot
+	// indicating whether it's ready to be written or read
+	private Token[] ring;
+	private AtomicLongArray slotSequences;
+	private int mask;
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicLong head = new AtomicLong();
+
+	// unbounded mode
+	private Queue<Token> unboundedQueue;
+
+	private volatile Thread waitingConsumer;
+	private final Queue<Thread> waitingProducers = new ConcurrentLinkedQueue<Thread>();
+
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	private volatile ReceiverSelector selector;
+
+	/**
+	 * Construct an empty receiver with no container
+	 */
+	public RingBufferReceiver() {
+		super();
+		_boundaryDetector = new BoundaryDetector(this);
+		_allocate();
+	}
+
+	/**
+	 * Construct an empty receiver with the specified container.
+	 *
+	 * @param container
+	 *            The container of this receiver.
+	 * @exception IllegalActionException
+	 *                If the container does not accept this receiver.
+	 */
+	public RingBufferReceiver(IOPort container) throws IllegalActionException {
+		super(container);
+		_boundaryDetector = new BoundaryDetector(this);
+		_allocate();
+	}
+
+	/**
+	 * Set the max nr of tokens that can be queued in this receiver. This
+	 * reallocates the internal buffer, so it may only be done before the
+	 * receiver is used, i.e. typically during model initialization.
+	 *
+	 * @param capacity
+	 *            a strictly positive nr, or QueueReceiver.INFINITE_CAPACITY
+	 * @throws IllegalActionException
+	 *             if the capacity is invalid or if the receiver is not empty
+	 */
+	public void setCapacity(int capacity) throws IllegalActionException {
+		if (capacity == 0 || capacity < QueueReceiver.INFINITE_CAPACITY) {
+			throw new IllegalActionException(getContainer(), "Invalid receiver capacity " + capacity);
+		}
+		if (size() > 0) {
+			throw new IllegalActionException(getContainer(), "Can not change capacity of a non-empty receiver");
+		}
+		this.capacity = capacity;
+		_allocate();
+	}
+
+	/**
+	 * @return the max nr of tokens that can be queued in this receiver, or
+	 *         QueueReceiver.INFINITE_CAPACITY
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = (overflowPolicy != null) ? overflowPolicy : OverflowPolicy.BLOCK;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	public void setSizeWarningThreshold(int qWarningSize) {
+		this.sizeWarningThreshold = qWarningSize;
+	}
+
+	public int getSizeWarningThreshold() {
+		return sizeWarningThreshold;
+	}
+
+	/**
+	 * @return the nr of tokens that were refused by the DROP overflow policy
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * @return the nr of tokens currently waiting in this receiver
+	 */
+	public int size() {
+		if (unboundedQueue != null) {
+			return unboundedQueue.size();
+		} else {
+			return (int) Math.max(0, tail.get() - head.get());
+		}
+	}
+
+	public boolean isConnectedToBoundary() {
+		return _boundaryDetector.isConnectedToBoundary();
+	}
+
+	public boolean isConnectedToBoundaryInside() {
+		return _boundaryDetector.isConnectedToBoundaryInside();
+	}
+
+	public boolean isConnectedToBoundaryOutside() {
+		return _boundaryDetector.isConnectedToBoundaryOutside();
+	}
+
+	public boolean isConsumerReceiver() {
+		return isConnectedToBoundary();
+	}
+
+	public boolean isInsideBoundary() {
+		return _boundaryDetector.isInsideBoundary();
+	}
+
+	public boolean isOutsideBoundary() {
+		return _boundaryDetector.isOutsideBoundary();
+	}
+
+	public boolean isProducerReceiver() {
+		return isOutsideBoundary() || isInsideBoundary();
+	}
+
+	public boolean isReadBlocked() {
+		return waitingConsumer != null;
+	}
+
+	public boolean isWriteBlocked() {
+		return !waitingProducers.isEmpty();
+	}
+
+	/**
+	 * Blocks until a token is available, or until a finish has been requested
+	 * and no more tokens are queued. In the last case, null is returned.
+	 */
+	@Override
+	public Token get() {
+		Token result = _poll();
+		if (result != null) {
+			return result;
+		}
+		Thread me = Thread.currentThread();
+		boolean managedBlock = false;
+		try {
+			while (true) {
+				waitingConsumer = me;
+				// re-check after publishing ourselves as waiting,
+				// to avoid missing an unpark from a concurrent put
+				result = _poll();
+				if (result != null || _terminate) {
+					break;
+				}
+				if (!managedBlock) {
+					managedBlock = ActorScheduler.beginBlocking();
+				}
+				LockSupport.park(this);
+				if (me.isInterrupted() && !_terminate) {
+					// keep the same behaviour as the BlockingQueueReceiver
+					// i.e. ignore interrupts and keep on waiting
+					Thread.interrupted();
+				}
+			}
+		} finally {
+			waitingConsumer = null;
+			if (managedBlock) {
+				ActorScheduler.endBlocking();
+			}
+		}
+		if (result == null) {
+			// one last try, as the terminate may have raced with a put
+			result = _poll();
+		}
+		return result;
+	}
+
+	@Override
+	public boolean hasRoom() {
+		return capacity == QueueReceiver.INFINITE_CAPACITY || size() < capacity;
+	}
+
+	@Override
+	public boolean hasRoom(int tokens) {
+		return capacity == QueueReceiver.INFINITE_CAPACITY || (size() + tokens) <= capacity;
+	}
+
+	/**
+	 * Always returns true, as get() blocks till a token is available.
+	 */
+	@Override
+	public boolean hasToken() {
+		return true;
+	}
+
+	/**
+	 * Always returns true, as get() blocks till a token is available.
+	 */
+	@Override
+	public boolean hasToken(int tokens) {
+		return true;
+	}
+
+	/**
+	 * Adds the token to the receiver. When the receiver is full, the
+	 * overflow policy determines what happens next.
+	 *
+	 * @throws NoRoomException
+	 *             when the receiver is full and the policy is FAIL
+	 */
+	@Override
+	public void put(Token token) throws NoRoomException {
+		if (_terminate || token == null) {
+			return;
+		}
+		if (_put(token)) {
+			_tokensAdded();
+		}
+	}
+
+	/**
+	 * Adds the first <i>numberOfTokens</i> tokens of the array, applying the
+	 * overflow policy per token, but waking up the consumer only once.
+	 *
+	 * @throws NoRoomException
+	 *             when the receiver is full and the policy is FAIL
+	 */
+	@Override
+	public void putArray(Token[] tokenArray, int numberOfTokens) throws NoRoomException {
+		boolean added = false;
+		try {
+			for (int i = 0; i < numberOfTokens && !_terminate; i++) {
+				if (tokenArray[i] != null && _put(tokenArray[i])) {
+					added = true;
+				}
+			}
+		} finally {
+			if (added) {
+				_tokensAdded();
+			}
+		}
+	}
+
+	/**
+	 * @return true if the token was added, false if it was dropped or if the
+	 *         receiver was terminated while waiting for room
+	 */
+	private boolean _put(Token token) throws NoRoomException {
+		if (!_offer(token)) {
+			switch (overflowPolicy) {
+			case DROP:
+				droppedCount.incrementAndGet();
+				logger.warn(_getContainerName() + " - receiver full, dropped token");
+				return false;
+			case FAIL:
+				throw new NoRoomException(getContainer(), "Queue is at capacity " + capacity + ". Cannot put a token.");
+			default:
+				// tokens of a putArray() may not have been signalled yet,
+				// the consumer must be draining them before we wait for room
+				_tokensAdded();
+				if (!_blockingOffer(token)) {
+					// terminated while waiting for room
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Signals a waiting consumer and/or selector that new tokens are available.
+	 */
+	private void _tokensAdded() {
+		if (sizeWarningThreshold != QueueReceiver.INFINITE_CAPACITY && size() >= sizeWarningThreshold) {
+			logger.warn(_getContainerName() + " - reached/passed warning threshold size " + sizeWarningThreshold);
+		}
+
+		Thread consumer = waitingConsumer;
+		if (consumer != null) {
+			LockSupport.unpark(consumer);
+		}
+		ReceiverSelector s = selector;
+		if (s != null) {
+			s.tokenAvailable(this);
+		}
+	}
+
+	public void requestFinish() {
+		if (logger.isTraceEnabled()) {
+			logger.trace("requestFinish() - entry - for " + toString() + " in " + _getContainerName());
+		}
+		_terminate = true;
+		Thread consumer = waitingConsumer;
+		if (consumer != null) {
+			LockSupport.unpark(consumer);
+		}
+		for (Thread producer : waitingProducers) {
+			LockSupport.unpark(producer);
+		}
+		ReceiverSelector s = selector;
+		if (s != null) {
+			s.finishRequested(this);
+		}
+		if (logger.isTraceEnabled()) {
+			logger.trace("requestFinish() - exit");
+		}
+	}
+
+	@Override
+	public void reset() {
+		_terminate = false;
+		_boundaryDetector.reset();
+	}
+
+	public void setReceiverSelector(ReceiverSelector selector) {
+		this.selector = selector;
+	}
+
+	public ReceiverSelector getReceiverSelector() {
+		return selector;
+	}
+
+	public Token poll() {
+		return _poll();
+	}
+
+	public boolean isFinished() {
+		return _terminate && size() == 0;
+	}
+
+	@Override
+	public void clear() {
+		while (_poll() != null) {
+			// just drain it
+		}
+	}
+
+	private void _allocate() {
+		if (capacity == QueueReceiver.INFINITE_CAPACITY) {
+			unboundedQueue = new ConcurrentLinkedQueue<Token>();
+			ring = null;
+			slotSequences = null;
+		} else {
+			int ringSize = 1;
+			while (ringSize < capacity) {
+				ringSize <<= 1;
+			}
+			ring = new Token[ringSize];
+			slotSequences = new AtomicLongArray(ringSize);
+			for (int i = 0; i < ringSize; i++) {
+				slotSequences.set(i, i);
+			}
+			mask = ringSize - 1;
+			tail.set(0);
+			head.set(0);
+			unboundedQueue = null;
+		}
+	}
+
+	/**
+	 * @return false if the receiver is full
+	 */
+	private boolean _offer(Token token) {
+		if (unboundedQueue != null) {
+			return unboundedQueue.offer(token);
+		}
+		while (true) {
+			long pos = tail.get();
+			if (pos - head.get() >= capacity) {
+				return false;
+			}
+			int index = (int) pos & mask;
+			long seq = slotSequences.get(index);
+			if (seq == pos) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					ring[index] = token;
+					// publish the slot for the consumer
+					slotSequences.set(index, pos + 1);
+					return true;
+				}
+			} else if (seq < pos) {
+				// slot not yet released by the consumer
+				return false;
+			}
+			// else another producer claimed this slot, retry
+		}
+	}
+
+	/**
+	 * @return the next token, or null if the receiver is empty
+	 */
+	private Token _poll() {
+		Token result = null;
+		if (unboundedQueue != null) {
+			result = unboundedQueue.poll();
+		} else {
+			while (true) {
+				long pos = head.get();
+				int index = (int) pos & mask;
+				long seq = slotSequences.get(index);
+				if (seq == pos + 1) {
+					if (head.compareAndSet(pos, pos + 1)) {
+						result = ring[index];
+						ring[index] = null;
+						// release the slot for the next round of producers
+						slotSequences.set(index, pos + mask + 1);
+						break;
+					}
+				} else if (seq < pos + 1) {
+					// empty
+					return null;
+				}
+				// else another consumer took this one, retry
+			}
+			Thread producer = waitingProducers.peek();
+			if (producer != null) {
+				LockSupport.unpark(producer);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Parks the current thread until the token could be added.
+	 *
+	 * @return false if the receiver was terminated while waiting
+	 */
+	private boolean _blockingOffer(Token token) {
+		Thread me = Thread.currentThread();
+		waitingProducers.add(me);
+		boolean managedBlock = ActorScheduler.beginBlocking();
+		try {
+			while (!_terminate) {
+				if (_offer(token)) {
+					return true;
+				}
+				LockSupport.parkNanos(this, PRODUCER_PARK_NANOS);
+			}
+			return false;
+		} finally {
+			if (managedBlock) {
+				ActorScheduler.endBlocking();
+			}
+			waitingProducers.remove(me);
+			// pass on any wake-up that may have been meant for us
+			Thread next = waitingProducers.peek();
+			if (next != null && hasRoom()) {
+				LockSupport.unpark(next);
+			}
+		}
+	}
+
+	private String _getContainerName() {
+		IOPort container = getContainer();
+		return container != null ? container.getFullName() : "";
+	}
+}
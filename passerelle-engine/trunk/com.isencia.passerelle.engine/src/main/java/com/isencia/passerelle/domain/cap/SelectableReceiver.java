@@ -0,0 +1,63 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.domain.cap;
+
+import ptolemy.actor.process.ProcessReceiver;
+import ptolemy.data.Token;
+
+/**
+ * A receiver that can signal the arrival of new tokens to a
+ * {@link ReceiverSelector}, and that can be read without blocking.
+ * <p>
+ * This allows a single thread to wait on many receivers at once,
+ * i.o. needing a blocked reader thread per receiver.
+ * </p>
+ *
+ * @author erwin dl
+ */
+public interface SelectableReceiver extends ProcessReceiver {
+
+	/**
+	 * Registers the selector that must be notified of new tokens
+	 * and of a finish request. A receiver supports only one selector,
+	 * setting a new one replaces the previous one.
+	 *
+	 * @param selector the selector, or null to stop notifications
+	 */
+	void setReceiverSelector(ReceiverSelector selector);
+
+	/**
+	 * @return the registered selector, or null
+	 */
+	ReceiverSelector getReceiverSelector();
+
+	/**
+	 * Non-blocking get.
+	 *
+	 * @return the next token, or null if no token is available right now
+	 */
+	Token poll();
+
+	/**
+	 * @return the nr of tokens currently waiting in this receiver
+	 */
+	int size();
+
+	/**
+	 * @return true if a finish has been requested and no more tokens are queued,
+	 *         i.e. nothing will ever be received anymore
+	 */
+	boolean isFinished();
+}
@@ -15,37 +15,82 @@
 package com.isencia.passerelle.message;
 
 import java.text.DateFormat;
+import java.text.ParseException;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.isencia.passerelle.core.PasserelleException;
 import com.isencia.passerelle.message.internal.ErrorMessageContainer;
 import com.isencia.passerelle.message.internal.MessageContainer;
+import com.isencia.passerelle.message.internal.SimpleMessageContainer;
 import com.isencia.passerelle.message.internal.TriggerMessageContainer;
 
 
 /**
  * MessageFactory
  * 
- * TODO: class comment
+ * Central factory for all Passerelle messages.
+ * <p>
+ * The factory does not use any global lock, as it is used concurrently
+ * by all actor threads. Message and sequence IDs are obtained from atomic counters,
+ * and the creation timestamp is stored as a raw time value in each message.
+ * It is only formatted when someone reads the HEADER_TIMESTAMP_CREATION header.
+ * </p>
  * 
  * @author erwin dl
  */
 public class MessageFactory {
 	
 	private static final MessageFactory instance = new MessageFactory();
-	private static long msgIdCounter = 0;
-	private static long seqIDCounter = 0;
+	private static final AtomicLong msgIdCounter = new AtomicLong();
+	private static final AtomicLong seqIDCounter = new AtomicLong();
 
+	/**
+	 * The std format for message timestamps.
+	 * Remark that DateFormat instances are not thread-safe, 
+	 * so preferably use formatTimestamp() and parseTimestamp().
+	 */
 	public final static DateFormat timestampFormat = DateFormat.getDateTimeInstance();
+	
+	private final static ThreadLocal<DateFormat> threadTimestampFormat = new ThreadLocal<DateFormat>() {
+		protected DateFormat initialValue() {
+			return (DateFormat) timestampFormat.clone();
+		}
+	};
+
+	/**
+	 * Formats a timestamp in the std format for message headers.
+	 * This method is thread-safe.
+	 * 
+	 * @param timeMillis
+	 * @return the formatted timestamp
+	 */
+	public static String formatTimestamp(long timeMillis) {
+		return threadTimestampFormat.get().format(new Date(timeMillis));
+	}
+
+	/**
+	 * Parses a timestamp in the std format for message headers.
+	 * This method is thread-safe.
+	 * 
+	 * @param timestamp
+	 * @return the parsed timestamp
+	 * @throws ParseException
+	 */
+	public static Date parseTimestamp(String timestamp) throws ParseException {
+		return threadTimestampFormat.get().parse(timestamp);
+	}
 
 	public static MessageFactory getInstance() {
 		return instance;
 	}
 	
-	public synchronized ManagedMessage createMessage() {
-		MessageContainer newMsg = new MessageContainer();
+	public ManagedMessage createMessage() {
+		// plain object/text bodies do not need a MIME body part,
+		// it is only created when the message content requires it
+		MessageContainer newMsg = new SimpleMessageContainer();
 		setStdHeaders(newMsg);
 		
 		return newMsg;
@@ -61,7 +106,7 @@ public class MessageFactory {
      * @param headerProps
      * @return
      */
-    public synchronized ManagedMessage createMessage(Map headerProps) {
+    public ManagedMessage createMessage(Map headerProps) {
         MessageContainer newMsg = (MessageContainer) createMessage();
         setHeaders(newMsg, headerProps);
         return newMsg;
@@ -93,25 +138,25 @@ public class MessageFactory {
         }
     }
 
-    public synchronized Long createSequenceID() {
-		return new Long(seqIDCounter++);
+    public Long createSequenceID() {
+		return new Long(seqIDCounter.getAndIncrement());
 	}
     
-    public synchronized ManagedMessage createCorrelatedMessage(String correlationID) {
+    public ManagedMessage createCorrelatedMessage(String correlationID) {
         MessageContainer newMsg = (MessageContainer) createMessage();
         newMsg.setHeader(ManagedMessage.SystemHeader.HEADER_CORRELATION_ID,correlationID);
         
         return newMsg;
     }
 
-    public synchronized ManagedMessage createCorrelatedMessage(String correlationID, Map headerProps) {
+    public ManagedMessage createCorrelatedMessage(String correlationID, Map headerProps) {
         MessageContainer newMsg = (MessageContainer) createMessage(headerProps);
         newMsg.setHeader(ManagedMessage.SystemHeader.HEADER_CORRELATION_ID,correlationID);
         
         return newMsg;
     }
 
-	public synchronized ManagedMessage createMessageInSequence(Long seqID, Long seqPos, boolean isSeqEnd) {
+	public ManagedMessage createMessageInSequence(Long seqID, Long seqPos, boolean isSeqEnd) {
 		MessageContainer newMsg = (MessageContainer) createMessage();
 		newMsg.setSequenceID(seqID);
 		newMsg.setSequencePosition(seqPos);
@@ -133,7 +178,7 @@ public class MessageFactory {
 	 * @param headerProps
 	 * @return
 	 */
-	public synchronized ManagedMessage createMessageInSequence(Long seqID, Long seqPos, boolean isSeqEnd, Map headerProps) {
+	public ManagedMessage createMessageInSequence(Long seqID, Long seqPos, boolean isSeqEnd, Map headerProps) {
 		MessageContainer newMsg = (MessageContainer) createMessage(headerProps);
 		newMsg.setSequenceID(seqID);
 		newMsg.setSequencePosition(seqPos);
@@ -142,27 +187,27 @@ public class MessageFactory {
 		return newMsg;
 	}
 	
-	public synchronized ManagedMessage createErrorMessage(PasserelleException e) {
+	public ManagedMessage createErrorMessage(PasserelleException e) {
 		return new ErrorMessageContainer(e);
 	}
-	public synchronized ManagedMessage createErrorMessage(PasserelleException e, Map headerProps) {
+	public ManagedMessage createErrorMessage(PasserelleException e, Map headerProps) {
 		ErrorMessageContainer newMsg = (ErrorMessageContainer) createErrorMessage(e);
 		setHeaders(newMsg, headerProps);
 		
 		return newMsg;
 	}
 	
-	public synchronized ManagedMessage createTriggerMessage() {
+	public ManagedMessage createTriggerMessage() {
 		return new TriggerMessageContainer();
 	}
 	
-	public synchronized ManagedMessage createTriggerMessage(Map headerProps) {
+	public ManagedMessage createTriggerMessage(Map headerProps) {
 		TriggerMessageContainer newMsg = (TriggerMessageContainer) createTriggerMessage();
 		setHeaders(newMsg,headerProps);
 		return newMsg;
 	}
 	
-	public synchronized ManagedMessage copyMessage(ManagedMessage msg) throws MessageException {
+	public ManagedMessage copyMessage(ManagedMessage msg) throws MessageException {
 		if(msg !=null && msg instanceof MessageContainer) {
 			MessageContainer newMsg = ((MessageContainer)msg).copy();
 			return newMsg;
@@ -171,7 +216,7 @@ public class MessageFactory {
 		}
 	}
 
-	public synchronized ManagedMessage createMessageCopyInSequence(ManagedMessage msg, Long seqID, Long seqPos, boolean isSeqEnd) throws MessageException {
+	public ManagedMessage createMessageCopyInSequence(ManagedMessage msg, Long seqID, Long seqPos, boolean isSeqEnd) throws MessageException {
 		MessageContainer newMsg = (MessageContainer) copyMessage(msg);
 		setStdHeaders(newMsg);
 		newMsg.addCauseID(msg.getID());
@@ -182,9 +227,10 @@ public class MessageFactory {
 		return newMsg;
 	}
     private void setStdHeaders(MessageContainer newMsg) {
-        newMsg.setHeader(ManagedMessage.SystemHeader.HEADER_ID, Long.toString(msgIdCounter++));
-        newMsg.setHeader(ManagedMessage.SystemHeader.HEADER_VERSION, "1");
-        newMsg.setHeader(ManagedMessage.SystemHeader.HEADER_TIMESTAMP_CREATION, timestampFormat.format(new Date()));
+        newMsg.setID(Long.valueOf(msgIdCounter.getAndIncrement()));
+        newMsg.setVersion(Long.valueOf(1));
+        // the timestamp is only formatted when someone reads the header
+        newMsg.setCreationTime(System.currentTimeMillis());
     }
     
 
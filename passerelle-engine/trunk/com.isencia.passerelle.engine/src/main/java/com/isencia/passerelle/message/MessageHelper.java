@@ -36,7 +36,7 @@ import org.slf4j.LoggerFactory;
 import com.isencia.passerelle.core.PasserelleException;
 import com.isencia.passerelle.core.PasserelleToken;
 import com.isencia.passerelle.core.PortHandler;
-import com.isencia.passerelle.message.internal.MessageContainer;
+import com.isencia.passerelle.message.internal.SimpleMessageContainer;
 import com.isencia.passerelle.message.internal.SettableMessage;
 
 import ptolemy.actor.IOPort;
@@ -420,7 +420,7 @@ public class MessageHelper {
 				// res = MessageBuilder.buildFromXML(tokenMessage);
 				
 				// so now, just build a MessageContainer with the message as body
-				res = new MessageContainer();
+				res = new SimpleMessageContainer();
 				res.setBodyContentPlainText(tokenMessage);
 			}
 
@@ -21,7 +21,6 @@ import org.slf4j.LoggerFactory;
 import com.isencia.passerelle.core.PasserelleException;
 import com.isencia.passerelle.message.ManagedMessage;
 import com.isencia.passerelle.message.MessageException;
-import com.isencia.util.MapOfLists;
 
 /**
  * ErrorMessageContainer
@@ -72,7 +71,7 @@ public class ErrorMessageContainer extends MessageContainer {
     
     public MessageContainer copy() throws MessageException {
         ErrorMessageContainer res = new ErrorMessageContainer((PasserelleException)getBodyContent());
-        res.headers = ((MapOfLists)this.headers).copy();
+        copyHeadersTo(res);
         return res;
     }
 
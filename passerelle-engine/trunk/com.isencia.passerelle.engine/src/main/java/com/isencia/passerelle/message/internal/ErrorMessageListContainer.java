@@ -24,7 +24,6 @@ import org.slf4j.LoggerFactory;
 
 import com.isencia.passerelle.message.ManagedMessage;
 import com.isencia.passerelle.message.MessageException;
-import com.isencia.util.MapOfLists;
 
 /**
  * ErrorMessageListContainer
@@ -72,7 +71,7 @@ public class ErrorMessageListContainer extends MessageContainer {
             ErrorMessageContainer msg = (ErrorMessageContainer) iter.next();
             res.addErrorMessage((ErrorMessageContainer)msg.copy());
         }
-        res.headers = ((MapOfLists)this.headers).copy();
+        copyHeadersTo(res);
         return res;
     }
 
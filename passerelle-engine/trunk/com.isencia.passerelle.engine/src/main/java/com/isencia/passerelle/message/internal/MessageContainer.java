@@ -17,12 +17,15 @@ package com.isencia.passerelle.message.internal;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.mail.Header;
 import javax.mail.MessagingException;
@@ -94,11 +97,46 @@ public class MessageContainer implements ManagedMessage, SettableMessage {
 	
     private static Logger logger = LoggerFactory.getLogger(MessageContainer.class);
 
+    // names of the system headers that are maintained in typed fields i.o. in the headers map.
+    // They are only rendered as strings when they are read as headers, e.g. for XML export.
+    private final static Set TYPED_HEADER_NAMES = new HashSet(Arrays.asList(new String[] {
+    		SystemHeader.HEADER_ID,
+    		SystemHeader.HEADER_VERSION,
+    		SystemHeader.HEADER_SEQ_ID,
+    		SystemHeader.HEADER_SEQ_POS,
+    		SystemHeader.HEADER_SEQ_END,
+    		SystemHeader.HEADER_CAUSES_IDS,
+    		SystemHeader.HEADER_CORRELATION_ID}));
+    
     // collection of headers  (i.e. name/value pairs)
     protected Map headers = null;
+    // set when the headers map is shared with copies of this message, 
+    // and must be copied before it can be modified
+    private boolean headersShared = false;
+
+    // typed system header values, or null if the header is not set
+    private Long id = null;
+    private Long version = null;
+    private Long sequenceID = null;
+    private Long sequencePosition = null;
+    private Boolean sequenceEnd = null;
+    private Long correlationID = null;
+    // list of Long, or null if there are no causes
+    private List causeIDs = null;
+    // list of javax.mail.Header for TYPED_HEADER_NAMES values that are not valid for the header's type,
+    // or that are extra values for single-valued headers, or null if there are none
+    private List untypedHeaders = null;
 
     // the data content
     private PasserelleBodyPart body = null;
+    // set when the body is shared with copies of this message, 
+    // and must be copied before it can be modified
+    private boolean bodyShared = false;
+    
+    // creation time that has not yet been rendered as a HEADER_TIMESTAMP_CREATION header,
+    // or -1 if the timestamp is only available in the headers map
+    private long creationTime = -1;
+    private volatile String formattedCreationTime;
 
     //~ Constructors ...........................................................................................................................................
 
@@ -115,28 +153,106 @@ public class MessageContainer implements ManagedMessage, SettableMessage {
 		}
 		
 	}
+
+	/**
+	 * Constructor for subclasses that manage their body content themselves.
+	 * 
+	 * @param body the initial body, may be null
+	 */
+	protected MessageContainer(PasserelleBodyPart body) {
+		headers = new MapOfLists();
+		this.body = body;
+	}
     //~ Methods ................................................................................................................................................
 
     /**
      * Returns a copy of this message container.
-     * Header collections and body are copied in a shallow way.
-     * I.e. all header collections are copies, their entries are reused.
+     * The copy shares the headers map and the body with this container,
+     * until one of them modifies it. The typed system headers (ID, version, sequence info, causes...)
+     * are copied right away.
      * Since javax.mail.Header is immutable, this is sufficient.
      * 
      * @return MessageContainer
      */
     public MessageContainer copy() throws MessageException {
-    	MessageContainer res = new MessageContainer();
-    	res.headers = ((MapOfLists)this.headers).copy();
-    	res.setBodyContent(getBodyContent(), getBodyContentType());
-    	Iterator bodyHdrItr = getAllBodyHeaders().iterator();
-    	while(bodyHdrItr.hasNext()) {
-    		Header aHeader = (Header) bodyHdrItr.next();
-    		res.setBodyHeader(aHeader.getName(), aHeader.getValue());
-    	}
+    	MessageContainer res = new MessageContainer((PasserelleBodyPart)null);
+    	copyHeadersTo(res);
+    	shareBodyWith(res);
     	return res;
     }
     
+    /**
+     * Copies the message headers to the given container, 
+     * replacing its current headers.
+     * The headers map is shared until one of both containers modifies it.
+     * 
+     * @param target
+     */
+    protected void copyHeadersTo(MessageContainer target) {
+    	target.headers = this.headers;
+    	target.headersShared = true;
+    	this.headersShared = true;
+    	target.id = this.id;
+    	target.version = this.version;
+    	target.sequenceID = this.sequenceID;
+    	target.sequencePosition = this.sequencePosition;
+    	target.sequenceEnd = this.sequenceEnd;
+    	target.correlationID = this.correlationID;
+    	target.causeIDs = (this.causeIDs != null) ? new ArrayList(this.causeIDs) : null;
+    	target.untypedHeaders = (this.untypedHeaders != null) ? new ArrayList(this.untypedHeaders) : null;
+    	target.creationTime = this.creationTime;
+    	target.formattedCreationTime = this.formattedCreationTime;
+    }
+    
+    /**
+     * Lets the given container use the body of this container.
+     * The body is shared until one of both containers modifies it.
+     * 
+     * @param target
+     */
+    protected void shareBodyWith(MessageContainer target) {
+    	target.body = this.body;
+    	target.bodyShared = true;
+    	this.bodyShared = true;
+    }
+    
+    /**
+     * Ensures that the headers map is not shared with another message copy,
+     * before it gets modified.
+     */
+    private void ensureOwnHeaders() {
+    	if (headersShared) {
+    		headers = ((MapOfLists)headers).copy();
+    		headersShared = false;
+    	}
+    }
+    
+    /**
+     * Ensures that the body is not shared with another message copy,
+     * before it gets modified.
+     * 
+     * @throws MessagingException
+     */
+    private void ensureOwnBody() throws MessagingException {
+    	if (bodyShared) {
+    		if (body != null) {
+	    		PasserelleBodyPart newBody = new PasserelleBodyPart();
+	    		try {
+	    			newBody.setContent(body.getContent(), body.getContentType());
+	    		} catch (IOException e) {
+	    			throw new MessagingException("Error copying body content", e);
+	    		}
+	    		Enumeration hdrEnum = body.getAllHeaders();
+	    		while (hdrEnum != null && hdrEnum.hasMoreElements()) {
+	    			Header aHeader = (Header) hdrEnum.nextElement();
+	    			newBody.setHeader(aHeader.getName(), aHeader.getValue());
+	    		}
+	    		body = newBody;
+    		}
+    		bodyShared = false;
+    	}
+    }
+    
     public List getAllBodyHeaders()
                                  throws MessageException {
 		try {
@@ -154,20 +270,59 @@ public class MessageContainer implements ManagedMessage, SettableMessage {
     }
 
      public Collection getAllHeaders() {
-        return headers.values();
+        if (creationTime < 0 && !hasTypedHeaders()) {
+            return headers.values();
+        } else {
+            // render the typed and timestamp headers, without modifying the message
+            Collection res = new ArrayList();
+            collectTypedHeaders(null, res);
+            res.addAll(headers.values());
+            if (creationTime >= 0) {
+                res.add(new Header(SystemHeader.HEADER_TIMESTAMP_CREATION, getFormattedCreationTime()));
+            }
+            return res;
+        }
+    }
+
+    /**
+     * Sets the creation time of the message. 
+     * The HEADER_TIMESTAMP_CREATION header is only formatted when it is read.
+     * 
+     * @param timeMillis
+     */
+    public void setCreationTime(long timeMillis) {
+        removeHeader(SystemHeader.HEADER_TIMESTAMP_CREATION);
+        this.creationTime = timeMillis;
+    }
+
+    private String getFormattedCreationTime() {
+        String res = formattedCreationTime;
+        if (res == null) {
+            res = MessageFactory.formatTimestamp(creationTime);
+            formattedCreationTime = res;
+        }
+        return res;
     }
 
     public void setBody(PasserelleBodyPart body) {
         this.body = body;
+        this.bodyShared = false;
     }
 
     public PasserelleBodyPart getBody() {
+        // the caller may modify the body part
+        try {
+            ensureOwnBody();
+        } catch (MessagingException e) {
+            logger.error("",e);
+        }
         return body;
     }
 
     public void setBodyContent(Multipart part)
                         throws MessageException {
     	try {
+    		ensureOwnBody();
 	        body.setContent(part);
 		} catch (MessagingException e) {
 			throw new MessageException(PasserelleException.Severity.NON_FATAL,"",this,e);
@@ -177,6 +332,7 @@ public class MessageContainer implements ManagedMessage, SettableMessage {
     public void setBodyContentPlainText(String content)
                         throws MessageException {
     	try {
+    		ensureOwnBody();
 	        body.setContent(content, "text/plain");
 		} catch (MessagingException e) {
 			throw new MessageException(PasserelleException.Severity.NON_FATAL,"",this,e);
@@ -186,6 +342,7 @@ public class MessageContainer implements ManagedMessage, SettableMessage {
    public void setBodyContent(Object content, String contentType)
                         throws MessageException {
     	try {
+    		ensureOwnBody();
 	        body.setContent(content, contentType);
 		} catch (MessagingException e) {
 			throw new MessageException(PasserelleException.Severity.NON_FATAL,"",this,e);
@@ -238,6 +395,7 @@ public class MessageContainer implements ManagedMessage, SettableMessage {
     public void setBodyHeader(String name, String value)
                        throws MessageException {
         try {
+        	ensureOwnBody();
 			body.setHeader(name, value);
 		} catch (MessagingException e) {
 			throw new MessageException(PasserelleException.Severity.NON_FATAL,"",this,e);
@@ -254,6 +412,15 @@ public class MessageContainer implements ManagedMessage, SettableMessage {
     }
 
     public void setHeader(String name, String value) {
+        if (SystemHeader.HEADER_TIMESTAMP_CREATION.equals(name)) {
+            clearCreationTime();
+        }
+        if (TYPED_HEADER_NAMES.contains(name)) {
+            removeTypedHeader(name);
+            addTypedHeader(name, value);
+            return;
+        }
+        ensureOwnHeaders();
         Collection hdrs = (Collection)headers.remove(name);
 
         if (hdrs != null)
@@ -263,8 +430,17 @@ public class MessageContainer implements ManagedMessage, SettableMessage {
     }
 
     public String[] getHeader(String name) {
+        if (creationTime >= 0 && SystemHeader.HEADER_TIMESTAMP_CREATION.equals(name)) {
+            return new String[] { getFormattedCreationTime() };
+        }
         ArrayList values = new ArrayList();
-        Collection c = (Collection)headers.get(name);
+        Collection c = null;
+        if (TYPED_HEADER_NAMES.contains(name)) {
+            c = new ArrayList(1);
+            collectTypedHeaders(name, c);
+        } else {
+            c = (Collection)headers.get(name);
+        }
 
         if (c == null || c.size() == 0)
             return null;
@@ -282,6 +458,7 @@ public class MessageContainer implements ManagedMessage, SettableMessage {
     public void addBodyHeader(String name, String value)
                        throws MessageException {
         try {
+        	ensureOwnBody();
 			body.addHeader(name, value);
 		} catch (MessagingException e) {
 			throw new MessageException(PasserelleException.Severity.NON_FATAL,"",this,e);
@@ -289,6 +466,17 @@ public class MessageContainer implements ManagedMessage, SettableMessage {
     }
 
     public void addHeader(String name, String value) {
+        if (creationTime >= 0 && SystemHeader.HEADER_TIMESTAMP_CREATION.equals(name)) {
+            // render the pending timestamp first, to keep the header values complete
+            ensureOwnHeaders();
+            headers.put(name, new Header(name, getFormattedCreationTime()));
+            clearCreationTime();
+        }
+        if (TYPED_HEADER_NAMES.contains(name)) {
+            addTypedHeader(name, value);
+            return;
+        }
+        ensureOwnHeaders();
         headers.put(name, new Header(name, value));
     }
 
@@ -304,11 +492,18 @@ public class MessageContainer implements ManagedMessage, SettableMessage {
     }
 
     public boolean hasHeader(String name) {
+        if (creationTime >= 0 && SystemHeader.HEADER_TIMESTAMP_CREATION.equals(name)) {
+            return true;
+        }
+        if (TYPED_HEADER_NAMES.contains(name)) {
+            return hasTypedHeader(name);
+        }
         return headers.containsKey(name);
     }
 
     public void removeBodyHeader(String name) throws MessageException {
     	try {
+    		ensureOwnBody();
 			body.removeHeader(name);
 		} catch (MessagingException e) {
 			throw new MessageException(PasserelleException.Severity.NON_FATAL,"Error removing body header "+name, this, e);
@@ -316,6 +511,17 @@ public class MessageContainer implements ManagedMessage, SettableMessage {
     }
     
     public void removeHeader(String name) {
+        if (SystemHeader.HEADER_TIMESTAMP_CREATION.equals(name)) {
+            clearCreationTime();
+        }
+        if (TYPED_HEADER_NAMES.contains(name)) {
+            removeTypedHeader(name);
+            return;
+        }
+        if (!headers.containsKey(name)) {
+            return;
+        }
+        ensureOwnHeaders();
         Collection hdrs = (Collection)headers.remove(name);
 
         if (hdrs != null)
@@ -328,7 +534,8 @@ public class MessageContainer implements ManagedMessage, SettableMessage {
 	 */    
     public void saveChanges() throws MessageException {
     	try {
-			getBody().saveChanges();
+    		ensureOwnBody();
+			body.saveChanges();
 		} catch (MessagingException e) {
 			throw new MessageException(PasserelleException.Severity.NON_FATAL,"",this,e);
 		}
@@ -348,7 +555,11 @@ public class MessageContainer implements ManagedMessage, SettableMessage {
     }
     
 	public Long getID() {
-		return getSingleHeaderLongValue(SystemHeader.HEADER_ID);
+		return checkTypedValue(SystemHeader.HEADER_ID, id);
+	}
+	public void setID(Long id) {
+		removeTypedHeader(SystemHeader.HEADER_ID);
+		this.id = id;
 	}
 	public String getSourceRef() {
 		return getSingleHeaderStringValue(SystemHeader.HEADER_SOURCE_REF);
@@ -357,10 +568,17 @@ public class MessageContainer implements ManagedMessage, SettableMessage {
 		return getMultiHeaderStringValue(SystemHeader.HEADER_SOURCE_INFO);
 	}
 	public Date getCreationTimeStamp() {
+		if (creationTime >= 0) {
+			return new Date(creationTime);
+		}
 		return getSingleHeaderDateValue(SystemHeader.HEADER_TIMESTAMP_CREATION);
 	}
 	public Long getVersion() {
-		return getSingleHeaderLongValue(SystemHeader.HEADER_VERSION);
+		return checkTypedValue(SystemHeader.HEADER_VERSION, version);
+	}
+	public void setVersion(Long version) {
+		removeTypedHeader(SystemHeader.HEADER_VERSION);
+		this.version = version;
 	}
 	public AuditTrailEntry[] getAuditTrail() {
 		// TODO Auto-generated method stub
@@ -370,82 +588,205 @@ public class MessageContainer implements ManagedMessage, SettableMessage {
 		return (getCorrelationID()!=null);
 	}
 	public Long getCorrelationID() {
-		return getSingleHeaderLongValue(SystemHeader.HEADER_CORRELATION_ID);
+		return checkTypedValue(SystemHeader.HEADER_CORRELATION_ID, correlationID);
 	}
 	public boolean isPartOfSequence() {
 		return (getSequenceID()!=null);
 	}
 	public Long getSequenceID() {
-		return getSingleHeaderLongValue(SystemHeader.HEADER_SEQ_ID);
+		return checkTypedValue(SystemHeader.HEADER_SEQ_ID, sequenceID);
 	}
 	public void setSequenceID(Long seqID) {
-		setHeader(SystemHeader.HEADER_SEQ_ID, seqID.toString());
+		removeTypedHeader(SystemHeader.HEADER_SEQ_ID);
+		this.sequenceID = seqID;
 	}
 	public Long getSequencePosition() {
-		return getSingleHeaderLongValue(SystemHeader.HEADER_SEQ_POS);
+		return checkTypedValue(SystemHeader.HEADER_SEQ_POS, sequencePosition);
 	}
 	public void setSequencePosition(Long seqPos) {
-		setHeader(SystemHeader.HEADER_SEQ_POS, seqPos.toString());
+		removeTypedHeader(SystemHeader.HEADER_SEQ_POS);
+		this.sequencePosition = seqPos;
 	}
 	public boolean isSequenceEnd() {
-		return getSingleHeaderBooleanValue(SystemHeader.HEADER_SEQ_END).booleanValue();
+		Boolean seqEnd = sequenceEnd;
+		return seqEnd != null && seqEnd.booleanValue();
 	}
 	public void setSequenceEnd(boolean seqEnd) {
-		setHeader(SystemHeader.HEADER_SEQ_END,Boolean.toString(seqEnd));
+		removeTypedHeader(SystemHeader.HEADER_SEQ_END);
+		this.sequenceEnd = Boolean.valueOf(seqEnd);
 	}
 	public boolean hasCauses() {
-		return (getCauseIDs()!=null && getCauseIDs().length>0);
+		List causes = causeIDs;
+		return (causes!=null && !causes.isEmpty());
 	}
 	public Long[] getCauseIDs() {
-		return getMultiHeaderLongValue(SystemHeader.HEADER_CAUSES_IDS);
+		List causes = causeIDs;
+		return (causes!=null) ? (Long[]) causes.toArray(new Long[causes.size()]) : null;
 	}
 	public void addCauseID(Long causeID) {
-		if(causeID!=null)
-			addHeader(SystemHeader.HEADER_CAUSES_IDS,causeID.toString());
+		if(causeID!=null) {
+			if (causeIDs == null)
+				causeIDs = new ArrayList(2);
+			causeIDs.add(causeID);
+		}
 	}
 
-	// PRIVATE METHODS TO READ TYPED VALUES FROM HEADERS ========================================
-	private Boolean getSingleHeaderBooleanValue(String headerName) {
-		Boolean res = Boolean.FALSE;
-		String[] headerValues = getHeader(headerName);
-		if(headerValues!=null && headerValues.length>0) {
-			// just take the first one
-			try {
-				res = new Boolean(headerValues[0]);
-			} catch (NumberFormatException e) {
-				logger.warn("Header "+headerName+" contains illegal value "+headerValues[0]);
+	// METHODS FOR THE TYPED SYSTEM HEADERS ========================================
+
+	/**
+	 * Stores the header value in its typed field, 
+	 * or as an untyped header if the value is not valid for the header's type
+	 * or if the header can only have one value and it is already set.
+	 */
+	private void addTypedHeader(String name, String value) {
+		if (SystemHeader.HEADER_CAUSES_IDS.equals(name)) {
+			Long causeID = parseLong(value);
+			if (causeID != null) {
+				addCauseID(causeID);
+				return;
+			}
+		} else if (SystemHeader.HEADER_SEQ_END.equals(name)) {
+			if (sequenceEnd == null && ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value))) {
+				sequenceEnd = Boolean.valueOf(value);
+				return;
+			}
+		} else if (getTypedLongValue(name) == null) {
+			Long longValue = parseLong(value);
+			if (longValue != null) {
+				setTypedLongValue(name, longValue);
+				return;
 			}
 		}
-		return res;
+		if (untypedHeaders == null)
+			untypedHeaders = new ArrayList(2);
+		untypedHeaders.add(new Header(name, value));
 	}
-	private Long getSingleHeaderLongValue(String headerName) {
-		Long res = null;
-		String[] headerValues = getHeader(headerName);
-		if(headerValues!=null && headerValues.length>0) {
-			// just take the first one
-			try {
-				res = new Long(headerValues[0]);
-			} catch (NumberFormatException e) {
-				logger.warn("Header "+headerName+" contains illegal value "+headerValues[0]);
+
+	private void removeTypedHeader(String name) {
+		if (SystemHeader.HEADER_CAUSES_IDS.equals(name)) {
+			causeIDs = null;
+		} else if (SystemHeader.HEADER_SEQ_END.equals(name)) {
+			sequenceEnd = null;
+		} else {
+			setTypedLongValue(name, null);
+		}
+		if (untypedHeaders != null) {
+			Iterator hdrItr = untypedHeaders.iterator();
+			while (hdrItr.hasNext()) {
+				if (((Header) hdrItr.next()).getName().equals(name))
+					hdrItr.remove();
 			}
+			if (untypedHeaders.isEmpty())
+				untypedHeaders = null;
 		}
-		return res;
 	}
-	private Long[] getMultiHeaderLongValue(String headerName) {
-		Long[] res = null;
-		String[] headerValues = getHeader(headerName);
-		if(headerValues!=null && headerValues.length>0) {
-			for(int i=0;i<headerValues.length;++i) {
-				res = new Long[headerValues.length];
-				try {
-					res[i] = new Long(headerValues[i]);
-				} catch (NumberFormatException e) {
-					logger.warn("Header "+headerName+" contains illegal value "+headerValues[i]);
+
+	private boolean hasTypedHeaders() {
+		return id != null || version != null || sequenceID != null || sequencePosition != null
+				|| sequenceEnd != null || correlationID != null || causeIDs != null || untypedHeaders != null;
+	}
+
+	private boolean hasTypedHeader(String name) {
+		List res = new ArrayList(1);
+		collectTypedHeaders(name, res);
+		return !res.isEmpty();
+	}
+
+	/**
+	 * Renders the typed system headers as javax.mail.Headers.
+	 * 
+	 * @param name the header name, or null for all typed system headers
+	 * @param res the collection to which the headers are added
+	 */
+	private void collectTypedHeaders(String name, Collection res) {
+		collectLongHeader(name, SystemHeader.HEADER_ID, id, res);
+		collectLongHeader(name, SystemHeader.HEADER_VERSION, version, res);
+		collectLongHeader(name, SystemHeader.HEADER_CORRELATION_ID, correlationID, res);
+		collectLongHeader(name, SystemHeader.HEADER_SEQ_ID, sequenceID, res);
+		collectLongHeader(name, SystemHeader.HEADER_SEQ_POS, sequencePosition, res);
+		if (sequenceEnd != null && (name == null || SystemHeader.HEADER_SEQ_END.equals(name))) {
+			res.add(new Header(SystemHeader.HEADER_SEQ_END, sequenceEnd.toString()));
+		}
+		if (causeIDs != null && (name == null || SystemHeader.HEADER_CAUSES_IDS.equals(name))) {
+			for (int i = 0; i < causeIDs.size(); ++i) {
+				res.add(new Header(SystemHeader.HEADER_CAUSES_IDS, causeIDs.get(i).toString()));
+			}
+		}
+		if (untypedHeaders != null) {
+			for (int i = 0; i < untypedHeaders.size(); ++i) {
+				Header aHeader = (Header) untypedHeaders.get(i);
+				if (name == null || aHeader.getName().equals(name)) {
+					res.add(aHeader);
 				}
 			}
 		}
-		return res;
 	}
+
+	private void collectLongHeader(String name, String headerName, Long value, Collection res) {
+		if (value != null && (name == null || headerName.equals(name))) {
+			res.add(new Header(headerName, value.toString()));
+		}
+	}
+
+	private Long getTypedLongValue(String name) {
+		if (SystemHeader.HEADER_ID.equals(name))
+			return id;
+		else if (SystemHeader.HEADER_VERSION.equals(name))
+			return version;
+		else if (SystemHeader.HEADER_SEQ_ID.equals(name))
+			return sequenceID;
+		else if (SystemHeader.HEADER_SEQ_POS.equals(name))
+			return sequencePosition;
+		else if (SystemHeader.HEADER_CORRELATION_ID.equals(name))
+			return correlationID;
+		else
+			return null;
+	}
+
+	private void setTypedLongValue(String name, Long value) {
+		if (SystemHeader.HEADER_ID.equals(name))
+			id = value;
+		else if (SystemHeader.HEADER_VERSION.equals(name))
+			version = value;
+		else if (SystemHeader.HEADER_SEQ_ID.equals(name))
+			sequenceID = value;
+		else if (SystemHeader.HEADER_SEQ_POS.equals(name))
+			sequencePosition = value;
+		else if (SystemHeader.HEADER_CORRELATION_ID.equals(name))
+			correlationID = value;
+	}
+
+	/**
+	 * Logs a warning when a typed header is requested, 
+	 * but its value could not be stored as such.
+	 */
+	private Long checkTypedValue(String name, Long value) {
+		if (value == null && untypedHeaders != null) {
+			for (int i = 0; i < untypedHeaders.size(); ++i) {
+				Header aHeader = (Header) untypedHeaders.get(i);
+				if (aHeader.getName().equals(name)) {
+					logger.warn("Header "+name+" contains illegal value "+aHeader.getValue());
+					break;
+				}
+			}
+		}
+		return value;
+	}
+
+	private static Long parseLong(String value) {
+		try {
+			return (value != null) ? Long.valueOf(value.trim()) : null;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private void clearCreationTime() {
+		creationTime = -1;
+		formattedCreationTime = null;
+	}
+
+	// PRIVATE METHODS TO READ TYPED VALUES FROM HEADERS ========================================
 	private String getSingleHeaderStringValue(String headerName) {
 		String res = null;
 		String[] headerValues = getHeader(headerName);
@@ -472,7 +813,7 @@ public class MessageContainer implements ManagedMessage, SettableMessage {
 			String dateHeader = headerValues[0];
 			try {
 				// use the std date format to parse the timestamp
-				res = MessageFactory.timestampFormat.parse(dateHeader);
+				res = MessageFactory.parseTimestamp(dateHeader);
 			} catch (ParseException e) {
 				logger.warn("Header "+headerName+" contains illegal value "+headerValues[0]);
 			}
@@ -0,0 +1,208 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.message.internal;
+
+import java.util.List;
+
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.internet.MimeBodyPart;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.isencia.passerelle.message.MessageException;
+
+/**
+ * A MessageContainer for the common case of messages with a plain object or text body.
+ *
+ * The body content and its content type are kept as plain references,
+ * so messages that are just passed between actors never pay for the
+ * javax.mail MIME body handling.
+ *
+ * Only when an operation really needs the MIME structure (multipart content, body headers,
+ * XML or mail conversions via getBody()...), the content is moved into a PasserelleBodyPart.
+ * From then on, the message behaves exactly like a plain MessageContainer.
+ *
+ * @author erwin dl
+ */
+public class SimpleMessageContainer extends MessageContainer {
+	//~ Instance/static variables ..............................................................................................................................
+
+	private static Logger logger = LoggerFactory.getLogger(SimpleMessageContainer.class);
+
+	private final static String DEFAULT_CONTENT_TYPE = "text/plain";
+
+	// the body content, as long as no MIME body part is needed
+	private Object content = "";
+	private String contentType = DEFAULT_CONTENT_TYPE;
+
+	// set once the body content has been moved into a PasserelleBodyPart
+	private volatile boolean mimeBody = false;
+
+	//~ Constructors ...........................................................................................................................................
+
+	public SimpleMessageContainer() {
+		super(null);
+	}
+
+	//~ Methods ................................................................................................................................................
+
+	/**
+	 * Returns a copy of this message container.
+	 * The copy shares the headers and the body content with this container,
+	 * until one of them modifies them.
+	 *
+	 * @return MessageContainer
+	 */
+	public MessageContainer copy() throws MessageException {
+		SimpleMessageContainer res = new SimpleMessageContainer();
+		copyHeadersTo(res);
+		if (!mimeBody) {
+			res.content = content;
+			res.contentType = contentType;
+		} else {
+			shareBodyWith(res);
+			res.mimeBody = true;
+		}
+		return res;
+	}
+
+	/**
+	 *
+	 * @return true if the body content is maintained in a PasserelleBodyPart
+	 */
+	public boolean isMimeBody() {
+		return mimeBody;
+	}
+
+	public PasserelleBodyPart getBody() {
+		ensureMimeBody();
+		return super.getBody();
+	}
+
+	public void setBody(PasserelleBodyPart body) {
+		synchronized (this) {
+			super.setBody(body);
+			clearContent();
+			mimeBody = true;
+		}
+	}
+
+	public void setBodyContent(Multipart part) throws MessageException {
+		ensureMimeBody();
+		super.setBodyContent(part);
+		clearContent();
+	}
+
+	public void setBodyContentPlainText(String content) throws MessageException {
+		setBodyContent(content, DEFAULT_CONTENT_TYPE);
+	}
+
+	public void setBodyContent(Object content, String contentType) throws MessageException {
+		if (!mimeBody && !(content instanceof Multipart)) {
+			this.content = content;
+			this.contentType = contentType;
+		} else {
+			ensureMimeBody();
+			super.setBodyContent(content, contentType);
+			clearContent();
+		}
+	}
+
+	public Object getBodyContent() throws MessageException {
+		if (!mimeBody) {
+			return content;
+		} else {
+			return super.getBodyContent();
+		}
+	}
+
+	public String getBodyContentType() throws MessageException {
+		if (!mimeBody) {
+			return contentType != null ? contentType : DEFAULT_CONTENT_TYPE;
+		} else {
+			return super.getBodyContentType();
+		}
+	}
+
+	public List getAllBodyHeaders() throws MessageException {
+		ensureMimeBody();
+		return super.getAllBodyHeaders();
+	}
+
+	public boolean hasBodyHeader(String name) throws MessageException {
+		ensureMimeBody();
+		return super.hasBodyHeader(name);
+	}
+
+	public String[] getBodyHeader(String name) throws MessageException {
+		ensureMimeBody();
+		return super.getBodyHeader(name);
+	}
+
+	public void addBodyHeader(String name, String value) throws MessageException {
+		ensureMimeBody();
+		super.addBodyHeader(name, value);
+	}
+
+	public void setBodyHeader(String name, String value) throws MessageException {
+		ensureMimeBody();
+		super.setBodyHeader(name, value);
+	}
+
+	public void removeBodyHeader(String name) throws MessageException {
+		ensureMimeBody();
+		super.removeBodyHeader(name);
+	}
+
+	public void saveChanges() throws MessageException {
+		// without a MIME body part, there are no body headers to update
+		if (mimeBody) {
+			super.saveChanges();
+		}
+	}
+
+	/**
+	 * Moves the body content in a PasserelleBodyPart, if this was not done yet.
+	 * Messages may be shared between actors, so this must be safe when
+	 * several readers need the MIME body at the same time.
+	 */
+	private void ensureMimeBody() {
+		if (!mimeBody) {
+			synchronized (this) {
+				if (!mimeBody) {
+					PasserelleBodyPart body = new PasserelleBodyPart();
+					try {
+						body.setContent(content, contentType);
+						body.setDisposition(MimeBodyPart.INLINE);
+					} catch (MessagingException e) {
+						// should never happen
+						logger.error("", e);
+					}
+					super.setBody(body);
+					// the plain content is only released when it gets replaced,
+					// as concurrent readers may still be reading it
+					mimeBody = true;
+				}
+			}
+		}
+	}
+
+	private void clearContent() {
+		content = null;
+		contentType = null;
+	}
+}
@@ -0,0 +1,128 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.message.internal.sequence;
+
+import java.util.BitSet;
+
+/**
+ * A set of sequence positions, that knows in O(1) up to where the positions are contiguous.
+ * <p>
+ * Only the positions after the contiguous prefix are kept in a bitset,
+ * so the memory use depends on how far the positions arrive out of order,
+ * not on the length of the sequence.
+ * The bitset is compacted lazily, when more than half of it lies below the prefix,
+ * so advancing the prefix does not copy the bitset each time.
+ * </p>
+ * 
+ * @author erwin dl
+ */
+final class PositionSet {
+
+	// all positions below it are in the set, and the position itself is not
+	private long prefix = 0;
+	// the position of bit 0 of the window, at most the prefix
+	private long windowStart = 0;
+	// bit i is set when position windowStart+i is in the set, i.e. all bits below the prefix are set
+	private BitSet window = new BitSet();
+
+	/**
+	 * @param position
+	 * @throws IllegalArgumentException if the position is negative, or more than Integer.MAX_VALUE after the prefix
+	 */
+	void add(long position) {
+		if (position < 0) {
+			throw new IllegalArgumentException("Position " + position + " out of range");
+		}
+		if (position < prefix) {
+			return;
+		}
+		window.set(getOffset(position));
+		if (position == prefix) {
+			prefix = windowStart + window.nextClearBit(getOffset(prefix));
+			compact();
+		}
+	}
+
+	void remove(long position) {
+		if (position < 0) {
+			return;
+		}
+		if (position < windowStart) {
+			// the window must start at the removed position
+			if (windowStart - position + window.length() > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Position " + position + " out of range");
+			}
+			int shift = (int) (windowStart - position);
+			BitSet newWindow = new BitSet();
+			newWindow.set(0, shift);
+			for (int i = window.nextSetBit(0); i >= 0; i = window.nextSetBit(i + 1)) {
+				newWindow.set(shift + i);
+			}
+			windowStart = position;
+			window = newWindow;
+		}
+		window.clear(getOffset(position));
+		if (position < prefix) {
+			// the prefix shrinks to the removed position
+			prefix = position;
+		}
+	}
+
+	boolean contains(long position) {
+		return position >= 0 && (position < prefix || (position - windowStart <= Integer.MAX_VALUE && window.get((int) (position - windowStart))));
+	}
+
+	/**
+	 * @return the nr of contiguous positions from 0 onwards
+	 */
+	long getPrefix() {
+		return prefix;
+	}
+
+	/**
+	 * @return the first position kept in the bitset
+	 */
+	long getWindowStart() {
+		return windowStart;
+	}
+
+	void clear() {
+		prefix = 0;
+		windowStart = 0;
+		window = new BitSet();
+	}
+
+	/**
+	 * Drops the bits below the prefix, once they are more than half of the window.
+	 */
+	private void compact() {
+		int offset = getOffset(prefix);
+		int length = window.length();
+		if (offset >= length) {
+			window.clear();
+			windowStart = prefix;
+		} else if (offset > length / 2) {
+			window = window.get(offset, length);
+			windowStart = prefix;
+		}
+	}
+
+	private int getOffset(long position) {
+		if (position < 0 || position - windowStart > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Position " + position + " out of range");
+		}
+		return (int) (position - windowStart);
+	}
+}
@@ -0,0 +1,242 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.message.internal.sequence;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Collects the elements of a sequence, e.g. the body contents of its messages,
+ * together with the message IDs, in the order of the sequence positions.
+ * <p>
+ * Aggregating actors can append each element as its message arrives,
+ * instead of keeping the complete messages until the sequence is complete.
+ * Completeness is determined as by a SequenceTrace : no holes in the positions,
+ * and the message at the highest position is the sequence end.
+ * </p>
+ * <p>
+ * The elements are kept in arrays indexed by position, as long as these are at most about
+ * twice as large as the nr of elements. Elements at positions far beyond the others
+ * are kept in a map, so a single high position does not allocate arrays up to that position.
+ * </p>
+ * 
+ * @author erwin dl
+ */
+public class SequenceAccumulator implements SequenceRegistry.SizedEntry {
+
+	// rough sizes in bytes, for a 64-bit JVM
+	private final static int REFERENCE_SIZE = 8;
+	private final static int OBJECT_SIZE = 16;
+	// a map entry, the Integer key and the SparseElement
+	private final static int SPARSE_ENTRY_SIZE = 3 * OBJECT_SIZE + 4 * REFERENCE_SIZE + 8;
+
+	private final Long sequenceID;
+	private Object[] elements = new Object[16];
+	private long[] messageIDs = new long[16];
+	// the elements at positions beyond the arrays, by position
+	private Map<Integer, SparseElement> sparseElements = null;
+	private final PositionSet positions = new PositionSet();
+	private int positionCount = 0;
+	private long maxPosition = -1;
+	// the highest position, if its msg is the sequence end
+	private long endPosition = -1;
+	private long estimatedElementsSize = 0;
+
+	/**
+	 * 
+	 * @param sequenceID null for an accumulator that is not linked to a sequence
+	 */
+	public SequenceAccumulator(Long sequenceID) {
+		this.sequenceID = sequenceID;
+	}
+
+	public Long getSequenceID() {
+		return sequenceID;
+	}
+
+	/**
+	 * Adds the element of the message at the given position.
+	 * An element that was already present for the position is replaced.
+	 * 
+	 * @param position
+	 * @param sequenceEnd true if the message is the last one of the sequence
+	 * @param messageID
+	 * @param element
+	 * @throws IllegalArgumentException if the position is negative or too large
+	 */
+	public synchronized void add(long position, boolean sequenceEnd, Long messageID, Object element) {
+		if (position < 0 || position >= Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Position " + position + " out of range");
+		}
+		int index = (int) position;
+		long id = messageID != null ? messageID.longValue() : -1;
+		boolean replaced = positions.contains(position);
+		if (!replaced) {
+			positionCount++;
+		}
+		ensureCapacity(index);
+		if (index < elements.length) {
+			if (replaced) {
+				estimatedElementsSize -= estimateSize(elements[index]);
+			}
+			elements[index] = element;
+			messageIDs[index] = id;
+		} else {
+			if (sparseElements == null) {
+				sparseElements = new HashMap<Integer, SparseElement>();
+			}
+			SparseElement previous = sparseElements.put(Integer.valueOf(index), new SparseElement(element, id));
+			if (previous != null) {
+				estimatedElementsSize -= estimateSize(previous.element);
+			}
+		}
+		estimatedElementsSize += estimateSize(element);
+		positions.add(position);
+		if (position >= maxPosition) {
+			maxPosition = position;
+			endPosition = sequenceEnd ? position : -1;
+		}
+	}
+
+	/**
+	 * Adds the element after the current last one, without sequence end.
+	 * 
+	 * @param messageID
+	 * @param element
+	 */
+	public synchronized void append(Long messageID, Object element) {
+		add(maxPosition + 1, false, messageID, element);
+	}
+
+	public synchronized boolean isComplete() {
+		return maxPosition >= 0 && endPosition == maxPosition && positions.getPrefix() == maxPosition + 1;
+	}
+
+	/**
+	 * @return the nr of positions up to the highest one, including missing ones
+	 */
+	public synchronized int getElementCount() {
+		return (int) (maxPosition + 1);
+	}
+
+	/**
+	 * @return the elements in the order of their positions; null for missing positions
+	 */
+	public synchronized Object[] getElements() {
+		Object[] result = new Object[getElementCount()];
+		System.arraycopy(elements, 0, result, 0, Math.min(result.length, elements.length));
+		if (sparseElements != null) {
+			for (Map.Entry<Integer, SparseElement> entry : sparseElements.entrySet()) {
+				result[entry.getKey().intValue()] = entry.getValue().element;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the message IDs in the order of their positions; -1 for missing positions
+	 */
+	public synchronized long[] getMessageIDs() {
+		long[] result = new long[getElementCount()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = i < messageIDs.length && positions.contains(i) ? messageIDs[i] : -1;
+		}
+		if (sparseElements != null) {
+			for (Map.Entry<Integer, SparseElement> entry : sparseElements.entrySet()) {
+				result[entry.getKey().intValue()] = entry.getValue().messageID;
+			}
+		}
+		return result;
+	}
+
+	public synchronized void clear() {
+		elements = new Object[16];
+		messageIDs = new long[16];
+		sparseElements = null;
+		positions.clear();
+		positionCount = 0;
+		maxPosition = -1;
+		endPosition = -1;
+		estimatedElementsSize = 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.isencia.passerelle.message.internal.sequence.SequenceRegistry.SizedEntry#getEstimatedSize()
+	 */
+	public synchronized long getEstimatedSize() {
+		int sparseCount = sparseElements != null ? sparseElements.size() : 0;
+		return OBJECT_SIZE + elements.length * (REFERENCE_SIZE + 8) + sparseCount * SPARSE_ENTRY_SIZE + estimatedElementsSize;
+	}
+
+	/**
+	 * Grows the arrays to hold the index, unless they would become more than about twice
+	 * as large as the nr of positions. Sparse elements that fit in the grown arrays are moved into them.
+	 */
+	private void ensureCapacity(int index) {
+		int maxCapacity = 2 * positionCount + 16;
+		if (index < elements.length || index >= maxCapacity) {
+			return;
+		}
+		Object[] newElements = new Object[maxCapacity];
+		System.arraycopy(elements, 0, newElements, 0, elements.length);
+		elements = newElements;
+		long[] newMessageIDs = new long[maxCapacity];
+		System.arraycopy(messageIDs, 0, newMessageIDs, 0, messageIDs.length);
+		messageIDs = newMessageIDs;
+		if (sparseElements != null) {
+			for (Iterator<Map.Entry<Integer, SparseElement>> entryItr = sparseElements.entrySet().iterator(); entryItr.hasNext();) {
+				Map.Entry<Integer, SparseElement> entry = entryItr.next();
+				int i = entry.getKey().intValue();
+				if (i < maxCapacity) {
+					elements[i] = entry.getValue().element;
+					messageIDs[i] = entry.getValue().messageID;
+					entryItr.remove();
+				}
+			}
+			if (sparseElements.isEmpty()) {
+				sparseElements = null;
+			}
+		}
+	}
+
+	/**
+	 * @return a rough estimate of the nr of bytes held by the element
+	 */
+	static long estimateSize(Object element) {
+		if (element == null) {
+			return 0;
+		} else if (element instanceof String) {
+			return 2 * OBJECT_SIZE + 2 * ((String) element).length();
+		} else if (element instanceof byte[]) {
+			return OBJECT_SIZE + ((byte[]) element).length;
+		} else if (element instanceof char[]) {
+			return OBJECT_SIZE + 2 * ((char[]) element).length;
+		} else {
+			return OBJECT_SIZE;
+		}
+	}
+
+	private static final class SparseElement {
+		final Object element;
+		final long messageID;
+
+		SparseElement(Object element, long messageID) {
+			this.element = element;
+			this.messageID = messageID;
+		}
+	}
+}
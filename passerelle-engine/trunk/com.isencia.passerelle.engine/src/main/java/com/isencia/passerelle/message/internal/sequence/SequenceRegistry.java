@@ -0,0 +1,415 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.message.internal.sequence;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A registry of the sequences that an actor is tracking or aggregating, by sequence ID.
+ * <p>
+ * The registry can be used concurrently, e.g. by an actor's fire thread and by a port handler thread.
+ * It is split in shards, each with its own lock, so threads working on different sequences
+ * seldom wait for each other.
+ * </p>
+ * <p>
+ * Sequences that are never completed would remain in memory forever.
+ * So the registry can evict sequences that have not been accessed during a time-to-live,
+ * and the least recently used sequences of all shards when it holds too many.
+ * Evicted sequences are reported to an EvictionListener. 
+ * Expired sequences are evicted when the registry is accessed, or via evictExpired().
+ * </p>
+ * 
+ * @param <E> the type of the entries kept per sequence
+ * @author erwin dl
+ */
+public class SequenceRegistry<E> {
+
+	/**
+	 * Creates the entry for a sequence that is not yet in the registry.
+	 */
+	public interface EntryFactory<E> {
+		E createEntry(Long sequenceID);
+	}
+
+	/**
+	 * Is notified of the sequences that are evicted before they were completed.
+	 * It is called on the thread that accessed the registry, outside of the registry's locks.
+	 */
+	public interface EvictionListener<E> {
+		void sequenceEvicted(Long sequenceID, E entry);
+	}
+
+	/**
+	 * Entries can implement this to report their memory footprint.
+	 */
+	public interface SizedEntry {
+		/**
+		 * @return the estimated nr of bytes held by the entry
+		 */
+		long getEstimatedSize();
+	}
+
+	public final static int DEFAULT_SHARD_COUNT = 16;
+
+	private final List<Shard> shards;
+	private final int maxSequences;
+	private final long timeToLive;
+	private volatile EvictionListener<E> evictionListener;
+
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicInteger maxSize = new AtomicInteger();
+	private final AtomicLong completedCount = new AtomicLong();
+	private final AtomicLong evictedCount = new AtomicLong();
+
+	/**
+	 * 
+	 * @param maxSequences the max nr of sequences, or 0 for no limit
+	 * @param timeToLive in ms, the time after which a sequence that has not been accessed is evicted, or 0 for no limit
+	 */
+	public SequenceRegistry(int maxSequences, long timeToLive) {
+		this(DEFAULT_SHARD_COUNT, maxSequences, timeToLive);
+	}
+
+	/**
+	 * 
+	 * @param shardCount rounded up to a power of 2
+	 * @param maxSequences the max nr of sequences, or 0 for no limit
+	 * @param timeToLive in ms, the time after which a sequence that has not been accessed is evicted, or 0 for no limit
+	 */
+	public SequenceRegistry(int shardCount, int maxSequences, long timeToLive) {
+		int count = 1;
+		while (count < shardCount) {
+			count <<= 1;
+		}
+		shards = new ArrayList<Shard>(count);
+		for (int i = 0; i < count; i++) {
+			shards.add(new Shard());
+		}
+		this.maxSequences = maxSequences > 0 ? maxSequences : 0;
+		this.timeToLive = timeToLive > 0 ? timeToLive : 0;
+	}
+
+	public void setEvictionListener(EvictionListener<E> evictionListener) {
+		this.evictionListener = evictionListener;
+	}
+
+	/**
+	 * 
+	 * @param sequenceID
+	 * @return the entry for the sequence, or null if it is not in the registry
+	 */
+	public E get(Long sequenceID) {
+		Shard shard = getShard(sequenceID);
+		E result = null;
+		List<Evicted<E>> evicted = null;
+		synchronized (shard) {
+			long now = getTime();
+			evicted = shard.evictExpired(now);
+			Holder<E> holder = shard.entries.get(sequenceID);
+			if (holder != null) {
+				touch(holder, now);
+				result = holder.entry;
+			}
+		}
+		notifyEvicted(evicted);
+		return result;
+	}
+
+	/**
+	 * 
+	 * @param sequenceID
+	 * @param factory
+	 * @return the entry for the sequence, created by the factory if it was not yet in the registry
+	 */
+	public E getOrCreate(Long sequenceID, EntryFactory<? extends E> factory) {
+		Shard shard = getShard(sequenceID);
+		E result = null;
+		List<Evicted<E>> evicted = null;
+		boolean created = false;
+		synchronized (shard) {
+			long now = getTime();
+			evicted = shard.evictExpired(now);
+			Holder<E> holder = shard.entries.get(sequenceID);
+			if (holder == null) {
+				holder = new Holder<E>(factory.createEntry(sequenceID));
+				shard.entries.put(sequenceID, holder);
+				int newSize = size.incrementAndGet();
+				int max;
+				while (newSize > (max = maxSize.get()) && !maxSize.compareAndSet(max, newSize)) {
+					// retry
+				}
+				created = true;
+			}
+			touch(holder, now);
+			result = holder.entry;
+		}
+		if (created && maxSequences > 0) {
+			evicted = evictLeastRecentlyUsed(evicted);
+		}
+		notifyEvicted(evicted);
+		return result;
+	}
+
+	/**
+	 * Removes a sequence that has been completed.
+	 * 
+	 * @param sequenceID
+	 * @return the removed entry, or null if it was not in the registry
+	 */
+	public E remove(Long sequenceID) {
+		Shard shard = getShard(sequenceID);
+		synchronized (shard) {
+			Holder<E> holder = shard.entries.remove(sequenceID);
+			if (holder != null) {
+				size.decrementAndGet();
+				completedCount.incrementAndGet();
+				return holder.entry;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Evicts the sequences that have not been accessed during the time-to-live.
+	 * 
+	 * @return the nr of evicted sequences
+	 */
+	public int evictExpired() {
+		if (timeToLive == 0) {
+			return 0;
+		}
+		int count = 0;
+		for (Shard shard : shards) {
+			List<Evicted<E>> evicted = null;
+			synchronized (shard) {
+				evicted = shard.evictExpired(getTime());
+			}
+			if (evicted != null) {
+				count += evicted.size();
+				notifyEvicted(evicted);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Removes all sequences, without notifying the eviction listener.
+	 */
+	public void clear() {
+		for (Shard shard : shards) {
+			synchronized (shard) {
+				size.addAndGet(-shard.entries.size());
+				shard.entries.clear();
+			}
+		}
+	}
+
+	/**
+	 * @return the nr of sequences in the registry
+	 */
+	public int size() {
+		return size.get();
+	}
+
+	public boolean isEmpty() {
+		return size.get() == 0;
+	}
+
+	/**
+	 * @return the highest nr of sequences that were in the registry at the same time
+	 */
+	public int getMaxSize() {
+		return maxSize.get();
+	}
+
+	/**
+	 * @return the nr of sequences that were removed as completed
+	 */
+	public long getCompletedCount() {
+		return completedCount.get();
+	}
+
+	/**
+	 * @return the nr of sequences that were evicted before they were completed
+	 */
+	public long getEvictedCount() {
+		return evictedCount.get();
+	}
+
+	/**
+	 * Goes over all sequences, so this is meant for monitoring, not for frequent use.
+	 * 
+	 * @return the sum of the estimated sizes of the entries that implement SizedEntry
+	 */
+	public long getEstimatedSize() {
+		long result = 0;
+		for (Shard shard : shards) {
+			synchronized (shard) {
+				for (Holder<E> holder : shard.entries.values()) {
+					if (holder.entry instanceof SizedEntry) {
+						result += ((SizedEntry) holder.entry).getEstimatedSize();
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Resets the completed and evicted counts, and the max size.
+	 */
+	public void resetCounts() {
+		completedCount.set(0);
+		evictedCount.set(0);
+		maxSize.set(size.get());
+	}
+
+	private Shard getShard(Long sequenceID) {
+		// spread the hash bits, as sequence IDs are often consecutive
+		int h = sequenceID.hashCode();
+		h ^= (h >>> 16);
+		h *= 0x85ebca6b;
+		h ^= (h >>> 13);
+		return shards.get(h & (shards.size() - 1));
+	}
+
+	/**
+	 * Evicts the least recently used sequences, as long as the registry holds too many.
+	 * Each shard keeps its sequences in access order, so only the eldest sequence of each shard is compared.
+	 * The shards are locked one at a time, so the result is approximate under concurrent access.
+	 */
+	private List<Evicted<E>> evictLeastRecentlyUsed(List<Evicted<E>> evicted) {
+		while (size.get() > maxSequences) {
+			Shard eldestShard = null;
+			long eldestUse = 0;
+			for (Shard shard : shards) {
+				synchronized (shard) {
+					Holder<E> eldest = shard.getEldest();
+					if (eldest != null && (eldestShard == null || eldest.lastUse - eldestUse < 0)) {
+						eldestShard = shard;
+						eldestUse = eldest.lastUse;
+					}
+				}
+			}
+			if (eldestShard == null) {
+				break;
+			}
+			synchronized (eldestShard) {
+				evicted = eldestShard.evictEldest(evicted);
+			}
+		}
+		return evicted;
+	}
+
+	private void touch(Holder<E> holder, long now) {
+		holder.lastAccess = now;
+		if (maxSequences > 0) {
+			holder.lastUse = System.nanoTime();
+		}
+	}
+
+	private long getTime() {
+		return timeToLive > 0 ? System.currentTimeMillis() : 0;
+	}
+
+	private void notifyEvicted(List<Evicted<E>> evicted) {
+		if (evicted == null) {
+			return;
+		}
+		EvictionListener<E> listener = evictionListener;
+		if (listener != null) {
+			for (Evicted<E> e : evicted) {
+				listener.sequenceEvicted(e.sequenceID, e.entry);
+			}
+		}
+	}
+
+	private static final class Holder<E> {
+		final E entry;
+		// for the time-to-live, in ms
+		long lastAccess;
+		// for the max nr of sequences, in ns, to compare accesses in different shards
+		long lastUse;
+
+		Holder(E entry) {
+			this.entry = entry;
+		}
+	}
+
+	private final class Shard {
+		// in access order, so the least recently used sequences come first
+		final LinkedHashMap<Long, Holder<E>> entries = new LinkedHashMap<Long, Holder<E>>(16, 0.75f, true);
+
+		/**
+		 * @return the evicted sequences, or null if there are none
+		 */
+		List<Evicted<E>> evictExpired(long now) {
+			List<Evicted<E>> evicted = null;
+			if (timeToLive > 0) {
+				for (Iterator<Map.Entry<Long, Holder<E>>> entryItr = entries.entrySet().iterator(); entryItr.hasNext();) {
+					Map.Entry<Long, Holder<E>> entry = entryItr.next();
+					if (now - entry.getValue().lastAccess < timeToLive) {
+						break;
+					}
+					evicted = evict(entryItr, entry, evicted);
+				}
+			}
+			return evicted;
+		}
+
+		/**
+		 * @return the least recently used sequence of the shard, or null if it is empty
+		 */
+		Holder<E> getEldest() {
+			Iterator<Holder<E>> holderItr = entries.values().iterator();
+			return holderItr.hasNext() ? holderItr.next() : null;
+		}
+
+		List<Evicted<E>> evictEldest(List<Evicted<E>> evicted) {
+			Iterator<Map.Entry<Long, Holder<E>>> entryItr = entries.entrySet().iterator();
+			if (entryItr.hasNext()) {
+				evicted = evict(entryItr, entryItr.next(), evicted);
+			}
+			return evicted;
+		}
+
+		private List<Evicted<E>> evict(Iterator<Map.Entry<Long, Holder<E>>> entryItr, Map.Entry<Long, Holder<E>> entry, List<Evicted<E>> evicted) {
+			if (evicted == null) {
+				evicted = new ArrayList<Evicted<E>>();
+			}
+			evicted.add(new Evicted<E>(entry.getKey(), entry.getValue().entry));
+			entryItr.remove();
+			size.decrementAndGet();
+			evictedCount.incrementAndGet();
+			return evicted;
+		}
+	}
+
+	private static final class Evicted<E> {
+		final Long sequenceID;
+		final E entry;
+
+		Evicted(Long sequenceID, E entry) {
+			this.sequenceID = sequenceID;
+			this.entry = entry;
+		}
+	}
+}
@@ -15,7 +15,6 @@
 package com.isencia.passerelle.message.internal.sequence;
 
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -26,10 +25,19 @@ import com.isencia.passerelle.message.ManagedMessage;
  * Keeps track if a sequence has been "handled" in a Passerelle model.
  * The trace assumes that messages will be added in sequence, i.e.
  * in the right order and with all slots filled consecutively.
+ * <p>
+ * The completeness is maintained as running state, when messages are added or handled :
+ * the sets of received and handled positions, each with its contiguous prefix,
+ * the highest position and whether its msg is the sequence end.
+ * So isComplete() and isHandled() do not need to look at all messages.
+ * </p>
  * 
  * @author erwin dl
  */
-public class SequenceTrace implements Traceable {
+public class SequenceTrace implements Traceable, SequenceRegistry.SizedEntry {
+
+	// rough size in bytes of the structures per msg, excluding the msg itself
+	private final static int MESSAGE_ENTRY_SIZE = 120;
 
 	private Long sequenceID;
 	private Boolean handled=null;
@@ -37,6 +45,13 @@ public class SequenceTrace implements Traceable {
 	private Map messageTraces = new HashMap();
 	private Map messagesBySeqPos = new TreeMap();
 
+	private PositionSet receivedPositions = new PositionSet();
+	// positions of the received msgs that have been handled
+	private PositionSet handledPositions = new PositionSet();
+	private long maxPosition = -1;
+	// the highest position, if its msg is the sequence end
+	private long endPosition = -1;
+
 	/**
 	 * @throws IllegalArgumentException if the sequenceID is null
 	 */
@@ -53,28 +68,14 @@ public class SequenceTrace implements Traceable {
 	public synchronized boolean isHandled() {
 		if(Boolean.TRUE.equals(handled))
 			return true;
+		if(maxPosition<0)
+			// nothing to handle
+			return true;
 		
-		boolean result = true;
-		
-		long expectedPos = 0;
-		ManagedMessage seqMsg = null;
-		MessageTrace seqMsgTrc = null;
-		for (Iterator iter = messagesBySeqPos.values().iterator(); iter.hasNext(); expectedPos++) {
-			seqMsg = (ManagedMessage) iter.next();
-			seqMsgTrc = (MessageTrace) messageTraces.get(seqMsg.getID());
-			if(seqMsgTrc==null || !seqMsgTrc.isHandled() || (seqMsg.getSequencePosition()==null) || (seqMsg.getSequencePosition().longValue()!=expectedPos)) {
-				result=false;
-				break;
-			}
-		}
-		if(result && seqMsg!=null && seqMsgTrc!=null) {
-			result = seqMsg.isSequenceEnd() && seqMsgTrc.isHandled();
-			if(result) {
-				complete = Boolean.TRUE;
-				handled = Boolean.TRUE;
-			}
+		boolean result = isComplete() && handledPositions.getPrefix()==maxPosition+1;
+		if(result) {
+			handled = Boolean.TRUE;
 		}
-		
 		return result;
 	}
 	
@@ -88,23 +89,13 @@ public class SequenceTrace implements Traceable {
 	public synchronized boolean isComplete() {
 		if(Boolean.TRUE.equals(complete))
 			return true;
+		if(maxPosition<0)
+			// nothing missing
+			return true;
 		
-		boolean result = true;
-		
-		long expectedPos = 0;
-		ManagedMessage seqMsg = null;
-		for (Iterator iter = messagesBySeqPos.values().iterator(); iter.hasNext(); expectedPos++) {
-			seqMsg = (ManagedMessage) iter.next();
-			if((seqMsg.getSequencePosition()==null) || (seqMsg.getSequencePosition().longValue()!=expectedPos)) {
-				result=false;
-				break;
-			}
-		}
-		if(result && seqMsg!=null) {
-			result = seqMsg.isSequenceEnd();
-			if(result)
-				complete = Boolean.TRUE;
-		}
+		boolean result = endPosition==maxPosition && receivedPositions.getPrefix()==maxPosition+1;
+		if(result)
+			complete = Boolean.TRUE;
 		
 		return result;
 	}
@@ -118,7 +109,8 @@ public class SequenceTrace implements Traceable {
 	/**
 	 * 
 	 * @param message
-	 * @throws IllegalArgumentException if the message does not belong to the defined sequence
+	 * @throws IllegalArgumentException if the message does not belong to the defined sequence,
+	 * or has no or a negative sequence position
 	 * @throws IllegalStateException if the sequence was already marked as handled
 	 */
 	public synchronized void addMessage(ManagedMessage message){
@@ -129,13 +121,27 @@ public class SequenceTrace implements Traceable {
 			throw new IllegalArgumentException("Message "+message.getID()+" with seqID "+message.getSequenceID()+
 					"does not belong in sequence "+sequenceID);
 		}
+		Long seqPos = message.getSequencePosition();
+		if(seqPos==null) {
+			throw new IllegalArgumentException("Message "+message.getID()+" has no sequence position");
+		}
 		if(complete!=null && complete.booleanValue())
 			throw new IllegalStateException("sequence "+sequenceID+" already complete");
 		
 		handled=Boolean.FALSE;
 		
+		long position = seqPos.longValue();
+		receivedPositions.add(position);
+		// a new msg, or a new version of it, that has not been handled yet
+		handledPositions.remove(position);
+		// only the msg at the highest position matters for the end of the sequence
+		if(position>=maxPosition) {
+			maxPosition = position;
+			endPosition = message.isSequenceEnd() ? position : -1;
+		}
+		
 		messageTraces.put(message.getID(), new MessageTrace(message));
-		messagesBySeqPos.put(message.getSequencePosition(),message);
+		messagesBySeqPos.put(seqPos,message);
 	}
 	
 	/**
@@ -160,6 +166,12 @@ public class SequenceTrace implements Traceable {
 		MessageTrace msgTrace = (MessageTrace) messageTraces.get(message.getID());
 		if(msgTrace!=null) {
 			msgTrace.setHandled();
+			// only counts if it is still the msg that was added for its position
+			Long seqPos = msgTrace.getMessage().getSequencePosition();
+			ManagedMessage seqMsg = (ManagedMessage) messagesBySeqPos.get(seqPos);
+			if(seqMsg!=null && seqMsg.getID().equals(message.getID())) {
+				handledPositions.add(seqPos.longValue());
+			}
 		} else {
 			// weird, receiving a handled notification
 			// before the message was added...
@@ -182,9 +194,30 @@ public class SequenceTrace implements Traceable {
 	public synchronized ManagedMessage[] getMessagesInSequence() {
 		return (ManagedMessage[]) messagesBySeqPos.values().toArray(new ManagedMessage[0]);
 	}
+	/**
+	 * @return the nr of messages in the trace
+	 */
+	public synchronized int getMessageCount() {
+		return messagesBySeqPos.size();
+	}
+
+	/**
+	 * The messages themselves are not included, 
+	 * as they are normally also referenced elsewhere in the model.
+	 * 
+	 * @see com.isencia.passerelle.message.internal.sequence.SequenceRegistry.SizedEntry#getEstimatedSize()
+	 */
+	public synchronized long getEstimatedSize() {
+		return (long) (messageTraces.size() + messagesBySeqPos.size()) * MESSAGE_ENTRY_SIZE / 2;
+	}
+
 	public synchronized void clear() {
 		messagesBySeqPos.clear();
 		messageTraces.clear();
+		receivedPositions.clear();
+		handledPositions.clear();
+		maxPosition = -1;
+		endPosition = -1;
 		handled=null;
 		complete=null;
 	}
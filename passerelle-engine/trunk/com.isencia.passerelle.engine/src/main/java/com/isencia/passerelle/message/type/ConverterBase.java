@@ -122,6 +122,42 @@ public abstract class ConverterBase implements TypeConverter {
 	}
 
 
+	/**
+	 * Checks, without trying a conversion, whether convertPasserelleTokenToPtolemyToken()
+	 * would handle messages with the given body content type.
+	 * 
+	 * @param messageContentType
+	 * @param targetType
+	 * @return false if the conversion would throw an UnsupportedOperationException
+	 */
+	public boolean canConvertPasserelleTokenToPtolemyToken(Class messageContentType, Type targetType) {
+		return PasserelleType.PASSERELLE_MSG_TYPE.equals(targetType) || areTypesCompatible(messageContentType, targetType);
+	}
+
+	/**
+	 * Checks, without trying a conversion, whether convertPtolemyTokenToPasserelleToken()
+	 * would handle plain Ptolemy tokens of the given type.
+	 * 
+	 * @param tokenType
+	 * @param targetContentType
+	 * @return false if the conversion would throw an UnsupportedOperationException
+	 */
+	public boolean canConvertPtolemyTokenToPasserelleToken(Type tokenType, Class targetContentType) {
+		return areTypesCompatible(tokenType, targetContentType);
+	}
+
+	/**
+	 * Checks, without trying a conversion, whether convertPasserelleMessageContent()
+	 * would handle messages with the given body content type.
+	 * 
+	 * @param messageContentType
+	 * @param targetContentType
+	 * @return false if the conversion would throw an UnsupportedOperationException
+	 */
+	public boolean canConvertPasserelleMessageContent(Class messageContentType, Class targetContentType) {
+		return areTypesCompatible(messageContentType, targetContentType);
+	}
+
 	/**
 	 * Check if this converter is able to convert between these two types.
 	 * 
@@ -14,7 +14,11 @@
 */
 package com.isencia.passerelle.message.type;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +36,9 @@ import ptolemy.data.type.Type;
  * Provides an easy access to a preconfigured series
  * of converters using the Chain-of-Responsibility design pattern.
  * 
+ * For each combination of source and target type, the converters that
+ * are able to handle it are selected once, so the chain does not need to
+ * try each converter again for each token.
  * 
  * @author erwin dl
  */
@@ -41,6 +48,17 @@ public class TypeConversionChain implements TypeConverter {
 
 	private final static TypeConverterProvider DEFAULT_CONVERTER_PROVIDER = new DefaultTypeConverterProvider();
 	private TypeConverterProvider converterProvider = DEFAULT_CONVERTER_PROVIDER;
+
+	// the kinds of conversions, for the dispatch cache
+	private final static int TO_PTOLEMY_TOKEN = 0;
+	private final static int TO_PASSERELLE_TOKEN = 1;
+	private final static int MESSAGE_CONTENT = 2;
+	private final static int CONTENT_TO_TOKEN = 3;
+	private final static int TOKEN_TO_CONTENT = 4;
+	private final static int MAX_CACHE_SIZE = 1000;
+
+	// the converters to try, per combination of source and target type
+	private final ConcurrentMap<ConversionKey, TypeConverter[]> dispatchCache = new ConcurrentHashMap<ConversionKey, TypeConverter[]>();
 	
 	private final static TypeConversionChain instance = new TypeConversionChain();
 	
@@ -60,6 +78,7 @@ public class TypeConversionChain implements TypeConverter {
 			this.converterProvider = converterProvider;
 		else 
 			this.converterProvider = DEFAULT_CONVERTER_PROVIDER;
+		dispatchCache.clear();
 		
 		logger.info("Set TypeConverterProvider to "+this.converterProvider.getName());
 	}
@@ -67,10 +86,10 @@ public class TypeConversionChain implements TypeConverter {
 	// used internally by ArrayConverter
 	protected Token convertContentToToken(Object content, Type targetType) throws UnsupportedOperationException, MessageException {
 		Token res = null;
-		Iterator<TypeConverter> iter = null;
 		boolean foundConversion = false;
-		for (iter = converterProvider.getTypeConverters().iterator(); iter.hasNext();) {
-			ConverterBase converter = (ConverterBase) iter.next();
+		TypeConverter[] converters = getConverters(CONTENT_TO_TOKEN, (content!=null ? content.getClass() : null), targetType);
+		for (int i = 0; i < converters.length; i++) {
+			ConverterBase converter = (ConverterBase) converters[i];
 			try {
 				res = converter.convertContentToToken(content,targetType);
 				foundConversion = true;
@@ -90,10 +109,10 @@ public class TypeConversionChain implements TypeConverter {
 	// used internally by ArrayConverter
 	protected Object convertTokenToContent(Token typedToken, Class targetType) throws UnsupportedOperationException, MessageException {
 		Object res = null;
-		Iterator iter = null;
 		boolean foundConversion = false;
-		for (iter = converterProvider.getTypeConverters().iterator(); iter.hasNext();) {
-			ConverterBase converter = (ConverterBase) iter.next();
+		TypeConverter[] converters = getConverters(TOKEN_TO_CONTENT, (typedToken!=null ? typedToken.getType() : null), targetType);
+		for (int i = 0; i < converters.length; i++) {
+			ConverterBase converter = (ConverterBase) converters[i];
 			try {
 				res = converter.convertTokenToContent(typedToken,targetType);
 				foundConversion = true;
@@ -112,12 +131,11 @@ public class TypeConversionChain implements TypeConverter {
 
 	public Token convertPasserelleTokenToPtolemyToken(PasserelleToken passerelleMsgToken, Type ptolemyTargetType) throws UnsupportedOperationException, PasserelleException {
 		Token res = null;
-		Iterator iter = null;
 		boolean foundConversion = false;
-		for (iter = converterProvider.getTypeConverters().iterator(); iter.hasNext();) {
-			TypeConverter converter = (TypeConverter) iter.next();
+		TypeConverter[] converters = getConverters(TO_PTOLEMY_TOKEN, getMessageContentType(passerelleMsgToken), ptolemyTargetType);
+		for (int i = 0; i < converters.length; i++) {
 			try {
-				res = converter.convertPasserelleTokenToPtolemyToken(passerelleMsgToken,ptolemyTargetType);
+				res = converters[i].convertPasserelleTokenToPtolemyToken(passerelleMsgToken,ptolemyTargetType);
 				foundConversion = true;
 				break;
 			} catch (UnsupportedOperationException e) {
@@ -134,12 +152,16 @@ public class TypeConversionChain implements TypeConverter {
 		
 	public PasserelleToken convertPtolemyTokenToPasserelleToken(Token origToken, Class targetContentType) throws UnsupportedOperationException, PasserelleException {
 		PasserelleToken res = null;
-		Iterator iter = null;
 		boolean foundConversion = false;
-		for (iter = converterProvider.getTypeConverters().iterator(); iter.hasNext();) {
-			TypeConverter converter = (TypeConverter) iter.next();
+		TypeConverter[] converters = null;
+		if(origToken instanceof PasserelleToken) {
+			converters = getConverters(MESSAGE_CONTENT, getMessageContentType((PasserelleToken)origToken), targetContentType);
+		} else {
+			converters = getConverters(TO_PASSERELLE_TOKEN, (origToken!=null ? origToken.getType() : null), targetContentType);
+		}
+		for (int i = 0; i < converters.length; i++) {
 			try {
-				res = converter.convertPtolemyTokenToPasserelleToken(origToken, targetContentType);
+				res = converters[i].convertPtolemyTokenToPasserelleToken(origToken, targetContentType);
 				foundConversion = true;
 				break;
 			} catch (UnsupportedOperationException e) {
@@ -156,12 +178,11 @@ public class TypeConversionChain implements TypeConverter {
 
 	public PasserelleToken convertPasserelleMessageContent(PasserelleToken origToken, Class targetContentType) throws UnsupportedOperationException, PasserelleException {
 		PasserelleToken res = null;
-		Iterator iter = null;
 		boolean foundConversion = false;
-		for (iter = converterProvider.getTypeConverters().iterator(); iter.hasNext();) {
-			TypeConverter converter = (TypeConverter) iter.next();
+		TypeConverter[] converters = getConverters(MESSAGE_CONTENT, getMessageContentType(origToken), targetContentType);
+		for (int i = 0; i < converters.length; i++) {
 			try {
-				res = converter.convertPasserelleMessageContent(origToken, targetContentType);
+				res = converters[i].convertPasserelleMessageContent(origToken, targetContentType);
 				foundConversion = true;
 				break;
 			} catch (UnsupportedOperationException e) {
@@ -175,5 +196,111 @@ public class TypeConversionChain implements TypeConverter {
 		
 		return res;
 	}
-	
+
+	/**
+	 * Returns the converters that may be able to handle a conversion,
+	 * in the order of the chain.
+	 * <p>
+	 * The selection is done once per combination of source and target type,
+	 * using the canConvert probes of the ConverterBase. Converters that do not
+	 * extend ConverterBase can not be probed, so they are always tried.
+	 * </p>
+	 * 
+	 * @param conversionKind
+	 * @param fromType the source content class or token type, or null if it is not known
+	 * @param toType the target content class or token type
+	 * @return the converters to try
+	 */
+	private TypeConverter[] getConverters(int conversionKind, Object fromType, Object toType) {
+		List<TypeConverter> allConverters = converterProvider.getTypeConverters();
+		if(fromType==null) {
+			// can not select anything, e.g. an empty message
+			// so let each converter decide
+			return (TypeConverter[]) allConverters.toArray(new TypeConverter[allConverters.size()]);
+		}
+		ConversionKey key = new ConversionKey(conversionKind, fromType, toType);
+		TypeConverter[] res = dispatchCache.get(key);
+		if(res==null) {
+			List<TypeConverter> selected = new ArrayList<TypeConverter>();
+			for (TypeConverter converter : allConverters) {
+				if(!(converter instanceof ConverterBase) || canConvert((ConverterBase) converter, key)) {
+					selected.add(converter);
+				}
+			}
+			res = (TypeConverter[]) selected.toArray(new TypeConverter[selected.size()]);
+			if(dispatchCache.size()>=MAX_CACHE_SIZE) {
+				// should not happen with the std types, but avoid unlimited growth
+				dispatchCache.clear();
+			}
+			dispatchCache.put(key, res);
+			if(logger.isDebugEnabled()) {
+				logger.debug("getConverters() - "+key+" : "+Arrays.asList(res));
+			}
+		}
+		return res;
+	}
+
+	private boolean canConvert(ConverterBase converter, ConversionKey key) {
+		switch (key.conversionKind) {
+		case TO_PTOLEMY_TOKEN:
+			return converter.canConvertPasserelleTokenToPtolemyToken((Class) key.fromType, (Type) key.toType);
+		case TO_PASSERELLE_TOKEN:
+			return converter.canConvertPtolemyTokenToPasserelleToken((Type) key.fromType, (Class) key.toType);
+		case CONTENT_TO_TOKEN:
+			return converter.areTypesCompatible((Class) key.fromType, (Type) key.toType);
+		case TOKEN_TO_CONTENT:
+			return converter.areTypesCompatible((Type) key.fromType, (Class) key.toType);
+		default:
+			return converter.canConvertPasserelleMessageContent((Class) key.fromType, (Class) key.toType);
+		}
+	}
+
+	/**
+	 * 
+	 * @param token
+	 * @return the class of the message body content, or null if there is no body content
+	 */
+	private static Class getMessageContentType(PasserelleToken token) {
+		try {
+			return token.getMessageContentType();
+		} catch (NullPointerException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Key for the dispatch cache
+	 */
+	private final static class ConversionKey {
+		private final int conversionKind;
+		private final Object fromType;
+		private final Object toType;
+		private final int hashCode;
+
+		ConversionKey(int conversionKind, Object fromType, Object toType) {
+			this.conversionKind = conversionKind;
+			this.fromType = fromType;
+			this.toType = toType;
+			this.hashCode = 31 * (31 * conversionKind + fromType.hashCode()) + (toType!=null ? toType.hashCode() : 0);
+		}
+
+		public int hashCode() {
+			return hashCode;
+		}
+
+		public boolean equals(Object obj) {
+			if(this==obj)
+				return true;
+			if(!(obj instanceof ConversionKey))
+				return false;
+			ConversionKey other = (ConversionKey) obj;
+			return conversionKind == other.conversionKind 
+				&& fromType.equals(other.fromType)
+				&& (toType!=null ? toType.equals(other.toType) : other.toType==null);
+		}
+
+		public String toString() {
+			return "[" + conversionKind + " : " + fromType + " -> " + toType + "]";
+		}
+	}
 }
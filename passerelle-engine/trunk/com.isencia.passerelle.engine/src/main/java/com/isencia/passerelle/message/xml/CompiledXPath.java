@@ -0,0 +1,356 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.message.xml;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.transform.TransformerException;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.apache.xpath.XPathAPI;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * An XPATH expression that is compiled once, for repeated evaluation on message contents.
+ * <p>
+ * The compiled expression is kept per thread, as compiled JAXP expressions are not thread-safe.
+ * Expressions with namespace prefixes are evaluated with XPathAPI, as before,
+ * which resolves the prefixes against the document element of each document.
+ * </p>
+ * <p>
+ * Simple forward-only paths can also be evaluated on a stream of XML, without building a DOM :
+ * a sequence of element steps like <code>/a/b</code>, <code>//b/c</code> or <code>/a/*&#47;c</code>,
+ * optionally ending with an attribute step like <code>/@id</code> or with <code>/text()</code>.
+ * Element and attribute names can not have a namespace prefix.
+ * Streaming uses StAX, so it is only available on Java 6 and later.
+ * The other evaluations do not depend on javax.xml.stream.
+ * </p>
+ *
+ * @author erwin dl
+ */
+public class CompiledXPath {
+
+	private final static Pattern STREAMABLE_PATTERN = Pattern.compile("((?://?)(?:\\*|[A-Za-z_][\\w.\\-]*))+(/@[A-Za-z_][\\w.\\-]*|/text\\(\\))?");
+	private final static Pattern STEP_PATTERN = Pattern.compile("(//?)(text\\(\\)|\\*|[A-Za-z_][\\w.\\-]*|@[A-Za-z_][\\w.\\-]*)");
+
+	private final static boolean streamingSupported = isStreamingSupported();
+
+	/**
+	 * Holds the StAX factories, so javax.xml.stream is only loaded on the first streaming evaluation.
+	 */
+	private static class StreamFactories {
+		private final static XMLInputFactory inputFactory;
+		private final static XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+		private final static XMLEventFactory eventFactory = XMLEventFactory.newInstance();
+		static {
+			inputFactory = XMLInputFactory.newInstance();
+			// one event per text node, as in the DOM
+			inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		}
+	}
+
+	// XPath instances are not thread-safe either
+	private final static ThreadLocal<XPath> xpaths = new ThreadLocal<XPath>() {
+		protected XPath initialValue() {
+			return XPathFactory.newInstance().newXPath();
+		}
+	};
+
+	private enum Selection {ELEMENT, ATTRIBUTE, TEXT};
+
+	private final String expression;
+	private final boolean prefixed;
+	private final ThreadLocal<XPathExpression> compiledExpressions = new ThreadLocal<XPathExpression>();
+
+	// the parsed path, or null if the expression can not be evaluated on a stream
+	private final String[] stepNames;
+	private final boolean[] descendantSteps;
+	private final Selection selection;
+	private final String attributeName;
+
+	/**
+	 * The expression is compiled on its first evaluation.
+	 * 
+	 * @param expression
+	 */
+	public CompiledXPath(String expression) {
+		this.expression = expression;
+		this.prefixed = expression.replace("::", "").indexOf(':') >= 0;
+
+		List<String> names = new ArrayList<String>();
+		List<Boolean> descendants = new ArrayList<Boolean>();
+		Selection sel = null;
+		String attrName = null;
+		if (STREAMABLE_PATTERN.matcher(expression).matches()) {
+			sel = Selection.ELEMENT;
+			Matcher stepMatcher = STEP_PATTERN.matcher(expression);
+			while (stepMatcher.find()) {
+				String step = stepMatcher.group(2);
+				if (step.startsWith("@")) {
+					sel = Selection.ATTRIBUTE;
+					attrName = step.substring(1);
+				} else if ("text()".equals(step)) {
+					sel = Selection.TEXT;
+				} else {
+					names.add("*".equals(step) ? null : step);
+					descendants.add(Boolean.valueOf(stepMatcher.group(1).length() == 2));
+				}
+			}
+		}
+		if (sel != null) {
+			stepNames = names.toArray(new String[names.size()]);
+			descendantSteps = new boolean[descendants.size()];
+			for (int i = 0; i < descendantSteps.length; i++) {
+				descendantSteps[i] = descendants.get(i).booleanValue();
+			}
+		} else {
+			stepNames = null;
+			descendantSteps = null;
+		}
+		selection = sel;
+		attributeName = attrName;
+	}
+
+	public String getExpression() {
+		return expression;
+	}
+
+	/**
+	 * @return true if the expression can be evaluated on a stream, without a DOM
+	 */
+	public boolean isStreamable() {
+		return selection != null && streamingSupported;
+	}
+
+	/**
+	 * 
+	 * @param node the context node, typically a Document
+	 * @return the nodes selected by the expression
+	 * @throws XPathExpressionException
+	 * @throws TransformerException
+	 */
+	public NodeList selectNodes(Node node) throws XPathExpressionException, TransformerException {
+		if (prefixed) {
+			return XPathAPI.selectNodeList(node, expression);
+		}
+		XPathExpression compiledExpression = compiledExpressions.get();
+		if (compiledExpression == null) {
+			compiledExpression = xpaths.get().compile(expression);
+			compiledExpressions.set(compiledExpression);
+		}
+		return (NodeList) compiledExpression.evaluate(node, XPathConstants.NODESET);
+	}
+
+	/**
+	 * Reads the XML until the first node is found that is selected by the expression.
+	 * 
+	 * @param xml
+	 * @return true if the expression selects at least one node in the XML
+	 * @throws XMLStreamException
+	 * @throws IllegalStateException if the expression is not streamable
+	 */
+	public boolean matches(Reader xml) throws XMLStreamException {
+		checkStreamable();
+		XMLStreamReader reader = StreamFactories.inputFactory.createXMLStreamReader(xml);
+		try {
+			List<String> path = new ArrayList<String>();
+			List<Boolean> matchedElements = new ArrayList<Boolean>();
+			while (reader.hasNext()) {
+				switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					path.add(getName(reader.getPrefix(), reader.getLocalName()));
+					boolean matched = isMatchingPath(path, path.size(), stepNames.length);
+					if (matched && selection == Selection.ELEMENT) {
+						return true;
+					} else if (matched && selection == Selection.ATTRIBUTE) {
+						for (int i = 0; i < reader.getAttributeCount(); i++) {
+							if (isMatchingAttribute(reader.getAttributeName(i))) {
+								return true;
+							}
+						}
+					}
+					matchedElements.add(Boolean.valueOf(matched));
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					path.remove(path.size() - 1);
+					matchedElements.remove(matchedElements.size() - 1);
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					if (selection == Selection.TEXT && !matchedElements.isEmpty() && matchedElements.get(matchedElements.size() - 1).booleanValue()) {
+						return true;
+					}
+					break;
+				}
+			}
+			return false;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Copies the XML, while replacing the text of the selected nodes by the given text :
+	 * <ul>
+	 * <li>for selected elements, their first text node
+	 * <li>for selected attributes, their value
+	 * <li>for selected text nodes, the complete text
+	 * </ul>
+	 * 
+	 * @param xml
+	 * @param out
+	 * @param newText
+	 * @throws XMLStreamException
+	 * @throws IllegalStateException if the expression is not streamable
+	 */
+	public void replaceText(Reader xml, Writer out, String newText) throws XMLStreamException {
+		checkStreamable();
+		XMLEventReader reader = StreamFactories.inputFactory.createXMLEventReader(xml);
+		XMLEventWriter writer = StreamFactories.outputFactory.createXMLEventWriter(out);
+		try {
+			List<String> path = new ArrayList<String>();
+			// per open element : true as long as it is selected and its text must still be replaced
+			List<Boolean> pendingElements = new ArrayList<Boolean>();
+			while (reader.hasNext()) {
+				XMLEvent event = reader.nextEvent();
+				if (event.isStartElement()) {
+					StartElement element = event.asStartElement();
+					QName name = element.getName();
+					path.add(getName(name.getPrefix(), name.getLocalPart()));
+					boolean matched = isMatchingPath(path, path.size(), stepNames.length);
+					if (matched && selection == Selection.ATTRIBUTE) {
+						event = replaceAttribute(element, newText);
+					}
+					pendingElements.add(Boolean.valueOf(matched && selection != Selection.ATTRIBUTE));
+				} else if (event.isEndElement()) {
+					path.remove(path.size() - 1);
+					pendingElements.remove(pendingElements.size() - 1);
+				} else if (event.isCharacters() && !pendingElements.isEmpty()) {
+					int current = pendingElements.size() - 1;
+					if (pendingElements.get(current).booleanValue()) {
+						event = StreamFactories.eventFactory.createCharacters(newText);
+						if (selection == Selection.ELEMENT) {
+							pendingElements.set(current, Boolean.FALSE);
+						}
+					}
+				}
+				writer.add(event);
+			}
+			writer.flush();
+		} finally {
+			reader.close();
+			writer.close();
+		}
+	}
+
+	public String toString() {
+		return expression;
+	}
+
+	private void checkStreamable() {
+		if (!isStreamable()) {
+			throw new IllegalStateException("XPATH expression can not be evaluated on a stream : " + expression);
+		}
+	}
+
+	private StartElement replaceAttribute(StartElement element, String newText) {
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		boolean replaced = false;
+		for (Iterator<?> attrItr = element.getAttributes(); attrItr.hasNext();) {
+			Attribute attribute = (Attribute) attrItr.next();
+			if (isMatchingAttribute(attribute.getName())) {
+				attribute = StreamFactories.eventFactory.createAttribute(attribute.getName(), newText);
+				replaced = true;
+			}
+			attributes.add(attribute);
+		}
+		if (!replaced) {
+			return element;
+		}
+		return StreamFactories.eventFactory.createStartElement(element.getName(), attributes.iterator(), element.getNamespaces());
+	}
+
+	private boolean isMatchingAttribute(QName name) {
+		return name.getPrefix().length() == 0 && attributeName.equals(name.getLocalPart());
+	}
+
+	/**
+	 * 
+	 * @param path the names of the open elements
+	 * @param depth the nr of elements in the path to consider
+	 * @param stepCount the nr of steps to consider
+	 * @return true if the first depth elements are matched by the first stepCount steps
+	 */
+	private boolean isMatchingPath(List<String> path, int depth, int stepCount) {
+		if (stepCount == 0) {
+			return depth == 0;
+		}
+		if (depth == 0) {
+			return false;
+		}
+		String stepName = stepNames[stepCount - 1];
+		if (stepName != null && !stepName.equals(path.get(depth - 1))) {
+			return false;
+		}
+		if (!descendantSteps[stepCount - 1]) {
+			return isMatchingPath(path, depth - 1, stepCount - 1);
+		}
+		for (int d = depth - 1; d >= 0; d--) {
+			if (isMatchingPath(path, d, stepCount - 1)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isStreamingSupported() {
+		try {
+			Class.forName("javax.xml.stream.XMLInputFactory");
+			return true;
+		} catch (ClassNotFoundException e) {
+			// Java 5
+			return false;
+		}
+	}
+
+	private static String getName(String prefix, String localName) {
+		// prefixed names never match a step name, only a *
+		return (prefix == null || prefix.length() == 0) ? localName : prefix + ":" + localName;
+	}
+}
@@ -22,6 +22,7 @@ import javax.mail.MessagingException;
 import javax.mail.Multipart;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
 
 import org.apache.xml.serialize.OutputFormat;
@@ -33,6 +34,7 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
 
 import com.isencia.passerelle.core.PasserelleException;
 import com.isencia.passerelle.message.ManagedMessage;
@@ -51,6 +53,8 @@ public class XmlMessageHelper {
 	
     private static Logger logger = LoggerFactory.getLogger(XmlMessageHelper.class);
 
+    // looking up and creating a parser is expensive, so each thread keeps one
+    private final static ThreadLocal<DocumentBuilder> documentBuilders = new ThreadLocal<DocumentBuilder>();
 	
 	public static ManagedMessage getMessageFromXML(String xmlText) throws MessageException {
 		return MessageBuilder.buildFromXML(xmlText);
@@ -81,6 +85,17 @@ public class XmlMessageHelper {
 	 * @throws MessageException 
 	 */
 	public static NodeList selectWithXPath(String expression, ManagedMessage message) throws MessageException {
+		return selectWithXPath(new CompiledXPath(expression), message);
+	}
+
+	/**
+	 * 
+	 * @param expression
+	 * @param message
+	 * @return a list of all nodes in the message body that match the XPATH expression
+	 * @throws MessageException 
+	 */
+	public static NodeList selectWithXPath(CompiledXPath expression, ManagedMessage message) throws MessageException {
 		Object[] inputs = MessageHelper.getFilteredContent(message, new String[] { "text/xml","text/plain","text/html" });
 		NodeList nodeList=null;
 		boolean matchFound=false;
@@ -93,11 +108,8 @@ public class XmlMessageHelper {
 						logger.debug("selectWithXPath() - Content :" + inputs[i]);
 					}
 
-					DocumentBuilderFactory docBldFactory = DocumentBuilderFactory.newInstance();
-					DocumentBuilder docBld = docBldFactory.newDocumentBuilder();
-					InputSource data = new InputSource(new StringReader((String) message.getBodyContentAsString()));
-					Node doc = docBld.parse(data);
-					nodeList = XPathAPI.selectNodeList(doc, expression);
+					Node doc = parseDocument(message.getBodyContentAsString());
+					nodeList = expression.selectNodes(doc);
 					matchFound = (nodeList.getLength() > 0);
 				}
 			} catch (Exception e) {
@@ -110,6 +122,65 @@ public class XmlMessageHelper {
 		return nodeList;
 	}
 
+	/**
+	 * Checks whether an XPATH expression selects any node in the message body.
+	 * For streamable expressions, the body is only read until the first match, without building a DOM.
+	 * 
+	 * @param expression
+	 * @param message
+	 * @return true if the expression selects at least one node in the message body
+	 * @throws MessageException
+	 */
+	public static boolean matchesXPath(CompiledXPath expression, ManagedMessage message) throws MessageException {
+		if (!expression.isStreamable()) {
+			NodeList nodeList = selectWithXPath(expression, message);
+			return nodeList != null && nodeList.getLength() > 0;
+		}
+		Object[] inputs = MessageHelper.getFilteredContent(message, new String[] { "text/xml","text/plain","text/html" });
+		if ((inputs != null) && (inputs.length > 0)) {
+			try {
+				return expression.matches(new StringReader(message.getBodyContentAsString()));
+			} catch (Exception e) {
+				throw new MessageException(PasserelleException.Severity.NON_FATAL,"",message,e);
+			}
+		} else if (logger.isDebugEnabled()) {
+			logger.debug("matchesXPath() - No valid content in "+message);
+		}
+		return false;
+	}
+
+	/**
+	 * 
+	 * @return a DocumentBuilder for usage in the current thread only
+	 * @throws ParserConfigurationException
+	 */
+	public static DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+		DocumentBuilder docBld = documentBuilders.get();
+		if (docBld != null) {
+			try {
+				docBld.reset();
+				return docBld;
+			} catch (UnsupportedOperationException e) {
+				// an older parser, just use a new one each time
+			}
+		}
+		docBld = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		documentBuilders.set(docBld);
+		return docBld;
+	}
+
+	/**
+	 * 
+	 * @param xmlText
+	 * @return the DOM of the XML text
+	 * @throws ParserConfigurationException
+	 * @throws SAXException
+	 * @throws IOException
+	 */
+	public static Document parseDocument(String xmlText) throws ParserConfigurationException, SAXException, IOException {
+		return getDocumentBuilder().parse(new InputSource(new StringReader(xmlText)));
+	}
+
     /**
      * 
      * @param message
@@ -153,10 +224,7 @@ public class XmlMessageHelper {
     public static void setContentWithXPath(String newText, String expression, ManagedMessage message) throws MessageException {
         try {
             // deserialize
-            DocumentBuilderFactory docBldFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder docBld = docBldFactory.newDocumentBuilder();
-            InputSource data = new InputSource(new StringReader((String) message.getBodyContentAsString()));
-            Document doc = docBld.parse(data);
+            Document doc = parseDocument(message.getBodyContentAsString());
             setContentWithXPath(newText, expression, doc);
             // Serialize
             OutputFormat format = new OutputFormat(doc);
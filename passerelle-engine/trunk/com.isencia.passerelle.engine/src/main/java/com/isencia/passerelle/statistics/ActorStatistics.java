@@ -15,9 +15,14 @@
 package com.isencia.passerelle.statistics;
 
 
+import java.util.concurrent.TimeUnit;
+
 import com.isencia.passerelle.actor.Actor;
 
 /**
+ * 
+ * Cycle and idle times of an actor, in msec, 
+ * and their percentiles in microseconds.
  * 
  * @author erwin dl
  */
@@ -61,7 +66,7 @@ public class ActorStatistics implements ActorStatisticsMBean, NamedStatistics {
 
 	public long getAvgCycleTime() {
 		try {
-			return cycleStatistics.getAvgProcessingTime();
+			return TimeUnit.NANOSECONDS.toMillis(cycleStatistics.getAvgProcessingTime());
 		} catch (InsufficientDataException e) {
 			return 0;
 		}
@@ -69,7 +74,7 @@ public class ActorStatistics implements ActorStatisticsMBean, NamedStatistics {
 	
 	public long getAvgIdleTime() {
 		try {
-			return cycleStatistics.getAvgIdleTime();
+			return TimeUnit.NANOSECONDS.toMillis(cycleStatistics.getAvgIdleTime());
 		} catch (InsufficientDataException e) {
 			return 0;
 		}
@@ -77,7 +82,7 @@ public class ActorStatistics implements ActorStatisticsMBean, NamedStatistics {
 
 	public long getMinCycleTime() {
 		try {
-			return cycleStatistics.getMinProcessingTime();
+			return TimeUnit.NANOSECONDS.toMillis(cycleStatistics.getMinProcessingTime());
 		} catch (InsufficientDataException e) {
 			return 0;
 		}
@@ -85,7 +90,7 @@ public class ActorStatistics implements ActorStatisticsMBean, NamedStatistics {
 	
 	public long getMinIdleTime() {
 		try {
-			return cycleStatistics.getMinIdleTime();
+			return TimeUnit.NANOSECONDS.toMillis(cycleStatistics.getMinIdleTime());
 		} catch (InsufficientDataException e) {
 			return 0;
 		}
@@ -93,7 +98,7 @@ public class ActorStatistics implements ActorStatisticsMBean, NamedStatistics {
 
 	public long getMaxCycleTime() {
 		try {
-			return cycleStatistics.getMaxProcessingTime();
+			return TimeUnit.NANOSECONDS.toMillis(cycleStatistics.getMaxProcessingTime());
 		} catch (InsufficientDataException e) {
 			return 0;
 		}
@@ -101,7 +106,47 @@ public class ActorStatistics implements ActorStatisticsMBean, NamedStatistics {
 	
 	public long getMaxIdleTime() {
 		try {
-			return cycleStatistics.getMaxIdleTime();
+			return TimeUnit.NANOSECONDS.toMillis(cycleStatistics.getMaxIdleTime());
+		} catch (InsufficientDataException e) {
+			return 0;
+		}
+	}
+
+	public long getCycleTimeP50Micros() {
+		return getCycleTimePercentileMicros(50.0);
+	}
+
+	public long getCycleTimeP99Micros() {
+		return getCycleTimePercentileMicros(99.0);
+	}
+
+	public long getCycleTimeP999Micros() {
+		return getCycleTimePercentileMicros(99.9);
+	}
+
+	public long getIdleTimeP50Micros() {
+		return getIdleTimePercentileMicros(50.0);
+	}
+
+	public long getIdleTimeP99Micros() {
+		return getIdleTimePercentileMicros(99.0);
+	}
+
+	public long getIdleTimeP999Micros() {
+		return getIdleTimePercentileMicros(99.9);
+	}
+
+	private long getCycleTimePercentileMicros(double percentile) {
+		try {
+			return TimeUnit.NANOSECONDS.toMicros(cycleStatistics.getProcessingTimePercentile(percentile));
+		} catch (InsufficientDataException e) {
+			return 0;
+		}
+	}
+
+	private long getIdleTimePercentileMicros(double percentile) {
+		try {
+			return TimeUnit.NANOSECONDS.toMicros(cycleStatistics.getIdleTimePercentile(percentile));
 		} catch (InsufficientDataException e) {
 			return 0;
 		}
@@ -27,6 +27,14 @@ public interface ActorStatisticsMBean {
 	long getMinIdleTime();
 	long getMaxIdleTime();
 	
+	// percentiles in microseconds
+	long getCycleTimeP50Micros();
+	long getCycleTimeP99Micros();
+	long getCycleTimeP999Micros();
+	long getIdleTimeP50Micros();
+	long getIdleTimeP99Micros();
+	long getIdleTimeP999Micros();
+	
 	void reset();
 
 }
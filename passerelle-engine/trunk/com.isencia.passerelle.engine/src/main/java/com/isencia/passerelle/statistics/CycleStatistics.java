@@ -14,8 +14,6 @@
 */
 package com.isencia.passerelle.statistics;
 
-import java.util.Date;
-
 
 /**
  * A container for counting and timing information about (processing) cycles.
@@ -26,6 +24,9 @@ import java.util.Date;
  * Actual "public" statistics are provided by specific wrapper classes,
  * related to actual passerelle components (actors, ports,...).
  * <p>
+ * All times are measured with System.nanoTime() and are returned in ns.
+ * The data may be read from other threads (e.g. JMX) while cycles are going on.
+ * <p>
  * <b>Implementation not:</b> the current implementation assumes the thing is in the 
  * <i>idle</i> state when a CycleStatistics instance is created. 
  * So, the time interval from instance construction time until the first call to acceptCycleBegin()
@@ -38,21 +39,26 @@ final class CycleStatistics {
 	
 	// boolean flag to maintain whether we're
 	// in a cycle (idle==false) or in-between cycles (idle==true)
-	private boolean idle=true;
+	private volatile boolean idle=true;
 	
-	private Date lastCycleStartTime;
-	private Date lastCycleEndTime=new Date();
+	private volatile long lastCycleStartTime;
+	private volatile long lastCycleEndTime=System.nanoTime();
 	
-	private StatisticalLongData idleData = new StatisticalLongData();
-	private StatisticalLongData cycleData = new StatisticalLongData();
+	private final StatisticalLongData idleData;
+	private final StatisticalLongData cycleData;
+	
+	public CycleStatistics() {
+		boolean withHistograms = StatisticsServiceFactory.isStatisticsEnabled();
+		idleData = new StatisticalLongData(withHistograms);
+		cycleData = new StatisticalLongData(withHistograms);
+	}
 	
 	/**
 	 * Loose all statistical data.
 	 *
 	 */
 	public void reset() {
-		lastCycleStartTime=null;
-		lastCycleEndTime=new Date();
+		lastCycleEndTime=System.nanoTime();
 		idle=true;
 		idleData.reset();
 		cycleData.reset();
@@ -66,8 +72,9 @@ final class CycleStatistics {
 		if(!idle)
 			throw new IllegalStateException("Not idle");
 		idle=false;
-		lastCycleStartTime = new Date();
-		idleData.acceptData(lastCycleStartTime.getTime() - lastCycleEndTime.getTime());
+		long now = System.nanoTime();
+		lastCycleStartTime = now;
+		idleData.acceptData(now - lastCycleEndTime);
 	}
 	
 	/**
@@ -78,8 +85,9 @@ final class CycleStatistics {
 		if(idle)
 			throw new IllegalStateException("Idle");
 		idle=true;
-		lastCycleEndTime = new Date();
-		cycleData.acceptData(lastCycleEndTime.getTime()-lastCycleStartTime.getTime());
+		long now = System.nanoTime();
+		lastCycleEndTime = now;
+		cycleData.acceptData(now - lastCycleStartTime);
 	}
 	
 	public long getAvgIdleTime() throws InsufficientDataException {
@@ -94,6 +102,10 @@ final class CycleStatistics {
 		return idleData.getMaxData();
 	}
 	
+	public long getIdleTimePercentile(double percentile) throws InsufficientDataException {
+		return idleData.getPercentileData(percentile);
+	}
+	
 	public long getAvgProcessingTime() throws InsufficientDataException {
 		return cycleData.getAvgData();
 	}
@@ -106,8 +118,12 @@ final class CycleStatistics {
 		return cycleData.getMaxData();
 	}
 	
+	public long getProcessingTimePercentile(double percentile) throws InsufficientDataException {
+		return cycleData.getPercentileData(percentile);
+	}
+	
 	public long getNrCycles() {
 		return cycleData.getCount();
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
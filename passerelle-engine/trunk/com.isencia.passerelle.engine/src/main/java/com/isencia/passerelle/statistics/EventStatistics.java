@@ -15,6 +15,7 @@
 package com.isencia.passerelle.statistics;
 
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A container for counting and timing information about arbitrary
@@ -24,22 +25,28 @@ import java.util.Date;
  * Actual "public" statistics are provided by specific wrapper classes,
  * related to actual passerelle components (actors, ports,...).
  * 
+ * Events may be accepted concurrently from multiple threads.
+ * Intervals are measured with System.nanoTime() and are returned in ns.
+ * 
  * @author erwin
  *
  */
 final class EventStatistics {
 	
-	private Date lastTime=new Date();
-	private StatisticalLongData statData = new StatisticalLongData();
+	private final AtomicLong lastTime=new AtomicLong(System.nanoTime());
+	private volatile long lastTimeMillis=System.currentTimeMillis();
+	private final StatisticalLongData statData = new StatisticalLongData(StatisticsServiceFactory.isStatisticsEnabled());
 	
 	/**
 	 * Add a new event, and recalculate all interval data.
 	 *
 	 */
 	public void acceptEvent(Object event) {
-		Date time = new Date();
-		statData.acceptData(time.getTime() - lastTime.getTime());
-		lastTime = time;
+		long time = System.nanoTime();
+		long previousTime = lastTime.getAndSet(time);
+		// with concurrent events, the previous one may have been timed slightly later
+		statData.acceptData(Math.max(0, time - previousTime));
+		lastTimeMillis = System.currentTimeMillis();
 	}
 	
 	/**
@@ -47,7 +54,8 @@ final class EventStatistics {
 	 *
 	 */
 	void reset() {
-		lastTime=new Date();
+		lastTime.set(System.nanoTime());
+		lastTimeMillis=System.currentTimeMillis();
 		statData.reset();
 	}
 
@@ -63,7 +71,7 @@ final class EventStatistics {
 	 * @return Returns the lastTime.
 	 */
 	public Date getLastTime() {
-		return lastTime;
+		return new Date(lastTimeMillis);
 	}
 	
 	/**
@@ -82,6 +90,15 @@ final class EventStatistics {
 		return statData.getMinData();
 	}
 
+	/**
+	 * @param percentile e.g. 99.0
+	 * @return the interval below which the given percentage of the intervals fall
+	 * @throws InsufficientDataException 
+	 */
+	public long getIntervalPercentile(double percentile) throws InsufficientDataException {
+		return statData.getPercentileData(percentile);
+	}
+
 	public boolean isWaitingForSufficientData() {
 		return statData.isWaitingForSufficientData();
 	}
@@ -94,9 +111,9 @@ final class EventStatistics {
 			StringBuffer buffer = new StringBuffer();
 			buffer.append("[EventStatistics:");
 			buffer.append(" lastTime: ");
-			buffer.append(lastTime);
+			buffer.append(getLastTime());
 			buffer.append(statData);
 			buffer.append("]");
 			return buffer.toString();
 		}
-}
\ No newline at end of file
+}
\ No newline at end of file
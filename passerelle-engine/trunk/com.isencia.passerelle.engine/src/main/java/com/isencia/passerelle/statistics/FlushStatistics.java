@@ -0,0 +1,109 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.statistics;
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.isencia.passerelle.actor.Actor;
+
+/**
+ * 
+ * Nr of flushes, bytes written and flush times in microseconds,
+ * for actors that write their data in a buffered way.
+ * 
+ * @author erwin dl
+ */
+public class FlushStatistics implements FlushStatisticsMBean, NamedStatistics {
+	
+	private Actor actor;
+	
+	private final StatisticalLongData flushData = new StatisticalLongData(StatisticsServiceFactory.isStatisticsEnabled());
+	private final AtomicLong bytesWritten = new AtomicLong();
+
+	public FlushStatistics(Actor actor) {
+		this.actor=actor;
+	}
+	
+	/**
+	 * 
+	 * @param duration the flush time in ns
+	 * @param byteCount the nr of bytes written since the previous flush, ignored if negative
+	 */
+	public void acceptFlush(long duration, long byteCount) {
+		flushData.acceptData(duration);
+		if(byteCount>0) {
+			bytesWritten.addAndGet(byteCount);
+		}
+	}
+	
+	public Actor getActor() {
+		return actor;
+	}
+
+	public String getName() {
+		return getActor().getFullName()+".flushes";
+	}
+
+	public long getNrFlushes() {
+		return flushData.getCount();
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	public void reset() {
+		flushData.reset();
+		bytesWritten.set(0);
+	}
+
+	public long getAvgFlushTimeMicros() {
+		try {
+			return TimeUnit.NANOSECONDS.toMicros(flushData.getAvgData());
+		} catch (InsufficientDataException e) {
+			return 0;
+		}
+	}
+
+	public long getMaxFlushTimeMicros() {
+		try {
+			return TimeUnit.NANOSECONDS.toMicros(flushData.getMaxData());
+		} catch (InsufficientDataException e) {
+			return 0;
+		}
+	}
+
+	public long getFlushTimeP50Micros() {
+		return getFlushTimePercentileMicros(50.0);
+	}
+
+	public long getFlushTimeP99Micros() {
+		return getFlushTimePercentileMicros(99.0);
+	}
+
+	public long getFlushTimeP999Micros() {
+		return getFlushTimePercentileMicros(99.9);
+	}
+
+	private long getFlushTimePercentileMicros(double percentile) {
+		try {
+			return TimeUnit.NANOSECONDS.toMicros(flushData.getPercentileData(percentile));
+		} catch (InsufficientDataException e) {
+			return 0;
+		}
+	}
+}
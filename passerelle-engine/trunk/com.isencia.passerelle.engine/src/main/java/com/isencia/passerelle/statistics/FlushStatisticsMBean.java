@@ -0,0 +1,34 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.statistics;
+
+/**
+ * @author erwin dl
+ */
+public interface FlushStatisticsMBean {
+
+	long getNrFlushes();
+	long getBytesWritten();
+	
+	// flush times in microseconds
+	long getAvgFlushTimeMicros();
+	long getMaxFlushTimeMicros();
+	long getFlushTimeP50Micros();
+	long getFlushTimeP99Micros();
+	long getFlushTimeP999Micros();
+	
+	void reset();
+
+}
@@ -0,0 +1,109 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.statistics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of time intervals in nanoseconds, to obtain percentiles.
+ * <p>
+ * Like an HDR histogram, the buckets are log-linear : per power of 2,
+ * there are 16 linear sub-buckets. So the reported values are within about 6%
+ * of the recorded ones, with a fixed memory size, whatever the range of the data.
+ * Values above ~18 minutes are all counted in the highest bucket.
+ * </p>
+ * <p>
+ * For the moment, this class is only meant for usage in this package.
+ * </p>
+ *
+ * @author erwin dl
+ */
+final class LatencyHistogram {
+
+	private final static int SUB_BUCKET_BITS = 4;
+	private final static int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	// 2^40 ns is about 18 minutes
+	private final static int MAX_VALUE_BITS = 40;
+	private final static long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+	private final static int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+	/**
+	 * @param value a time interval in ns; negative values are counted as 0
+	 */
+	public void record(long value) {
+		counts.incrementAndGet(getBucketIndex(value));
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts.set(i, 0);
+		}
+	}
+
+	/**
+	 *
+	 * @param percentile e.g. 50.0, 99.0 or 99.9
+	 * @return the (upper bound of the bucket of the) value below which the given percentage of the recorded values fall,
+	 * or 0 if nothing has been recorded yet
+	 */
+	public long getValueAtPercentile(double percentile) {
+		// take a copy, as other threads may be recording meanwhile
+		long[] snapshot = new long[BUCKET_COUNT];
+		long total = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long threshold = (long) Math.ceil(total * Math.min(percentile, 100.0) / 100.0);
+		if (threshold < 1) {
+			threshold = 1;
+		}
+		long count = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			count += snapshot[i];
+			if (count >= threshold) {
+				return getBucketUpperBound(i);
+			}
+		}
+		return getBucketUpperBound(BUCKET_COUNT - 1);
+	}
+
+	static int getBucketIndex(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return value < 0 ? 0 : (int) value;
+		}
+		if (value > MAX_VALUE) {
+			value = MAX_VALUE;
+		}
+		int highestBit = 63 - Long.numberOfLeadingZeros(value);
+		int shift = highestBit - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+		return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	static long getBucketUpperBound(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		long subBucket = index % SUB_BUCKET_COUNT;
+		return ((subBucket + SUB_BUCKET_COUNT + 1) << shift) - 1;
+	}
+}
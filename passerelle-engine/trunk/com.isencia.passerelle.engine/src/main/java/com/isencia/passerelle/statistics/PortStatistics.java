@@ -15,12 +15,17 @@
 package com.isencia.passerelle.statistics;
 
 
+import java.util.concurrent.TimeUnit;
+
 import com.isencia.passerelle.core.Port;
 import com.isencia.passerelle.message.ManagedMessage;
 
 /**
  * PortStatistics
  * 
+ * Counts and inter-arrival times of the messages sent and received on a port.
+ * Ports may send and receive messages from several threads concurrently.
+ * 
  * @author erwin dl
  */
 public class PortStatistics implements PortStatisticsMBean, NamedStatistics {
@@ -69,7 +74,7 @@ public class PortStatistics implements PortStatisticsMBean, NamedStatistics {
 	 */
 	public long getAvgIntervalSentMessages() {
 		try {
-			return sendingStatistics.getAvgInterval();
+			return TimeUnit.NANOSECONDS.toMillis(sendingStatistics.getAvgInterval());
 		} catch (InsufficientDataException e) {
 			return 0;
 		}
@@ -84,12 +89,36 @@ public class PortStatistics implements PortStatisticsMBean, NamedStatistics {
 	 */
 	public long getAvgIntervalReceivedMessages() {
 		try {
-			return receiptStatistics.getAvgInterval();
+			return TimeUnit.NANOSECONDS.toMillis(receiptStatistics.getAvgInterval());
 		} catch (InsufficientDataException e) {
 			return 0;
 		}
 	}
 
+	public long getIntervalSentMessagesP50Micros() {
+		return getIntervalPercentileMicros(sendingStatistics, 50.0);
+	}
+
+	public long getIntervalSentMessagesP99Micros() {
+		return getIntervalPercentileMicros(sendingStatistics, 99.0);
+	}
+
+	public long getIntervalSentMessagesP999Micros() {
+		return getIntervalPercentileMicros(sendingStatistics, 99.9);
+	}
+
+	public long getIntervalReceivedMessagesP50Micros() {
+		return getIntervalPercentileMicros(receiptStatistics, 50.0);
+	}
+
+	public long getIntervalReceivedMessagesP99Micros() {
+		return getIntervalPercentileMicros(receiptStatistics, 99.0);
+	}
+
+	public long getIntervalReceivedMessagesP999Micros() {
+		return getIntervalPercentileMicros(receiptStatistics, 99.9);
+	}
+
 	public void reset() {
 		receiptStatistics.reset();
 		sendingStatistics.reset();
@@ -98,4 +127,12 @@ public class PortStatistics implements PortStatisticsMBean, NamedStatistics {
 	public String getName() {
 		return getPort().getFullName();
 	}
+
+	private static long getIntervalPercentileMicros(EventStatistics statistics, double percentile) {
+		try {
+			return TimeUnit.NANOSECONDS.toMicros(statistics.getIntervalPercentile(percentile));
+		} catch (InsufficientDataException e) {
+			return 0;
+		}
+	}
 }
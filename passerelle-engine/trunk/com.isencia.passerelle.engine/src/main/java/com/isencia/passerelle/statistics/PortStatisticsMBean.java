@@ -26,6 +26,14 @@ public interface PortStatisticsMBean {
 	long getNrReceivedMessages();
 	long getAvgIntervalReceivedMessages();
 	
+	// percentiles in microseconds
+	long getIntervalSentMessagesP50Micros();
+	long getIntervalSentMessagesP99Micros();
+	long getIntervalSentMessagesP999Micros();
+	long getIntervalReceivedMessagesP50Micros();
+	long getIntervalReceivedMessagesP99Micros();
+	long getIntervalReceivedMessagesP999Micros();
+	
 	void reset();
 
 }
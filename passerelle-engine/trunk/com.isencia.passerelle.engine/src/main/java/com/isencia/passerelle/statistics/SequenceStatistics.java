@@ -0,0 +1,68 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.statistics;
+
+import com.isencia.passerelle.actor.Actor;
+import com.isencia.passerelle.message.internal.sequence.SequenceRegistry;
+
+/**
+ * 
+ * The live sequences of an actor that tracks or aggregates sequences,
+ * with their estimated memory footprint, and the nrs of completed and evicted sequences.
+ * 
+ * @author erwin dl
+ */
+public class SequenceStatistics implements SequenceStatisticsMBean, NamedStatistics {
+	
+	private Actor actor;
+	private SequenceRegistry<?> registry;
+
+	public SequenceStatistics(Actor actor, SequenceRegistry<?> registry) {
+		this.actor=actor;
+		this.registry=registry;
+	}
+	
+	public Actor getActor() {
+		return actor;
+	}
+
+	public String getName() {
+		return getActor().getFullName()+".sequences";
+	}
+
+	public int getLiveSequenceCount() {
+		return registry.size();
+	}
+
+	public int getMaxLiveSequenceCount() {
+		return registry.getMaxSize();
+	}
+
+	public long getCompletedSequenceCount() {
+		return registry.getCompletedCount();
+	}
+
+	public long getEvictedSequenceCount() {
+		return registry.getEvictedCount();
+	}
+
+	public long getEstimatedMemoryBytes() {
+		return registry.getEstimatedSize();
+	}
+
+	public void reset() {
+		registry.resetCounts();
+	}
+}
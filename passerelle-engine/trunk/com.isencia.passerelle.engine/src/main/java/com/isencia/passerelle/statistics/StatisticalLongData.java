@@ -14,93 +14,141 @@
 */
 package com.isencia.passerelle.statistics;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 
 /**
  * StatisticalLongData
- * 
+ *
+ * Maintains count, average, min and max of a series of values,
+ * and optionally a histogram to obtain percentiles.
+ * Data can be added concurrently from multiple threads, without locking.
+ *
  * @author erwin dl
  */
 class StatisticalLongData {
-	
-	long count;
-	long avgData;
-	Long minData;
-	Long maxData;
+
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sumData = new AtomicLong();
+	private final AtomicLong minData = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong maxData = new AtomicLong(Long.MIN_VALUE);
+
+	// null if no percentiles are needed
+	private final LatencyHistogram histogram;
+
+	public StatisticalLongData() {
+		this(false);
+	}
+
+	/**
+	 * @param withHistogram true if percentiles must be available
+	 */
+	public StatisticalLongData(boolean withHistogram) {
+		histogram = withHistogram ? new LatencyHistogram() : null;
+	}
 
 	/**
 	 * Recalculate statistics, including this new data
 	 * @param data
 	 */
 	public void acceptData(long data) {
-		count++;
-		if((minData==null) || (minData.longValue()>data)) {
-			minData = new Long(data);
+		count.incrementAndGet();
+		sumData.addAndGet(data);
+		long min;
+		while (data < (min = minData.get()) && !minData.compareAndSet(min, data)) {
+			// retry
 		}
-		if((maxData==null) || (maxData.longValue()<data)) {
-			maxData = new Long(data);
+		long max;
+		while (data > (max = maxData.get()) && !maxData.compareAndSet(max, data)) {
+			// retry
+		}
+		if (histogram != null) {
+			histogram.record(data);
 		}
-		avgData += (data - avgData) / count;
 	}
-	
+
 	/**
 	 * Loose all statistical data
 	 *
 	 */
 	public void reset() {
-		count=0;
-		avgData=0;
-		minData=null;
-		maxData=null;
+		count.set(0);
+		sumData.set(0);
+		minData.set(Long.MAX_VALUE);
+		maxData.set(Long.MIN_VALUE);
+		if (histogram != null) {
+			histogram.reset();
+		}
 	}
-	
+
 	public long getAvgData() throws InsufficientDataException {
-		if(isWaitingForSufficientData())
+		long c = count.get();
+		if(c==0)
 			throw new InsufficientDataException();
-		
-		return avgData;
+
+		return sumData.get() / c;
 	}
-	
+
 	/**
 	 * @return Returns the maximal data value received.
-	 * @throws InsufficientDataException 
+	 * @throws InsufficientDataException
 	 */
 	public long getMaxData() throws InsufficientDataException {
-		if(isWaitingForSufficientData())
+		long max = maxData.get();
+		if(max==Long.MIN_VALUE)
 			throw new InsufficientDataException();
-		
-		return maxData.longValue();
+
+		return max;
 	}
-	
+
 	/**
 	 * @return Returns the minimal data value received.
-	 * @throws InsufficientDataException 
+	 * @throws InsufficientDataException
 	 */
 	public long getMinData() throws InsufficientDataException {
-		if(isWaitingForSufficientData())
+		long min = minData.get();
+		if(min==Long.MAX_VALUE)
+			throw new InsufficientDataException();
+
+		return min;
+	}
+
+	/**
+	 * @param percentile e.g. 99.0
+	 * @return the value below which the given percentage of the data values fall
+	 * @throws InsufficientDataException if no data was received yet, or if no histogram is maintained
+	 */
+	public long getPercentileData(double percentile) throws InsufficientDataException {
+		if(histogram==null || isWaitingForSufficientData())
 			throw new InsufficientDataException();
-		
-		return minData.longValue();
+
+		// the histogram only knows the bucket boundaries
+		return Math.min(histogram.getValueAtPercentile(percentile), maxData.get());
 	}
 
 	public boolean isWaitingForSufficientData() {
-		return count==0;
+		return count.get()==0;
 	}
 
 	public long getCount() {
-		return count;
+		return count.get();
 	}
 
 	public String toString() {
 			StringBuffer buffer = new StringBuffer();
 			buffer.append("[StatisticalLongData:");
 			buffer.append(" count: ");
-			buffer.append(count);
+			buffer.append(count.get());
 			buffer.append(" avgData: ");
-			buffer.append(avgData);
-			buffer.append(" minData: ");
-			buffer.append(minData);
-			buffer.append(" maxData: ");
-			buffer.append(maxData);
+			try {
+				buffer.append(getAvgData());
+				buffer.append(" minData: ");
+				buffer.append(getMinData());
+				buffer.append(" maxData: ");
+				buffer.append(getMaxData());
+			} catch (InsufficientDataException e) {
+				buffer.append("none");
+			}
 			buffer.append("]");
 			return buffer.toString();
 		}
@@ -37,4 +37,13 @@ public class StatisticsServiceFactory {
 		return service;
 	}
 
+	/**
+	 * 
+	 * @return true if the statistics are published, i.e. when the "passerelle.statistics" system property is set.
+	 * Costly details like percentiles are only maintained in that case.
+	 */
+	public static boolean isStatisticsEnabled() {
+		return statisticsEnabled;
+	}
+
 }
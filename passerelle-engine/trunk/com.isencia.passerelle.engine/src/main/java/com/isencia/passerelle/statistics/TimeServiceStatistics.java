@@ -0,0 +1,53 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.statistics;
+
+import com.isencia.passerelle.util.TimeService;
+
+/**
+ * 
+ * The registrations in the shared TimeService : the nr that are still pending, 
+ * and the nrs of executed and missed fires.
+ * 
+ * @author erwin dl
+ */
+public class TimeServiceStatistics implements TimeServiceStatisticsMBean, NamedStatistics {
+	
+	private TimeService timeService;
+
+	public TimeServiceStatistics(TimeService timeService) {
+		this.timeService=timeService;
+	}
+	
+	public String getName() {
+		return "TimeService";
+	}
+
+	public int getPendingTriggerCount() {
+		return timeService.getPendingCount();
+	}
+
+	public long getFiredCount() {
+		return timeService.getFiredCount();
+	}
+
+	public long getMissedFireCount() {
+		return timeService.getMissedCount();
+	}
+
+	public void reset() {
+		timeService.resetCounts();
+	}
+}
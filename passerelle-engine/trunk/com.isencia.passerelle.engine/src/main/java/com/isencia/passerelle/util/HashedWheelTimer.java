@@ -0,0 +1,297 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A timer that can handle large nrs of pending timeouts with little overhead,
+ * e.g. one per message that is delayed by an actor.
+ * <p>
+ * The timeouts are hashed on their deadline in the buckets of a wheel, 
+ * that is turned by one thread. Adding and cancelling a timeout are O(1),
+ * and the thread only waits for the next tick when there are pending timeouts.
+ * The precision is one tick duration.
+ * </p>
+ * <p>
+ * Timeouts with the same deadline expire in the order in which they were added.
+ * The tasks are executed on the timer's thread, so they should be short
+ * and must not block. 
+ * </p>
+ * 
+ * @author erwin dl
+ */
+public class HashedWheelTimer {
+	private final static Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+	public final static long DEFAULT_TICK_DURATION = 1;
+	public final static int DEFAULT_TICKS_PER_WHEEL = 512;
+
+	private static HashedWheelTimer defaultTimer;
+
+	private final String name;
+	// in ns
+	private final long tickDuration;
+	private final Timeout[] wheelHeads;
+	private final Timeout[] wheelTails;
+	private final int mask;
+	private final long startTime = System.nanoTime();
+
+	private final ConcurrentLinkedQueue<Timeout> newTimeouts = new ConcurrentLinkedQueue<Timeout>();
+	private final AtomicInteger pendingCount = new AtomicInteger();
+	private final Object wakeUpLock = new Object();
+	private Thread workerThread;
+	private volatile boolean stopped = false;
+	// only used by the worker thread
+	private long tick = 0;
+
+	/**
+	 * 
+	 * @return the timer shared by all users in this JVM, with a 1ms tick duration
+	 */
+	public static synchronized HashedWheelTimer getDefault() {
+		if (defaultTimer == null) {
+			defaultTimer = new HashedWheelTimer("Passerelle-timer", DEFAULT_TICK_DURATION, DEFAULT_TICKS_PER_WHEEL);
+		}
+		return defaultTimer;
+	}
+
+	/**
+	 * 
+	 * @param name used for the timer's thread
+	 * @param tickDuration in ms
+	 * @param ticksPerWheel rounded up to a power of 2
+	 */
+	public HashedWheelTimer(String name, long tickDuration, int ticksPerWheel) {
+		if (tickDuration <= 0) {
+			throw new IllegalArgumentException("tickDuration must be > 0");
+		}
+		if (ticksPerWheel <= 0) {
+			throw new IllegalArgumentException("ticksPerWheel must be > 0");
+		}
+		int wheelSize = 1;
+		while (wheelSize < ticksPerWheel) {
+			wheelSize <<= 1;
+		}
+		this.name = name;
+		this.tickDuration = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+		wheelHeads = new Timeout[wheelSize];
+		wheelTails = new Timeout[wheelSize];
+		mask = wheelSize - 1;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Schedules the task for execution after the given delay.
+	 * 
+	 * @param task
+	 * @param delay in ms; a delay <= 0 means that the task will be executed at the next tick
+	 * @return the timeout, that can be used to cancel the task
+	 * @throws IllegalStateException if the timer has been stopped
+	 */
+	public Timeout newTimeout(Runnable task, long delay) {
+		if (task == null) {
+			throw new IllegalArgumentException("task can not be null");
+		}
+		if (stopped) {
+			throw new IllegalStateException("Timer " + name + " has been stopped");
+		}
+		long deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(delay, 0));
+		Timeout timeout = new Timeout(task, deadline);
+		newTimeouts.add(timeout);
+		if (pendingCount.getAndIncrement() == 0) {
+			synchronized (wakeUpLock) {
+				startWorker();
+				wakeUpLock.notifyAll();
+			}
+		}
+		return timeout;
+	}
+
+	/**
+	 * @return the nr of timeouts that have not yet expired and have not been cancelled
+	 */
+	public int getPendingCount() {
+		return pendingCount.get();
+	}
+
+	/**
+	 * Stops the timer's thread. Pending timeouts will not expire anymore.
+	 */
+	public void stop() {
+		stopped = true;
+		synchronized (wakeUpLock) {
+			if (workerThread != null) {
+				workerThread.interrupt();
+			}
+		}
+	}
+
+	private void startWorker() {
+		if (workerThread == null) {
+			workerThread = new Thread(new Worker(), name);
+			workerThread.setDaemon(true);
+			workerThread.start();
+		}
+	}
+
+	private class Worker implements Runnable {
+		public void run() {
+			try {
+				while (!stopped) {
+					synchronized (wakeUpLock) {
+						if (pendingCount.get() == 0) {
+							while (pendingCount.get() == 0 && !stopped) {
+								wakeUpLock.wait();
+							}
+							// nothing was pending, so no buckets are skipped
+							tick = (System.nanoTime() - startTime) / tickDuration;
+						}
+					}
+					waitForNextTick();
+					transferNewTimeouts();
+					expireTimeouts((int) (tick & mask));
+					tick++;
+				}
+			} catch (InterruptedException e) {
+				// means we must stop
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug(name + " stopped with " + pendingCount.get() + " pending timeouts");
+			}
+		}
+
+		private void waitForNextTick() throws InterruptedException {
+			long deadline = tickDuration * (tick + 1);
+			long sleepTime = deadline - (System.nanoTime() - startTime);
+			if (sleepTime > 0) {
+				Thread.sleep(sleepTime / 1000000, (int) (sleepTime % 1000000));
+			}
+		}
+
+		private void transferNewTimeouts() {
+			Timeout timeout = null;
+			while ((timeout = newTimeouts.poll()) != null) {
+				if (timeout.isCancelled()) {
+					continue;
+				}
+				long ticks = Math.max(timeout.deadline / tickDuration, tick);
+				timeout.remainingRounds = (ticks - tick) / wheelHeads.length;
+				int index = (int) (ticks & mask);
+				if (wheelTails[index] == null) {
+					wheelHeads[index] = timeout;
+				} else {
+					wheelTails[index].next = timeout;
+				}
+				wheelTails[index] = timeout;
+			}
+		}
+
+		private void expireTimeouts(int index) {
+			Timeout previous = null;
+			Timeout timeout = wheelHeads[index];
+			while (timeout != null) {
+				Timeout next = timeout.next;
+				boolean remove = true;
+				if (timeout.isCancelled()) {
+					// just drop it
+				} else if (timeout.remainingRounds <= 0) {
+					timeout.expire();
+				} else {
+					timeout.remainingRounds--;
+					remove = false;
+				}
+				if (remove) {
+					if (previous == null) {
+						wheelHeads[index] = next;
+					} else {
+						previous.next = next;
+					}
+					if (next == null) {
+						wheelTails[index] = previous;
+					}
+					timeout.next = null;
+				} else {
+					previous = timeout;
+				}
+				timeout = next;
+			}
+		}
+	}
+
+	/**
+	 * A task that is scheduled on a HashedWheelTimer.
+	 */
+	public final class Timeout {
+		private final static int ST_PENDING = 0;
+		private final static int ST_CANCELLED = 1;
+		private final static int ST_EXPIRED = 2;
+
+		private final Runnable task;
+		// in ns, relative to the timer's start time
+		private final long deadline;
+		private final AtomicInteger state = new AtomicInteger(ST_PENDING);
+		// only used by the worker thread
+		private long remainingRounds;
+		private Timeout next;
+
+		private Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		public Runnable getTask() {
+			return task;
+		}
+
+		/**
+		 * @return true if the timeout was cancelled, false if it had already expired or been cancelled
+		 */
+		public boolean cancel() {
+			if (state.compareAndSet(ST_PENDING, ST_CANCELLED)) {
+				pendingCount.decrementAndGet();
+				return true;
+			}
+			return false;
+		}
+
+		public boolean isCancelled() {
+			return state.get() == ST_CANCELLED;
+		}
+
+		public boolean isExpired() {
+			return state.get() == ST_EXPIRED;
+		}
+
+		private void expire() {
+			if (state.compareAndSet(ST_PENDING, ST_EXPIRED)) {
+				pendingCount.decrementAndGet();
+				try {
+					task.run();
+				} catch (Throwable t) {
+					logger.error(name + " error executing timer task " + task, t);
+				}
+			}
+		}
+	}
+}
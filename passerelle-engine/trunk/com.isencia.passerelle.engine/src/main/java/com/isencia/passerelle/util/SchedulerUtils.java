@@ -25,7 +25,8 @@ import org.slf4j.LoggerFactory;
 /**
  * SchedulerUtils
  * 
- * TODO: class comment
+ * Creates Quartz schedulers, each with their own thread pool.
+ * For timed tasks in flows, use the shared TimeService instead.
  * 
  * @author erwin dl
  */
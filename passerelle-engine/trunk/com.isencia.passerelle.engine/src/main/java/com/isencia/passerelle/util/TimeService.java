@@ -0,0 +1,444 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.util;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.quartz.CronTrigger;
+import org.quartz.Trigger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The time service that is shared by all flows in the JVM, for actors
+ * and directors that must do something at given times, e.g. generate a trigger msg.
+ * <p>
+ * All timed tasks are executed by one bounded pool of threads. 
+ * The nr of threads can be set via the system property
+ * <code>com.isencia.passerelle.timeservice.poolsize</code>. By default, it is 2.
+ * So the tasks should be short, e.g. put a msg in a queue of an actor.
+ * </p>
+ * <p>
+ * Each registration has an owner, typically the director of the flow, 
+ * so all registrations of a flow can be cancelled at once when it is wrapped up.
+ * The times at which a task must be executed are determined by a Schedule :
+ * once, at a fixed rate, according to a cron expression, or according to a Quartz trigger.
+ * </p>
+ * <p>
+ * When a task could not be executed within the misfire threshold after its scheduled time,
+ * e.g. because the start date of its schedule is in the past, it is counted as a missed fire. 
+ * Depending on the registration, a missed fire is still executed once, or it is skipped.
+ * The threshold can be set in ms via the system property
+ * <code>com.isencia.passerelle.timeservice.misfirethreshold</code>. By default, it is 60s, as for Quartz.
+ * </p>
+ * 
+ * @author erwin dl
+ */
+public class TimeService {
+	
+	private final static Logger logger = LoggerFactory.getLogger(TimeService.class);
+
+	public final static String POOL_SIZE_PROPERTY = "com.isencia.passerelle.timeservice.poolsize";
+	public final static String MISFIRE_THRESHOLD_PROPERTY = "com.isencia.passerelle.timeservice.misfirethreshold";
+
+	private final static TimeService instance = new TimeService();
+
+	/**
+	 * Determines the times at which a registered task must be executed.
+	 */
+	public interface Schedule {
+		/**
+		 * @param after
+		 * @return the first fire time after the given time, or null if the schedule has ended
+		 */
+		Date getNextFireTime(Date after);
+	}
+
+	/**
+	 * Can be implemented by a task that wants to know when its schedule has ended,
+	 * i.e. when there will be no more executions.
+	 * It is not notified when the registration is cancelled.
+	 */
+	public interface ScheduleEndListener {
+		void scheduleEnded(Registration registration);
+	}
+
+	private final ScheduledThreadPoolExecutor executor;
+	private final long misfireThreshold;
+	// guarded by itself
+	private final Map<Object, Set<Registration>> registrationsByOwner = new HashMap<Object, Set<Registration>>();
+	private final AtomicInteger pendingCount = new AtomicInteger();
+	private final AtomicLong firedCount = new AtomicLong();
+	private final AtomicLong missedCount = new AtomicLong();
+
+	private TimeService() {
+		int poolSize = Math.max(1, getIntProperty(POOL_SIZE_PROPERTY, 2));
+		misfireThreshold = Math.max(0, getIntProperty(MISFIRE_THRESHOLD_PROPERTY, 60000));
+		executor = new ScheduledThreadPoolExecutor(poolSize, new ThreadFactory() {
+			private final AtomicInteger threadCount = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Passerelle-time-service-" + threadCount.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	private static int getIntProperty(String name, int defaultValue) {
+		String valueStr = System.getProperty(name);
+		if (valueStr != null) {
+			try {
+				return Integer.parseInt(valueStr.trim());
+			} catch (NumberFormatException e) {
+				logger.error("Invalid " + name + " " + valueStr + ", using default " + defaultValue);
+			}
+		}
+		return defaultValue;
+	}
+
+	public static TimeService getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Registers a task to be executed according to the given schedule.
+	 * 
+	 * @param owner used to cancel all registrations of e.g. a flow at once
+	 * @param schedule
+	 * @param task
+	 * @param fireMissed if true, a missed fire is still executed once, as soon as possible.
+	 * E.g. when the first fire time of the schedule is in the past, the task is executed immediately.
+	 * If false, missed fires are skipped.
+	 * @return the registration, that can be used to cancel it; 
+	 * or null if the schedule has no fire time anymore
+	 */
+	public Registration schedule(Object owner, Schedule schedule, Runnable task, boolean fireMissed) {
+		if (owner == null || schedule == null || task == null) {
+			throw new IllegalArgumentException("owner, schedule and task are required");
+		}
+		long now = System.currentTimeMillis();
+		Date firstFireTime = schedule.getNextFireTime(new Date(fireMissed ? 0 : now - misfireThreshold - 1));
+		if (firstFireTime == null) {
+			return null;
+		}
+		Registration registration = new Registration(owner, schedule, task, fireMissed);
+		synchronized (registrationsByOwner) {
+			Set<Registration> registrations = registrationsByOwner.get(owner);
+			if (registrations == null) {
+				registrations = new HashSet<Registration>();
+				registrationsByOwner.put(owner, registrations);
+			}
+			registrations.add(registration);
+		}
+		pendingCount.incrementAndGet();
+		registration.scheduleAt(firstFireTime, now);
+		return registration;
+	}
+
+	/**
+	 * Registers a task to be executed once, after the given delay.
+	 * 
+	 * @param owner
+	 * @param delay in ms
+	 * @param task
+	 * @return the registration
+	 */
+	public Registration scheduleOnce(Object owner, long delay, Runnable task) {
+		return schedule(owner, once(new Date(System.currentTimeMillis() + Math.max(0, delay))), task, true);
+	}
+
+	/**
+	 * Registers a task to be executed periodically, until the registration is cancelled.
+	 * Fires that were missed, e.g. because the pool threads were all busy, are skipped.
+	 * 
+	 * @param owner
+	 * @param initialDelay in ms
+	 * @param period in ms
+	 * @param task
+	 * @return the registration
+	 */
+	public Registration scheduleAtFixedRate(Object owner, long initialDelay, long period, Runnable task) {
+		return schedule(owner, fixedRate(new Date(System.currentTimeMillis() + Math.max(0, initialDelay)), period, null), task, false);
+	}
+
+	/**
+	 * Cancels all registrations of the given owner.
+	 * 
+	 * @param owner
+	 * @return the nr of cancelled registrations
+	 */
+	public int cancelAll(Object owner) {
+		Set<Registration> registrations = null;
+		synchronized (registrationsByOwner) {
+			registrations = registrationsByOwner.remove(owner);
+		}
+		int count = 0;
+		if (registrations != null) {
+			for (Iterator<Registration> regItr = registrations.iterator(); regItr.hasNext();) {
+				if (regItr.next().cancel()) {
+					count++;
+				}
+			}
+		}
+		if (count > 0) {
+			// remove the cancelled tasks from the executor's queue
+			executor.purge();
+			if (logger.isDebugEnabled()) {
+				logger.debug("Cancelled " + count + " registrations of " + owner);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the nr of registrations that have not ended and have not been cancelled
+	 */
+	public int getPendingCount() {
+		return pendingCount.get();
+	}
+
+	/**
+	 * @return the nr of executed fires
+	 */
+	public long getFiredCount() {
+		return firedCount.get();
+	}
+
+	/**
+	 * @return the nr of fires that were not executed within the misfire threshold
+	 */
+	public long getMissedCount() {
+		return missedCount.get();
+	}
+
+	/**
+	 * Resets the fired and missed counts
+	 */
+	public void resetCounts() {
+		firedCount.set(0);
+		missedCount.set(0);
+	}
+
+	public long getMisfireThreshold() {
+		return misfireThreshold;
+	}
+
+	/**
+	 * 
+	 * @param time
+	 * @return a schedule with only the given fire time
+	 */
+	public static Schedule once(final Date time) {
+		return new Schedule() {
+			public Date getNextFireTime(Date after) {
+				return time.after(after) ? time : null;
+			}
+		};
+	}
+
+	/**
+	 * 
+	 * @param startTime the first fire time
+	 * @param period in ms
+	 * @param endTime may be null for a schedule without end
+	 * @return a schedule with fire times at a fixed rate
+	 */
+	public static Schedule fixedRate(final Date startTime, final long period, final Date endTime) {
+		if (period <= 0) {
+			throw new IllegalArgumentException("period must be > 0");
+		}
+		return new Schedule() {
+			public Date getNextFireTime(Date after) {
+				long start = startTime.getTime();
+				long next = start;
+				if (after.getTime() >= start) {
+					next = start + ((after.getTime() - start) / period + 1) * period;
+				}
+				return (endTime == null || next <= endTime.getTime()) ? new Date(next) : null;
+			}
+		};
+	}
+
+	/**
+	 * 
+	 * @param cronExpression in the Quartz format, e.g. "0 0 12 ? * MON-FRI"
+	 * @param startTime may be null to start now
+	 * @param endTime may be null for a schedule without end
+	 * @return a schedule with fire times according to the cron expression
+	 * @throws ParseException if the expression is invalid
+	 */
+	public static Schedule cron(String cronExpression, Date startTime, Date endTime) throws ParseException {
+		CronTrigger trigger = new CronTrigger();
+		trigger.setCronExpression(cronExpression);
+		trigger.setStartTime(startTime != null ? startTime : new Date());
+		trigger.setEndTime(endTime);
+		return forTrigger(trigger);
+	}
+
+	/**
+	 * 
+	 * @param trigger a Quartz trigger, with its start and end times
+	 * @return a schedule with the fire times of the trigger. The trigger's misfire instruction is not used.
+	 */
+	public static Schedule forTrigger(final Trigger trigger) {
+		return new Schedule() {
+			public Date getNextFireTime(Date after) {
+				synchronized (trigger) {
+					return trigger.getFireTimeAfter(after);
+				}
+			}
+		};
+	}
+
+	/**
+	 * A task that is registered in the time service.
+	 */
+	public final class Registration implements Runnable {
+		private final Object owner;
+		private final Schedule schedule;
+		private final Runnable task;
+		private final boolean fireMissed;
+		private final AtomicBoolean ended = new AtomicBoolean();
+		private volatile boolean cancelled = false;
+		private volatile Date nextFireTime;
+		private volatile ScheduledFuture<?> future;
+
+		private Registration(Object owner, Schedule schedule, Runnable task, boolean fireMissed) {
+			this.owner = owner;
+			this.schedule = schedule;
+			this.task = task;
+			this.fireMissed = fireMissed;
+		}
+
+		public Object getOwner() {
+			return owner;
+		}
+
+		public Runnable getTask() {
+			return task;
+		}
+
+		/**
+		 * @return the next time at which the task will be executed, or null if the registration has ended
+		 */
+		public Date getNextFireTime() {
+			return ended.get() ? null : nextFireTime;
+		}
+
+		/**
+		 * @return true if the registration was cancelled, false if it had already ended or been cancelled
+		 */
+		public boolean cancel() {
+			cancelled = true;
+			ScheduledFuture<?> f = future;
+			if (f != null) {
+				f.cancel(false);
+			}
+			if (end()) {
+				unregister();
+				return true;
+			}
+			return false;
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		public boolean isEnded() {
+			return ended.get();
+		}
+
+		public void run() {
+			if (cancelled) {
+				return;
+			}
+			long now = System.currentTimeMillis();
+			Date scheduledTime = nextFireTime;
+			boolean missed = now - scheduledTime.getTime() > misfireThreshold;
+			if (missed) {
+				missedCount.incrementAndGet();
+				if (logger.isDebugEnabled()) {
+					logger.debug("Missed fire at " + scheduledTime + " for " + task);
+				}
+			}
+			if (!missed || fireMissed) {
+				firedCount.incrementAndGet();
+				try {
+					task.run();
+				} catch (Throwable t) {
+					logger.error("Error executing timed task " + task, t);
+				}
+			}
+			if (cancelled) {
+				return;
+			}
+			// after a missed fire, skip the other fire times that have passed meanwhile
+			Date next = schedule.getNextFireTime(missed ? new Date(now) : scheduledTime);
+			if (next == null) {
+				if (end()) {
+					unregister();
+					if (task instanceof ScheduleEndListener) {
+						((ScheduleEndListener) task).scheduleEnded(this);
+					}
+				}
+			} else {
+				scheduleAt(next, System.currentTimeMillis());
+			}
+		}
+
+		private void scheduleAt(Date fireTime, long now) {
+			nextFireTime = fireTime;
+			future = executor.schedule(this, Math.max(0, fireTime.getTime() - now), TimeUnit.MILLISECONDS);
+			if (cancelled) {
+				// cancel() may have missed the new future
+				future.cancel(false);
+			}
+		}
+
+		private void unregister() {
+			synchronized (registrationsByOwner) {
+				Set<Registration> registrations = registrationsByOwner.get(owner);
+				if (registrations != null) {
+					registrations.remove(this);
+					if (registrations.isEmpty()) {
+						registrationsByOwner.remove(owner);
+					}
+				}
+			}
+		}
+
+		private boolean end() {
+			if (ended.compareAndSet(false, true)) {
+				pendingCount.decrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.domain.cap;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import ptolemy.actor.NoRoomException;
+import ptolemy.actor.QueueReceiver;
+import ptolemy.data.IntToken;
+import ptolemy.data.Token;
+
+/**
+ * RingBufferReceiverTest
+ * 
+ * Checks the Block, Drop and Fail overflow policies on a receiver without container,
+ * i.e. as used directly by producer and consumer threads.
+ * 
+ * @author erwin dl
+ */
+public class RingBufferReceiverTest extends TestCase {
+
+	private final static int CAPACITY = 2;
+
+	private RingBufferReceiver receiver;
+
+	protected void setUp() throws Exception {
+		receiver = new RingBufferReceiver();
+		receiver.setCapacity(CAPACITY);
+	}
+
+	public void testBlockWaitsForRoom() throws Exception {
+		receiver.setOverflowPolicy(RingBufferReceiver.OverflowPolicy.BLOCK);
+		fill();
+		Producer producer = new Producer(new IntToken(CAPACITY));
+		producer.start();
+		waitTillWriteBlocked();
+		assertFalse("Producer did not block on a full receiver", producer.done.await(100, TimeUnit.MILLISECONDS));
+
+		assertEquals(0, ((IntToken) receiver.get()).intValue());
+		assertTrue("Producer not released after a get", producer.done.await(5, TimeUnit.SECONDS));
+		assertNull(producer.error);
+		for (int i = 1; i <= CAPACITY; i++) {
+			assertEquals(i, ((IntToken) receiver.get()).intValue());
+		}
+		assertEquals(0, receiver.size());
+		assertEquals(0, receiver.getDroppedCount());
+	}
+
+	public void testBlockedProducerReleasedByFinish() throws Exception {
+		receiver.setOverflowPolicy(RingBufferReceiver.OverflowPolicy.BLOCK);
+		fill();
+		Producer producer = new Producer(new IntToken(CAPACITY));
+		producer.start();
+		waitTillWriteBlocked();
+
+		receiver.requestFinish();
+		assertTrue("Producer not released by a finish", producer.done.await(5, TimeUnit.SECONDS));
+		assertNull(producer.error);
+		// the remaining tokens are still delivered, but not the blocked one
+		for (int i = 0; i < CAPACITY; i++) {
+			assertEquals(i, ((IntToken) receiver.get()).intValue());
+		}
+		assertNull(receiver.get());
+		assertTrue(receiver.isFinished());
+	}
+
+	public void testDropDiscardsNewTokens() throws Exception {
+		receiver.setOverflowPolicy(RingBufferReceiver.OverflowPolicy.DROP);
+		fill();
+		receiver.put(new IntToken(CAPACITY));
+		receiver.putArray(new Token[] {new IntToken(CAPACITY + 1), new IntToken(CAPACITY + 2)}, 2);
+		assertEquals(CAPACITY, receiver.size());
+		assertEquals(3, receiver.getDroppedCount());
+
+		assertEquals(0, ((IntToken) receiver.get()).intValue());
+		// there is room again for one token
+		receiver.put(new IntToken(CAPACITY + 3));
+		assertEquals(1, ((IntToken) receiver.get()).intValue());
+		assertEquals(CAPACITY + 3, ((IntToken) receiver.get()).intValue());
+		assertEquals(3, receiver.getDroppedCount());
+	}
+
+	public void testFailThrowsNoRoom() throws Exception {
+		receiver.setOverflowPolicy(RingBufferReceiver.OverflowPolicy.FAIL);
+		fill();
+		try {
+			receiver.put(new IntToken(CAPACITY));
+			fail("Put on a full receiver should fail");
+		} catch (NoRoomException e) {
+			// expected
+		}
+		try {
+			receiver.putArray(new Token[] {new IntToken(CAPACITY + 1)}, 1);
+			fail("PutArray on a full receiver should fail");
+		} catch (NoRoomException e) {
+			// expected
+		}
+		// the queued tokens are not affected
+		assertEquals(CAPACITY, receiver.size());
+		for (int i = 0; i < CAPACITY; i++) {
+			assertEquals(i, ((IntToken) receiver.get()).intValue());
+		}
+		assertEquals(0, receiver.getDroppedCount());
+	}
+
+	public void testPutArrayFailsOnFirstTokenWithoutRoom() throws Exception {
+		receiver.setOverflowPolicy(RingBufferReceiver.OverflowPolicy.FAIL);
+		Token[] tokens = new Token[CAPACITY + 2];
+		for (int i = 0; i < tokens.length; i++) {
+			tokens[i] = new IntToken(i);
+		}
+		try {
+			receiver.putArray(tokens, tokens.length);
+			fail("PutArray beyond the capacity should fail");
+		} catch (NoRoomException e) {
+			// expected
+		}
+		// the tokens before the overflow have been added
+		assertEquals(CAPACITY, receiver.size());
+		for (int i = 0; i < CAPACITY; i++) {
+			assertEquals(i, ((IntToken) receiver.get()).intValue());
+		}
+	}
+
+	public void testInfiniteCapacityNeverOverflows() throws Exception {
+		receiver.setCapacity(QueueReceiver.INFINITE_CAPACITY);
+		receiver.setOverflowPolicy(RingBufferReceiver.OverflowPolicy.FAIL);
+		for (int i = 0; i < 1000; i++) {
+			receiver.put(new IntToken(i));
+		}
+		assertTrue(receiver.hasRoom());
+		assertEquals(1000, receiver.size());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(i, ((IntToken) receiver.get()).intValue());
+		}
+	}
+
+	private void fill() throws NoRoomException {
+		for (int i = 0; i < CAPACITY; i++) {
+			receiver.put(new IntToken(i));
+		}
+		assertFalse(receiver.hasRoom());
+	}
+
+	private void waitTillWriteBlocked() throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!receiver.isWriteBlocked()) {
+			assertTrue("Producer did not block on a full receiver", System.currentTimeMillis() < deadline);
+			Thread.sleep(5);
+		}
+	}
+
+	private class Producer extends Thread {
+		private final Token token;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile Throwable error;
+
+		Producer(Token token) {
+			super("RingBufferReceiverTest-producer");
+			setDaemon(true);
+			this.token = token;
+		}
+
+		public void run() {
+			try {
+				receiver.put(token);
+			} catch (Throwable t) {
+				error = t;
+			} finally {
+				done.countDown();
+			}
+		}
+	}
+}
@@ -0,0 +1,445 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.domain.cap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import junit.framework.TestCase;
+
+import ptolemy.actor.Manager;
+import ptolemy.data.Token;
+import ptolemy.kernel.CompositeEntity;
+import ptolemy.kernel.util.IllegalActionException;
+import ptolemy.kernel.util.NameDuplicationException;
+
+import com.isencia.passerelle.actor.Actor;
+import com.isencia.passerelle.actor.InitializationException;
+import com.isencia.passerelle.actor.ProcessingException;
+import com.isencia.passerelle.actor.Sink;
+import com.isencia.passerelle.actor.Source;
+import com.isencia.passerelle.actor.TerminationException;
+import com.isencia.passerelle.actor.Transformer;
+import com.isencia.passerelle.core.PasserelleException;
+import com.isencia.passerelle.core.Port;
+import com.isencia.passerelle.core.PortFactory;
+import com.isencia.passerelle.core.PortHandler;
+import com.isencia.passerelle.core.PortListenerAdapter;
+import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.message.MessageHelper;
+import com.isencia.passerelle.model.Flow;
+import com.isencia.passerelle.model.FlowManager;
+
+/**
+ * ThreadPoolSchedulingTest
+ * 
+ * Runs small models in the "Thread pool" scheduling mode of the Director,
+ * with actors that read several inputs, that use a listener on their input port,
+ * or that remain blocked in their fire() till their second input arrives.
+ * 
+ * @author erwin dl
+ */
+public class ThreadPoolSchedulingTest extends TestCase {
+
+	private final static String POOL_THREAD_PREFIX = "Passerelle-actor-pool-";
+
+	static {
+		// a small pool, so the tests with blocked actors need more threads than the pool size.
+		// Only effective when no other test has used the pool already in this JVM.
+		if (System.getProperty(ActorScheduler.POOL_SIZE_PROPERTY) == null) {
+			System.setProperty(ActorScheduler.POOL_SIZE_PROPERTY, "2");
+		}
+	}
+
+	public void testActorWithSeveralInputs() throws Exception {
+		int nrOfMessages = 100;
+		Flow flow = createFlow("testActorWithSeveralInputs");
+		NumberSource first = new NumberSource(flow, "first", nrOfMessages);
+		NumberSource second = new NumberSource(flow, "second", nrOfMessages);
+		Pairer pairer = new Pairer(flow, "pairer");
+		CollectingSink sink = new CollectingSink(flow, "sink");
+		flow.connect(first.output, pairer.input);
+		flow.connect(second.output, pairer.second);
+		flow.connect(pairer.output, sink.input);
+
+		new FlowManager().executeBlocking(flow, null);
+
+		assertEquals("Wrong nr of msgs", nrOfMessages, sink.received.size());
+		for (int i = 0; i < nrOfMessages; i++) {
+			assertEquals("Msgs not paired in order", i + "+" + i, sink.received.get(i));
+		}
+		assertRanOnPool(pairer.fireThreads);
+		assertRanOnPool(sink.fireThreads);
+	}
+
+	public void testActorWithListener() throws Exception {
+		int nrOfMessages = 100;
+		Flow flow = createFlow("testActorWithListener");
+		NumberSource source = new NumberSource(flow, "source", nrOfMessages);
+		ListenerSink sink = new ListenerSink(flow, "sink");
+		flow.connect(source.output, sink.input);
+
+		new FlowManager().executeBlocking(flow, null);
+
+		assertEquals("Wrong nr of msgs", nrOfMessages, sink.received.size());
+		for (int i = 0; i < nrOfMessages; i++) {
+			assertEquals("Msgs not received in order", Integer.toString(i), sink.received.get(i));
+		}
+		// the listener is notified from the actor pool, not from a channel handler thread
+		assertRanOnPool(sink.listenerThreads);
+		assertRanOnPool(sink.fireThreads);
+		assertEquals(1, sink.wrapUps);
+	}
+
+	public void testFinishStopAndWrapUp() throws Exception {
+		Flow flow = createFlow("testFinishStopAndWrapUp");
+		NumberSource source = new NumberSource(flow, "source", NumberSource.ENDLESS);
+		Relay relay = new Relay(flow, "relay");
+		CollectingSink sink = new CollectingSink(flow, "sink");
+		flow.connect(source.output, relay.input);
+		flow.connect(relay.output, sink.input);
+
+		// a first run that is stopped while msgs are flowing
+		FlowManager flowManager = new FlowManager();
+		flowManager.executeNonBlocking(flow, null);
+		Manager manager = flow.getManager();
+		waitFor("Msgs did not arrive", new Condition() {
+			public boolean isTrue(Flow flow) {
+				return ((CollectingSink) flow.getEntity("sink")).received.size() >= 10;
+			}
+		}, flow);
+		manager.stop();
+		waitFor("Model did not stop", new Condition() {
+			public boolean isTrue(Flow flow) {
+				return flow.getManager() == null || flow.getManager().getState() == Manager.IDLE;
+			}
+		}, flow);
+		assertEquals(1, relay.wrapUps);
+		assertEquals(1, sink.wrapUps);
+		int sent = relay.relayed;
+		assertTrue("Relay sent more msgs than the sink received", sink.received.size() <= sent);
+		flowManager.stopExecution(flow);
+
+		// and a second run of the same model, that must finish by itself
+		source.nrOfMessages = 50;
+		new FlowManager().executeBlocking(flow, null);
+		assertEquals("Wrong nr of msgs", 50, sink.received.size());
+		assertEquals(2, relay.wrapUps);
+		assertEquals(2, sink.wrapUps);
+		assertRanOnPool(relay.fireThreads);
+	}
+
+	public void testActorsBlockedInFire() throws Exception {
+		final int nrOfPairers = ActorScheduler.getInstance().getPoolSize() + 2;
+		int nrOfMessages = 3;
+		Flow flow = createFlow("testActorsBlockedInFire");
+		NumberSource first = new NumberSource(flow, "first", nrOfMessages);
+		// the second inputs only arrive when all pairers are blocked, waiting for them,
+		// which is only possible when the pool starts extra threads for the blocked ones
+		NumberSource second = new NumberSource(flow, "second", nrOfMessages) {
+			protected void waitBeforeFirstMessage() {
+				long deadline = System.currentTimeMillis() + 10000;
+				while (ActorScheduler.getInstance().getBlockedThreadCount() < nrOfPairers && System.currentTimeMillis() < deadline) {
+					try {
+						Thread.sleep(10);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				maxBlockedThreads = ActorScheduler.getInstance().getBlockedThreadCount();
+			}
+		};
+		CollectingSink sink = new CollectingSink(flow, "sink");
+		for (int i = 0; i < nrOfPairers; i++) {
+			Pairer pairer = new Pairer(flow, "pairer" + i);
+			flow.connect(first.output, pairer.input);
+			flow.connect(second.output, pairer.second);
+			flow.connect(pairer.output, sink.input);
+		}
+
+		new FlowManager().executeBlocking(flow, null);
+
+		assertTrue("Only " + second.maxBlockedThreads + " of " + nrOfPairers + " pairers blocked together", second.maxBlockedThreads >= nrOfPairers);
+		assertEquals("Wrong nr of msgs", nrOfPairers * nrOfMessages, sink.received.size());
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < nrOfMessages; i++) {
+			for (int p = 0; p < nrOfPairers; p++) {
+				expected.add(i + "+" + i);
+			}
+		}
+		List<String> received = new ArrayList<String>(sink.received);
+		Collections.sort(received);
+		Collections.sort(expected);
+		assertEquals(expected, received);
+		assertEquals("Blocked threads not released", 0, ActorScheduler.getInstance().getBlockedThreadCount());
+	}
+
+	private Flow createFlow(String name) throws Exception {
+		Flow flow = new Flow(name, null);
+		Director director = new Director(flow, "director");
+		director.schedulingModeParam.setExpression(Director.SCHEDULING_MODE_THREAD_POOL);
+		return flow;
+	}
+
+	private void assertRanOnPool(Set<String> threadNames) {
+		assertFalse("Actor never ran", threadNames.isEmpty());
+		synchronized (threadNames) {
+			for (String threadName : threadNames) {
+				assertTrue("Actor ran in " + threadName, threadName.startsWith(POOL_THREAD_PREFIX));
+			}
+		}
+	}
+
+	private interface Condition {
+		boolean isTrue(Flow flow);
+	}
+
+	private void waitFor(String failureMsg, Condition condition, Flow flow) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!condition.isTrue(flow)) {
+			assertTrue(failureMsg, System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	private static String getBody(ManagedMessage message) throws ProcessingException {
+		try {
+			return message.getBodyContentAsString();
+		} catch (Exception e) {
+			throw new ProcessingException("", message, e);
+		}
+	}
+
+	/**
+	 * Sends the numbers 0 .. nrOfMessages-1, or till it is stopped
+	 */
+	public static class NumberSource extends Source {
+		final static int ENDLESS = -1;
+		volatile int nrOfMessages;
+		volatile int maxBlockedThreads;
+		private int sent;
+
+		public NumberSource(CompositeEntity container, String name, int nrOfMessages) throws NameDuplicationException, IllegalActionException {
+			super(container, name);
+			this.nrOfMessages = nrOfMessages;
+		}
+
+		protected void doInitialize() throws InitializationException {
+			super.doInitialize();
+			sent = 0;
+		}
+
+		protected void waitBeforeFirstMessage() {
+		}
+
+		protected ManagedMessage getMessage() throws ProcessingException {
+			if (sent == 0) {
+				waitBeforeFirstMessage();
+			}
+			if (sent == nrOfMessages || isFinishRequested()) {
+				return null;
+			}
+			if (nrOfMessages == ENDLESS) {
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException e) {
+					return null;
+				}
+			}
+			try {
+				return createMessage(Integer.toString(sent++), "text/plain");
+			} catch (Exception e) {
+				throw new ProcessingException("", null, e);
+			}
+		}
+
+		protected String getExtendedInfo() {
+			return "";
+		}
+	}
+
+	/**
+	 * Sends its input msgs unchanged
+	 */
+	public static class Relay extends Transformer {
+		final Set<String> fireThreads = Collections.synchronizedSet(new HashSet<String>());
+		volatile int relayed;
+		volatile int wrapUps;
+
+		public Relay(CompositeEntity container, String name) throws NameDuplicationException, IllegalActionException {
+			super(container, name);
+		}
+
+		protected void doInitialize() throws InitializationException {
+			super.doInitialize();
+			relayed = 0;
+		}
+
+		protected void doFire(ManagedMessage message) throws ProcessingException {
+			fireThreads.add(Thread.currentThread().getName());
+			sendOutputMsg(output, message);
+			relayed++;
+		}
+
+		protected void doWrapUp() throws TerminationException {
+			wrapUps++;
+			super.doWrapUp();
+		}
+
+		protected String getExtendedInfo() {
+			return "";
+		}
+	}
+
+	/**
+	 * For each msg on its input, waits for a msg on its second input,
+	 * and sends a msg with both bodies.
+	 */
+	public static class Pairer extends Transformer {
+		public Port second;
+		private PortHandler secondHandler;
+		final Set<String> fireThreads = Collections.synchronizedSet(new HashSet<String>());
+
+		public Pairer(CompositeEntity container, String name) throws NameDuplicationException, IllegalActionException {
+			super(container, name);
+			second = PortFactory.getInstance().createInputPort(this, "second", null);
+		}
+
+		protected void doInitialize() throws InitializationException {
+			super.doInitialize();
+			secondHandler = new PortHandler(second);
+			if (second.getWidth() > 0) {
+				secondHandler.start();
+			}
+		}
+
+		protected void doFire(ManagedMessage message) throws ProcessingException {
+			fireThreads.add(Thread.currentThread().getName());
+			ManagedMessage secondMsg = null;
+			try {
+				secondMsg = MessageHelper.getMessage(secondHandler);
+			} catch (PasserelleException e) {
+				throw new ProcessingException("", message, e);
+			}
+			String secondBody = (secondMsg != null) ? getBody(secondMsg) : "none";
+			try {
+				sendOutputMsg(output, createMessage(getBody(message) + "+" + secondBody, "text/plain"));
+			} catch (Exception e) {
+				throw new ProcessingException("", message, e);
+			}
+		}
+
+		protected String getExtendedInfo() {
+			return "";
+		}
+	}
+
+	public static class CollectingSink extends Sink {
+		final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+		final Set<String> fireThreads = Collections.synchronizedSet(new HashSet<String>());
+		volatile int wrapUps;
+
+		public CollectingSink(CompositeEntity container, String name) throws NameDuplicationException, IllegalActionException {
+			super(container, name);
+		}
+
+		protected void doInitialize() throws InitializationException {
+			super.doInitialize();
+			received.clear();
+		}
+
+		protected void sendMessage(ManagedMessage message) throws ProcessingException {
+			fireThreads.add(Thread.currentThread().getName());
+			received.add(getBody(message));
+		}
+
+		protected void doWrapUp() throws TerminationException {
+			wrapUps++;
+			super.doWrapUp();
+		}
+	}
+
+	/**
+	 * Takes its input msgs via a listener on a PortHandler,
+	 * and collects them in its next iteration.
+	 */
+	public static class ListenerSink extends Actor {
+		public Port input;
+		private PortHandler inputHandler;
+		private final Queue<String> pending = new ConcurrentLinkedQueue<String>();
+		private volatile boolean inputFinished;
+		final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+		final Set<String> listenerThreads = Collections.synchronizedSet(new HashSet<String>());
+		final Set<String> fireThreads = Collections.synchronizedSet(new HashSet<String>());
+		volatile int wrapUps;
+
+		public ListenerSink(CompositeEntity container, String name) throws NameDuplicationException, IllegalActionException {
+			super(container, name);
+			input = PortFactory.getInstance().createInputPort(this, "input", null);
+		}
+
+		protected void doInitialize() throws InitializationException {
+			super.doInitialize();
+			pending.clear();
+			received.clear();
+			inputFinished = false;
+			inputHandler = new PortHandler(input, new PortListenerAdapter() {
+				public void tokenReceived() {
+					listenerThreads.add(Thread.currentThread().getName());
+					Token token = inputHandler.getToken();
+					if (token != null) {
+						try {
+							pending.add(MessageHelper.getMessageFromToken(token).getBodyContentAsString());
+						} catch (Exception e) {
+							fail("Error reading msg " + e);
+						}
+					}
+				}
+
+				public void noMoreTokens() {
+					inputFinished = true;
+				}
+			});
+			inputHandler.start();
+		}
+
+		protected void doFire() throws ProcessingException {
+			fireThreads.add(Thread.currentThread().getName());
+			// all tokens have been passed to the listener before the end is signalled
+			boolean finished = inputFinished;
+			String body = null;
+			while ((body = pending.poll()) != null) {
+				received.add(body);
+			}
+			if (finished) {
+				requestFinish();
+			}
+		}
+
+		protected void doWrapUp() throws TerminationException {
+			wrapUps++;
+			super.doWrapUp();
+		}
+
+		protected String getExtendedInfo() {
+			return "";
+		}
+	}
+}
@@ -0,0 +1,189 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.message.internal.sequence;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+/**
+ * PositionSetTest
+ * 
+ * Checks the contiguous prefix and the window compaction,
+ * against a plain sorted set where the prefix is found by scanning from 0.
+ * 
+ * @author erwin dl
+ */
+public class PositionSetTest extends TestCase {
+
+	public void testOutOfOrderAdds() {
+		PositionSet set = new PositionSet();
+		set.add(2);
+		set.add(4);
+		assertEquals(0, set.getPrefix());
+		set.add(0);
+		assertEquals(1, set.getPrefix());
+		set.add(1);
+		assertEquals(3, set.getPrefix());
+		set.add(3);
+		assertEquals(5, set.getPrefix());
+		// adding again changes nothing
+		set.add(1);
+		set.add(4);
+		assertEquals(5, set.getPrefix());
+		for (int i = 0; i < 5; i++) {
+			assertTrue(set.contains(i));
+		}
+		assertFalse(set.contains(5));
+		assertFalse(set.contains(-1));
+	}
+
+	public void testRemoveBelowPrefix() {
+		PositionSet set = new PositionSet();
+		for (int i = 0; i < 10; i++) {
+			set.add(i);
+		}
+		set.add(12);
+		set.remove(4);
+		assertEquals(4, set.getPrefix());
+		assertFalse(set.contains(4));
+		assertTrue(set.contains(5));
+		assertTrue(set.contains(12));
+		set.add(4);
+		assertEquals(10, set.getPrefix());
+		// removing what is not in the set changes nothing
+		set.remove(11);
+		set.remove(-1);
+		assertEquals(10, set.getPrefix());
+	}
+
+	public void testRemoveBelowWindowStart() {
+		PositionSet set = new PositionSet();
+		for (int i = 0; i < 100; i++) {
+			set.add(i);
+		}
+		set.add(105);
+		assertTrue("Window not compacted", set.getWindowStart() > 0);
+		long windowStart = set.getWindowStart();
+
+		set.remove(windowStart - 10);
+		assertEquals(windowStart - 10, set.getPrefix());
+		assertEquals(windowStart - 10, set.getWindowStart());
+		assertFalse(set.contains(windowStart - 10));
+		for (long i = 0; i < 100; i++) {
+			assertEquals("Position " + i, i != windowStart - 10, set.contains(i));
+		}
+		assertTrue(set.contains(105));
+
+		set.add(windowStart - 10);
+		assertEquals(100, set.getPrefix());
+		set.remove(0);
+		assertEquals(0, set.getPrefix());
+		assertEquals(0, set.getWindowStart());
+		assertTrue(set.contains(1));
+		assertTrue(set.contains(105));
+	}
+
+	public void testLazyCompaction() {
+		PositionSet set = new PositionSet();
+		set.add(10);
+		set.add(30);
+		for (int i = 0; i < 10; i++) {
+			set.add(i);
+		}
+		// the prefix reached 11, not more than half of the window of 31 bits
+		assertEquals(11, set.getPrefix());
+		assertEquals(0, set.getWindowStart());
+		for (int i = 11; i < 16; i++) {
+			set.add(i);
+		}
+		// the prefix reached 16, more than half of the window
+		assertEquals(16, set.getPrefix());
+		assertEquals(16, set.getWindowStart());
+		assertTrue(set.contains(3));
+		assertTrue(set.contains(30));
+		assertFalse(set.contains(17));
+
+		// without any positions after the prefix, the window is emptied
+		for (int i = 16; i < 31; i++) {
+			set.add(i);
+		}
+		assertEquals(31, set.getPrefix());
+		assertEquals(31, set.getWindowStart());
+	}
+
+	public void testPositionOutOfRange() {
+		PositionSet set = new PositionSet();
+		for (int i = 0; i < 1000; i++) {
+			set.add(i);
+		}
+		try {
+			set.add(1000L + Integer.MAX_VALUE + 1);
+			fail("Position too far after the prefix must be refused");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			set.add(-1);
+			fail("Negative position must be refused");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testClear() {
+		PositionSet set = new PositionSet();
+		for (int i = 0; i < 10; i++) {
+			set.add(i);
+		}
+		set.clear();
+		assertEquals(0, set.getPrefix());
+		assertEquals(0, set.getWindowStart());
+		assertFalse(set.contains(0));
+	}
+
+	public void testRandomizedAgainstSortedSet() {
+		Random random = new Random(42);
+		for (int run = 0; run < 50; run++) {
+			PositionSet set = new PositionSet();
+			TreeSet<Long> expected = new TreeSet<Long>();
+			int range = 10 + random.nextInt(500);
+			for (int op = 0; op < 2000; op++) {
+				long position = random.nextInt(range);
+				if (random.nextInt(4) == 0) {
+					set.remove(position);
+					expected.remove(position);
+				} else {
+					set.add(position);
+					expected.add(position);
+				}
+				assertEquals("Run " + run + ", op " + op, getPrefix(expected), set.getPrefix());
+				assertTrue(set.getWindowStart() <= set.getPrefix());
+			}
+			for (long i = 0; i < range; i++) {
+				assertEquals("Run " + run + ", position " + i, expected.contains(i), set.contains(i));
+			}
+		}
+	}
+
+	private static long getPrefix(TreeSet<Long> positions) {
+		long prefix = 0;
+		while (positions.contains(prefix)) {
+			prefix++;
+		}
+		return prefix;
+	}
+}
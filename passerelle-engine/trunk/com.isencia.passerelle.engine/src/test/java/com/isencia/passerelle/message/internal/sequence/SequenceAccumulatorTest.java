@@ -0,0 +1,164 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.message.internal.sequence;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+/**
+ * SequenceAccumulatorTest
+ * 
+ * Checks the elements, msg IDs and completeness of an accumulator,
+ * also when some positions are far beyond the others and are stored sparsely,
+ * against a plain sorted map of the positions.
+ * 
+ * @author erwin dl
+ */
+public class SequenceAccumulatorTest extends TestCase {
+
+	public void testOutOfOrderAndReplaced() {
+		SequenceAccumulator accumulator = new SequenceAccumulator(new Long(1));
+		accumulator.add(2, true, new Long(12), "c");
+		accumulator.add(0, false, new Long(10), "a");
+		assertFalse(accumulator.isComplete());
+		assertEquals(3, accumulator.getElementCount());
+		assertTrue(Arrays.equals(new Object[] { "a", null, "c" }, accumulator.getElements()));
+		assertTrue(Arrays.equals(new long[] { 10, -1, 12 }, accumulator.getMessageIDs()));
+
+		accumulator.add(1, false, new Long(11), "b");
+		assertTrue(accumulator.isComplete());
+		accumulator.add(1, false, new Long(21), "B");
+		assertTrue(Arrays.equals(new Object[] { "a", "B", "c" }, accumulator.getElements()));
+		assertTrue(Arrays.equals(new long[] { 10, 21, 12 }, accumulator.getMessageIDs()));
+
+		// the end must be the msg at the highest position
+		accumulator.add(3, false, new Long(13), "d");
+		assertFalse(accumulator.isComplete());
+	}
+
+	public void testAppend() {
+		SequenceAccumulator accumulator = new SequenceAccumulator(null);
+		assertFalse(accumulator.isComplete());
+		for (int i = 0; i < 100; i++) {
+			accumulator.append(new Long(i), Integer.valueOf(i));
+		}
+		assertEquals(100, accumulator.getElementCount());
+		assertFalse(accumulator.isComplete());
+		Object[] elements = accumulator.getElements();
+		for (int i = 0; i < 100; i++) {
+			assertEquals(Integer.valueOf(i), elements[i]);
+		}
+		accumulator.clear();
+		assertEquals(0, accumulator.getElementCount());
+	}
+
+	public void testSparseFarPosition() {
+		SequenceAccumulator accumulator = new SequenceAccumulator(new Long(1));
+		long emptySize = accumulator.getEstimatedSize();
+		int far = 1000000;
+		accumulator.add(far, true, new Long(99), "far");
+		accumulator.add(0, false, new Long(10), "a");
+		// the arrays do not grow up to the far position
+		assertTrue("Estimated size " + accumulator.getEstimatedSize(), accumulator.getEstimatedSize() < emptySize + 1000);
+		assertEquals(far + 1, accumulator.getElementCount());
+		Object[] elements = accumulator.getElements();
+		assertEquals("a", elements[0]);
+		assertEquals("far", elements[far]);
+		assertNull(elements[far - 1]);
+		long[] messageIDs = accumulator.getMessageIDs();
+		assertEquals(10, messageIDs[0]);
+		assertEquals(99, messageIDs[far]);
+		assertEquals(-1, messageIDs[1]);
+		assertFalse(accumulator.isComplete());
+
+		// replacing a sparse element
+		accumulator.add(far, true, new Long(100), "FAR");
+		assertEquals("FAR", accumulator.getElements()[far]);
+		assertEquals(100, accumulator.getMessageIDs()[far]);
+	}
+
+	public void testPositionOutOfRange() {
+		SequenceAccumulator accumulator = new SequenceAccumulator(new Long(1));
+		try {
+			accumulator.add(-1, false, new Long(1), "a");
+			fail("Negative position must be refused");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			accumulator.add(Integer.MAX_VALUE, false, new Long(1), "a");
+			fail("Too large position must be refused");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testRandomizedAgainstSortedMap() {
+		Random random = new Random(42);
+		for (int run = 0; run < 200; run++) {
+			SequenceAccumulator accumulator = new SequenceAccumulator(new Long(run));
+			TreeMap<Integer, Long> expected = new TreeMap<Integer, Long>();
+			int length = 1 + random.nextInt(200);
+			boolean expectedEnd = false;
+			for (int op = 0; op < 300; op++) {
+				// mostly positions in the sequence, now and then one far beyond it, so it is stored sparsely
+				int position = random.nextInt(20) > 0 ? random.nextInt(length) : length + random.nextInt(10 * length);
+				boolean sequenceEnd = random.nextInt(4) == 0;
+				Long messageID = new Long(random.nextInt(100000));
+				accumulator.add(position, sequenceEnd, messageID, "e" + messageID);
+				if (expected.isEmpty() || position >= expected.lastKey().intValue()) {
+					expectedEnd = sequenceEnd;
+				}
+				expected.put(Integer.valueOf(position), messageID);
+
+				String context = "Run " + run + ", op " + op;
+				int maxPosition = expected.lastKey().intValue();
+				assertEquals(context, maxPosition + 1, accumulator.getElementCount());
+				assertEquals(context, expectedEnd && expected.size() == maxPosition + 1, accumulator.isComplete());
+				if (op % 50 == 0) {
+					assertContent(context, expected, accumulator);
+				}
+			}
+			assertContent("Run " + run, expected, accumulator);
+		}
+	}
+
+	private static void assertContent(String context, TreeMap<Integer, Long> expected, SequenceAccumulator accumulator) {
+		Object[] elements = accumulator.getElements();
+		long[] messageIDs = accumulator.getMessageIDs();
+		int present = 0;
+		for (int i = 0; i < elements.length; i++) {
+			Long messageID = expected.get(Integer.valueOf(i));
+			if (messageID != null) {
+				present++;
+				assertEquals(context + ", position " + i, "e" + messageID, elements[i]);
+				assertEquals(context + ", position " + i, messageID.longValue(), messageIDs[i]);
+			} else {
+				assertNull(context + ", position " + i, elements[i]);
+				assertEquals(context + ", position " + i, -1, messageIDs[i]);
+			}
+		}
+		assertEquals(context, expected.size(), present);
+		long expectedElementsSize = 0;
+		for (Map.Entry<Integer, Long> entry : expected.entrySet()) {
+			expectedElementsSize += SequenceAccumulator.estimateSize("e" + entry.getValue());
+		}
+		assertTrue(context, accumulator.getEstimatedSize() >= expectedElementsSize);
+	}
+}
@@ -0,0 +1,228 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.message.internal.sequence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+/**
+ * SequenceRegistryTest
+ * 
+ * Checks the registry's bookkeeping under concurrent access, and the eviction
+ * of the least recently used sequences over all shards and of the expired sequences.
+ * 
+ * @author erwin dl
+ */
+public class SequenceRegistryTest extends TestCase {
+
+	private final static SequenceRegistry.EntryFactory<String> FACTORY = new SequenceRegistry.EntryFactory<String>() {
+		public String createEntry(Long sequenceID) {
+			return "seq" + sequenceID;
+		}
+	};
+
+	private final List<Long> evictedIDs = Collections.synchronizedList(new ArrayList<Long>());
+
+	public void testGetOrCreate() {
+		SequenceRegistry<String> registry = createRegistry(16, 0, 0);
+		assertNull(registry.get(new Long(1)));
+		assertEquals("seq1", registry.getOrCreate(new Long(1), FACTORY));
+		String entry = registry.get(new Long(1));
+		assertEquals("seq1", entry);
+		// the existing entry is returned, not a new one
+		assertSame(entry, registry.getOrCreate(new Long(1), FACTORY));
+		assertEquals(1, registry.size());
+
+		assertSame(entry, registry.remove(new Long(1)));
+		assertNull(registry.remove(new Long(1)));
+		assertTrue(registry.isEmpty());
+		assertEquals(1, registry.getCompletedCount());
+		assertEquals(0, registry.getEvictedCount());
+		assertEquals(1, registry.getMaxSize());
+	}
+
+	public void testClear() {
+		SequenceRegistry<String> registry = createRegistry(4, 0, 0);
+		for (long i = 0; i < 100; i++) {
+			registry.getOrCreate(new Long(i), FACTORY);
+		}
+		assertEquals(100, registry.size());
+		registry.clear();
+		assertEquals(0, registry.size());
+		assertNull(registry.get(new Long(5)));
+		assertTrue("Cleared sequences are not evicted", evictedIDs.isEmpty());
+		assertEquals(100, registry.getMaxSize());
+		registry.resetCounts();
+		assertEquals(0, registry.getMaxSize());
+	}
+
+	public void testLeastRecentlyUsedOverShards() throws Exception {
+		// consecutive IDs are spread over the shards
+		SequenceRegistry<String> registry = createRegistry(16, 3, 0);
+		for (long i = 1; i <= 3; i++) {
+			registry.getOrCreate(new Long(i), FACTORY);
+			Thread.sleep(1);
+		}
+		registry.get(new Long(1));
+		Thread.sleep(1);
+		registry.getOrCreate(new Long(4), FACTORY);
+		assertEquals(list(2), evictedIDs);
+		Thread.sleep(1);
+		registry.get(new Long(3));
+		Thread.sleep(1);
+		registry.getOrCreate(new Long(5), FACTORY);
+		assertEquals(list(2, 1), evictedIDs);
+		assertEquals(3, registry.size());
+		assertEquals(2, registry.getEvictedCount());
+		assertNull(registry.get(new Long(1)));
+		assertNotNull(registry.get(new Long(3)));
+		assertNotNull(registry.get(new Long(4)));
+		assertNotNull(registry.get(new Long(5)));
+	}
+
+	public void testTimeToLive() throws Exception {
+		SequenceRegistry<String> registry = createRegistry(16, 0, 500);
+		for (long i = 1; i <= 10; i++) {
+			registry.getOrCreate(new Long(i), FACTORY);
+		}
+		assertEquals(0, registry.evictExpired());
+
+		Thread.sleep(600);
+		// an expired sequence is not returned, even when it is accessed before it has been evicted
+		assertNull(registry.get(new Long(3)));
+		assertTrue(evictedIDs.contains(new Long(3)));
+		registry.getOrCreate(new Long(11), FACTORY);
+		registry.evictExpired();
+		assertEquals(1, registry.size());
+		assertNotNull(registry.get(new Long(11)));
+		assertEquals(10, registry.getEvictedCount());
+		Collections.sort(evictedIDs);
+		assertEquals(list(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), evictedIDs);
+	}
+
+	public void testEstimatedSize() {
+		SequenceRegistry<SequenceAccumulator> registry = new SequenceRegistry<SequenceAccumulator>(0, 0);
+		SequenceRegistry.EntryFactory<SequenceAccumulator> factory = new SequenceRegistry.EntryFactory<SequenceAccumulator>() {
+			public SequenceAccumulator createEntry(Long sequenceID) {
+				return new SequenceAccumulator(sequenceID);
+			}
+		};
+		SequenceAccumulator first = registry.getOrCreate(new Long(1), factory);
+		SequenceAccumulator second = registry.getOrCreate(new Long(2), factory);
+		first.append(new Long(10), "element");
+		assertEquals(first.getEstimatedSize() + second.getEstimatedSize(), registry.getEstimatedSize());
+	}
+
+	public void testConcurrentAccess() throws Exception {
+		final SequenceRegistry<String> registry = createRegistry(16, 0, 0);
+		final int threadCount = 8;
+		final int sequencesPerThread = 10000;
+		final CountDownLatch done = new CountDownLatch(threadCount);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		for (int t = 0; t < threadCount; t++) {
+			final long firstID = t * sequencesPerThread;
+			new Thread("SequenceRegistryTest-" + t) {
+				public void run() {
+					try {
+						for (long i = firstID; i < firstID + sequencesPerThread; i++) {
+							Long sequenceID = new Long(i);
+							String entry = registry.getOrCreate(sequenceID, FACTORY);
+							if (!entry.equals(registry.get(sequenceID))) {
+								throw new IllegalStateException("Wrong entry for " + sequenceID);
+							}
+							// keep every tenth sequence
+							if (i % 10 != 0 && registry.remove(sequenceID) != entry) {
+								throw new IllegalStateException("Wrong removed entry for " + sequenceID);
+							}
+						}
+					} catch (Throwable e) {
+						failure.set(e);
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		assertTrue("Threads did not finish", done.await(30, TimeUnit.SECONDS));
+		if (failure.get() != null) {
+			throw new Exception(failure.get());
+		}
+		int total = threadCount * sequencesPerThread;
+		assertEquals(total / 10, registry.size());
+		assertEquals(total - total / 10, registry.getCompletedCount());
+		assertTrue(registry.getMaxSize() >= total / 10);
+		assertTrue(evictedIDs.isEmpty());
+	}
+
+	public void testRandomizedAgainstLinkedHashMap() throws Exception {
+		Random random = new Random(42);
+		int maxSequences = 20;
+		SequenceRegistry<String> registry = createRegistry(16, maxSequences, 0);
+		// in access order, as a single LRU list over all shards
+		Map<Long, String> expected = new LinkedHashMap<Long, String>(16, 0.75f, true);
+		List<Long> expectedEvictedIDs = new ArrayList<Long>();
+		for (int op = 0; op < 5000; op++) {
+			Long sequenceID = new Long(random.nextInt(60));
+			int action = random.nextInt(3);
+			if (action == 0) {
+				assertEquals("Op " + op, expected.get(sequenceID), registry.get(sequenceID));
+			} else if (action == 1) {
+				String entry = expected.get(sequenceID);
+				if (entry == null) {
+					expected.put(sequenceID, FACTORY.createEntry(sequenceID));
+					if (expected.size() > maxSequences) {
+						Iterator<Long> eldestItr = expected.keySet().iterator();
+						expectedEvictedIDs.add(eldestItr.next());
+						eldestItr.remove();
+					}
+				}
+				assertEquals("Op " + op, "seq" + sequenceID, registry.getOrCreate(sequenceID, FACTORY));
+			} else {
+				assertEquals("Op " + op, expected.remove(sequenceID), registry.remove(sequenceID));
+			}
+			assertEquals("Op " + op, expected.size(), registry.size());
+			assertEquals("Op " + op, expectedEvictedIDs, evictedIDs);
+		}
+	}
+
+	private SequenceRegistry<String> createRegistry(int shardCount, int maxSequences, long timeToLive) {
+		SequenceRegistry<String> registry = new SequenceRegistry<String>(shardCount, maxSequences, timeToLive);
+		registry.setEvictionListener(new SequenceRegistry.EvictionListener<String>() {
+			public void sequenceEvicted(Long sequenceID, String entry) {
+				assertEquals("seq" + sequenceID, entry);
+				evictedIDs.add(sequenceID);
+			}
+		});
+		return registry;
+	}
+
+	private static List<Long> list(long... sequenceIDs) {
+		List<Long> result = new ArrayList<Long>();
+		for (long sequenceID : sequenceIDs) {
+			result.add(new Long(sequenceID));
+		}
+		return result;
+	}
+}
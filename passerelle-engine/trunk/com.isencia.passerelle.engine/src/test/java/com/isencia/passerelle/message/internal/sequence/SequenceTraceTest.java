@@ -0,0 +1,242 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.message.internal.sequence;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.message.MessageFactory;
+
+/**
+ * SequenceTraceTest
+ * 
+ * Checks isComplete() and isHandled(), which are now maintained as running state,
+ * against the previous implementation that walked all msgs of the trace on each call.
+ * 
+ * @author erwin dl
+ */
+public class SequenceTraceTest extends TestCase {
+
+	private final static Long SEQ_ID = new Long(1);
+
+	public void testEmptyTrace() {
+		SequenceTrace trace = new SequenceTrace(SEQ_ID);
+		assertTrue(trace.isComplete());
+		assertTrue(trace.isHandled());
+	}
+
+	public void testOutOfOrderMessages() {
+		SequenceTrace trace = new SequenceTrace(SEQ_ID);
+		ManagedMessage end = createMessage(3, true);
+		ManagedMessage[] others = new ManagedMessage[] { createMessage(1, false), createMessage(0, false), createMessage(2, false) };
+		trace.addMessage(end);
+		assertFalse(trace.isComplete());
+		trace.addMessage(others[0]);
+		trace.addMessage(others[1]);
+		assertFalse(trace.isComplete());
+		trace.addMessage(others[2]);
+		assertTrue(trace.isComplete());
+		assertFalse(trace.isHandled());
+
+		trace.messageHandled(end);
+		trace.messageHandled(others[1]);
+		trace.messageHandled(others[2]);
+		assertFalse(trace.isHandled());
+		trace.messageHandled(others[0]);
+		assertTrue(trace.isHandled());
+		assertEquals(4, trace.getMessageCount());
+	}
+
+	public void testEndMustBeTheLastPosition() {
+		SequenceTrace trace = new SequenceTrace(SEQ_ID);
+		trace.addMessage(createMessage(0, false));
+		trace.addMessage(createMessage(1, true));
+		trace.addMessage(createMessage(2, false));
+		assertFalse(trace.isComplete());
+	}
+
+	public void testReplacedMessageMustBeHandledAgain() {
+		SequenceTrace trace = new SequenceTrace(SEQ_ID);
+		ManagedMessage first = createMessage(0, false);
+		ManagedMessage end = createMessage(1, true);
+		trace.addMessage(first);
+		trace.messageHandled(first);
+		ManagedMessage replacement = createMessage(0, false);
+		trace.addMessage(replacement);
+		trace.addMessage(end);
+		trace.messageHandled(end);
+		// a late notification for the replaced msg does not count
+		trace.messageHandled(first);
+		assertTrue(trace.isComplete());
+		assertFalse(trace.isHandled());
+		trace.messageHandled(replacement);
+		assertTrue(trace.isHandled());
+	}
+
+	public void testAfterCompletion() {
+		SequenceTrace trace = new SequenceTrace(SEQ_ID);
+		ManagedMessage end = createMessage(0, true);
+		trace.addMessage(end);
+		assertTrue(trace.isComplete());
+		try {
+			trace.addMessage(createMessage(1, false));
+			fail("A msg can not be added to a complete sequence");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		trace.messageHandled(end);
+		assertTrue(trace.isHandled());
+		try {
+			trace.messageHandled(end);
+			fail("A msg can not be handled in a handled sequence");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		trace.clear();
+		assertEquals(0, trace.getMessageCount());
+		ManagedMessage other = createMessage(1, false);
+		trace.addMessage(other);
+		assertFalse(trace.isComplete());
+	}
+
+	public void testRandomizedAgainstPreviousImplementation() {
+		Random random = new Random(42);
+		for (int run = 0; run < 200; run++) {
+			SequenceTrace trace = new SequenceTrace(SEQ_ID);
+			WalkingSequenceTrace expected = new WalkingSequenceTrace();
+			List<ManagedMessage> added = new ArrayList<ManagedMessage>();
+			int length = 1 + random.nextInt(20);
+			for (int op = 0; op < 100; op++) {
+				String context = "Run " + run + ", op " + op;
+				if (added.isEmpty() || random.nextInt(3) > 0) {
+					int position = random.nextInt(length);
+					ManagedMessage msg = createMessage(position, position == length - 1 && random.nextInt(4) > 0);
+					boolean refused = false;
+					try {
+						trace.addMessage(msg);
+					} catch (IllegalStateException e) {
+						refused = true;
+					}
+					// the completion is remembered once it has been checked, an empty trace does not count
+					assertEquals(context, expected.complete, refused);
+					if (!refused) {
+						expected.addMessage(msg);
+						added.add(msg);
+					}
+				} else {
+					ManagedMessage msg = added.get(random.nextInt(added.size()));
+					boolean refused = false;
+					try {
+						trace.messageHandled(msg);
+					} catch (IllegalStateException e) {
+						refused = true;
+					}
+					assertEquals(context, expected.handled, refused);
+					if (!refused) {
+						expected.messageHandled(msg);
+					}
+				}
+				// isHandled() first, as the previous implementation also set the completion there
+				if (random.nextBoolean()) {
+					assertEquals(context, expected.isHandled(), trace.isHandled());
+				}
+				assertEquals(context, expected.isComplete(), trace.isComplete());
+				assertEquals(context, expected.isHandled(), trace.isHandled());
+			}
+		}
+	}
+
+	private static ManagedMessage createMessage(long position, boolean isSeqEnd) {
+		return MessageFactory.getInstance().createMessageInSequence(SEQ_ID, new Long(position), isSeqEnd);
+	}
+
+	/**
+	 * The previous implementation of the completeness checks, which walked all msgs on each call.
+	 */
+	private static class WalkingSequenceTrace {
+		private boolean handled = false;
+		private boolean complete = false;
+		private Map<Long, Boolean> handledById = new HashMap<Long, Boolean>();
+		private Map<Long, ManagedMessage> messagesBySeqPos = new TreeMap<Long, ManagedMessage>();
+
+		boolean isHandled() {
+			if (handled)
+				return true;
+
+			boolean result = true;
+
+			long expectedPos = 0;
+			ManagedMessage seqMsg = null;
+			Boolean seqMsgHandled = null;
+			for (Iterator<ManagedMessage> iter = messagesBySeqPos.values().iterator(); iter.hasNext(); expectedPos++) {
+				seqMsg = iter.next();
+				seqMsgHandled = handledById.get(seqMsg.getID());
+				if (seqMsgHandled == null || !seqMsgHandled.booleanValue() || (seqMsg.getSequencePosition().longValue() != expectedPos)) {
+					result = false;
+					break;
+				}
+			}
+			if (result && seqMsg != null) {
+				result = seqMsg.isSequenceEnd();
+				if (result) {
+					complete = true;
+					handled = true;
+				}
+			}
+			return result;
+		}
+
+		boolean isComplete() {
+			if (complete)
+				return true;
+
+			boolean result = true;
+
+			long expectedPos = 0;
+			ManagedMessage seqMsg = null;
+			for (Iterator<ManagedMessage> iter = messagesBySeqPos.values().iterator(); iter.hasNext(); expectedPos++) {
+				seqMsg = iter.next();
+				if (seqMsg.getSequencePosition().longValue() != expectedPos) {
+					result = false;
+					break;
+				}
+			}
+			if (result && seqMsg != null) {
+				result = seqMsg.isSequenceEnd();
+				if (result)
+					complete = true;
+			}
+			return result;
+		}
+
+		void addMessage(ManagedMessage message) {
+			handledById.put(message.getID(), Boolean.FALSE);
+			messagesBySeqPos.put(message.getSequencePosition(), message);
+		}
+
+		void messageHandled(ManagedMessage message) {
+			handledById.put(message.getID(), Boolean.TRUE);
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.message.xml;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+/**
+ * CompiledXPathTest
+ * 
+ * Checks the streaming evaluation of CompiledXPath against the DOM XPath evaluation.
+ * 
+ * @author erwin dl
+ */
+public class CompiledXPathTest extends TestCase {
+
+	private final static String XML = 
+		"<a id=\"1\">" +
+			"<b id=\"2\">b1<c id=\"3\">c1</c>b2</b>" +
+			"<x><b id=\"4\"><c>c2</c></b></x>" +
+			"<b><x><c id=\"5\">c3</c></x></b>" +
+			"<y:c xmlns:y=\"urn:y\" id=\"6\">c4</y:c>" +
+			"<d/>" +
+		"</a>";
+
+	private final static String[] STREAMABLE = { 
+		"/a", "/a/b", "//b", "//c", "/a/b/c", "//b/c", "/a//c", "//b//c", "/a/*/c", "/a/*", "//*", "/*/*/*",
+		"/b", "/a/c", "//x/b/c", "/a/b/x/c", "/a/d", "/a/d/c",
+		"/a/@id", "//b/@id", "//c/@id", "/a/*/@id", "//x/@id",
+		"/a/b/text()", "//c/text()", "/a/*/text()", "//x/text()", "/a/d/text()" };
+
+	private final static String[] NOT_STREAMABLE = { 
+		"", "a", "a/b", "/", "//", "/a/", "/a[1]", "/a/b[@id='2']", "/a/b/..", "/a/./b", "/a|/b", 
+		"/y:c", "/a/y:c", "/a/@y:id", "/a/text()/b", "/a/@id/b", "/a/@*", "//@id", "//node()", "count(/a)", "/a/b/text( )", "/a/ b" };
+
+	private Document doc;
+
+	protected void setUp() throws Exception {
+		doc = parse(XML);
+	}
+
+	public void testStreamablePattern() {
+		for (String expression : STREAMABLE) {
+			assertTrue(expression, new CompiledXPath(expression).isStreamable());
+		}
+		for (String expression : NOT_STREAMABLE) {
+			assertFalse(expression, new CompiledXPath(expression).isStreamable());
+		}
+	}
+
+	public void testSelectNodesAsDOM() throws Exception {
+		for (String expression : STREAMABLE) {
+			assertEquals(expression, selectWithDOM(doc, expression).getLength(), new CompiledXPath(expression).selectNodes(doc).getLength());
+		}
+	}
+
+	public void testMatchesAsDOM() throws Exception {
+		for (String expression : STREAMABLE) {
+			boolean expected = selectWithDOM(doc, expression).getLength() > 0;
+			assertEquals(expression, expected, new CompiledXPath(expression).matches(new StringReader(XML)));
+		}
+	}
+
+	public void testMatchesWithDescendantSteps() throws Exception {
+		// the same element name on several levels, so a // step must try all ancestors
+		String xml = "<a><a><b><a><b/></a></b></a></a>";
+		String[] expressions = { "/a/b", "/a/a/b", "//a/b", "/a//b", "//a//b", "//b//b", "/a/b//b", "//a/a/b", "//b/a/b", "/a/*/b/*/b", "/a/*/*/*/b" };
+		Document d = parse(xml);
+		for (String expression : expressions) {
+			boolean expected = selectWithDOM(d, expression).getLength() > 0;
+			assertEquals(expression, expected, new CompiledXPath(expression).matches(new StringReader(xml)));
+		}
+	}
+
+	public void testReplaceTextAsDOM() throws Exception {
+		for (String expression : STREAMABLE) {
+			StringWriter out = new StringWriter();
+			new CompiledXPath(expression).replaceText(new StringReader(XML), out, "new");
+
+			Document expected = parse(XML);
+			NodeList nodes = selectWithDOM(expected, expression);
+			for (int i = 0; i < nodes.getLength(); i++) {
+				replaceWithDOM(nodes.item(i), "new");
+			}
+			Document actual = parse(out.toString());
+			expected.normalizeDocument();
+			actual.normalizeDocument();
+			assertTrue(expression + " : " + out, expected.getDocumentElement().isEqualNode(actual.getDocumentElement()));
+		}
+	}
+
+	public void testStreamingNotStreamable() throws Exception {
+		try {
+			new CompiledXPath("/a[1]").matches(new StringReader(XML));
+			fail("IllegalStateException expected");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		try {
+			new CompiledXPath("/a[1]").replaceText(new StringReader(XML), new StringWriter(), "new");
+			fail("IllegalStateException expected");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	private static Document parse(String xml) throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		DocumentBuilder builder = factory.newDocumentBuilder();
+		return builder.parse(new InputSource(new StringReader(xml)));
+	}
+
+	private static NodeList selectWithDOM(Document d, String expression) throws Exception {
+		return (NodeList) XPathFactory.newInstance().newXPath().evaluate(expression, d, XPathConstants.NODESET);
+	}
+
+	/**
+	 * Replaces the text as documented for CompiledXPath.replaceText()
+	 */
+	private static void replaceWithDOM(Node node, String newText) {
+		if (node instanceof Attr) {
+			((Attr) node).setValue(newText);
+		} else if (node instanceof Element) {
+			for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+				if (child.getNodeType() == Node.TEXT_NODE) {
+					child.setNodeValue(newText);
+					break;
+				}
+			}
+		} else {
+			node.setNodeValue(newText);
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * HashedWheelTimerTest
+ * 
+ * Checks the expiry times and order of the timeouts, on a small wheel
+ * so the timeouts are spread over several rounds.
+ * 
+ * @author erwin dl
+ */
+public class HashedWheelTimerTest extends TestCase {
+
+	// in ms
+	private final static long TICK = 10;
+	// a generous margin for slow or busy test machines, in ms
+	private final static long LATENESS = 200;
+
+	private HashedWheelTimer timer;
+
+	protected void setUp() throws Exception {
+		// rounded up to 8 buckets, i.e. 80ms per round
+		timer = new HashedWheelTimer("HashedWheelTimerTest", TICK, 5);
+	}
+
+	protected void tearDown() throws Exception {
+		timer.stop();
+	}
+
+	public void testExpiryOverSeveralRounds() throws Exception {
+		// delays in the first round, on a round boundary, and a few rounds further
+		long[] delays = new long[] {0, 5, 25, 79, 80, 81, 165, 250, 333};
+		CountDownLatch done = new CountDownLatch(delays.length);
+		ExpiryRecorder[] recorders = new ExpiryRecorder[delays.length];
+		long start = System.nanoTime();
+		for (int i = 0; i < delays.length; i++) {
+			recorders[i] = new ExpiryRecorder(start, done);
+			timer.newTimeout(recorders[i], delays[i]);
+		}
+		assertTrue("Timeouts did not expire", done.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < delays.length; i++) {
+			long elapsed = recorders[i].elapsed;
+			assertTrue("Timeout of " + delays[i] + "ms expired after " + elapsed + "ms", elapsed >= delays[i]);
+			assertTrue("Timeout of " + delays[i] + "ms expired after " + elapsed + "ms", elapsed <= delays[i] + TICK + LATENESS);
+		}
+		assertEquals(0, timer.getPendingCount());
+	}
+
+	public void testEqualDeadlinesInOrderOfAddition() throws Exception {
+		int count = 1000;
+		final List<Integer> expired = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch done = new CountDownLatch(count);
+		for (int i = 0; i < count; i++) {
+			final Integer nr = Integer.valueOf(i);
+			timer.newTimeout(new Runnable() {
+				public void run() {
+					expired.add(nr);
+					done.countDown();
+				}
+			}, 100);
+		}
+		assertTrue("Timeouts did not expire", done.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < count; i++) {
+			assertEquals("Wrong expiry order", i, expired.get(i).intValue());
+		}
+	}
+
+	public void testShorterDelayAddedLaterExpiresFirst() throws Exception {
+		final List<String> expired = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch done = new CountDownLatch(2);
+		timer.newTimeout(new Runnable() {
+			public void run() {
+				expired.add("long");
+				done.countDown();
+			}
+		}, 150);
+		timer.newTimeout(new Runnable() {
+			public void run() {
+				expired.add("short");
+				done.countDown();
+			}
+		}, 20);
+		assertTrue("Timeouts did not expire", done.await(5, TimeUnit.SECONDS));
+		assertEquals("short", expired.get(0));
+		assertEquals("long", expired.get(1));
+	}
+
+	public void testCancel() throws Exception {
+		CountDownLatch done = new CountDownLatch(1);
+		ExpiryRecorder cancelled = new ExpiryRecorder(System.nanoTime(), new CountDownLatch(1));
+		ExpiryRecorder expiring = new ExpiryRecorder(System.nanoTime(), done);
+		HashedWheelTimer.Timeout cancelledTimeout = timer.newTimeout(cancelled, 50);
+		HashedWheelTimer.Timeout expiringTimeout = timer.newTimeout(expiring, 100);
+		assertEquals(2, timer.getPendingCount());
+		assertTrue(cancelledTimeout.cancel());
+		assertFalse("Second cancel must fail", cancelledTimeout.cancel());
+		assertTrue(cancelledTimeout.isCancelled());
+		assertEquals(1, timer.getPendingCount());
+
+		assertTrue("Timeout did not expire", done.await(5, TimeUnit.SECONDS));
+		assertFalse("Cancelled timeout expired", cancelled.hasExpired);
+		assertFalse(cancelledTimeout.isExpired());
+		assertTrue(expiringTimeout.isExpired());
+		assertFalse("Expired timeout can not be cancelled", expiringTimeout.cancel());
+		assertEquals(0, timer.getPendingCount());
+	}
+
+	public void testStop() throws Exception {
+		ExpiryRecorder recorder = new ExpiryRecorder(System.nanoTime(), new CountDownLatch(1));
+		timer.newTimeout(recorder, 50);
+		timer.stop();
+		Thread.sleep(150);
+		assertFalse("Timeout expired after stop", recorder.hasExpired);
+		try {
+			timer.newTimeout(recorder, 10);
+			fail("Stopped timer accepted a timeout");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	private static class ExpiryRecorder implements Runnable {
+		private final long start;
+		private final CountDownLatch done;
+		// in ms
+		volatile long elapsed;
+		volatile boolean hasExpired;
+
+		ExpiryRecorder(long start, CountDownLatch done) {
+			this.start = start;
+			this.done = done;
+		}
+
+		public void run() {
+			elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			hasExpired = true;
+			done.countDown();
+		}
+	}
+}
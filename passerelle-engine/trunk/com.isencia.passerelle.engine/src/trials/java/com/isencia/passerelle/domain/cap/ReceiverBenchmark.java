@@ -0,0 +1,115 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.domain.cap;
+
+import java.util.Arrays;
+
+import ptolemy.actor.QueueReceiver;
+import ptolemy.actor.TypedAtomicActor;
+import ptolemy.actor.TypedCompositeActor;
+import ptolemy.actor.TypedIOPort;
+import ptolemy.actor.process.ProcessReceiver;
+import ptolemy.data.LongToken;
+import ptolemy.data.Token;
+import ptolemy.kernel.util.IllegalActionException;
+
+/**
+ * Compares throughput and latency of the BlockingQueueReceiver and the
+ * RingBufferReceiver, on a pipeline of 10 stages. Each stage has its own
+ * thread that takes tokens from its input receiver and puts them in the
+ * receiver of the next stage, like a chain of simple Passerelle transformers.
+ * <p>
+ * Usage : ReceiverBenchmark [nrOfMessages] [ringCapacity]
+ * </p>
+ *
+ * @author erwin dl
+ */
+public class ReceiverBenchmark {
+
+	private final static int STAGES = 10;
+
+	public static void main(String[] args) throws Exception {
+		int nrOfMessages = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int capacity = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+
+		for (int run = 0; run < 3; run++) {
+			System.out.println("--- run " + run);
+			runPipeline("BlockingQueueReceiver", nrOfMessages, 0);
+			runPipeline("RingBufferReceiver unbounded", nrOfMessages, QueueReceiver.INFINITE_CAPACITY);
+			runPipeline("RingBufferReceiver capacity " + capacity, nrOfMessages, capacity);
+		}
+	}
+
+	/**
+	 * @param capacity
+	 *            0 for a BlockingQueueReceiver, else the capacity of the
+	 *            RingBufferReceivers
+	 */
+	private static void runPipeline(String label, final int nrOfMessages, int capacity) throws Exception {
+		TypedCompositeActor model = new TypedCompositeActor();
+		model.setName("benchmark");
+		final ProcessReceiver[] receivers = new ProcessReceiver[STAGES];
+		for (int i = 0; i < STAGES; i++) {
+			TypedAtomicActor stage = new TypedAtomicActor(model, "stage" + i);
+			TypedIOPort input = new TypedIOPort(stage, "input", true, false);
+			if (capacity == 0) {
+				receivers[i] = new BlockingQueueReceiver(input);
+			} else {
+				RingBufferReceiver receiver = new RingBufferReceiver(input);
+				receiver.setCapacity(capacity);
+				receivers[i] = receiver;
+			}
+		}
+
+		final long[] latencies = new long[nrOfMessages];
+		Thread[] threads = new Thread[STAGES];
+		for (int i = 0; i < STAGES; i++) {
+			final int stageIndex = i;
+			threads[i] = new Thread("stage" + i) {
+				public void run() {
+					try {
+						for (int m = 0; m < nrOfMessages; m++) {
+							Token t = receivers[stageIndex].get();
+							if (stageIndex < STAGES - 1) {
+								receivers[stageIndex + 1].put(t);
+							} else {
+								latencies[m] = System.nanoTime() - ((LongToken) t).longValue();
+							}
+						}
+					} catch (IllegalActionException e) {
+						e.printStackTrace();
+					}
+				}
+			};
+			threads[i].start();
+		}
+
+		long start = System.nanoTime();
+		for (int m = 0; m < nrOfMessages; m++) {
+			receivers[0].put(new LongToken(System.nanoTime()));
+		}
+		threads[STAGES - 1].join();
+		long duration = System.nanoTime() - start;
+		for (int i = 0; i < STAGES; i++) {
+			threads[i].join();
+		}
+
+		Arrays.sort(latencies);
+		System.out.println(label + " : " + (nrOfMessages * 1000000000L / duration) + " msg/s"
+				+ ", latency p50 " + (latencies[nrOfMessages / 2] / 1000) + " us"
+				+ ", p99 " + (latencies[(int) (nrOfMessages * 0.99)] / 1000) + " us"
+				+ ", max " + (latencies[nrOfMessages - 1] / 1000) + " us");
+	}
+}
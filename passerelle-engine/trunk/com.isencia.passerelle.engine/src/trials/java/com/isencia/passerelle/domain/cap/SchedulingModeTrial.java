@@ -0,0 +1,151 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.domain.cap;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import ptolemy.kernel.CompositeEntity;
+import ptolemy.kernel.util.IllegalActionException;
+import ptolemy.kernel.util.NameDuplicationException;
+
+import com.isencia.passerelle.actor.InitializationException;
+import com.isencia.passerelle.actor.ProcessingException;
+import com.isencia.passerelle.actor.Sink;
+import com.isencia.passerelle.actor.Source;
+import com.isencia.passerelle.actor.Transformer;
+import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.model.Flow;
+import com.isencia.passerelle.model.FlowManager;
+
+/**
+ * Compares the nr of threads and the duration of a model run, in the "Thread per actor"
+ * and the "Thread pool" scheduling modes of the Director.
+ * The model has a nr of parallel chains, each with a source, a nr of relays and a sink.
+ * <p>
+ * Usage : SchedulingModeTrial [nrOfChains] [chainLength] [nrOfMessages]
+ * </p>
+ *
+ * @author erwin dl
+ */
+public class SchedulingModeTrial {
+
+	public static void main(String[] args) throws Exception {
+		int nrOfChains = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		int chainLength = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int nrOfMessages = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+		System.out.println(nrOfChains + " chains of " + chainLength + " relays, " + nrOfMessages + " msgs per chain, "
+				+ ActorScheduler.getInstance().getPoolSize() + " pool threads");
+		for (int run = 0; run < 3; run++) {
+			System.out.println("--- run " + run);
+			runModel(Director.SCHEDULING_MODE_THREAD_PER_ACTOR, nrOfChains, chainLength, nrOfMessages);
+			runModel(Director.SCHEDULING_MODE_THREAD_POOL, nrOfChains, chainLength, nrOfMessages);
+		}
+	}
+
+	private static void runModel(String schedulingMode, int nrOfChains, int chainLength, int nrOfMessages) throws Exception {
+		Flow flow = new Flow("SchedulingModeTrial", null);
+		Director director = new Director(flow, "director");
+		director.schedulingModeParam.setExpression(schedulingMode);
+		CountingSink[] sinks = new CountingSink[nrOfChains];
+		for (int c = 0; c < nrOfChains; c++) {
+			NumberSource source = new NumberSource(flow, "source" + c, nrOfMessages);
+			Relay previous = null;
+			for (int r = 0; r < chainLength; r++) {
+				Relay relay = new Relay(flow, "relay" + c + "_" + r);
+				flow.connect((previous != null) ? previous.output : source.output, relay.input);
+				previous = relay;
+			}
+			sinks[c] = new CountingSink(flow, "sink" + c);
+			flow.connect((previous != null) ? previous.output : source.output, sinks[c].input);
+		}
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		int threadsBefore = threads.getThreadCount();
+		threads.resetPeakThreadCount();
+		long start = System.nanoTime();
+		new FlowManager().executeBlocking(flow, null);
+		long duration = System.nanoTime() - start;
+
+		long received = 0;
+		for (int c = 0; c < nrOfChains; c++) {
+			received += sinks[c].count;
+		}
+		System.out.println(schedulingMode + " : peak " + (threads.getPeakThreadCount() - threadsBefore) + " extra threads, "
+				+ (duration / 1000000) + " ms, " + (received * 1000000000L / duration) + " msg/s at the sinks");
+	}
+
+	public static class NumberSource extends Source {
+		private final int nrOfMessages;
+		private int sent;
+
+		public NumberSource(CompositeEntity container, String name, int nrOfMessages) throws NameDuplicationException, IllegalActionException {
+			super(container, name);
+			this.nrOfMessages = nrOfMessages;
+		}
+
+		protected void doInitialize() throws InitializationException {
+			super.doInitialize();
+			sent = 0;
+		}
+
+		protected ManagedMessage getMessage() throws ProcessingException {
+			if (sent == nrOfMessages) {
+				return null;
+			}
+			try {
+				return createMessage(Integer.toString(sent++), "text/plain");
+			} catch (Exception e) {
+				throw new ProcessingException("", null, e);
+			}
+		}
+
+		protected String getExtendedInfo() {
+			return "";
+		}
+	}
+
+	public static class Relay extends Transformer {
+		public Relay(CompositeEntity container, String name) throws NameDuplicationException, IllegalActionException {
+			super(container, name);
+		}
+
+		protected void doFire(ManagedMessage message) throws ProcessingException {
+			sendOutputMsg(output, message);
+		}
+
+		protected String getExtendedInfo() {
+			return "";
+		}
+	}
+
+	public static class CountingSink extends Sink {
+		volatile long count;
+
+		public CountingSink(CompositeEntity container, String name) throws NameDuplicationException, IllegalActionException {
+			super(container, name);
+		}
+
+		protected void doInitialize() throws InitializationException {
+			super.doInitialize();
+			count = 0;
+		}
+
+		protected void sendMessage(ManagedMessage message) throws ProcessingException {
+			count++;
+		}
+	}
+}
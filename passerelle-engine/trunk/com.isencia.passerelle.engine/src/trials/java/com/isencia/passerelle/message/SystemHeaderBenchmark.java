@@ -0,0 +1,125 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.message;
+
+import java.util.Date;
+
+import com.isencia.passerelle.message.ManagedMessage.SystemHeader;
+import com.isencia.passerelle.message.internal.MessageContainer;
+
+/**
+ * Measures the per-access cost of the system header getters on a message in a sequence,
+ * as used by sequence handling actors and the audit logging.
+ * <p>
+ * The "string headers" figures repeat what the getters used to do :
+ * look up the String header and parse its value on each call.
+ * The "typed" figures call the ManagedMessage getters, that now read typed fields.
+ * </p>
+ * <p>
+ * Usage : SystemHeaderBenchmark [nrOfAccesses]
+ * </p>
+ *
+ * @author erwin dl
+ */
+public class SystemHeaderBenchmark {
+
+	// avoids that the JIT removes the calls
+	private static long sink;
+
+	public static void main(String[] args) throws Exception {
+		int nrOfAccesses = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+		MessageFactory factory = MessageFactory.getInstance();
+		ManagedMessage msg = factory.createMessageInSequence(factory.createSequenceID(), new Long(3), false);
+		msg.addCauseID(new Long(12345));
+		MessageContainer container = (MessageContainer) msg;
+
+		for (int run = 0; run < 3; run++) {
+			System.out.println("--- run " + run);
+			report("getID() string header", runStringHeaderLong(container, SystemHeader.HEADER_ID, nrOfAccesses), nrOfAccesses);
+			report("getID() typed", runGetID(msg, nrOfAccesses), nrOfAccesses);
+			report("getSequencePosition() string header", runStringHeaderLong(container, SystemHeader.HEADER_SEQ_POS, nrOfAccesses), nrOfAccesses);
+			report("getSequencePosition() typed", runGetSequencePosition(msg, nrOfAccesses), nrOfAccesses);
+			report("isSequenceEnd() string header", runStringHeaderBoolean(container, SystemHeader.HEADER_SEQ_END, nrOfAccesses), nrOfAccesses);
+			report("isSequenceEnd() typed", runIsSequenceEnd(msg, nrOfAccesses), nrOfAccesses);
+			report("getCreationTimeStamp() string header", runStringHeaderDate(container, SystemHeader.HEADER_TIMESTAMP_CREATION, nrOfAccesses), nrOfAccesses);
+			report("getCreationTimeStamp() typed", runGetCreationTimeStamp(msg, nrOfAccesses), nrOfAccesses);
+		}
+		if (sink == 42) {
+			System.out.println();
+		}
+	}
+
+	private static void report(String label, long duration, int nrOfAccesses) {
+		System.out.println(label + " : " + (duration / nrOfAccesses) + " ns/access");
+	}
+
+	private static long runStringHeaderLong(MessageContainer msg, String name, int nrOfAccesses) {
+		long start = System.nanoTime();
+		for (int i = 0; i < nrOfAccesses; i++) {
+			sink += new Long(msg.getHeader(name)[0]).longValue();
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long runStringHeaderBoolean(MessageContainer msg, String name, int nrOfAccesses) {
+		long start = System.nanoTime();
+		for (int i = 0; i < nrOfAccesses; i++) {
+			sink += new Boolean(msg.getHeader(name)[0]).booleanValue() ? 1 : 0;
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long runStringHeaderDate(MessageContainer msg, String name, int nrOfAccesses) throws Exception {
+		long start = System.nanoTime();
+		for (int i = 0; i < nrOfAccesses; i++) {
+			Date d = MessageFactory.parseTimestamp(msg.getHeader(name)[0]);
+			sink += d.getTime();
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long runGetID(ManagedMessage msg, int nrOfAccesses) {
+		long start = System.nanoTime();
+		for (int i = 0; i < nrOfAccesses; i++) {
+			sink += msg.getID().longValue();
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long runGetSequencePosition(ManagedMessage msg, int nrOfAccesses) {
+		long start = System.nanoTime();
+		for (int i = 0; i < nrOfAccesses; i++) {
+			sink += msg.getSequencePosition().longValue();
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long runIsSequenceEnd(ManagedMessage msg, int nrOfAccesses) {
+		long start = System.nanoTime();
+		for (int i = 0; i < nrOfAccesses; i++) {
+			sink += msg.isSequenceEnd() ? 1 : 0;
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long runGetCreationTimeStamp(ManagedMessage msg, int nrOfAccesses) {
+		long start = System.nanoTime();
+		for (int i = 0; i < nrOfAccesses; i++) {
+			sink += msg.getCreationTimeStamp().getTime();
+		}
+		return System.nanoTime() - start;
+	}
+}
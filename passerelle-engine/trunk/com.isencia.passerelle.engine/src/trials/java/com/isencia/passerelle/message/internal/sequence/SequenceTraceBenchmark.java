@@ -0,0 +1,71 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.message.internal.sequence;
+
+import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.message.MessageFactory;
+
+/**
+ * Measures the cost per msg of tracking a sequence as the SequenceTracker does :
+ * add all msgs, then mark them as handled one by one, checking isHandled() after each one.
+ * <p>
+ * The cost per msg should not grow with the sequence length.
+ * </p>
+ * <p>
+ * Usage : SequenceTraceBenchmark [maxSequenceLength]
+ * </p>
+ *
+ * @author erwin dl
+ */
+public class SequenceTraceBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int maxSequenceLength = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+		for (int run = 0; run < 3; run++) {
+			System.out.println("--- run " + run);
+			for (int length = 100; length <= maxSequenceLength; length *= 10) {
+				ManagedMessage[] msgs = createSequence(length);
+				long start = System.nanoTime();
+				trackSequence(msgs);
+				long duration = System.nanoTime() - start;
+				System.out.println("sequence of " + length + " msgs : " + (duration / length) + " ns/msg");
+			}
+		}
+	}
+
+	private static ManagedMessage[] createSequence(int length) throws Exception {
+		MessageFactory factory = MessageFactory.getInstance();
+		Long seqID = factory.createSequenceID();
+		ManagedMessage[] msgs = new ManagedMessage[length];
+		for (int i = 0; i < length; i++) {
+			msgs[i] = factory.createMessageInSequence(seqID, new Long(i), i == length - 1);
+		}
+		return msgs;
+	}
+
+	private static void trackSequence(ManagedMessage[] msgs) {
+		SequenceTrace trace = new SequenceTrace(msgs[0].getSequenceID());
+		for (int i = 0; i < msgs.length; i++) {
+			trace.addMessage(msgs[i]);
+		}
+		for (int i = 0; i < msgs.length; i++) {
+			trace.messageHandled(msgs[i]);
+			if (trace.isHandled() != (i == msgs.length - 1)) {
+				throw new IllegalStateException("Wrong handled state at msg " + i);
+			}
+		}
+	}
+}
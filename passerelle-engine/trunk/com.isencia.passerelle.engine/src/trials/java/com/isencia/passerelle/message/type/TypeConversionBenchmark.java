@@ -0,0 +1,109 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.message.type;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ptolemy.data.type.ArrayType;
+import ptolemy.data.type.BaseType;
+import ptolemy.data.type.Type;
+
+import com.isencia.passerelle.core.PasserelleToken;
+import com.isencia.passerelle.ext.TypeConverterProvider;
+import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.message.MessageFactory;
+
+/**
+ * Compares the TypeConversionChain with its dispatch cache, against
+ * trying each converter in turn until one does not throw an UnsupportedOperationException.
+ * <p>
+ * The converters are configured in the same order as in the default
+ * passerelle-type-convertors.xml, and messages with a String body are
+ * converted to String, Integer, Long, Double and Array tokens, as done by
+ * Port.convertTokenForFarPort() for plain Ptolemy actors.
+ * </p>
+ * <p>
+ * Usage : TypeConversionBenchmark [nrOfConversions]
+ * </p>
+ *
+ * @author erwin dl
+ */
+public class TypeConversionBenchmark {
+
+	private final static Type[] TARGET_TYPES = new Type[] { BaseType.STRING, BaseType.INT, BaseType.LONG, BaseType.DOUBLE,
+			new ArrayType(BaseType.INT) };
+
+	public static void main(String[] args) throws Exception {
+		int nrOfConversions = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+		final List<TypeConverter> converters = new ArrayList<TypeConverter>();
+		converters.add(new ArrayConverter());
+		converters.add(new BooleanConverter());
+		converters.add(new IntegerConverter());
+		converters.add(new LongConverter());
+		converters.add(new DoubleConverter());
+		converters.add(new ComplexConverter());
+		converters.add(new StringConverter());
+		TypeConversionChain.getInstance().setConverterProvider(new TypeConverterProvider() {
+			public String getName() {
+				return "BENCHMARK";
+			}
+
+			public List<TypeConverter> getTypeConverters() {
+				return converters;
+			}
+		});
+
+		ManagedMessage msg = MessageFactory.getInstance().createMessage();
+		msg.setBodyContentPlainText("42");
+		PasserelleToken token = new PasserelleToken(msg);
+
+		for (int run = 0; run < 3; run++) {
+			System.out.println("--- run " + run);
+			for (int t = 0; t < TARGET_TYPES.length; t++) {
+				Type targetType = TARGET_TYPES[t];
+				long start = System.nanoTime();
+				for (int i = 0; i < nrOfConversions; i++) {
+					convertByTrial(converters, token, targetType);
+				}
+				long trialDuration = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				for (int i = 0; i < nrOfConversions; i++) {
+					TypeConversionChain.getInstance().convertPasserelleTokenToPtolemyToken(token, targetType);
+				}
+				long chainDuration = System.nanoTime() - start;
+
+				System.out.println(targetType + " : try-each-converter " + (trialDuration / nrOfConversions) + " ns/op"
+						+ ", dispatch cache " + (chainDuration / nrOfConversions) + " ns/op");
+			}
+		}
+	}
+
+	/**
+	 * The chain behaviour without the dispatch cache
+	 */
+	private static Object convertByTrial(List<TypeConverter> converters, PasserelleToken token, Type targetType) throws Exception {
+		for (TypeConverter converter : converters) {
+			try {
+				return converter.convertPasserelleTokenToPtolemyToken(token, targetType);
+			} catch (UnsupportedOperationException e) {
+				// continue the chain
+			}
+		}
+		throw new UnsupportedOperationException();
+	}
+}
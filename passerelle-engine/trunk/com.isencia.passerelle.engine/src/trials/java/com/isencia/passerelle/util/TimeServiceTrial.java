@@ -0,0 +1,71 @@
+/* Copyright 2010 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registers periodic tasks for a nr of simulated flows in the shared TimeService,
+ * and reports the nr of threads used, the fire rate and the missed fires.
+ * Then the flows are torn down one by one, as their directors would do at wrapup.
+ * <p>
+ * With a Quartz scheduler per flow, each flow would have its own thread pool.
+ * </p>
+ * <p>
+ * Usage : TimeServiceTrial [nrOfFlows] [tasksPerFlow] [period in ms] [duration in ms]
+ * </p>
+ *
+ * @author erwin dl
+ */
+public class TimeServiceTrial {
+
+	public static void main(String[] args) throws Exception {
+		int nrOfFlows = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		int tasksPerFlow = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		long period = args.length > 2 ? Long.parseLong(args[2]) : 100;
+		long duration = args.length > 3 ? Long.parseLong(args[3]) : 5000;
+
+		TimeService timeService = TimeService.getInstance();
+		final AtomicLong executions = new AtomicLong();
+		Runnable task = new Runnable() {
+			public void run() {
+				executions.incrementAndGet();
+			}
+		};
+		int threadsBefore = Thread.activeCount();
+		Object[] flows = new Object[nrOfFlows];
+		for (int i = 0; i < nrOfFlows; i++) {
+			flows[i] = "flow" + i;
+			for (int j = 0; j < tasksPerFlow; j++) {
+				timeService.scheduleAtFixedRate(flows[i], j % period, period, task);
+			}
+		}
+		System.out.println(timeService.getPendingCount() + " pending triggers for " + nrOfFlows + " flows");
+
+		Thread.sleep(duration);
+		long expected = nrOfFlows * tasksPerFlow * (duration / period);
+		System.out.println("threads added : " + (Thread.activeCount() - threadsBefore));
+		System.out.println("executions : " + executions.get() + " (expected ~" + expected + ")");
+		System.out.println("missed fires : " + timeService.getMissedCount());
+
+		long start = System.nanoTime();
+		int cancelled = 0;
+		for (int i = 0; i < nrOfFlows; i++) {
+			cancelled += timeService.cancelAll(flows[i]);
+		}
+		System.out.println("cancelled " + cancelled + " triggers in " + (System.nanoTime() - start) / 1000 + " us, pending : "
+				+ timeService.getPendingCount());
+	}
+}